@@ -1,7 +1,6 @@
 package com.jackiepenghe.blelibrary;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
  * 保存广播包的解析结果
@@ -71,6 +70,7 @@ public class AdRecord {
 
     /**
      * 将完整的广播包解析成AdRecord集合
+     * 只需要查找某个字段时，使用{@link AdRecordCursor}可以避免创建集合与复制数据
      *
      * @param scanRecord 完整的广播包
      * @return AdRecord集合
@@ -82,20 +82,9 @@ public class AdRecord {
             return records;
         }
 
-        byte length;
-        for (int index = 0; index < scanRecord.length; index += length) {
-            length = scanRecord[index++];
-            if (length == 0) {
-                break;
-            }
-
-            int type = scanRecord[index];
-            if (type == 0) {
-                break;
-            }
-
-            byte[] data = Arrays.copyOfRange(scanRecord, index + 1, index + length);
-            records.add(new AdRecord(length, type, data));
+        AdRecordCursor cursor = new AdRecordCursor(scanRecord);
+        while (cursor.moveToNext()) {
+            records.add(new AdRecord(cursor.getLength(), cursor.getType(), cursor.copyData()));
         }
         return records;
     }
@@ -0,0 +1,187 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.Arrays;
+
+/**
+ * 广播包字段的游标
+ * 直接在原始的广播包上逐个遍历AD字段，不复制数据也不创建AdRecord对象。
+ * 游标只记录当前字段的位置，数据需要时再从原始广播包中读取
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class AdRecordCursor {
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 完整的广播包
+     */
+    private final byte[] scanRecord;
+    /**
+     * 下一个字段的起始位置（长度字节所在的位置）
+     */
+    private int nextIndex;
+    /**
+     * 当前字段的长度（包含类型字节）
+     */
+    private int length;
+    /**
+     * 当前字段的类型
+     */
+    private int type;
+    /**
+     * 当前字段数据的起始位置，小于0表示游标没有指向任何字段
+     */
+    private int dataOffset = -1;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param scanRecord 完整的广播包
+     */
+    public AdRecordCursor(byte[] scanRecord) {
+        this.scanRecord = scanRecord;
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 移动到下一个字段
+     *
+     * @return true表示移动成功，false表示已经没有更多的字段了
+     */
+    public boolean moveToNext() {
+        dataOffset = -1;
+        if (scanRecord == null || nextIndex >= scanRecord.length) {
+            return false;
+        }
+        int index = nextIndex;
+        int length = scanRecord[index++];
+        if (length <= 0 || index >= scanRecord.length) {
+            nextIndex = scanRecord.length;
+            return false;
+        }
+        int type = scanRecord[index];
+        //字段长度超出广播包的范围，视为广播包结束
+        if (type == 0 || index + length > scanRecord.length) {
+            nextIndex = scanRecord.length;
+            return false;
+        }
+        this.length = length;
+        this.type = type;
+        this.dataOffset = index + 1;
+        this.nextIndex = index + length;
+        return true;
+    }
+
+    /**
+     * 移动到下一个指定类型的字段
+     *
+     * @param type 字段类型
+     * @return true表示找到了该类型的字段
+     */
+    public boolean moveToNext(int type) {
+        while (moveToNext()) {
+            if (this.type == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将游标重置到广播包的开头
+     */
+    public void reset() {
+        nextIndex = 0;
+        dataOffset = -1;
+    }
+
+    /**
+     * 获取当前字段的长度（包含类型字节，与{@link AdRecord#getLength()}一致）
+     *
+     * @return 字段长度
+     */
+    public int getLength() {
+        checkPosition();
+        return length;
+    }
+
+    /**
+     * 获取当前字段的类型
+     *
+     * @return 字段类型
+     */
+    public int getType() {
+        checkPosition();
+        return type;
+    }
+
+    /**
+     * 获取当前字段的数据在广播包中的起始位置
+     *
+     * @return 数据的起始位置
+     */
+    public int getDataOffset() {
+        checkPosition();
+        return dataOffset;
+    }
+
+    /**
+     * 获取当前字段的数据长度
+     *
+     * @return 数据长度
+     */
+    public int getDataLength() {
+        checkPosition();
+        return length - 1;
+    }
+
+    /**
+     * 读取当前字段数据中的一个字节
+     *
+     * @param index 数据中的位置
+     * @return 字节值
+     */
+    public byte getDataByte(int index) {
+        checkPosition();
+        if (index < 0 || index >= length - 1) {
+            throw new IndexOutOfBoundsException("index = " + index + ", data length = " + (length - 1));
+        }
+        return scanRecord[dataOffset + index];
+    }
+
+    /**
+     * 复制当前字段的数据
+     *
+     * @return 数据内容
+     */
+    public byte[] copyData() {
+        checkPosition();
+        return Arrays.copyOfRange(scanRecord, dataOffset, dataOffset + length - 1);
+    }
+
+    /**
+     * 获取游标所遍历的完整广播包（不会复制）
+     *
+     * @return 完整的广播包
+     */
+    public byte[] getScanRecord() {
+        return scanRecord;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 检查游标是否指向了一个字段
+     */
+    private void checkPosition() {
+        if (dataOffset < 0) {
+            throw new IllegalStateException("cursor is not positioned on a record");
+        }
+    }
+}
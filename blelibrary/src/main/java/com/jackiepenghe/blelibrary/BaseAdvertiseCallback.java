@@ -36,12 +36,11 @@ public abstract class BaseAdvertiseCallback extends AdvertiseCallback {
     public void onStartSuccess(AdvertiseSettings settingsInEffect) {
         Tool.warnOut(TAG, "onStartSuccess");
         if (settingsInEffect != null) {
-            Tool.warnOut(TAG, "onStartSuccess TxPowerLv=" + settingsInEffect.getTxPowerLevel() + " mode=" + settingsInEffect.getMode()
-                    + " timeout=" + settingsInEffect.getTimeout());
+            Tool.warnOut(TAG, "onStartSuccess TxPowerLv={} mode={} timeout={}", settingsInEffect.getTxPowerLevel(), settingsInEffect.getMode(), settingsInEffect.getTimeout());
         } else {
             Tool.warnOut(TAG, "onStartSuccess, settingInEffect is null");
         }
-        Tool.warnOut(TAG, "onStartSuccess settingsInEffect" + settingsInEffect);
+        Tool.warnOut(TAG, "onStartSuccess settingsInEffect{}", settingsInEffect);
 
         onBroadCastStartSuccess(settingsInEffect);
     }
@@ -38,7 +38,7 @@ public abstract class BaseConnectCallback {
      * @param gatt BluetoothGatt客户端
      */
     public void onDisConnected(BluetoothGatt gatt) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onDisConnected");
+        Tool.warnOut(TAG, "{} onDisConnected", gatt.getDevice().getAddress());
     }
 
     /**
@@ -47,7 +47,7 @@ public abstract class BaseConnectCallback {
      * @param gatt BluetoothGatt客户端
      */
     public void onConnecting(BluetoothGatt gatt) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onConnecting");
+        Tool.warnOut(TAG, "{} onConnecting", gatt.getDevice().getAddress());
     }
 
     /**
@@ -56,7 +56,7 @@ public abstract class BaseConnectCallback {
      * @param gatt BluetoothGatt客户端
      */
     public void onConnected(BluetoothGatt gatt) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onConnected");
+        Tool.warnOut(TAG, "{} onConnected", gatt.getDevice().getAddress());
     }
 
     /**
@@ -65,7 +65,7 @@ public abstract class BaseConnectCallback {
      * @param gatt BluetoothGatt客户端
      */
     public void onDisconnecting(BluetoothGatt gatt) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onDisconnecting");
+        Tool.warnOut(TAG, "{} onDisconnecting", gatt.getDevice().getAddress());
     }
 
     /**
@@ -74,7 +74,7 @@ public abstract class BaseConnectCallback {
      * @param gatt BluetoothGatt客户端
      */
     public void onServicesDiscovered(BluetoothGatt gatt) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onServicesDiscovered");
+        Tool.warnOut(TAG, "{} onServicesDiscovered", gatt.getDevice().getAddress());
     }
 
     /**
@@ -84,7 +84,7 @@ public abstract class BaseConnectCallback {
      * @param values 读到的数据
      */
     public void onCharacteristicRead(BluetoothGatt gatt, byte[] values) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onCharacteristicRead");
+        Tool.warnOut(TAG, "{} onCharacteristicRead", gatt.getDevice().getAddress());
     }
 
     /**
@@ -95,7 +95,7 @@ public abstract class BaseConnectCallback {
      * @param rxPhy Rx值
      */
     public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onPhyUpdate");
+        Tool.warnOut(TAG, "{} onPhyUpdate", gatt.getDevice().getAddress());
     }
 
     /**
@@ -106,7 +106,7 @@ public abstract class BaseConnectCallback {
      * @param rxPhy Rx值
      */
     public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onPhyRead");
+        Tool.warnOut(TAG, "{} onPhyRead", gatt.getDevice().getAddress());
     }
 
     /**
@@ -116,7 +116,7 @@ public abstract class BaseConnectCallback {
      * @param values 写入的数据
      */
     public void onCharacteristicWrite(BluetoothGatt gatt, byte[] values) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onCharacteristicWrite");
+        Tool.warnOut(TAG, "{} onCharacteristicWrite", gatt.getDevice().getAddress());
     }
 
     /**
@@ -126,7 +126,20 @@ public abstract class BaseConnectCallback {
      * @param values 收到的通知数据
      */
     public void onReceivedNotification(BluetoothGatt gatt, byte[] values) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onReceivedNotification");
+        Tool.warnOut(TAG, "{} onReceivedNotification", gatt.getDevice().getAddress());
+    }
+
+    /**
+     * 收到远端设备的通知时，回调此函数
+     * 默认复制出一份数据后调用{@link #onReceivedNotification(BluetoothGatt, byte[])}，
+     * 重写此函数可以直接使用缓冲区中的数据，避免每个数据包都创建新的数组。
+     * 此函数返回后缓冲区会被回收，如果需要在之后继续使用，需要调用{@link NotificationBuffer#retain()}
+     *
+     * @param gatt               BluetoothGatt客户端
+     * @param notificationBuffer 通知数据的缓冲区
+     */
+    public void onReceivedNotification(BluetoothGatt gatt, NotificationBuffer notificationBuffer) {
+        onReceivedNotification(gatt, notificationBuffer.toByteArray());
     }
 
     /**
@@ -136,7 +149,7 @@ public abstract class BaseConnectCallback {
      * @param values 读取到的描述数据
      */
     public void onDescriptorRead(BluetoothGatt gatt, byte[] values) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onDescriptorRead");
+        Tool.warnOut(TAG, "{} onDescriptorRead", gatt.getDevice().getAddress());
     }
 
     /**
@@ -146,7 +159,7 @@ public abstract class BaseConnectCallback {
      * @param values 写入的描述
      */
     public void onDescriptorWrite(BluetoothGatt gatt, byte[] values) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onDescriptorWrite");
+        Tool.warnOut(TAG, "{} onDescriptorWrite", gatt.getDevice().getAddress());
     }
 
     /**
@@ -155,7 +168,7 @@ public abstract class BaseConnectCallback {
      * @param gatt BluetoothGatt客户端
      */
     public void onReliableWriteCompleted(BluetoothGatt gatt) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onReliableWriteCompleted");
+        Tool.warnOut(TAG, "{} onReliableWriteCompleted", gatt.getDevice().getAddress());
     }
 
     /**
@@ -165,7 +178,7 @@ public abstract class BaseConnectCallback {
      * @param rssi rssi信号强度
      */
     public void onReadRemoteRssi(BluetoothGatt gatt, int rssi) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onReadRemoteRssi");
+        Tool.warnOut(TAG, "{} onReadRemoteRssi", gatt.getDevice().getAddress());
     }
 
     /**
@@ -175,7 +188,7 @@ public abstract class BaseConnectCallback {
      * @param mtu  mtu值
      */
     public void onMtuChanged(BluetoothGatt gatt, int mtu) {
-        Tool.warnOut(TAG, gatt.getDevice().getAddress() + " onMtuChanged");
+        Tool.warnOut(TAG, "{} onMtuChanged", gatt.getDevice().getAddress());
     }
 
     /**
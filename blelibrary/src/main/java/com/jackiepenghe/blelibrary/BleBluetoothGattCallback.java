@@ -6,6 +6,8 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.util.List;
 import java.util.UUID;
@@ -35,6 +37,10 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
      * BluetoothGatt客户端
      */
     private BluetoothGatt gatt;
+    /**
+     * 主线程Handler，广播分发时在主线程中执行按特征登记的通知监听
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     /*-------------------------构造函数-------------------------*/
 
@@ -51,7 +57,7 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
 
     /**
      * 连接状态被改变的回调
-     * 根据新的连接状态发送对应的广播
+     * 根据新的连接状态发送对应的广播（或直接分发）
      *
      * @param gatt     蓝牙Gatt服务
      * @param status   上一次的状态
@@ -59,40 +65,17 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-        //创建intent对象
-        Intent intent = new Intent();
-        //判断当前的连接状态
-        switch (newState) {
-            //连接断开
-            case BluetoothGatt.STATE_DISCONNECTED:
-                Tool.warnOut(TAG, "STATE_DISCONNECTED");
-                intent.setAction(BleConstants.ACTION_GATT_DISCONNECTED);
-                break;
-            //正在连接
-            case BluetoothGatt.STATE_CONNECTING:
-                Tool.warnOut(TAG, "STATE_CONNECTING");
-                intent.setAction(BleConstants.ACTION_GATT_CONNECTING);
-                break;
-            //已连接
-            case BluetoothGatt.STATE_CONNECTED:
-                Tool.warnOut(TAG, "STATE_CONNECTED");
-                intent.setAction(BleConstants.ACTION_GATT_CONNECTED);
-                if (!gatt.discoverServices()) {
-                    Tool.warnOut(TAG, "无法进行服务发现");
-                }
-                break;
-            //正在断开连接
-            case BluetoothGatt.STATE_DISCONNECTING:
-                Tool.warnOut(TAG, "STATE_DISCONNECTING");
-                intent.setAction(BleConstants.ACTION_GATT_DISCONNECTING);
-                break;
-            default:
-                //其他情况
-                Tool.warnOut(TAG, "other state");
-                break;
+        //已经被替换为新的GATT客户端（例如重试）之后的迟到事件直接丢弃
+        if (bluetoothLeService.isStaleGatt(gatt)) {
+            Tool.warnOut(TAG, "ignore state {} of stale gatt", newState);
+            return;
         }
-        //发送广播
-        bluetoothLeService.sendBroadcast(intent);
+        //超时时已经强制断开并通知过了，迟到的系统断开回调直接丢弃
+        if (newState == BluetoothGatt.STATE_DISCONNECTED && !bluetoothLeService.claimDisconnect(gatt)) {
+            Tool.warnOut(TAG, "ignore duplicate disconnect");
+            return;
+        }
+        handleConnectionStateChange(gatt, status, newState);
     }
 
     /**
@@ -104,15 +87,32 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
     @Override
     public void onServicesDiscovered(BluetoothGatt gatt, int status) {
         Tool.warnOut(TAG, "onServicesDiscovered");
+        bluetoothLeService.onServicesDiscovered(status);
         //BluetoothGatt客户端配置失败了
         if (BluetoothGatt.GATT_SUCCESS != status) {
             broadcastUpdate(BleConstants.ACTION_GATT_NOT_SUCCESS, "onServicesDiscovered", status);
         }
         //BluetoothGatt客户端配置成功
         else {
-            broadcastUpdate(BleConstants.ACTION_GATT_SERVICES_DISCOVERED);
             this.gatt = gatt;
+            //服务布局发生了变化时，之前解析的特征句柄全部失效
+            if (bluetoothLeService.updateGattLayout()) {
+                bluetoothLeService.getGattOperationQueue().invalidateHandles();
+            }
+            //将按特征登记的通知监听绑定到新的特征对象上
+            NotificationRouter notificationRouter = bluetoothLeService.getNotificationRouter();
+            if (notificationRouter != null) {
+                notificationRouter.bind(gatt);
+            }
+            //先将MTU协商加入队列，保证用户在服务发现回调中发起的操作使用协商后的MTU
+            bluetoothLeService.requestMaxMtuIfNeeded();
+            //MTU协商之后立即恢复之前的订阅，PHY切换放在最后，缩短重新连接到收到第一个通知的时间
+            bluetoothLeService.restoreSubscriptions();
+            bluetoothLeService.requestLe2MPhyIfNeeded();
+            broadcastUpdate(BleConstants.ACTION_GATT_SERVICES_DISCOVERED);
         }
+        //收到Service Changed指示后重新发现服务时，发现操作在队列中，完成后队列继续执行
+        completeOperation(GattOperation.TYPE_DISCOVER_SERVICES, null, status, null);
     }
 
     /**
@@ -134,6 +134,7 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = characteristic.getValue();
             broadcastUpdate(BleConstants.ACTION_CHARACTERISTIC_READ, value);
         }
+        completeOperation(GattOperation.TYPE_READ_CHARACTERISTIC, characteristic, status, characteristic.getValue());
     }
 
     /**
@@ -155,6 +156,7 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = characteristic.getValue();
             broadcastUpdate(BleConstants.ACTION_CHARACTERISTIC_WRITE, value);
         }
+        completeOperation(GattOperation.TYPE_WRITE_CHARACTERISTIC, characteristic, status, characteristic.getValue());
     }
 
     /**
@@ -166,7 +168,36 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
     @Override
     public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
         Tool.warnOut(TAG, "onReceivedNotification");
+        if (GattLayoutCache.isServiceChanged(characteristic)) {
+            bluetoothLeService.onServiceChanged();
+            return;
+        }
         byte[] value = characteristic.getValue();
+        //该特征登记了监听，只交给该监听，不再进入数据流或者分发到回调
+        NotificationRouter notificationRouter = bluetoothLeService.getNotificationRouter();
+        if (notificationRouter != null) {
+            BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener = notificationRouter.route(characteristic);
+            if (onCharacteristicNotificationListener != null) {
+                dispatchCharacteristicNotification(onCharacteristicNotificationListener, gatt.getDevice().getAddress(),
+                        NotificationBufferPool.obtain(characteristic.getUuid(), value));
+                return;
+            }
+        }
+        //该特征打开了数据流，数据只进入数据流，不再分发到回调
+        NotificationStreamRegistry notificationStreamRegistry = bluetoothLeService.getNotificationStreamRegistry();
+        if (notificationStreamRegistry != null) {
+            NotificationStream notificationStream = notificationStreamRegistry.get(characteristic.getUuid());
+            if (notificationStream != null) {
+                notificationStream.offer(NotificationBufferPool.obtain(characteristic.getUuid(), value));
+                return;
+            }
+        }
+        ConnectBleBroadcastReceiver directReceiver = bluetoothLeService.getDirectEventReceiver();
+        if (directReceiver != null) {
+            //在当前线程复制一次数据到可回收的缓冲区中，之后的通知不会影响还未处理的数据
+            directReceiver.dispatchNotification(NotificationBufferPool.obtain(characteristic.getUuid(), value));
+            return;
+        }
         broadcastUpdate(BleConstants.ACTION_CHARACTERISTIC_CHANGED, value);
     }
 
@@ -189,6 +220,7 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = descriptor.getValue();
             broadcastUpdate(BleConstants.ACTION_DESCRIPTOR_READ, value);
         }
+        completeOperation(GattOperation.TYPE_READ_DESCRIPTOR, descriptor, status, descriptor.getValue());
     }
 
     /**
@@ -210,7 +242,7 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = descriptor.getValue();
             broadcastUpdate(BleConstants.ACTION_DESCRIPTOR_WRITE, value);
         }
-
+        completeOperation(GattOperation.TYPE_WRITE_DESCRIPTOR, descriptor, status, descriptor.getValue());
     }
 
     /**
@@ -251,6 +283,7 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = new byte[]{(byte) rssi};
             broadcastUpdate(BleConstants.ACTION_READ_REMOTE_RSSI, value);
         }
+        completeOperation(GattOperation.TYPE_READ_REMOTE_RSSI, null, status, new byte[]{(byte) rssi});
     }
 
     /**
@@ -267,19 +300,101 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
         if (BluetoothGatt.GATT_SUCCESS != status) {
             broadcastUpdate(BleConstants.ACTION_GATT_NOT_SUCCESS, "onMtuChanged", status);
         } else {
-            byte[] value = new byte[]{(byte) mtu};
+            bluetoothLeService.getGattOperationQueue().setMtu(mtu);
+            byte[] value = new byte[]{(byte) mtu, (byte) (mtu >> 8)};
             broadcastUpdate(BleConstants.ACTION_MTU_CHANGED, value);
         }
+        completeOperation(GattOperation.TYPE_REQUEST_MTU, null, status, null);
+    }
+
+    /**
+     * PHY更新（本机或者远端发起）
+     *
+     * @param gatt   BluetoothGatt客户端
+     * @param txPhy  发送使用的PHY
+     * @param rxPhy  接收使用的PHY
+     * @param status BluetoothGatt客户端配置状态
+     */
+    @Override
+    public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+        Tool.warnOut(TAG, "onPhyUpdate");
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            broadcastUpdate(BleConstants.ACTION_GATT_NOT_SUCCESS, "onPhyUpdate", status);
+        } else {
+            bluetoothLeService.getGattOperationQueue().setPhy(txPhy, rxPhy);
+        }
+        completeOperation(GattOperation.TYPE_SET_PREFERRED_PHY, null, status, null);
+    }
+
+    /**
+     * 读取到当前的PHY
+     *
+     * @param gatt   BluetoothGatt客户端
+     * @param txPhy  发送使用的PHY
+     * @param rxPhy  接收使用的PHY
+     * @param status BluetoothGatt客户端配置状态
+     */
+    @Override
+    public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+        Tool.warnOut(TAG, "onPhyRead");
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            broadcastUpdate(BleConstants.ACTION_GATT_NOT_SUCCESS, "onPhyRead", status);
+        } else {
+            bluetoothLeService.getGattOperationQueue().setPhy(txPhy, rxPhy);
+        }
     }
 
     /*-------------------------私有函数-------------------------*/
 
     /**
-     * 发送广播
+     * 通知GATT操作队列当前操作已完成，队列会立即发起下一个操作
+     *
+     * @param type   操作类型
+     * @param target 回调中的特征或描述符（没有则为null）
+     * @param status GATT状态码
+     * @param value  操作返回的数据
+     */
+    private void completeOperation(int type, Object target, int status, byte[] value) {
+        bluetoothLeService.getGattOperationQueue().onOperationCompleted(type, target, status, value);
+    }
+
+    /**
+     * 分发按特征登记的通知监听：设置了直接分发的接收者时按照接收者的回调线程池执行，
+     * 否则与广播分发的回调一样在主线程中执行。监听返回后释放缓冲区
+     *
+     * @param onCharacteristicNotificationListener 通知监听
+     * @param address                              设备地址
+     * @param notificationBuffer                   通知数据的缓冲区（引用计数为1，由此函数负责释放）
+     */
+    private void dispatchCharacteristicNotification(final BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener, final String address, final NotificationBuffer notificationBuffer) {
+        ConnectBleBroadcastReceiver directReceiver = bluetoothLeService.getDirectEventReceiver();
+        if (directReceiver != null) {
+            directReceiver.dispatchCharacteristicNotification(onCharacteristicNotificationListener, address, notificationBuffer);
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    onCharacteristicNotificationListener.onCharacteristicNotification(address, notificationBuffer);
+                } finally {
+                    notificationBuffer.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * 发送广播，如果设置了直接分发的接收者，则不经过系统广播，直接在当前线程分发
      *
      * @param action 广播中需要包含的action
      */
     private void broadcastUpdate(String action) {
+        ConnectBleBroadcastReceiver directReceiver = bluetoothLeService.getDirectEventReceiver();
+        if (directReceiver != null) {
+            directReceiver.dispatchEvent(action, null, null, LibraryConstants.DEFAULT_STATUS);
+            return;
+        }
         Intent intent = new Intent();
         intent.setAction(action);
         bluetoothLeService.sendBroadcast(intent);
@@ -292,6 +407,11 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
      * @param value  广播中需要包含的数据
      */
     private void broadcastUpdate(String action, byte[] value) {
+        ConnectBleBroadcastReceiver directReceiver = bluetoothLeService.getDirectEventReceiver();
+        if (directReceiver != null) {
+            directReceiver.dispatchEvent(action, value, null, LibraryConstants.DEFAULT_STATUS);
+            return;
+        }
         Intent intent = new Intent();
         intent.setAction(action);
         intent.putExtra(LibraryConstants.VALUE, value);
@@ -305,6 +425,11 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
      * @param method 广播中需要包含的数据
      */
     private void broadcastUpdate(String action, String method, int status) {
+        ConnectBleBroadcastReceiver directReceiver = bluetoothLeService.getDirectEventReceiver();
+        if (directReceiver != null) {
+            directReceiver.dispatchEvent(action, null, method, status);
+            return;
+        }
         Intent intent = new Intent();
         intent.setAction(action);
         intent.putExtra(LibraryConstants.METHOD, method);
@@ -314,6 +439,68 @@ class BleBluetoothGattCallback extends BluetoothGattCallback {
 
     /*-------------------------库内可使用函数-------------------------*/
 
+    /**
+     * 处理连接状态改变（超时强制断开时由BluetoothLeService直接调用，不再经过过期与重复断开的判断）
+     *
+     * @param gatt     蓝牙Gatt服务
+     * @param status   上一次的状态
+     * @param newState 新的状态
+     */
+    void handleConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+        switch (newState) {
+            //连接断开
+            case BluetoothGatt.STATE_DISCONNECTED:
+                Tool.warnOut(TAG, "STATE_DISCONNECTED");
+                //连接尝试失败并且还会重试时，不通知应用
+                if (bluetoothLeService.onDisconnected(status)) {
+                    return;
+                }
+                //连接断开后，队列中未完成的操作不会再有结果
+                bluetoothLeService.getGattOperationQueue().clear();
+                bluetoothLeService.getGattOperationQueue().setMtu(GattOperationQueue.DEFAULT_MTU);
+                bluetoothLeService.getGattOperationQueue().setPhy(BleConstants.PHY_LE_1M, BleConstants.PHY_LE_1M);
+                bluetoothLeService.getGattOperationQueue().invalidateHandles();
+                bluetoothLeService.getGattOperationQueue().getConnectionPriorityManager().setConnected(false);
+                bluetoothLeService.unbindNotificationRouter();
+                broadcastUpdate(BleConstants.ACTION_GATT_DISCONNECTED);
+                break;
+            //正在连接
+            case BluetoothGatt.STATE_CONNECTING:
+                Tool.warnOut(TAG, "STATE_CONNECTING");
+                broadcastUpdate(BleConstants.ACTION_GATT_CONNECTING);
+                break;
+            //已连接
+            case BluetoothGatt.STATE_CONNECTED:
+                Tool.warnOut(TAG, "STATE_CONNECTED");
+                bluetoothLeService.onConnected();
+                bluetoothLeService.getGattOperationQueue().getConnectionPriorityManager().setConnected(true);
+                broadcastUpdate(BleConstants.ACTION_GATT_CONNECTED);
+                bluetoothLeService.refreshGattCacheIfStale();
+                if (!gatt.discoverServices()) {
+                    Tool.warnOut(TAG, "无法进行服务发现");
+                }
+                break;
+            //正在断开连接
+            case BluetoothGatt.STATE_DISCONNECTING:
+                Tool.warnOut(TAG, "STATE_DISCONNECTING");
+                broadcastUpdate(BleConstants.ACTION_GATT_DISCONNECTING);
+                break;
+            default:
+                //其他情况
+                Tool.warnOut(TAG, "other state");
+                break;
+        }
+    }
+
+    /**
+     * 读取命中了特征读取缓存，像真正的读取一样发送读取结果
+     *
+     * @param value 缓存的数据
+     */
+    void onCachedRead(byte[] value) {
+        broadcastUpdate(BleConstants.ACTION_CHARACTERISTIC_READ, value);
+    }
+
     /**
      * 获取服务列表
      *
@@ -6,9 +6,16 @@ import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothProfile;
+import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
 
-import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 多连接时库中默认预设的连接回调
@@ -21,13 +28,48 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
 
     private static final String TAG = BleBluetoothMultiGattCallback.class.getSimpleName();
 
+    /*-------------------------静态变量-------------------------*/
+
+    /**
+     * 所有设备共用的回调线程池，第一次使用时创建。
+     * 每个设备同一时间最多占用一个线程，线程数量随连接数增长，空闲后自动回收
+     */
+    private static ExecutorService dispatchThreadPool;
+
      /*-------------------------成员变量-------------------------*/
 
-    HashMap<String, BaseConnectCallback> callbackHashMap = new HashMap<>();
     /**
-     * Handler
+     * 连接表，每个设备的连接回调、GATT客户端、连接状态与统计都保存在这里
+     */
+    private final BleConnectionRegistry connectionRegistry = new BleConnectionRegistry();
+    /**
+     * 主线程Handler
+     */
+    private Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * 回调的分发方式
+     */
+    private volatile int dispatchMode = BleConstants.DISPATCH_MODE_MAIN_THREAD;
+    /**
+     * 服务发现完成后是否自动协商最大的MTU
+     */
+    private volatile boolean autoRequestMtu = true;
+    /**
+     * 服务发现完成后是否自动切换到LE 2M PHY
+     */
+    private volatile boolean autoRequestLe2MPhy = true;
+    /**
+     * GATT布局缓存
      */
-    private Handler handler = new Handler();
+    private volatile GattLayoutCache gattLayoutCache;
+    /**
+     * 连接调度器
+     */
+    private volatile BleConnectScheduler connectScheduler;
+    /**
+     * 订阅恢复完成的监听
+     */
+    private volatile BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener;
 
      /*-------------------------构造函数-------------------------*/
 
@@ -48,22 +90,27 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onPhyUpdate(final BluetoothGatt gatt, final int txPhy, final int rxPhy, final int status) {
-        final String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onPhyUpdate", status);
-                    } else {
-                        baseConnectCallback.onPhyUpdate(gatt, txPhy, rxPhy);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
         }
-
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        } else {
+            bleConnectionEntry.getGattOperationQueue().setPhy(txPhy, rxPhy);
+        }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onPhyUpdate", status);
+                } else {
+                    baseConnectCallback.onPhyUpdate(gatt, txPhy, rxPhy);
+                }
+            }
+        });
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_SET_PREFERRED_PHY, null, status, null);
     }
 
     /**
@@ -79,20 +126,26 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onPhyRead(final BluetoothGatt gatt, final int txPhy, final int rxPhy, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onPhyRead", status);
-                    } else {
-                        baseConnectCallback.onPhyRead(gatt, txPhy, rxPhy);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
         }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        } else {
+            bleConnectionEntry.getGattOperationQueue().setPhy(txPhy, rxPhy);
+        }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onPhyRead", status);
+                } else {
+                    baseConnectCallback.onPhyRead(gatt, txPhy, rxPhy);
+                }
+            }
+        });
     }
 
     /**
@@ -108,73 +161,106 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onConnectionStateChange(final BluetoothGatt gatt, int status, int newState) {
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
+        }
+        //已经被关闭、替换为新的GATT客户端（例如转为自动连接）之后的迟到事件直接丢弃。
+        //连接信息中还没有GATT客户端时（connectGatt还未返回）照常处理
+        BluetoothGatt currentGatt = bleConnectionEntry.getBluetoothGatt();
+        if (currentGatt != null && currentGatt != gatt) {
+            Tool.warnOut(TAG, "{} ignore state {} of stale gatt", bleConnectionEntry.getAddress(), newState);
+            return;
+        }
+        handleConnectionStateChange(bleConnectionEntry, gatt, status, newState);
+    }
 
-        String gattAddress;
-        final BaseConnectCallback baseConnectCallback;
-
+    /**
+     * 处理连接状态改变
+     *
+     * @param bleConnectionEntry 连接信息
+     * @param gatt               GATT客户端
+     * @param status             GATT状态码
+     * @param newState           新的连接状态
+     */
+    private void handleConnectionStateChange(final BleConnectionEntry bleConnectionEntry, final BluetoothGatt gatt, int status, int newState) {
+        //同一次断开只处理一次（系统回调与超时强制断开可能同时到达）
+        if (newState == BluetoothGatt.STATE_DISCONNECTED && !bleConnectionEntry.claimDisconnect(gatt)) {
+            Tool.warnOut(TAG, "{} duplicate disconnect ignored", bleConnectionEntry.getAddress());
+            return;
+        }
+        //连接尝试失败并且还会重试时，不通知应用
+        BleConnectScheduler connectScheduler = this.connectScheduler;
+        if (connectScheduler != null && connectScheduler.onConnectionStateChange(bleConnectionEntry.getAddress(), status, newState)) {
+            return;
+        }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
 
         switch (newState) {
             case BluetoothGatt.STATE_DISCONNECTED:
-                gattAddress = gatt.getDevice().getAddress();
-                if (callbackHashMap.containsKey(gattAddress)) {
-                    baseConnectCallback = callbackHashMap.get(gattAddress);
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            baseConnectCallback.setConnected(false);
-                            baseConnectCallback.onDisConnected(gatt);
-                        }
-                    });
-                }
+                bleConnectionEntry.setConnectionState(newState);
+                bleConnectionEntry.getStateMachine().onDisconnected();
+                //连接断开后，队列中未完成的操作不会再有结果
+                bleConnectionEntry.getGattOperationQueue().clear();
+                bleConnectionEntry.setMtu(GattOperationQueue.DEFAULT_MTU);
+                bleConnectionEntry.getGattOperationQueue().setPhy(BleConstants.PHY_LE_1M, BleConstants.PHY_LE_1M);
+                bleConnectionEntry.getGattOperationQueue().invalidateHandles();
+                bleConnectionEntry.getGattOperationQueue().getConnectionPriorityManager().setConnected(false);
+                bleConnectionEntry.getNotificationRouter().unbind();
+                dispatch(bleConnectionEntry, new Runnable() {
+                    @Override
+                    public void run() {
+                        baseConnectCallback.setConnected(false);
+                        baseConnectCallback.onDisConnected(gatt);
+                    }
+                });
                 break;
             case BluetoothGatt.STATE_CONNECTING:
-                gattAddress = gatt.getDevice().getAddress();
-                if (callbackHashMap.containsKey(gattAddress)) {
-                    baseConnectCallback = callbackHashMap.get(gattAddress);
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            baseConnectCallback.onConnecting(gatt);
-                        }
-                    });
-                }
+                bleConnectionEntry.setConnectionState(newState);
+                dispatch(bleConnectionEntry, new Runnable() {
+                    @Override
+                    public void run() {
+                        baseConnectCallback.onConnecting(gatt);
+                    }
+                });
                 break;
             case BluetoothGatt.STATE_CONNECTED:
-                gattAddress = gatt.getDevice().getAddress();
-                if (callbackHashMap.containsKey(gattAddress)) {
-                    baseConnectCallback = callbackHashMap.get(gattAddress);
-                    if (!gatt.discoverServices()) {
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                baseConnectCallback.onDiscoverServicesFailed(gatt);
-                            }
-                        });
-                        return;
-                    }
-                    handler.post(new Runnable() {
+                bleConnectionEntry.resetDisconnectClaim();
+                bleConnectionEntry.setConnectionState(newState);
+                bleConnectionEntry.getStateMachine().onConnected();
+                bleConnectionEntry.getGattOperationQueue().getConnectionPriorityManager().setConnected(true);
+                GattLayoutCache gattLayoutCache = this.gattLayoutCache;
+                if (gattLayoutCache != null) {
+                    gattLayoutCache.refreshIfStale(bleConnectionEntry.getAddress(), gatt);
+                }
+                if (!gatt.discoverServices()) {
+                    dispatch(bleConnectionEntry, new Runnable() {
                         @Override
                         public void run() {
-                            baseConnectCallback.setConnected(true);
-                            baseConnectCallback.onConnected(gatt);
+                            baseConnectCallback.onDiscoverServicesFailed(gatt);
                         }
                     });
+                    return;
                 }
+                dispatch(bleConnectionEntry, new Runnable() {
+                    @Override
+                    public void run() {
+                        baseConnectCallback.setConnected(true);
+                        baseConnectCallback.onConnected(gatt);
+                    }
+                });
                 break;
             case BluetoothGatt.STATE_DISCONNECTING:
-                gattAddress = gatt.getDevice().getAddress();
-                if (callbackHashMap.containsKey(gattAddress)) {
-                    baseConnectCallback = callbackHashMap.get(gattAddress);
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            baseConnectCallback.onDisconnecting(gatt);
-                        }
-                    });
-                }
+                bleConnectionEntry.setConnectionState(newState);
+                dispatch(bleConnectionEntry, new Runnable() {
+                    @Override
+                    public void run() {
+                        baseConnectCallback.onDisconnecting(gatt);
+                    }
+                });
                 break;
             default:
-                Tool.warnOut(TAG, gatt.getDevice().getAddress() + "other state");
+                Tool.warnOut(TAG, "{}other state", gatt.getDevice().getAddress());
                 break;
         }
     }
@@ -188,20 +274,56 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onServicesDiscovered(final BluetoothGatt gatt, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onServicesDiscovered", status);
-                    } else {
-                        baseConnectCallback.onServicesDiscovered(gatt);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
         }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS == status) {
+            bleConnectionEntry.getStateMachine().onReady();
+        }
+        //服务发现完成才算一次连接尝试成功，发现失败时调度器关闭GATT客户端并重试
+        BleConnectScheduler connectScheduler = this.connectScheduler;
+        if (connectScheduler != null) {
+            connectScheduler.onServicesDiscovered(bleConnectionEntry.getAddress(), status);
+        }
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        } else {
+            //服务布局发生了变化时，之前解析的特征句柄全部失效
+            GattLayoutCache gattLayoutCache = this.gattLayoutCache;
+            if (gattLayoutCache == null || gattLayoutCache.update(bleConnectionEntry.getAddress(), gatt)) {
+                bleConnectionEntry.getGattOperationQueue().invalidateHandles();
+            }
+            //将按特征登记的通知监听绑定到新的特征对象上
+            bleConnectionEntry.getNotificationRouter().bind(gatt);
+            GattOperation serviceChangedOperation = GattLayoutCache.newServiceChangedIndicationOperation(gatt);
+            if (serviceChangedOperation != null) {
+                bleConnectionEntry.getGattOperationQueue().enqueue(serviceChangedOperation);
+            }
+            //先将MTU协商、PHY切换加入队列，保证用户在服务发现回调中发起的操作使用协商后的MTU
+            if (autoRequestMtu && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                bleConnectionEntry.getGattOperationQueue().enqueue(GattOperation.newRequestMtuOperation(GattOperationQueue.MAX_MTU));
+            }
+            //远端不支持LE 2M PHY时连接保持在LE 1M PHY
+            //MTU协商之后立即恢复之前的订阅，PHY切换放在最后，缩短重新连接到收到第一个通知的时间
+            bleConnectionEntry.getGattOperationQueue().getSubscriptionManager().restore(bleConnectionEntry.getAddress(), gatt, bleConnectionEntry.getGattOperationQueue(), onSubscriptionsRestoredListener);
+            if (autoRequestLe2MPhy && GattOperation.isLe2MPhySupported()) {
+                bleConnectionEntry.getGattOperationQueue().enqueue(GattOperation.newSetPreferredPhyOperation(BluetoothDevice.PHY_LE_2M_MASK));
+            }
+        }
+        //收到Service Changed指示后重新发现服务时，发现操作在队列中，完成后队列继续执行
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_DISCOVER_SERVICES, null, status, null);
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onServicesDiscovered", status);
+                } else {
+                    baseConnectCallback.onServicesDiscovered(gatt);
+                }
+            }
+        });
     }
 
     /**
@@ -214,21 +336,28 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onCharacteristicRead(final BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final byte[] values = characteristic.getValue();
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onCharacteristicRead", status);
-                    } else {
-                        baseConnectCallback.onCharacteristicRead(gatt, values);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
         }
+        final byte[] values = characteristic.getValue();
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        } else {
+            bleConnectionEntry.onReadSucceed();
+        }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onCharacteristicRead", status);
+                } else {
+                    baseConnectCallback.onCharacteristicRead(gatt, values);
+                }
+            }
+        });
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_READ_CHARACTERISTIC, characteristic, status, values);
     }
 
     /**
@@ -248,21 +377,28 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onCharacteristicWrite(final BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, final int status) {
-        String gattAddress = gatt.getDevice().getAddress() + gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final byte[] values = characteristic.getValue();
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onCharacteristicWrite", status);
-                    } else {
-                        baseConnectCallback.onCharacteristicWrite(gatt, values);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
         }
+        final byte[] values = characteristic.getValue();
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        } else {
+            bleConnectionEntry.onWriteSucceed();
+        }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onCharacteristicWrite", status);
+                } else {
+                    baseConnectCallback.onCharacteristicWrite(gatt, values);
+                }
+            }
+        });
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_WRITE_CHARACTERISTIC, characteristic, status, values);
     }
 
     /**
@@ -273,17 +409,49 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onCharacteristicChanged(final BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final byte[] values = characteristic.getValue();
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
+        }
+        if (GattLayoutCache.isServiceChanged(characteristic)) {
+            onServiceChanged(bleConnectionEntry);
+            return;
+        }
+        //在当前线程复制一次数据，之后的通知不会影响还未处理的数据
+        final NotificationBuffer notificationBuffer = NotificationBufferPool.obtain(characteristic.getUuid(), characteristic.getValue());
+        bleConnectionEntry.onNotificationReceived(notificationBuffer.getLength());
+        //该特征登记了监听，只交给该监听，不再进入数据流或者分发到回调。与连接回调一样按照当前的分发方式执行，缓冲区在监听返回后回收
+        final BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener = bleConnectionEntry.getNotificationRouter().route(characteristic);
+        if (onCharacteristicNotificationListener != null) {
+            dispatch(bleConnectionEntry, new Runnable() {
                 @Override
                 public void run() {
-                    baseConnectCallback.onReceivedNotification(gatt, values);
+                    try {
+                        onCharacteristicNotificationListener.onCharacteristicNotification(bleConnectionEntry.getAddress(), notificationBuffer);
+                    } finally {
+                        notificationBuffer.release();
+                    }
                 }
             });
+            return;
         }
+        //该特征打开了数据流，数据只进入数据流，不再分发到回调
+        NotificationStream notificationStream = bleConnectionEntry.getNotificationStreamRegistry().get(characteristic.getUuid());
+        if (notificationStream != null) {
+            notificationStream.offer(notificationBuffer);
+            return;
+        }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    baseConnectCallback.onReceivedNotification(gatt, notificationBuffer);
+                } finally {
+                    notificationBuffer.release();
+                }
+            }
+        });
     }
 
     /**
@@ -296,21 +464,26 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onDescriptorRead(final BluetoothGatt gatt, BluetoothGattDescriptor descriptor, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final byte[] values = descriptor.getValue();
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onDescriptorRead", status);
-                    } else {
-                        baseConnectCallback.onDescriptorRead(gatt, values);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
         }
+        final byte[] values = descriptor.getValue();
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onDescriptorRead", status);
+                } else {
+                    baseConnectCallback.onDescriptorRead(gatt, values);
+                }
+            }
+        });
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_READ_DESCRIPTOR, descriptor, status, values);
     }
 
     /**
@@ -324,21 +497,26 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onDescriptorWrite(final BluetoothGatt gatt, BluetoothGattDescriptor descriptor, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final byte[] values = descriptor.getValue();
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onDescriptorWrite", status);
-                    } else {
-                        baseConnectCallback.onDescriptorWrite(gatt, values);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
         }
+        final byte[] values = descriptor.getValue();
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onDescriptorWrite", status);
+                } else {
+                    baseConnectCallback.onDescriptorWrite(gatt, values);
+                }
+            }
+        });
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_WRITE_DESCRIPTOR, descriptor, status, values);
     }
 
     /**
@@ -349,20 +527,24 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onReliableWriteCompleted(final BluetoothGatt gatt, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReliableWriteCompleted", status);
-                    } else {
-                        baseConnectCallback.onReliableWriteCompleted(gatt);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
+        }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
         }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReliableWriteCompleted", status);
+                } else {
+                    baseConnectCallback.onReliableWriteCompleted(gatt);
+                }
+            }
+        });
     }
 
     /**
@@ -377,20 +559,25 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onReadRemoteRssi(final BluetoothGatt gatt, final int rssi, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReliableWriteCompleted", status);
-                    } else {
-                        baseConnectCallback.onReadRemoteRssi(gatt, rssi);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
+        }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
         }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReadRemoteRssi", status);
+                } else {
+                    baseConnectCallback.onReadRemoteRssi(gatt, rssi);
+                }
+            }
+        });
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_READ_REMOTE_RSSI, null, status, new byte[]{(byte) rssi});
     }
 
     /**
@@ -406,24 +593,229 @@ public class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
      */
     @Override
     public void onMtuChanged(final BluetoothGatt gatt, final int mtu, final int status) {
-        String gattAddress = gatt.getDevice().getAddress();
-        if (callbackHashMap.containsKey(gattAddress)) {
-            final BaseConnectCallback baseConnectCallback = callbackHashMap.get(gattAddress);
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReliableWriteCompleted", status);
-                    } else {
-                        baseConnectCallback.onMtuChanged(gatt, mtu);
-                    }
-                }
-            });
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.get(gatt.getDevice().getAddress());
+        if (bleConnectionEntry == null) {
+            return;
+        }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        if (BluetoothGatt.GATT_SUCCESS != status) {
+            bleConnectionEntry.onOperationFailed();
+        } else {
+            bleConnectionEntry.setMtu(mtu);
         }
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                if (BluetoothGatt.GATT_SUCCESS != status) {
+                    baseConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onMtuChanged", status);
+                } else {
+                    baseConnectCallback.onMtuChanged(gatt, mtu);
+                }
+            }
+        });
+        completeOperation(bleConnectionEntry, GattOperation.TYPE_REQUEST_MTU, null, status, null);
     }
 
+    /**
+     * 清空连接表
+     */
     public void close() {
-        callbackHashMap.clear();
-        callbackHashMap = null;
+        for (BleConnectionEntry bleConnectionEntry : connectionRegistry.clear()) {
+            bleConnectionEntry.getGattOperationQueue().clear();
+            bleConnectionEntry.getNotificationStreamRegistry().closeAll();
+        }
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 按回调的分发方式通知设备的GATT已关闭（被连接池淘汰、放弃连接或者全部关闭时）
+     *
+     * @param bleConnectionEntry 连接信息
+     */
+    void dispatchGattClosed(final BleConnectionEntry bleConnectionEntry) {
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                baseConnectCallback.onGattClosed(bleConnectionEntry.getAddress());
+            }
+        });
+    }
+
+    /**
+     * 状态超时后强制关闭了GATT客户端，按断开连接处理（系统的断开事件已经处理过时不再重复处理）
+     *
+     * @param bleConnectionEntry 连接信息
+     * @param gatt               被关闭的GATT客户端
+     */
+    void onForcedDisconnected(BleConnectionEntry bleConnectionEntry, BluetoothGatt gatt) {
+        handleConnectionStateChange(bleConnectionEntry, gatt, BluetoothGatt.GATT_SUCCESS, BluetoothGatt.STATE_DISCONNECTED);
+    }
+
+    /**
+     * 读取命中了特征读取缓存，像真正的读取一样回调读取结果
+     *
+     * @param bleConnectionEntry 连接信息
+     * @param value              缓存的数据
+     */
+    void onCachedRead(BleConnectionEntry bleConnectionEntry, final byte[] value) {
+        final BluetoothGatt gatt = bleConnectionEntry.getBluetoothGatt();
+        if (gatt == null) {
+            return;
+        }
+        final BaseConnectCallback baseConnectCallback = bleConnectionEntry.getBaseConnectCallback();
+        dispatch(bleConnectionEntry, new Runnable() {
+            @Override
+            public void run() {
+                baseConnectCallback.onCharacteristicRead(gatt, value);
+            }
+        });
+    }
+
+    /**
+     * 设置回调的分发方式，应当在发起连接之前设置，否则切换前后的回调之间不保证顺序
+     *
+     * @param dispatchMode {@link BleConstants#DISPATCH_MODE_MAIN_THREAD}、{@link BleConstants#DISPATCH_MODE_PER_DEVICE}或{@link BleConstants#DISPATCH_MODE_DIRECT}
+     */
+    void setDispatchMode(int dispatchMode) {
+        this.dispatchMode = dispatchMode;
+    }
+
+    /**
+     * 设置服务发现完成后是否自动协商最大的MTU
+     *
+     * @param autoRequestMtu true表示自动协商
+     */
+    void setAutoRequestMtu(boolean autoRequestMtu) {
+        this.autoRequestMtu = autoRequestMtu;
+    }
+
+    /**
+     * 设置服务发现完成后是否自动切换到LE 2M PHY
+     *
+     * @param autoRequestLe2MPhy true表示自动切换
+     */
+    void setAutoRequestLe2MPhy(boolean autoRequestLe2MPhy) {
+        this.autoRequestLe2MPhy = autoRequestLe2MPhy;
+    }
+
+    /**
+     * 设置GATT布局缓存
+     *
+     * @param gattLayoutCache GATT布局缓存
+     */
+    void setGattLayoutCache(GattLayoutCache gattLayoutCache) {
+        this.gattLayoutCache = gattLayoutCache;
+    }
+
+    /**
+     * 设置连接调度器
+     *
+     * @param connectScheduler 连接调度器
+     */
+    void setConnectScheduler(BleConnectScheduler connectScheduler) {
+        this.connectScheduler = connectScheduler;
+    }
+
+    /**
+     * 设置订阅恢复完成的监听
+     *
+     * @param onSubscriptionsRestoredListener 监听
+     */
+    void setOnSubscriptionsRestoredListener(BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        this.onSubscriptionsRestoredListener = onSubscriptionsRestoredListener;
+    }
+
+    /**
+     * 获取回调的分发方式
+     *
+     * @return 回调的分发方式
+     */
+    int getDispatchMode() {
+        return dispatchMode;
+    }
+
+    /**
+     * 获取连接表
+     *
+     * @return 连接表
+     */
+    BleConnectionRegistry getConnectionRegistry() {
+        return connectionRegistry;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 收到远端设备的Service Changed指示，刷新系统GATT缓存并重新发现服务
+     * 刷新与发现作为一个操作加入GATT操作队列，等待正在执行的操作完成后才会发起
+     *
+     * @param bleConnectionEntry 连接信息
+     */
+    private void onServiceChanged(BleConnectionEntry bleConnectionEntry) {
+        Tool.warnOut(TAG, "service changed: {}", bleConnectionEntry.getAddress());
+        bleConnectionEntry.getGattOperationQueue().invalidateHandles();
+        GattLayoutCache gattLayoutCache = this.gattLayoutCache;
+        if (gattLayoutCache != null) {
+            gattLayoutCache.onServiceChanged(bleConnectionEntry.getAddress());
+        }
+        bleConnectionEntry.getGattOperationQueue().enqueue(new GattDiscoverServicesOperation(gattLayoutCache, bleConnectionEntry.getAddress()));
+    }
+
+    /**
+     * 通知设备的GATT操作队列当前操作已完成，队列会立即发起下一个操作
+     *
+     * @param bleConnectionEntry 设备的连接信息
+     * @param type               操作类型
+     * @param target             回调中的特征或描述符（没有则为null）
+     * @param status             GATT状态码
+     * @param value              操作返回的数据
+     */
+    private void completeOperation(BleConnectionEntry bleConnectionEntry, int type, Object target, int status, byte[] value) {
+        bleConnectionEntry.getGattOperationQueue().onOperationCompleted(type, target, status, value);
+    }
+
+    /**
+     * 按照当前的分发方式执行回调
+     *
+     * @param bleConnectionEntry 回调所属设备的连接信息
+     * @param runnable           回调任务
+     */
+    private void dispatch(BleConnectionEntry bleConnectionEntry, Runnable runnable) {
+        switch (dispatchMode) {
+            case BleConstants.DISPATCH_MODE_PER_DEVICE:
+                bleConnectionEntry.getSerialExecutor(getDispatchThreadPool()).execute(runnable);
+                break;
+            case BleConstants.DISPATCH_MODE_DIRECT:
+                runnable.run();
+                break;
+            default:
+                handler.post(runnable);
+                break;
+        }
+    }
+
+    /*-------------------------私有静态函数-------------------------*/
+
+    /**
+     * 获取共用的回调线程池，第一次使用时创建
+     *
+     * @return 回调线程池
+     */
+    private static synchronized Executor getDispatchThreadPool() {
+        if (dispatchThreadPool == null) {
+            dispatchThreadPool = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "BleDispatcher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return dispatchThreadPool;
     }
 }
@@ -0,0 +1,200 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.UUID;
+
+/**
+ * 特征句柄
+ * 服务发现完成后解析一次，保存特征及其通知描述符的引用，之后的读写、通知开关直接加入该连接的GATT操作队列，
+ * 不再解析UUID字符串，也不再遍历服务列表。
+ * 连接断开、重新发现服务时布局发生变化或者收到远端设备的Service Changed指示后，句柄失效（{@link #isValid()}返回false），
+ * 失效的句柄无法再发起操作，需要重新获取
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class BleCharacteristicHandle {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 通知描述符的UUID
+     */
+    private static final UUID CLIENT_CHARACTERISTIC_CONFIG_UUID = UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG);
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 所属连接的GATT操作队列
+     */
+    private final GattOperationQueue gattOperationQueue;
+    /**
+     * 解析时句柄的版本号
+     */
+    private final int generation;
+    /**
+     * 特征
+     */
+    private final BluetoothGattCharacteristic characteristic;
+    /**
+     * 通知描述符，特征不支持通知时为null
+     */
+    private final BluetoothGattDescriptor clientCharacteristicConfig;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param gattOperationQueue 所属连接的GATT操作队列
+     * @param generation         解析时句柄的版本号
+     * @param characteristic     特征
+     */
+    private BleCharacteristicHandle(GattOperationQueue gattOperationQueue, int generation, BluetoothGattCharacteristic characteristic) {
+        this.gattOperationQueue = gattOperationQueue;
+        this.generation = generation;
+        this.characteristic = characteristic;
+        this.clientCharacteristicConfig = characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG_UUID);
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 解析特征句柄
+     *
+     * @param gattOperationQueue 所属连接的GATT操作队列
+     * @param bluetoothGatt      GATT客户端
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征句柄，找不到特征时返回null
+     */
+    static BleCharacteristicHandle resolve(GattOperationQueue gattOperationQueue, BluetoothGatt bluetoothGatt, String serviceUUID, String characteristicUUID) {
+        if (bluetoothGatt == null || serviceUUID == null || characteristicUUID == null) {
+            return null;
+        }
+        //先取版本号再查找，查找期间句柄失效时，得到的句柄也是失效的
+        int generation = gattOperationQueue.getHandleGeneration();
+        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
+        if (service == null) {
+            return null;
+        }
+        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUUID));
+        if (characteristic == null) {
+            return null;
+        }
+        return new BleCharacteristicHandle(gattOperationQueue, generation, characteristic);
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 句柄是否仍然有效
+     *
+     * @return true表示有效
+     */
+    public boolean isValid() {
+        return generation == gattOperationQueue.getHandleGeneration();
+    }
+
+    /**
+     * 获取服务UUID
+     *
+     * @return 服务UUID
+     */
+    public UUID getServiceUuid() {
+        BluetoothGattService service = characteristic.getService();
+        return service == null ? null : service.getUuid();
+    }
+
+    /**
+     * 获取特征UUID
+     *
+     * @return 特征UUID
+     */
+    public UUID getCharacteristicUuid() {
+        return characteristic.getUuid();
+    }
+
+    /**
+     * 获取特征的属性
+     *
+     * @return BluetoothGattCharacteristic中定义的PROPERTY_开头的常量组合
+     */
+    public int getProperties() {
+        return characteristic.getProperties();
+    }
+
+    /**
+     * 写入数据（加入GATT操作队列）
+     *
+     * @param value 数据
+     * @return 操作结果，null表示无法发起操作（句柄已失效）
+     */
+    public GattOperationFuture writeData(byte[] value) {
+        if (value == null || !isValid()) {
+            return null;
+        }
+        return gattOperationQueue.enqueue(GattOperation.newWriteCharacteristicOperation(characteristic, value));
+    }
+
+    /**
+     * 分包写入大数据（作为一个操作加入GATT操作队列），参考{@link BleConnector#writeLargeData(String, String, byte[], BleInterface.OnLargeDataWriteProgressListener)}
+     *
+     * @param value                            数据
+     * @param onLargeDataWriteProgressListener 进度回调（在蓝牙的Binder线程中执行），可以为null
+     * @return 操作结果，null表示无法发起操作（句柄已失效）
+     */
+    public GattOperationFuture writeLargeData(byte[] value, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        if (value == null || !isValid()) {
+            return null;
+        }
+        return gattOperationQueue.enqueue(new GattLargeWriteOperation(characteristic, value, onLargeDataWriteProgressListener));
+    }
+
+    /**
+     * 以流模式写入数据，参考{@link BleConnector#writeStreamData(String, String, byte[], BleInterface.OnLargeDataWriteProgressListener)}
+     *
+     * @param value                            数据
+     * @param onLargeDataWriteProgressListener 进度回调（在蓝牙的Binder线程中执行），可以为null
+     * @return 操作结果，null表示无法发起操作（句柄已失效或者特征不支持无回复写入）
+     */
+    public GattOperationFuture writeStreamData(byte[] value, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        if (value == null || !isValid()) {
+            return null;
+        }
+        if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+            return null;
+        }
+        return gattOperationQueue.enqueue(new GattLargeWriteOperation(characteristic, value, true, onLargeDataWriteProgressListener));
+    }
+
+    /**
+     * 读取数据（加入GATT操作队列）
+     *
+     * @return 操作结果，null表示无法发起操作（句柄已失效）
+     */
+    public GattOperationFuture readData() {
+        if (!isValid()) {
+            return null;
+        }
+        return gattOperationQueue.read(characteristic);
+    }
+
+    /**
+     * 打开或关闭通知（加入GATT操作队列）
+     *
+     * @param enable true表示开启，false表示关闭
+     * @return 操作结果，null表示无法发起操作（句柄已失效或者特征没有通知描述符）
+     */
+    public GattOperationFuture enableNotification(boolean enable) {
+        if (clientCharacteristicConfig == null || !isValid()) {
+            return null;
+        }
+        return gattOperationQueue.enqueue(GattOperation.newEnableNotificationOperation(characteristic, clientCharacteristicConfig, enable));
+    }
+}
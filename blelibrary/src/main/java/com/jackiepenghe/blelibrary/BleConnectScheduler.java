@@ -0,0 +1,415 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothProfile;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 多连接时的连接调度器
+ * 系统的蓝牙控制器同一时间通常只能处理一个直连请求，同时发起多个连接时，后面的请求只是在排队，
+ * 并且更容易以状态码133失败。调度器限制同时进行的连接尝试数量，一次尝试从发起连接开始，到服务发现完成结束，
+ * 超时由连接的状态机（BleConnectionStateMachine）负责。失败或者超时后关闭GATT客户端，按带随机抖动的指数退避重试，
+ * 重试次数用完后可以转为自动连接，并报告每一次尝试的耗时。
+ * 自动连接（autoConnect）的请求在后台等待设备出现，不受调度器限制
+ *
+ * @author alm
+ */
+
+class BleConnectScheduler {
+
+    /*-------------------------静态常量-------------------------*/
+
+    private static final String TAG = BleConnectScheduler.class.getSimpleName();
+
+    /**
+     * 默认同时进行的最大连接尝试数量
+     */
+    static final int DEFAULT_MAX_CONNECTING = 1;
+    /**
+     * 默认的最大重试次数
+     */
+    static final int DEFAULT_MAX_RETRIES = 3;
+    /**
+     * 第一次重试前的退避时间（毫秒）
+     */
+    private static final long BASE_BACKOFF = 500;
+    /**
+     * 退避时间的上限（毫秒）
+     */
+    private static final long MAX_BACKOFF = 8000;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 执行实际操作的服务
+     */
+    private final Host host;
+    /**
+     * 正在进行的连接尝试，key为设备地址
+     */
+    private final HashMap<String, ConnectAttempt> connectingAttempts = new HashMap<>();
+    /**
+     * 退避中等待重试的任务，key为设备地址
+     */
+    private final HashMap<String, ScheduledFuture<?>> retryFutures = new HashMap<>();
+    /**
+     * 计算退避抖动的随机数
+     */
+    private final Random random = new Random();
+    /**
+     * 同时进行的最大连接尝试数量
+     */
+    private int maxConnecting = DEFAULT_MAX_CONNECTING;
+    /**
+     * 最大重试次数
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    /**
+     * 连接尝试结束的监听
+     */
+    private volatile BleInterface.OnConnectAttemptListener onConnectAttemptListener;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param host 执行实际操作的服务
+     */
+    BleConnectScheduler(Host host) {
+        this.host = host;
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 设置同时进行的最大连接尝试数量
+     *
+     * @param maxConnecting 最大数量
+     */
+    synchronized void setMaxConnecting(int maxConnecting) {
+        this.maxConnecting = maxConnecting;
+    }
+
+    /**
+     * 设置最大重试次数
+     *
+     * @param maxRetries 最大重试次数，0表示不重试
+     */
+    synchronized void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 设置连接尝试结束的监听
+     *
+     * @param onConnectAttemptListener 监听
+     */
+    void setOnConnectAttemptListener(BleInterface.OnConnectAttemptListener onConnectAttemptListener) {
+        this.onConnectAttemptListener = onConnectAttemptListener;
+    }
+
+    /**
+     * 是否可以再发起一个连接尝试
+     *
+     * @return true表示可以
+     */
+    synchronized boolean canStart() {
+        int count = 0;
+        for (ConnectAttempt connectAttempt : connectingAttempts.values()) {
+            //已经连接上、正在发现服务的尝试不再占用控制器的连接名额
+            if (!connectAttempt.connected) {
+                count++;
+            }
+        }
+        return count < maxConnecting;
+    }
+
+    /**
+     * 已经发起了一个连接尝试（connectGatt调用成功后调用）
+     *
+     * @param bluetoothDevice     设备
+     * @param baseConnectCallback 连接回调
+     * @param priority            优先级
+     * @param attempt             第几次尝试
+     */
+    synchronized void onAttemptStarted(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, int priority, int attempt) {
+        connectingAttempts.put(bluetoothDevice.getAddress(), new ConnectAttempt(bluetoothDevice, baseConnectCallback, priority, attempt));
+    }
+
+    /**
+     * 设备连接状态改变时调用（在多连接回调中）
+     *
+     * @param address  设备地址
+     * @param status   GATT状态码
+     * @param newState 新的连接状态
+     * @return true表示该事件属于一次失败的连接尝试并且还会重试（或者已经转为自动连接），不需要再通知应用
+     */
+    boolean onConnectionStateChange(String address, int status, int newState) {
+        if (newState != BluetoothProfile.STATE_CONNECTED && newState != BluetoothProfile.STATE_DISCONNECTED) {
+            return false;
+        }
+        ConnectAttempt connectAttempt;
+        synchronized (this) {
+            connectAttempt = connectingAttempts.get(address);
+            if (connectAttempt == null) {
+                return false;
+            }
+            if (newState == BluetoothProfile.STATE_CONNECTED && status == BluetoothGatt.GATT_SUCCESS) {
+                connectAttempt.connected = true;
+            } else {
+                connectingAttempts.remove(address);
+            }
+        }
+        if (connectAttempt.connected && newState == BluetoothProfile.STATE_CONNECTED) {
+            //连接已经建立，尝试在服务发现完成后才算成功，但控制器已经可以处理下一个连接
+            host.onConnectingSlotAvailable();
+            return false;
+        }
+        return onAttemptFailed(connectAttempt, BleConstants.CONNECT_ATTEMPT_FAILED, status);
+    }
+
+    /**
+     * 服务发现完成时调用（在多连接回调中）
+     *
+     * @param address 设备地址
+     * @param status  GATT状态码
+     */
+    void onServicesDiscovered(String address, int status) {
+        ConnectAttempt connectAttempt;
+        synchronized (this) {
+            connectAttempt = connectingAttempts.remove(address);
+        }
+        if (connectAttempt == null) {
+            return;
+        }
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            report(connectAttempt, BleConstants.CONNECT_ATTEMPT_SUCCEED, status, false);
+            return;
+        }
+        onAttemptFailed(connectAttempt, BleConstants.CONNECT_ATTEMPT_FAILED, status);
+    }
+
+    /**
+     * 连接尝试超时（连接中或者发现服务中状态超时时由状态机触发）
+     *
+     * @param address 设备地址
+     * @return true表示该设备有正在进行的连接尝试并已按超时处理
+     */
+    boolean onAttemptTimeout(String address) {
+        ConnectAttempt connectAttempt;
+        synchronized (this) {
+            connectAttempt = connectingAttempts.remove(address);
+        }
+        if (connectAttempt == null) {
+            return false;
+        }
+        onAttemptFailed(connectAttempt, BleConstants.CONNECT_ATTEMPT_TIMEOUT, -1);
+        return true;
+    }
+
+    /**
+     * 取消设备正在进行的连接尝试以及退避中的重试（断开或者关闭该设备时调用）
+     *
+     * @param address 设备地址
+     * @return true表示取消了退避中的重试
+     */
+    synchronized boolean cancel(String address) {
+        connectingAttempts.remove(address);
+        ScheduledFuture<?> retryFuture = retryFutures.remove(address);
+        BleScheduler.cancel(retryFuture);
+        return retryFuture != null;
+    }
+
+    /**
+     * 取消所有正在进行的连接尝试以及退避中的重试
+     */
+    synchronized void clear() {
+        connectingAttempts.clear();
+        for (ScheduledFuture<?> retryFuture : retryFutures.values()) {
+            BleScheduler.cancel(retryFuture);
+        }
+        retryFutures.clear();
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 计算第n次失败后的退避时间：指数增长并有上限，在后一半范围内随机抖动，避免多个设备同时重试
+     *
+     * @param attempt 第几次尝试
+     * @param random  随机数
+     * @return 退避时间（毫秒）
+     */
+    static long computeBackoff(int attempt, Random random) {
+        long backoff = BASE_BACKOFF << Math.min(attempt - 1, 16);
+        if (backoff > MAX_BACKOFF) {
+            backoff = MAX_BACKOFF;
+        }
+        long half = backoff >> 1;
+        return half + (long) (random.nextDouble() * half);
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 连接尝试失败：关闭GATT客户端，还有重试次数时在退避后重新排队
+     *
+     * @param connectAttempt 连接尝试
+     * @param result         结果
+     * @param status         GATT状态码
+     * @return true表示还会重试，或者已经转为自动连接
+     */
+    private boolean onAttemptFailed(final ConnectAttempt connectAttempt, int result, int status) {
+        final boolean willRetry;
+        long backoff = 0;
+        synchronized (this) {
+            willRetry = connectAttempt.attempt <= maxRetries;
+            if (willRetry) {
+                backoff = computeBackoff(connectAttempt.attempt, random);
+            }
+        }
+        report(connectAttempt, result, status, willRetry);
+        final String address = connectAttempt.bluetoothDevice.getAddress();
+        //失败的GATT客户端必须关闭，否则会一直占用系统的名额
+        host.closeAttemptGatt(address);
+        boolean fallback = false;
+        if (willRetry) {
+            Tool.warnOut(TAG, "retry {} after {}ms", address, backoff);
+            Runnable retryRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (BleConnectScheduler.this) {
+                        //退避期间设备被断开或者关闭了，重试已经被取消
+                        if (retryFutures.remove(address) == null) {
+                            return;
+                        }
+                    }
+                    host.retryConnect(connectAttempt.bluetoothDevice, connectAttempt.baseConnectCallback, connectAttempt.priority, connectAttempt.attempt + 1);
+                }
+            };
+            //在锁内安排并记录，保证重试任务执行时一定能找到自己的记录
+            synchronized (this) {
+                BleScheduler.cancel(retryFutures.put(address, BleScheduler.schedule(retryRunnable, backoff)));
+            }
+        } else if (host.giveUpConnect(connectAttempt.bluetoothDevice, connectAttempt.baseConnectCallback, connectAttempt.priority)) {
+            Tool.warnOut(TAG, "{} falls back to auto connect", address);
+            //自动连接使用同一个连接信息，旧的GATT客户端的断开事件不能再通知应用，否则会重置新连接的状态
+            fallback = true;
+        }
+        host.onConnectingSlotAvailable();
+        return willRetry || fallback;
+    }
+
+    /**
+     * 报告一次连接尝试的结果
+     *
+     * @param connectAttempt 连接尝试
+     * @param result         结果
+     * @param status         GATT状态码
+     * @param willRetry      是否还会重试
+     */
+    private void report(ConnectAttempt connectAttempt, int result, int status, boolean willRetry) {
+        long duration = SystemClock.elapsedRealtime() - connectAttempt.startTime;
+        String address = connectAttempt.bluetoothDevice.getAddress();
+        if (BleLog.isLoggable(BleConstants.LOG_LEVEL_INFO)) {
+            BleLog.i(TAG, "connect attempt {} of {}: result {}, status {}, {}ms", connectAttempt.attempt, address, result, status, duration);
+        }
+        BleInterface.OnConnectAttemptListener onConnectAttemptListener = this.onConnectAttemptListener;
+        if (onConnectAttemptListener != null) {
+            onConnectAttemptListener.onConnectAttempt(address, connectAttempt.attempt, result, status, duration, willRetry);
+        }
+    }
+
+    /*-------------------------内部接口-------------------------*/
+
+    /**
+     * 调度器需要服务执行的操作
+     */
+    interface Host {
+        /**
+         * 断开并关闭设备的GATT客户端，保留连接信息
+         *
+         * @param address 设备地址
+         */
+        void closeAttemptGatt(String address);
+
+        /**
+         * 退避结束，重新发起连接
+         *
+         * @param bluetoothDevice     设备
+         * @param baseConnectCallback 连接回调
+         * @param priority            优先级
+         * @param attempt             第几次尝试
+         */
+        void retryConnect(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, int priority, int attempt);
+
+        /**
+         * 直连的重试次数用完，放弃直连
+         *
+         * @param bluetoothDevice     设备
+         * @param baseConnectCallback 连接回调
+         * @param priority            优先级
+         * @return true表示转为了自动连接，false表示彻底放弃
+         */
+        boolean giveUpConnect(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, int priority);
+
+        /**
+         * 有连接尝试结束，可以发起等待中的连接
+         */
+        void onConnectingSlotAvailable();
+    }
+
+    /*-------------------------内部类-------------------------*/
+
+    /**
+     * 一次连接尝试
+     */
+    private static final class ConnectAttempt {
+
+        /**
+         * 设备
+         */
+        final BluetoothDevice bluetoothDevice;
+        /**
+         * 连接回调
+         */
+        final BaseConnectCallback baseConnectCallback;
+        /**
+         * 优先级
+         */
+        final int priority;
+        /**
+         * 第几次尝试
+         */
+        final int attempt;
+        /**
+         * 开始时间
+         */
+        final long startTime = SystemClock.elapsedRealtime();
+        /**
+         * 是否已经连接上（正在发现服务）
+         */
+        boolean connected;
+
+        /**
+         * 构造器
+         *
+         * @param bluetoothDevice     设备
+         * @param baseConnectCallback 连接回调
+         * @param priority            优先级
+         * @param attempt             第几次尝试
+         */
+        ConnectAttempt(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, int priority, int attempt) {
+            this.bluetoothDevice = bluetoothDevice;
+            this.baseConnectCallback = baseConnectCallback;
+            this.priority = priority;
+            this.attempt = attempt;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothProfile;
+import android.os.SystemClock;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多连接时一个设备的连接信息
+ * 保存该设备的GATT客户端、GATT操作队列、连接回调、连接状态、连接状态机、MTU以及收发统计
+ *
+ * @author alm
+ */
+
+class BleConnectionEntry {
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 设备地址
+     */
+    private final String address;
+    /**
+     * 设备地址（long）
+     */
+    private final long key;
+    /**
+     * 连接回调
+     */
+    private final BaseConnectCallback baseConnectCallback;
+    /**
+     * GATT客户端
+     */
+    private volatile BluetoothGatt bluetoothGatt;
+    /**
+     * 已经处理过断开事件的GATT客户端，用于丢弃同一次断开的重复事件（系统回调与超时强制断开同时发生时）
+     */
+    private BluetoothGatt disconnectedGatt;
+    /**
+     * 连接状态
+     */
+    private volatile int connectionState = BluetoothProfile.STATE_DISCONNECTED;
+    /**
+     * GATT操作队列（同时记录当前的MTU）
+     */
+    private final GattOperationQueue gattOperationQueue = new GattOperationQueue();
+    /**
+     * 通知数据流
+     */
+    private final NotificationStreamRegistry notificationStreamRegistry = new NotificationStreamRegistry();
+    /**
+     * 按特征登记的通知监听
+     */
+    private final NotificationRouter notificationRouter = new NotificationRouter();
+    /**
+     * 特征读取缓存
+     */
+    private final CharacteristicReadCache readCache = new CharacteristicReadCache();
+    /**
+     * 连接状态机
+     */
+    private final BleConnectionStateMachine stateMachine;
+    /**
+     * 收到的通知数量
+     */
+    private final AtomicLong notificationCount = new AtomicLong();
+    /**
+     * 收到的通知字节数
+     */
+    private final AtomicLong notificationBytes = new AtomicLong();
+    /**
+     * 写入成功的次数
+     */
+    private final AtomicLong writeCount = new AtomicLong();
+    /**
+     * 读取成功的次数
+     */
+    private final AtomicLong readCount = new AtomicLong();
+    /**
+     * 执行失败的GATT操作次数
+     */
+    private final AtomicLong errorCount = new AtomicLong();
+    /**
+     * 该设备回调的串行执行器，第一次使用时创建
+     */
+    private SerialExecutor serialExecutor;
+    /**
+     * 最后一次有数据收发或者被访问的时间（SystemClock.elapsedRealtime），连接池据此淘汰最久未使用的连接
+     */
+    private volatile long lastActiveTime = SystemClock.elapsedRealtime();
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param address             设备地址
+     * @param key                 设备地址（long）
+     * @param baseConnectCallback 连接回调
+     */
+    BleConnectionEntry(String address, long key, BaseConnectCallback baseConnectCallback) {
+        this.address = address;
+        this.key = key;
+        this.baseConnectCallback = baseConnectCallback;
+        this.stateMachine = new BleConnectionStateMachine(address);
+        notificationStreamRegistry.setConnectionPriorityManager(gattOperationQueue.getConnectionPriorityManager());
+        gattOperationQueue.setReadCache(readCache);
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 获取设备地址
+     *
+     * @return 设备地址
+     */
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * 获取设备地址（long）
+     *
+     * @return 设备地址
+     */
+    long getKey() {
+        return key;
+    }
+
+    /**
+     * 获取连接回调
+     *
+     * @return 连接回调
+     */
+    BaseConnectCallback getBaseConnectCallback() {
+        return baseConnectCallback;
+    }
+
+    /**
+     * 获取连接状态机
+     *
+     * @return 连接状态机
+     */
+    BleConnectionStateMachine getStateMachine() {
+        return stateMachine;
+    }
+
+    /**
+     * 获取GATT客户端
+     *
+     * @return GATT客户端
+     */
+    BluetoothGatt getBluetoothGatt() {
+        return bluetoothGatt;
+    }
+
+    /**
+     * 认领GATT客户端的一次断开事件，同一次断开只有第一个认领者需要处理
+     *
+     * @param bluetoothGatt GATT客户端
+     * @return true表示认领成功，false表示该断开已经处理过了
+     */
+    synchronized boolean claimDisconnect(BluetoothGatt bluetoothGatt) {
+        if (disconnectedGatt == bluetoothGatt) {
+            return false;
+        }
+        disconnectedGatt = bluetoothGatt;
+        return true;
+    }
+
+    /**
+     * 连接已建立或者重新发起了连接，之后的断开事件需要重新处理
+     */
+    synchronized void resetDisconnectClaim() {
+        disconnectedGatt = null;
+    }
+
+    /**
+     * 设置GATT客户端
+     *
+     * @param bluetoothGatt GATT客户端
+     */
+    void setBluetoothGatt(BluetoothGatt bluetoothGatt) {
+        this.bluetoothGatt = bluetoothGatt;
+        gattOperationQueue.setBluetoothGatt(bluetoothGatt);
+    }
+
+    /**
+     * 获取GATT操作队列
+     *
+     * @return GATT操作队列
+     */
+    GattOperationQueue getGattOperationQueue() {
+        return gattOperationQueue;
+    }
+
+    /**
+     * 获取通知数据流
+     *
+     * @return 通知数据流
+     */
+    NotificationStreamRegistry getNotificationStreamRegistry() {
+        return notificationStreamRegistry;
+    }
+
+    /**
+     * 获取按特征登记的通知监听
+     *
+     * @return 通知路由表
+     */
+    NotificationRouter getNotificationRouter() {
+        return notificationRouter;
+    }
+
+    /**
+     * 获取特征读取缓存
+     *
+     * @return 特征读取缓存
+     */
+    CharacteristicReadCache getReadCache() {
+        return readCache;
+    }
+
+    /**
+     * 获取连接状态
+     *
+     * @return BluetoothProfile中定义的连接状态
+     */
+    int getConnectionState() {
+        return connectionState;
+    }
+
+    /**
+     * 设置连接状态
+     *
+     * @param connectionState BluetoothProfile中定义的连接状态
+     */
+    void setConnectionState(int connectionState) {
+        this.connectionState = connectionState;
+    }
+
+    /**
+     * 获取当前的MTU
+     *
+     * @return MTU
+     */
+    int getMtu() {
+        return gattOperationQueue.getMtu();
+    }
+
+    /**
+     * 设置当前的MTU
+     *
+     * @param mtu MTU
+     */
+    void setMtu(int mtu) {
+        gattOperationQueue.setMtu(mtu);
+    }
+
+    /**
+     * 获取该设备回调的串行执行器
+     *
+     * @param executor 第一次创建时使用的线程池
+     * @return 串行执行器
+     */
+    synchronized Executor getSerialExecutor(Executor executor) {
+        if (serialExecutor == null) {
+            serialExecutor = new SerialExecutor(executor);
+        }
+        return serialExecutor;
+    }
+
+    /**
+     * 更新最后一次活动的时间
+     */
+    void touch() {
+        lastActiveTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 获取最后一次活动的时间
+     *
+     * @return SystemClock.elapsedRealtime
+     */
+    long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    /**
+     * 当前是否空闲：没有未完成的GATT操作，没有打开的通知数据流，没有登记通知监听，也没有订阅通知
+     *
+     * @return true表示空闲
+     */
+    boolean isIdle() {
+        return gattOperationQueue.getPendingOperationCount() == 0 && notificationStreamRegistry.isEmpty()
+                && notificationRouter.isEmpty() && gattOperationQueue.getSubscriptionManager().isEmpty();
+    }
+
+    /**
+     * 记录收到一个通知
+     *
+     * @param length 通知的数据长度
+     */
+    void onNotificationReceived(int length) {
+        notificationCount.incrementAndGet();
+        notificationBytes.addAndGet(length);
+        touch();
+    }
+
+    /**
+     * 记录一次写入成功
+     */
+    void onWriteSucceed() {
+        writeCount.incrementAndGet();
+        touch();
+    }
+
+    /**
+     * 记录一次读取成功
+     */
+    void onReadSucceed() {
+        readCount.incrementAndGet();
+        touch();
+    }
+
+    /**
+     * 记录一次GATT操作失败
+     */
+    void onOperationFailed() {
+        errorCount.incrementAndGet();
+    }
+
+    /**
+     * 获取收到的通知数量
+     *
+     * @return 通知数量
+     */
+    long getNotificationCount() {
+        return notificationCount.get();
+    }
+
+    /**
+     * 获取收到的通知字节数
+     *
+     * @return 字节数
+     */
+    long getNotificationBytes() {
+        return notificationBytes.get();
+    }
+
+    /**
+     * 获取写入成功的次数
+     *
+     * @return 次数
+     */
+    long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * 获取读取成功的次数
+     *
+     * @return 次数
+     */
+    long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * 获取执行失败的GATT操作次数
+     *
+     * @return 次数
+     */
+    long getErrorCount() {
+        return errorCount.get();
+    }
+}
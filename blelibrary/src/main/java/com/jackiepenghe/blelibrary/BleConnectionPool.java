@@ -0,0 +1,310 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothProfile;
+import android.os.SystemClock;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 多连接时的连接池
+ * 系统同时能打开的GATT客户端数量有限（通常为7个左右），超过后新的连接会直接失败（状态码133）。
+ * 连接池限制同时打开的GATT客户端数量：名额已满时淘汰最久未使用的空闲连接，没有可以淘汰的连接时，
+ * 连接请求按优先级排队，等待名额释放后再发起。被淘汰的设备再次被访问时自动重新连接
+ *
+ * @author alm
+ */
+
+class BleConnectionPool {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 默认的最大连接数
+     */
+    static final int DEFAULT_MAX_CONNECTIONS = 7;
+    /**
+     * 已连接的设备至少空闲这么久（毫秒）才会被淘汰，避免刚建立的连接被立即淘汰
+     */
+    static final long MIN_IDLE_TIME = 3000;
+    /**
+     * 最多记录的被淘汰设备数量
+     */
+    private static final int MAX_EVICTED_RECORDS = 256;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 最大连接数
+     */
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    /**
+     * 新请求的序号，相同优先级的请求按序号先后发起
+     */
+    private long sequence;
+    /**
+     * 等待发起的连接请求
+     */
+    private final PriorityQueue<PendingConnect> pendingConnects = new PriorityQueue<>(11, new Comparator<PendingConnect>() {
+        @Override
+        public int compare(PendingConnect o1, PendingConnect o2) {
+            if (o1.priority != o2.priority) {
+                return o1.priority > o2.priority ? -1 : 1;
+            }
+            return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+        }
+    });
+    /**
+     * 被淘汰的设备的连接回调，key为设备地址，按淘汰的先后排列
+     */
+    private final LinkedHashMap<String, BaseConnectCallback> evictedConnections = new LinkedHashMap<String, BaseConnectCallback>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BaseConnectCallback> eldest) {
+            return size() > MAX_EVICTED_RECORDS;
+        }
+    };
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 设置最大连接数
+     *
+     * @param maxConnections 最大连接数
+     */
+    synchronized void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * 获取最大连接数
+     *
+     * @return 最大连接数
+     */
+    synchronized int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * 是否还有空余的名额
+     *
+     * @param entries 当前所有的连接信息
+     * @return true表示有
+     */
+    synchronized boolean hasFreeSlot(BleConnectionEntry[] entries) {
+        int count = 0;
+        for (BleConnectionEntry entry : entries) {
+            if (entry.getBluetoothGatt() != null) {
+                count++;
+            }
+        }
+        return count < maxConnections;
+    }
+
+    /**
+     * 选出要淘汰的连接：优先淘汰已经断开的连接，其次是空闲时间最久的连接。
+     * 正在直连、正在发现服务、有未完成的GATT操作或者打开了通知数据流的连接不会被淘汰
+     *
+     * @param entries 当前所有的连接信息
+     * @return 要淘汰的连接，没有可以淘汰的连接时返回null
+     */
+    synchronized BleConnectionEntry selectEvictionCandidate(BleConnectionEntry[] entries) {
+        long now = SystemClock.elapsedRealtime();
+        BleConnectionEntry candidate = null;
+        boolean candidateDisconnected = false;
+        for (BleConnectionEntry entry : entries) {
+            if (entry.getBluetoothGatt() == null || !entry.isIdle()) {
+                continue;
+            }
+            //正在直连或者正在发现服务的连接不淘汰，在后台等待设备出现的自动连接可以淘汰
+            BleConnectionStateMachine stateMachine = entry.getStateMachine();
+            int state = stateMachine.getState();
+            if ((state == BleConstants.CONNECTION_STATE_CONNECTING && !stateMachine.isAutoConnect())
+                    || state == BleConstants.CONNECTION_STATE_DISCOVERING) {
+                continue;
+            }
+            boolean disconnected = entry.getConnectionState() == BluetoothProfile.STATE_DISCONNECTED;
+            if (!disconnected && now - entry.getLastActiveTime() < MIN_IDLE_TIME) {
+                continue;
+            }
+            if (candidate == null
+                    || (disconnected && !candidateDisconnected)
+                    || (disconnected == candidateDisconnected && entry.getLastActiveTime() < candidate.getLastActiveTime())) {
+                candidate = entry;
+                candidateDisconnected = disconnected;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * 记录一个被淘汰的设备，之后访问该设备时自动重新连接
+     *
+     * @param address             设备地址
+     * @param baseConnectCallback 连接回调
+     */
+    synchronized void onEvicted(String address, BaseConnectCallback baseConnectCallback) {
+        evictedConnections.put(address, baseConnectCallback);
+    }
+
+    /**
+     * 取出被淘汰的设备的连接回调（取出后不再记录）
+     *
+     * @param address 设备地址
+     * @return 连接回调，该设备没有被淘汰时返回null
+     */
+    synchronized BaseConnectCallback takeEvicted(String address) {
+        return evictedConnections.remove(address);
+    }
+
+    /**
+     * 将连接请求加入等待队列，同一个设备只保留一个请求（保留优先级较高的）
+     *
+     * @param bluetoothDevice     设备
+     * @param baseConnectCallback 连接回调
+     * @param autoConnect         自动连接标志
+     * @param priority            优先级
+     * @param attempt             第几次尝试
+     */
+    synchronized void enqueue(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, boolean autoConnect, int priority, int attempt) {
+        Iterator<PendingConnect> iterator = pendingConnects.iterator();
+        while (iterator.hasNext()) {
+            PendingConnect pendingConnect = iterator.next();
+            if (pendingConnect.bluetoothDevice.getAddress().equals(bluetoothDevice.getAddress())) {
+                if (pendingConnect.priority >= priority) {
+                    return;
+                }
+                iterator.remove();
+                break;
+            }
+        }
+        pendingConnects.offer(new PendingConnect(bluetoothDevice, baseConnectCallback, autoConnect, priority, attempt, sequence++));
+    }
+
+    /**
+     * 查看优先级最高的连接请求（不取出）
+     *
+     * @return 连接请求，没有则返回null
+     */
+    synchronized PendingConnect peek() {
+        return pendingConnects.peek();
+    }
+
+    /**
+     * 取出优先级最高的连接请求
+     *
+     * @return 连接请求，没有则返回null
+     */
+    synchronized PendingConnect poll() {
+        return pendingConnects.poll();
+    }
+
+    /**
+     * 是否有等待发起的连接请求
+     *
+     * @return true表示有
+     */
+    synchronized boolean hasPendingConnects() {
+        return !pendingConnects.isEmpty();
+    }
+
+    /**
+     * 获取等待发起的连接请求数量
+     *
+     * @return 数量
+     */
+    synchronized int getPendingConnectCount() {
+        return pendingConnects.size();
+    }
+
+    /**
+     * 移除设备的等待请求与淘汰记录（关闭该设备时调用）
+     *
+     * @param address 设备地址
+     */
+    synchronized void remove(String address) {
+        evictedConnections.remove(address);
+        removePending(address);
+    }
+
+    /**
+     * 只移除设备的等待请求（断开该设备时调用，淘汰记录保留）
+     *
+     * @param address 设备地址
+     * @return true表示移除了等待请求
+     */
+    synchronized boolean removePending(String address) {
+        boolean removed = false;
+        Iterator<PendingConnect> iterator = pendingConnects.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().bluetoothDevice.getAddress().equals(address)) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 清除所有的等待请求与淘汰记录
+     */
+    synchronized void clear() {
+        pendingConnects.clear();
+        evictedConnections.clear();
+    }
+
+    /*-------------------------内部类-------------------------*/
+
+    /**
+     * 等待发起的连接请求
+     */
+    static final class PendingConnect {
+
+        /**
+         * 设备
+         */
+        final BluetoothDevice bluetoothDevice;
+        /**
+         * 连接回调
+         */
+        final BaseConnectCallback baseConnectCallback;
+        /**
+         * 自动连接标志
+         */
+        final boolean autoConnect;
+        /**
+         * 优先级
+         */
+        final int priority;
+        /**
+         * 第几次尝试
+         */
+        final int attempt;
+        /**
+         * 序号
+         */
+        final long sequence;
+
+        /**
+         * 构造器
+         *
+         * @param bluetoothDevice     设备
+         * @param baseConnectCallback 连接回调
+         * @param autoConnect         自动连接标志
+         * @param priority            优先级
+         * @param attempt             第几次尝试
+         * @param sequence            序号
+         */
+        PendingConnect(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, boolean autoConnect, int priority, int attempt, long sequence) {
+            this.bluetoothDevice = bluetoothDevice;
+            this.baseConnectCallback = baseConnectCallback;
+            this.autoConnect = autoConnect;
+            this.priority = priority;
+            this.attempt = attempt;
+            this.sequence = sequence;
+        }
+    }
+}
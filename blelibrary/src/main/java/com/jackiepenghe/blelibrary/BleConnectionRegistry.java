@@ -0,0 +1,234 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.Arrays;
+
+/**
+ * 多连接时的连接表
+ * 以48位的设备地址（保存为long）为键，每个设备一个{@link BleConnectionEntry}。
+ * 修改时复制整张表（写时复制），读取时不加锁，适合读多写少的场景：
+ * 连接、断开只在少数时候发生，而蓝牙回调线程中每个GATT事件都需要查表
+ *
+ * @author alm
+ */
+
+class BleConnectionRegistry {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 空位置的键
+     */
+    private static final long EMPTY_KEY = -1L;
+
+    /**
+     * 默认容量（必须是2的幂）
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 当前的表，只会被整体替换，不会被修改
+     */
+    private volatile Table table = new Table(DEFAULT_CAPACITY);
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 根据设备地址获取连接信息（不加锁）
+     *
+     * @param key 设备地址（long）
+     * @return 连接信息，没有则返回null
+     */
+    BleConnectionEntry get(long key) {
+        return table.get(key);
+    }
+
+    /**
+     * 根据设备地址获取连接信息（不加锁）
+     *
+     * @param address 设备地址
+     * @return 连接信息，没有则返回null
+     */
+    BleConnectionEntry get(String address) {
+        return table.get(Tool.macAddressToLong(address));
+    }
+
+    /**
+     * 如果该设备还没有连接信息，则保存
+     *
+     * @param entry 连接信息
+     * @return 表中该设备的连接信息（已经存在时返回原有的）
+     */
+    synchronized BleConnectionEntry putIfAbsent(BleConnectionEntry entry) {
+        Table current = table;
+        BleConnectionEntry existing = current.get(entry.getKey());
+        if (existing != null) {
+            return existing;
+        }
+        int capacity = current.keys.length;
+        //负载因子保持在0.5以下
+        if ((current.size + 1) << 1 > capacity) {
+            capacity <<= 1;
+        }
+        Table newTable = current.copy(capacity, EMPTY_KEY);
+        newTable.insert(entry);
+        table = newTable;
+        return entry;
+    }
+
+    /**
+     * 移除设备的连接信息
+     *
+     * @param key 设备地址（long）
+     * @return 被移除的连接信息，没有则返回null
+     */
+    synchronized BleConnectionEntry remove(long key) {
+        Table current = table;
+        BleConnectionEntry existing = current.get(key);
+        if (existing == null) {
+            return null;
+        }
+        table = current.copy(current.keys.length, key);
+        return existing;
+    }
+
+    /**
+     * 移除所有的连接信息
+     *
+     * @return 被移除的连接信息
+     */
+    synchronized BleConnectionEntry[] clear() {
+        BleConnectionEntry[] entries = table.entries();
+        table = new Table(DEFAULT_CAPACITY);
+        return entries;
+    }
+
+    /**
+     * 获取当前所有连接信息的快照
+     *
+     * @return 连接信息数组
+     */
+    BleConnectionEntry[] entries() {
+        return table.entries();
+    }
+
+    /**
+     * 获取连接数量
+     *
+     * @return 连接数量
+     */
+    int size() {
+        return table.size;
+    }
+
+    /*-------------------------内部类-------------------------*/
+
+    /**
+     * 开放寻址的哈希表，创建后不再修改
+     */
+    private static class Table {
+        /**
+         * 键
+         */
+        private final long[] keys;
+        /**
+         * 值
+         */
+        private final BleConnectionEntry[] values;
+        /**
+         * 保存的数量
+         */
+        private int size;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY_KEY);
+            values = new BleConnectionEntry[capacity];
+        }
+
+        /**
+         * 查找
+         *
+         * @param key 键
+         * @return 值，没有则返回null
+         */
+        private BleConnectionEntry get(long key) {
+            if (key < 0) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            int index = hash(key) & mask;
+            while (true) {
+                long current = keys[index];
+                if (current == key) {
+                    return values[index];
+                }
+                if (current == EMPTY_KEY) {
+                    return null;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        /**
+         * 插入（只在构造新表的过程中使用）
+         *
+         * @param entry 连接信息
+         */
+        private void insert(BleConnectionEntry entry) {
+            int mask = keys.length - 1;
+            int index = hash(entry.getKey()) & mask;
+            while (keys[index] != EMPTY_KEY) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = entry.getKey();
+            values[index] = entry;
+            size++;
+        }
+
+        /**
+         * 复制为一张新表
+         *
+         * @param capacity   新表的容量
+         * @param excludeKey 不复制的键
+         * @return 新表
+         */
+        private Table copy(int capacity, long excludeKey) {
+            Table table = new Table(capacity);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY_KEY && keys[i] != excludeKey) {
+                    table.insert(values[i]);
+                }
+            }
+            return table;
+        }
+
+        /**
+         * 获取所有的值
+         *
+         * @return 值数组
+         */
+        private BleConnectionEntry[] entries() {
+            BleConnectionEntry[] entries = new BleConnectionEntry[size];
+            int count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY_KEY) {
+                    entries[count++] = values[i];
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * 计算哈希值
+         *
+         * @param key 键
+         * @return 哈希值
+         */
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 一个连接的状态机
+ * 空闲 → 连接中 → 发现服务中 → 就绪 → 断开中 → 空闲。
+ * 连接中、发现服务中、断开中三个状态有各自的超时时间，在一个状态停留超过超时时间时通知监听者，
+ * 由监听者关闭GATT客户端并决定是否重试。自动连接（autoConnect）时连接中状态没有超时
+ *
+ * @author alm
+ */
+
+class BleConnectionStateMachine {
+
+    /*-------------------------静态常量-------------------------*/
+
+    private static final String TAG = BleConnectionStateMachine.class.getSimpleName();
+
+    /**
+     * 默认的连接超时时间（毫秒）
+     */
+    static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+    /**
+     * 默认的服务发现超时时间（毫秒）
+     */
+    static final long DEFAULT_DISCOVER_TIMEOUT = 10000;
+    /**
+     * 默认的断开连接超时时间（毫秒）
+     */
+    static final long DEFAULT_DISCONNECT_TIMEOUT = 3000;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 设备地址
+     */
+    private final String address;
+    /**
+     * 状态监听
+     */
+    private volatile Listener listener;
+    /**
+     * 当前状态
+     */
+    private int state = BleConstants.CONNECTION_STATE_IDLE;
+    /**
+     * 当前的连接是否是自动连接
+     */
+    private boolean autoConnect;
+    /**
+     * 状态的版本号，每次改变状态时加一，用于丢弃过期的超时任务
+     */
+    private int generation;
+    /**
+     * 当前状态的超时任务
+     */
+    private ScheduledFuture<?> timeoutFuture;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param address 设备地址
+     */
+    BleConnectionStateMachine(String address) {
+        this.address = address;
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 设置状态监听
+     *
+     * @param listener 状态监听
+     */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 获取设备地址
+     *
+     * @return 设备地址
+     */
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * 获取当前状态
+     *
+     * @return BleConstants中定义的CONNECTION_STATE_开头的常量
+     */
+    synchronized int getState() {
+        return state;
+    }
+
+    /**
+     * 当前的连接是否是自动连接
+     *
+     * @return true表示是
+     */
+    synchronized boolean isAutoConnect() {
+        return autoConnect;
+    }
+
+    /**
+     * 发起了连接
+     *
+     * @param autoConnect 是否是自动连接，自动连接时没有超时
+     */
+    synchronized void onConnecting(boolean autoConnect) {
+        this.autoConnect = autoConnect;
+        moveTo(BleConstants.CONNECTION_STATE_CONNECTING, !autoConnect);
+    }
+
+    /**
+     * 连接成功，开始发现服务
+     */
+    synchronized void onConnected() {
+        moveTo(BleConstants.CONNECTION_STATE_DISCOVERING, true);
+    }
+
+    /**
+     * 服务发现完成，连接就绪
+     */
+    synchronized void onReady() {
+        moveTo(BleConstants.CONNECTION_STATE_READY, false);
+    }
+
+    /**
+     * 发起了断开连接
+     */
+    synchronized void onDisconnecting() {
+        if (state != BleConstants.CONNECTION_STATE_IDLE) {
+            moveTo(BleConstants.CONNECTION_STATE_DISCONNECTING, true);
+        }
+    }
+
+    /**
+     * 连接已断开
+     *
+     * @return 断开之前的状态
+     */
+    synchronized int onDisconnected() {
+        int previousState = state;
+        moveTo(BleConstants.CONNECTION_STATE_IDLE, false);
+        return previousState;
+    }
+
+    /**
+     * 回到空闲状态并取消超时（关闭GATT客户端时调用）
+     */
+    synchronized void reset() {
+        moveTo(BleConstants.CONNECTION_STATE_IDLE, false);
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 切换到新的状态
+     *
+     * @param newState    新的状态
+     * @param withTimeout 是否启动超时
+     */
+    private void moveTo(final int newState, boolean withTimeout) {
+        BleScheduler.cancel(timeoutFuture);
+        timeoutFuture = null;
+        if (state != newState) {
+            Tool.warnOut(TAG, "{} state {} -> {}", address, state, newState);
+        }
+        state = newState;
+        final int currentGeneration = ++generation;
+        Listener listener = this.listener;
+        if (!withTimeout || listener == null) {
+            return;
+        }
+        long timeout = listener.getStateTimeout(newState);
+        if (timeout <= 0) {
+            return;
+        }
+        timeoutFuture = BleScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(currentGeneration, newState);
+            }
+        }, timeout);
+    }
+
+    /**
+     * 状态超时
+     *
+     * @param timeoutGeneration 启动超时时的版本号
+     * @param timeoutState      启动超时时的状态
+     */
+    private void onTimeout(int timeoutGeneration, int timeoutState) {
+        synchronized (this) {
+            //状态已经改变
+            if (timeoutGeneration != generation) {
+                return;
+            }
+            timeoutFuture = null;
+        }
+        Tool.warnOut(TAG, "{} state {} timeout", address, timeoutState);
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onStateTimeout(this, timeoutState);
+        }
+    }
+
+    /*-------------------------内部接口-------------------------*/
+
+    /**
+     * 状态监听
+     */
+    interface Listener {
+        /**
+         * 获取状态的超时时间
+         *
+         * @param state 状态
+         * @return 超时时间（毫秒），0表示不超时
+         */
+        long getStateTimeout(int state);
+
+        /**
+         * 在某个状态停留超时（在库内的定时线程中执行）
+         *
+         * @param stateMachine 状态机
+         * @param state        超时的状态
+         */
+        void onStateTimeout(BleConnectionStateMachine stateMachine, int state);
+    }
+}
@@ -18,6 +18,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * BLE连接器
@@ -76,6 +77,70 @@ public class BleConnector {
      * 发起连接的设备
      */
     private BluetoothDevice bluetoothDevice;
+    /**
+     * GATT操作的默认超时时间
+     */
+    private long gattOperationTimeout = GattOperationQueue.DEFAULT_OPERATION_TIMEOUT;
+    /**
+     * 服务发现完成后是否自动协商最大的MTU
+     */
+    private boolean autoRequestMtu = true;
+    /**
+     * 服务发现完成后是否自动切换到LE 2M PHY
+     */
+    private boolean autoRequestLe2MPhy = true;
+    /**
+     * 连接超时时间
+     */
+    private long connectTimeout = BleConnectionStateMachine.DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * 服务发现超时时间
+     */
+    private long discoverTimeout = BleConnectionStateMachine.DEFAULT_DISCOVER_TIMEOUT;
+    /**
+     * 断开连接超时时间
+     */
+    private long disconnectTimeout = BleConnectionStateMachine.DEFAULT_DISCONNECT_TIMEOUT;
+    /**
+     * 直连失败后的最大重试次数
+     */
+    private int connectMaxRetries = BleConnectScheduler.DEFAULT_MAX_RETRIES;
+    /**
+     * 直连的重试次数用完后是否转为自动连接
+     */
+    private boolean autoConnectFallback = true;
+    /**
+     * 订阅恢复完成的监听
+     */
+    private BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener;
+    /**
+     * 手动指定的连接优先级
+     */
+    private int connectionPriority = BleConstants.CONNECTION_PRIORITY_AUTO;
+    /**
+     * 空闲时的连接优先级
+     */
+    private int idleConnectionPriority = BleConstants.CONNECTION_PRIORITY_BALANCED;
+    /**
+     * 通知数据流
+     */
+    private final NotificationStreamRegistry notificationStreamRegistry = new NotificationStreamRegistry();
+    /**
+     * 按特征登记的通知监听
+     */
+    private final NotificationRouter notificationRouter = new NotificationRouter();
+    /**
+     * 特征读取缓存
+     */
+    private final CharacteristicReadCache readCache = new CharacteristicReadCache();
+    /**
+     * 是否通过系统广播分发GATT事件（默认不使用广播，直接在进程内分发）
+     */
+    private boolean broadcastDispatchEnabled;
+    /**
+     * GATT事件广播接收者是否已经注册
+     */
+    private boolean connectReceiverRegistered;
 
     /*-------------------------构造函数-------------------------*/
 
@@ -159,10 +224,38 @@ public class BleConnector {
     private void setAddress(String address) {
         //将地址传入服务连接工具并初始化
         bleServiceConnection = new BleServiceConnection(address);
+        bleServiceConnection.setGattOperationTimeout(gattOperationTimeout);
+        bleServiceConnection.setAutoRequestMtu(autoRequestMtu);
+        bleServiceConnection.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+        bleServiceConnection.setConnectTimeout(connectTimeout);
+        bleServiceConnection.setDiscoverTimeout(discoverTimeout);
+        bleServiceConnection.setDisconnectTimeout(disconnectTimeout);
+        bleServiceConnection.setConnectMaxRetries(connectMaxRetries);
+        bleServiceConnection.setAutoConnectFallback(autoConnectFallback);
+        bleServiceConnection.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+        bleServiceConnection.setConnectionPriority(connectionPriority);
+        bleServiceConnection.setIdleConnectionPriority(idleConnectionPriority);
+        bleServiceConnection.setNotificationStreamRegistry(notificationStreamRegistry);
+        bleServiceConnection.setNotificationRouter(notificationRouter);
+        bleServiceConnection.setReadCache(readCache);
     }
 
     private void setDevice(BluetoothDevice bluetoothDevice) {
         bleServiceConnection = new BleServiceConnection(bluetoothDevice);
+        bleServiceConnection.setGattOperationTimeout(gattOperationTimeout);
+        bleServiceConnection.setAutoRequestMtu(autoRequestMtu);
+        bleServiceConnection.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+        bleServiceConnection.setConnectTimeout(connectTimeout);
+        bleServiceConnection.setDiscoverTimeout(discoverTimeout);
+        bleServiceConnection.setDisconnectTimeout(disconnectTimeout);
+        bleServiceConnection.setConnectMaxRetries(connectMaxRetries);
+        bleServiceConnection.setAutoConnectFallback(autoConnectFallback);
+        bleServiceConnection.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+        bleServiceConnection.setConnectionPriority(connectionPriority);
+        bleServiceConnection.setIdleConnectionPriority(idleConnectionPriority);
+        bleServiceConnection.setNotificationStreamRegistry(notificationStreamRegistry);
+        bleServiceConnection.setNotificationRouter(notificationRouter);
+        bleServiceConnection.setReadCache(readCache);
     }
 
     /**
@@ -275,8 +368,17 @@ public class BleConnector {
 
         bleServiceConnection.setAutoConnect(autoConnect);
 
-        //注册广播接收者
-        context.registerReceiver(connectBleBroadcastReceiver, makeConnectBLEIntentFilter());
+        if (broadcastDispatchEnabled) {
+            //注册广播接收者
+            bleServiceConnection.setDirectEventReceiver(null);
+            if (!connectReceiverRegistered) {
+                context.registerReceiver(connectBleBroadcastReceiver, makeConnectBLEIntentFilter());
+                connectReceiverRegistered = true;
+            }
+        } else {
+            //GATT事件直接分发到接收者，不经过系统广播
+            bleServiceConnection.setDirectEventReceiver(connectBleBroadcastReceiver);
+        }
         //绑定BLE连接服务
         Intent intent = new Intent(context, BluetoothLeService.class);
         return context.bindService(intent, bleServiceConnection, Context.BIND_AUTO_CREATE);
@@ -390,13 +492,19 @@ public class BleConnector {
             e.printStackTrace();
         }
 
-        context.unregisterReceiver(connectBleBroadcastReceiver);
+        if (connectReceiverRegistered) {
+            context.unregisterReceiver(connectBleBroadcastReceiver);
+            connectReceiverRegistered = false;
+        }
         if (withGattRefresh) {
             refreshGattCache();
         }
         disconnect();
         bleServiceConnection.closeGatt();
         bleServiceConnection.stopService();
+        notificationStreamRegistry.closeAll();
+        notificationRouter.clear();
+        readCache.clear();
         context.unbindService(bleServiceConnection);
         checkCloseStatus();
         context = null;
@@ -466,6 +574,81 @@ public class BleConnector {
         connectBleBroadcastReceiver.setOnReceiveNotificationListener(onReceiveNotificationListener);
     }
 
+    /**
+     * 设置收到远端设备通知数据的回调（使用可回收的缓冲区）
+     * 通知数据只在收到时复制一次到缓冲池中的缓冲区，高频率的通知下几乎不产生垃圾对象。
+     * 回调返回后缓冲区会被回收，如果需要在之后继续使用，需要调用{@link NotificationBuffer#retain()}
+     *
+     * @param onReceiveNotificationBufferListener 收到远端设备通知数据的回调
+     */
+    public void setOnReceiveNotificationBufferListener(BleInterface.OnReceiveNotificationBufferListener onReceiveNotificationBufferListener) {
+        connectBleBroadcastReceiver.setOnReceiveNotificationBufferListener(onReceiveNotificationBufferListener);
+    }
+
+    /**
+     * 为特征打开通知数据流
+     * 打开后该特征的通知只进入数据流（有界的环形缓冲区），不再通过通知回调分发，使用者在自己的线程中读取。
+     * 同一个特征再次打开时会关闭原有的数据流，连接关闭时所有数据流都会被关闭
+     *
+     * @param characteristicUUID 特征UUID
+     * @param capacity           容量（会向上取整为2的幂）
+     * @param overflowPolicy     满了之后的处理方式，BleConstants中定义的NOTIFICATION_OVERFLOW_开头的常量
+     * @return 通知数据流
+     */
+    public NotificationStream openNotificationStream(String characteristicUUID, int capacity, int overflowPolicy) {
+        return notificationStreamRegistry.open(UUID.fromString(characteristicUUID), capacity, overflowPolicy);
+    }
+
+    /**
+     * 关闭特征的通知数据流，之后该特征的通知恢复通过通知回调分发
+     *
+     * @param characteristicUUID 特征UUID
+     * @return true表示关闭成功，false表示该特征没有打开数据流
+     */
+    public boolean closeNotificationStream(String characteristicUUID) {
+        return notificationStreamRegistry.close(UUID.fromString(characteristicUUID));
+    }
+
+    /**
+     * 为特征登记通知监听
+     * 登记后该特征的通知只交给该监听（优先于通知数据流与通知回调），没有登记监听的特征仍然按原来的方式分发。
+     * 可以在连接之前登记，重新连接后继续有效，同一个特征再次登记时替换原有的监听，连接关闭时所有监听都会被取消
+     *
+     * @param serviceUUID                           服务UUID
+     * @param characteristicUUID                    特征UUID
+     * @param onCharacteristicNotificationListener 通知监听
+     */
+    public void registerNotificationListener(String serviceUUID, String characteristicUUID, BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener) {
+        if (onCharacteristicNotificationListener == null) {
+            throw new IllegalArgumentException("onCharacteristicNotificationListener can not be null");
+        }
+        notificationRouter.register(UUID.fromString(serviceUUID), UUID.fromString(characteristicUUID), onCharacteristicNotificationListener);
+    }
+
+    /**
+     * 为特征句柄对应的特征登记通知监听
+     *
+     * @param bleCharacteristicHandle              特征句柄
+     * @param onCharacteristicNotificationListener 通知监听
+     */
+    public void registerNotificationListener(BleCharacteristicHandle bleCharacteristicHandle, BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener) {
+        if (onCharacteristicNotificationListener == null) {
+            throw new IllegalArgumentException("onCharacteristicNotificationListener can not be null");
+        }
+        notificationRouter.register(bleCharacteristicHandle.getServiceUuid(), bleCharacteristicHandle.getCharacteristicUuid(), onCharacteristicNotificationListener);
+    }
+
+    /**
+     * 取消特征的通知监听，之后该特征的通知恢复按原来的方式分发
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return true表示取消成功，false表示该特征没有登记监听
+     */
+    public boolean unregisterNotificationListener(String serviceUUID, String characteristicUUID) {
+        return notificationRouter.unregister(UUID.fromString(serviceUUID), UUID.fromString(characteristicUUID));
+    }
+
     /**
      * 设置写入特征数据的回调
      *
@@ -544,10 +727,270 @@ public class BleConnector {
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
      * @param value              数据
-     * @return true表示成功
+     * @return true表示成功加入GATT操作队列
      */
     public boolean writeData(String serviceUUID, String characteristicUUID, byte[] value) {
-        return bleServiceConnection != null && bleServiceConnection.writeData(serviceUUID, characteristicUUID, value);
+        return enqueueWriteData(serviceUUID, characteristicUUID, value) != null;
+    }
+
+    /**
+     * 写入数据（加入GATT操作队列，上一个操作完成后立即执行）
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @param value              数据
+     * @return 操作结果，null表示无法发起操作（未连接或者找不到对应的特征）
+     */
+    public GattOperationFuture enqueueWriteData(String serviceUUID, String characteristicUUID, byte[] value) {
+        if (bleServiceConnection == null) {
+            return null;
+        }
+        return bleServiceConnection.writeData(serviceUUID, characteristicUUID, value);
+    }
+
+    /**
+     * 分包写入大数据（固件、配置文件等）
+     * 数据按照当前的MTU切分为多个数据包（每包MTU-3字节），作为一个操作加入GATT操作队列，
+     * 一个数据包写入成功后立即写入下一个，期间队列中的其他操作不会插入。
+     * 默认在服务发现完成后会自动协商最大的MTU，以减少数据包的数量
+     *
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param value                            数据
+     * @param onLargeDataWriteProgressListener 进度回调（在蓝牙的Binder线程中执行），可以为null
+     * @return 操作结果，全部数据写入成功后操作才会完成，null表示无法发起操作（未连接或者找不到对应的特征）
+     */
+    public GattOperationFuture writeLargeData(String serviceUUID, String characteristicUUID, byte[] value, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        if (bleServiceConnection == null) {
+            return null;
+        }
+        return bleServiceConnection.writeLargeData(serviceUUID, characteristicUUID, value, false, onLargeDataWriteProgressListener);
+    }
+
+    /**
+     * 以流模式写入数据（日志上传、连续的配置数据等）
+     * 使用无回复（WRITE_TYPE_NO_RESPONSE）的方式分包写入，系统蓝牙栈在数据包进入发送缓冲区后就会回调，
+     * 不需要等待远端设备的回复。安卓同一时间只允许一个未完成的GATT请求，所以数据包仍然是逐个发出的。特征必须支持无回复写入
+     *
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param value                            数据
+     * @param onLargeDataWriteProgressListener 进度回调（在蓝牙的Binder线程中执行），可以为null
+     * @return 操作结果，全部数据写入成功后操作才会完成，null表示无法发起操作
+     */
+    public GattOperationFuture writeStreamData(String serviceUUID, String characteristicUUID, byte[] value, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        if (bleServiceConnection == null) {
+            return null;
+        }
+        return bleServiceConnection.writeLargeData(serviceUUID, characteristicUUID, value, true, onLargeDataWriteProgressListener);
+    }
+
+    /**
+     * 设置服务发现完成后是否自动协商最大的MTU（默认开启，需要API 21以上）
+     *
+     * @param autoRequestMtu true表示自动协商
+     */
+    public void setAutoRequestMtu(boolean autoRequestMtu) {
+        this.autoRequestMtu = autoRequestMtu;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setAutoRequestMtu(autoRequestMtu);
+        }
+    }
+
+    /**
+     * 设置服务发现完成后是否自动切换到LE 2M PHY（默认开启，需要API 26以上并且本机支持，远端不支持时保持LE 1M PHY）
+     *
+     * @param autoRequestLe2MPhy true表示自动切换
+     */
+    public void setAutoRequestLe2MPhy(boolean autoRequestLe2MPhy) {
+        this.autoRequestLe2MPhy = autoRequestLe2MPhy;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+        }
+    }
+
+    /**
+     * 设置连接超时时间（默认为10秒）：发起直连后超过这个时间没有连接上时，关闭GATT客户端并按退避时间重试
+     *
+     * @param connectTimeout 超时时间（毫秒）
+     */
+    public void setConnectTimeout(long connectTimeout) {
+        if (connectTimeout <= 0) {
+            throw new IllegalArgumentException("connectTimeout must be positive");
+        }
+        this.connectTimeout = connectTimeout;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setConnectTimeout(connectTimeout);
+        }
+    }
+
+    /**
+     * 设置服务发现超时时间（默认为10秒）：连接上之后超过这个时间没有完成服务发现时，按一次失败的连接尝试处理
+     *
+     * @param discoverTimeout 超时时间（毫秒）
+     */
+    public void setDiscoverTimeout(long discoverTimeout) {
+        if (discoverTimeout <= 0) {
+            throw new IllegalArgumentException("discoverTimeout must be positive");
+        }
+        this.discoverTimeout = discoverTimeout;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setDiscoverTimeout(discoverTimeout);
+        }
+    }
+
+    /**
+     * 设置断开连接超时时间（默认为3秒）：发起断开后超过这个时间没有收到断开的回调时，强制关闭GATT客户端并通知断开连接
+     *
+     * @param disconnectTimeout 超时时间（毫秒）
+     */
+    public void setDisconnectTimeout(long disconnectTimeout) {
+        if (disconnectTimeout <= 0) {
+            throw new IllegalArgumentException("disconnectTimeout must be positive");
+        }
+        this.disconnectTimeout = disconnectTimeout;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setDisconnectTimeout(disconnectTimeout);
+        }
+    }
+
+    /**
+     * 设置直连失败（例如状态码133）或者超时后的最大重试次数（默认为3），重试之间的等待时间按指数增长并带有随机抖动，
+     * 重试期间不会通知连接断开
+     *
+     * @param connectMaxRetries 最大重试次数，0表示不重试
+     */
+    public void setConnectMaxRetries(int connectMaxRetries) {
+        if (connectMaxRetries < 0) {
+            throw new IllegalArgumentException("connectMaxRetries must not be negative");
+        }
+        this.connectMaxRetries = connectMaxRetries;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setConnectMaxRetries(connectMaxRetries);
+        }
+    }
+
+    /**
+     * 设置直连的重试次数用完后是否转为自动连接（默认为true），自动连接由系统在后台等待设备出现，没有超时
+     *
+     * @param autoConnectFallback true表示转为自动连接，false表示通知连接断开
+     */
+    public void setAutoConnectFallback(boolean autoConnectFallback) {
+        this.autoConnectFallback = autoConnectFallback;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setAutoConnectFallback(autoConnectFallback);
+        }
+    }
+
+    /**
+     * 设置订阅恢复完成的监听
+     * 打开过的通知与指示会被记录下来，重新连接（包括连接失败后的自动重试）并完成服务发现后自动重新打开，
+     * 不需要在回调中逐个调用{@link #enableNotification(String, String, boolean)}；全部完成后回调一次此监听。
+     * 关闭通知或者调用{@link #close()}后不再恢复
+     *
+     * @param onSubscriptionsRestoredListener 监听
+     */
+    public void setOnSubscriptionsRestoredListener(BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        this.onSubscriptionsRestoredListener = onSubscriptionsRestoredListener;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+        }
+    }
+
+    /**
+     * 获取连接状态
+     *
+     * @return BleConstants中定义的CONNECTION_STATE_开头的常量
+     */
+    public int getConnectionState() {
+        if (bleServiceConnection == null) {
+            return BleConstants.CONNECTION_STATE_IDLE;
+        }
+        return bleServiceConnection.getConnectionState();
+    }
+
+    /**
+     * 获取当前连接发送使用的PHY
+     *
+     * @return BleConstants中定义的PHY_开头的常量，未连接时为{@link BleConstants#PHY_LE_1M}
+     */
+    public int getTxPhy() {
+        if (bleServiceConnection == null) {
+            return BleConstants.PHY_LE_1M;
+        }
+        return bleServiceConnection.getTxPhy();
+    }
+
+    /**
+     * 获取当前连接接收使用的PHY
+     *
+     * @return BleConstants中定义的PHY_开头的常量，未连接时为{@link BleConstants#PHY_LE_1M}
+     */
+    public int getRxPhy() {
+        if (bleServiceConnection == null) {
+            return BleConstants.PHY_LE_1M;
+        }
+        return bleServiceConnection.getRxPhy();
+    }
+
+    /**
+     * 手动指定连接优先级，指定后不再自动调整。
+     * 默认（{@link BleConstants#CONNECTION_PRIORITY_AUTO}）时，有大数据传输或者打开了通知数据流时自动使用
+     * {@link BleConstants#CONNECTION_PRIORITY_HIGH}，空闲一段时间后恢复为空闲时的优先级。需要API 21以上
+     *
+     * @param connectionPriority BleConstants中定义的CONNECTION_PRIORITY_开头的常量
+     */
+    public void setConnectionPriority(int connectionPriority) {
+        if (connectionPriority != BleConstants.CONNECTION_PRIORITY_AUTO
+                && connectionPriority != BleConstants.CONNECTION_PRIORITY_BALANCED
+                && connectionPriority != BleConstants.CONNECTION_PRIORITY_HIGH
+                && connectionPriority != BleConstants.CONNECTION_PRIORITY_LOW_POWER) {
+            throw new IllegalArgumentException("unknown connection priority " + connectionPriority);
+        }
+        this.connectionPriority = connectionPriority;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setConnectionPriority(connectionPriority);
+        }
+    }
+
+    /**
+     * 设置自动管理连接优先级时，空闲状态使用的优先级（默认为{@link BleConstants#CONNECTION_PRIORITY_BALANCED}）
+     *
+     * @param idleConnectionPriority {@link BleConstants#CONNECTION_PRIORITY_BALANCED}或{@link BleConstants#CONNECTION_PRIORITY_LOW_POWER}
+     */
+    public void setIdleConnectionPriority(int idleConnectionPriority) {
+        if (idleConnectionPriority != BleConstants.CONNECTION_PRIORITY_BALANCED
+                && idleConnectionPriority != BleConstants.CONNECTION_PRIORITY_LOW_POWER) {
+            throw new IllegalArgumentException("idle connection priority must be BALANCED or LOW_POWER");
+        }
+        this.idleConnectionPriority = idleConnectionPriority;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setIdleConnectionPriority(idleConnectionPriority);
+        }
+    }
+
+    /**
+     * 获取当前连接的优先级
+     *
+     * @return BleConstants中定义的CONNECTION_PRIORITY_开头的常量
+     */
+    public int getConnectionPriority() {
+        if (bleServiceConnection == null) {
+            return BleConstants.CONNECTION_PRIORITY_BALANCED;
+        }
+        return bleServiceConnection.getConnectionPriority();
+    }
+
+    /**
+     * 获取当前连接的MTU
+     *
+     * @return MTU，未连接或者未协商时为默认值23
+     */
+    public int getMtu() {
+        if (bleServiceConnection == null) {
+            return GattOperationQueue.DEFAULT_MTU;
+        }
+        return bleServiceConnection.getMtu();
     }
 
     /**
@@ -559,15 +1002,83 @@ public class BleConnector {
         return bleServiceConnection != null && bleServiceConnection.refreshGattCache();
     }
 
+    /**
+     * 获取设备缓存的GATT布局（上一次服务发现的结果），连接之前或者服务发现完成之前就可以查询设备有哪些服务与特征
+     *
+     * @param address 设备地址
+     * @return GATT布局，该设备没有缓存时返回null
+     */
+    public GattLayout getCachedGattLayout(String address) {
+        Context context = this.context;
+        if (context == null) {
+            return null;
+        }
+        return GattLayoutCache.getInstance(context).get(address);
+    }
+
+    /**
+     * 获取特征句柄（服务发现完成后调用）
+     * 句柄保存了解析好的特征，通过句柄读写、开关通知时不再解析UUID、查找服务，适合频繁操作同一个特征的场景。
+     * 连接断开或者设备的服务布局发生变化后句柄失效，需要重新获取
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征句柄，未连接或者找不到对应的特征时返回null
+     */
+    public BleCharacteristicHandle getCharacteristicHandle(String serviceUUID, String characteristicUUID) {
+        if (bleServiceConnection == null) {
+            return null;
+        }
+        return bleServiceConnection.getCharacteristicHandle(serviceUUID, characteristicUUID);
+    }
+
     /**
      * 读取数据
      *
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
-     * @return true表示成功
+     * @return true表示成功加入GATT操作队列
      */
     public boolean readData(String serviceUUID, String characteristicUUID) {
-        return bleServiceConnection != null && bleServiceConnection.readData(serviceUUID, characteristicUUID);
+        return enqueueReadData(serviceUUID, characteristicUUID) != null;
+    }
+
+    /**
+     * 设置特征的读取缓存有效期
+     * 有效期内读取该特征时直接返回上一次读到的数据（读取回调同样会被调用），不再向远端设备发起读取。
+     * 不论是否设置，同一个特征同时有多个读取时都只向远端设备发起一次读取。
+     * 向该特征写入数据、连接断开或者服务发生变化时缓存失效
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @param ttl                有效期（毫秒），0表示不缓存
+     */
+    public void setReadCacheTtl(String serviceUUID, String characteristicUUID, long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl can not be negative");
+        }
+        readCache.setTtl(UUID.fromString(serviceUUID), UUID.fromString(characteristicUUID), ttl);
+    }
+
+    /**
+     * 清除所有缓存的特征数据，之后的读取都会向远端设备发起
+     */
+    public void clearReadCache() {
+        readCache.clear();
+    }
+
+    /**
+     * 读取数据（加入GATT操作队列，上一个操作完成后立即执行）
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 操作结果，null表示无法发起操作（未连接或者找不到对应的特征）
+     */
+    public GattOperationFuture enqueueReadData(String serviceUUID, String characteristicUUID) {
+        if (bleServiceConnection == null) {
+            return null;
+        }
+        return bleServiceConnection.readData(serviceUUID, characteristicUUID);
     }
 
     /**
@@ -576,10 +1087,82 @@ public class BleConnector {
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
      * @param enable             true表示开启，false表示关闭
-     * @return true表示成功
+     * @return true表示成功加入GATT操作队列
      */
     public boolean enableNotification(String serviceUUID, String characteristicUUID, @SuppressWarnings("SameParameterValue") boolean enable) {
-        return bleServiceConnection != null && bleServiceConnection.enableNotification(serviceUUID, characteristicUUID, enable);
+        return enqueueEnableNotification(serviceUUID, characteristicUUID, enable) != null;
+    }
+
+    /**
+     * 打开或关闭通知（加入GATT操作队列，上一个操作完成后立即执行）
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @param enable             true表示开启，false表示关闭
+     * @return 操作结果，null表示无法发起操作（未连接或者找不到对应的特征）
+     */
+    public GattOperationFuture enqueueEnableNotification(String serviceUUID, String characteristicUUID, boolean enable) {
+        if (bleServiceConnection == null) {
+            return null;
+        }
+        return bleServiceConnection.enableNotification(serviceUUID, characteristicUUID, enable);
+    }
+
+    /**
+     * 设置GATT操作的默认超时时间，超时的操作会以{@link BleConstants#GATT_OPERATION_TIMEOUT}结束，队列继续执行下一个操作
+     *
+     * @param gattOperationTimeout 超时时间（毫秒）
+     */
+    public void setGattOperationTimeout(long gattOperationTimeout) {
+        if (gattOperationTimeout <= 0) {
+            return;
+        }
+        this.gattOperationTimeout = gattOperationTimeout;
+        if (bleServiceConnection != null) {
+            bleServiceConnection.setGattOperationTimeout(gattOperationTimeout);
+        }
+    }
+
+    /**
+     * 设置是否通过系统广播分发GATT事件（需要在发起连接之前设置）
+     * 默认不使用广播，GATT事件直接在进程内分发到各个回调，避免Intent的创建、序列化以及系统广播的调度开销
+     *
+     * @param broadcastDispatchEnabled true表示使用系统广播分发GATT事件
+     */
+    public void setBroadcastDispatchEnabled(boolean broadcastDispatchEnabled) {
+        this.broadcastDispatchEnabled = broadcastDispatchEnabled;
+    }
+
+    /**
+     * 设置GATT事件回调执行的线程，默认在主线程中回调。
+     * 传入null时回调直接在蓝牙的Binder线程中执行，此时不要在回调中进行耗时操作
+     *
+     * @param callbackExecutor 执行回调的Executor
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        connectBleBroadcastReceiver.setCallbackExecutor(callbackExecutor);
+    }
+
+    /**
+     * 获取GATT操作队列中还未完成的操作数量（包含正在执行的操作）
+     *
+     * @return 操作数量
+     */
+    public int getPendingGattOperationCount() {
+        if (bleServiceConnection == null) {
+            return 0;
+        }
+        return bleServiceConnection.getPendingGattOperationCount();
+    }
+
+    /**
+     * 取消GATT操作队列中所有未完成的操作
+     */
+    public void clearGattOperations() {
+        if (bleServiceConnection == null) {
+            return;
+        }
+        bleServiceConnection.clearGattOperations();
     }
 
     /**
@@ -38,4 +38,155 @@ public class BleConstants {
     public static final int DEVICE_BOND_BONDED = 4;
     public static final int DEVICE_BOND_BONDING = 5;
     public static final int BLUETOOTH_ADDRESS_INCORRECT = 6;
+
+    /*GATT操作队列的状态码（负数，避免与BluetoothGatt中的状态码冲突）*/
+
+    public static final int GATT_OPERATION_PENDING = -1;
+    public static final int GATT_OPERATION_START_FAILED = -2;
+    public static final int GATT_OPERATION_TIMEOUT = -3;
+    public static final int GATT_OPERATION_CANCELLED = -4;
+
+    /*多连接时GATT回调的分发方式*/
+
+    /**
+     * 在主线程中执行回调（默认）
+     */
+    public static final int DISPATCH_MODE_MAIN_THREAD = 0;
+    /**
+     * 每个设备一个串行执行器，在共用的线程池中执行回调。同一设备的回调保持顺序，不同设备的回调并行执行
+     */
+    public static final int DISPATCH_MODE_PER_DEVICE = 1;
+    /**
+     * 直接在系统的蓝牙回调线程中执行回调
+     */
+    public static final int DISPATCH_MODE_DIRECT = 2;
+
+    /*通知数据流满了之后的处理方式*/
+
+    /**
+     * 丢弃最早的数据，保存新的数据
+     */
+    public static final int NOTIFICATION_OVERFLOW_DROP_OLDEST = 0;
+    /**
+     * 丢弃新的数据
+     */
+    public static final int NOTIFICATION_OVERFLOW_DROP_NEWEST = 1;
+    /**
+     * 阻塞蓝牙回调线程，等待消费者取走数据（超过最长等待时间后丢弃新的数据）
+     */
+    public static final int NOTIFICATION_OVERFLOW_BLOCK = 2;
+
+    /*连接优先级（与BluetoothGatt中的常量一致）*/
+
+    /**
+     * 自动管理连接优先级：有大数据传输或者打开了通知数据流时使用HIGH，空闲时使用空闲优先级
+     */
+    public static final int CONNECTION_PRIORITY_AUTO = -1;
+    /**
+     * 平衡（系统默认）
+     */
+    public static final int CONNECTION_PRIORITY_BALANCED = 0;
+    /**
+     * 高优先级，连接间隔短，吞吐量高，功耗高
+     */
+    public static final int CONNECTION_PRIORITY_HIGH = 1;
+    /**
+     * 低功耗，连接间隔长
+     */
+    public static final int CONNECTION_PRIORITY_LOW_POWER = 2;
+
+    /*多连接时等待连接的请求的优先级*/
+
+    /**
+     * 低优先级
+     */
+    public static final int CONNECT_PRIORITY_LOW = 0;
+    /**
+     * 普通优先级（默认）
+     */
+    public static final int CONNECT_PRIORITY_NORMAL = 1;
+    /**
+     * 高优先级
+     */
+    public static final int CONNECT_PRIORITY_HIGH = 2;
+
+    /*多连接时一次连接尝试的结果*/
+
+    /**
+     * 连接成功
+     */
+    public static final int CONNECT_ATTEMPT_SUCCEED = 0;
+    /**
+     * 连接失败（例如状态码133）
+     */
+    public static final int CONNECT_ATTEMPT_FAILED = 1;
+    /**
+     * 连接超时
+     */
+    public static final int CONNECT_ATTEMPT_TIMEOUT = 2;
+
+    /*连接状态机的状态*/
+
+    /**
+     * 空闲（未连接）
+     */
+    public static final int CONNECTION_STATE_IDLE = 0;
+    /**
+     * 连接中
+     */
+    public static final int CONNECTION_STATE_CONNECTING = 1;
+    /**
+     * 已连接，发现服务中
+     */
+    public static final int CONNECTION_STATE_DISCOVERING = 2;
+    /**
+     * 服务发现完成，可以读写
+     */
+    public static final int CONNECTION_STATE_READY = 3;
+    /**
+     * 断开中
+     */
+    public static final int CONNECTION_STATE_DISCONNECTING = 4;
+
+    /*PHY（与BluetoothDevice中的常量一致）*/
+
+    /**
+     * LE 1M PHY
+     */
+    public static final int PHY_LE_1M = 1;
+    /**
+     * LE 2M PHY
+     */
+    public static final int PHY_LE_2M = 2;
+    /**
+     * LE Coded PHY
+     */
+    public static final int PHY_LE_CODED = 3;
+
+    /*日志级别（与android.util.Log中的常量一致）*/
+
+    /**
+     * VERBOSE
+     */
+    public static final int LOG_LEVEL_VERBOSE = 2;
+    /**
+     * DEBUG
+     */
+    public static final int LOG_LEVEL_DEBUG = 3;
+    /**
+     * INFO
+     */
+    public static final int LOG_LEVEL_INFO = 4;
+    /**
+     * WARN
+     */
+    public static final int LOG_LEVEL_WARN = 5;
+    /**
+     * ERROR
+     */
+    public static final int LOG_LEVEL_ERROR = 6;
+    /**
+     * 不输出任何日志（默认）
+     */
+    public static final int LOG_LEVEL_NONE = 8;
 }
@@ -32,23 +32,23 @@ public class BleDevice implements Serializable, Parcelable {
     /**
      * rssi值
      */
-    private int mRssi;
+    private volatile int mRssi;
 
     /**
      * 广播包内容(字节数组)
      */
-    private byte[] scanRecordBytes;
+    private volatile byte[] scanRecordBytes;
 
     /**
      * ScanRecord.在5.0以上才用得上
      */
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
-    private ScanRecord scanRecord;
+    private volatile ScanRecord scanRecord;
 
     /**
-     * 解析广播包后保存的数据
+     * 解析广播包后保存的数据（第一次获取时才解析）
      */
-    private ArrayList<AdRecord> adRecords;
+    private transient volatile ArrayList<AdRecord> adRecords;
 
 
     /**
@@ -74,7 +74,6 @@ public class BleDevice implements Serializable, Parcelable {
         mBluetoothDevice = bluetoothDevice;
         mRssi = rssi;
         this.scanRecordBytes = scanRecordBytes;
-        adRecords = AdRecord.parseScanRecord(scanRecordBytes);
         if (bluetoothDevice.getName() == null || "".equals(bluetoothDevice.getName())) {
             setDeviceName(deviceName);
         }
@@ -98,6 +97,25 @@ public class BleDevice implements Serializable, Parcelable {
         return mRssi;
     }
 
+    /**
+     * 设置设备信号强度（再次扫描到该设备时更新）
+     *
+     * @param rssi RSSI值
+     */
+    void setRssi(int rssi) {
+        mRssi = rssi;
+    }
+
+    /**
+     * 设置广播包内容（再次扫描到该设备时更新）
+     *
+     * @param scanRecordBytes 广播包内容
+     */
+    void setScanRecordBytes(byte[] scanRecordBytes) {
+        this.scanRecordBytes = scanRecordBytes;
+        adRecords = null;
+    }
+
     /**
      * 获取广播包内容
      *
@@ -159,14 +177,28 @@ public class BleDevice implements Serializable, Parcelable {
     }
 
     /**
-     * 获取广播包的解析结果集合
+     * 获取广播包的解析结果集合（第一次调用时解析）
      *
      * @return 广播包的解析结果集合
      */
     public ArrayList<AdRecord> getAdRecords() {
+        ArrayList<AdRecord> adRecords = this.adRecords;
+        if (adRecords == null) {
+            adRecords = AdRecord.parseScanRecord(scanRecordBytes);
+            this.adRecords = adRecords;
+        }
         return adRecords;
     }
 
+    /**
+     * 获取广播包字段的游标，直接在广播包上遍历各个字段，不会复制数据
+     *
+     * @return 广播包字段的游标
+     */
+    public AdRecordCursor getAdRecordCursor() {
+        return new AdRecordCursor(scanRecordBytes);
+    }
+
     /**
      * 获取指定类型的广播包字段
      *
@@ -183,13 +215,10 @@ public class BleDevice implements Serializable, Parcelable {
             }
         }
 
-        if (adRecords != null) {
-            for (int i = 0; i < adRecords.size(); i++) {
-                AdRecord adRecord = adRecords.get(i);
-                if (adRecord.getType() == type) {
-                    return adRecord.getData();
-                }
-            }
+        //直接在广播包中查找，不需要解析出全部字段
+        AdRecordCursor cursor = new AdRecordCursor(scanRecordBytes);
+        if (cursor.moveToNext(type)) {
+            return cursor.copyData();
         }
 
         return new byte[0];
@@ -255,6 +284,16 @@ public class BleDevice implements Serializable, Parcelable {
         return bleDevice.getBluetoothDevice().equals(getBluetoothDevice());
     }
 
+    /**
+     * 重写hashCode方法，与equals保持一致（只与蓝牙设备对象，即设备地址有关）
+     *
+     * @return 哈希值
+     */
+    @Override
+    public int hashCode() {
+        return mBluetoothDevice.hashCode();
+    }
+
     /*------------------------Parcelable接口----------------------------*/
 
     @Override
@@ -50,6 +50,19 @@ public class BleDeviceController {
         return bleMultiConnector != null && address != null && bleMultiConnector.refreshGattCache(address);
     }
 
+    /**
+     * 获取设备缓存的GATT布局（上一次服务发现的结果），服务发现完成之前就可以查询设备有哪些服务与特征
+     *
+     * @return GATT布局，该设备没有缓存时返回null
+     */
+    public GattLayout getCachedGattLayout() {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        return bleMultiConnector.getCachedGattLayout(address);
+    }
+
     /**
      * 写入数据
      *
@@ -65,6 +78,285 @@ public class BleDeviceController {
     }
 
 
+    /**
+     * 分包写入大数据（固件、配置文件等）
+     * 数据按照当前的MTU切分为多个数据包（每包MTU-3字节），作为一个操作加入该设备的GATT操作队列，
+     * 一个数据包写入成功后立即写入下一个，期间队列中的其他操作不会插入
+     *
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param values                           数据
+     * @param onLargeDataWriteProgressListener 进度回调（在蓝牙的Binder线程中执行），可以为null
+     * @return 操作结果，全部数据写入成功后操作才会完成，null表示无法发起操作
+     */
+    public GattOperationFuture writeLargeData(String serviceUUID, String characteristicUUID, byte[] values, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        return bleMultiConnector.writeLargeData(address, serviceUUID, characteristicUUID, values, false, onLargeDataWriteProgressListener);
+    }
+
+    /**
+     * 以流模式写入数据（日志上传、连续的配置数据等）
+     * 使用无回复（WRITE_TYPE_NO_RESPONSE）的方式分包写入，系统蓝牙栈在数据包进入发送缓冲区后就会回调，
+     * 不需要等待远端设备的回复。安卓同一时间只允许一个未完成的GATT请求，所以数据包仍然是逐个发出的。特征必须支持无回复写入
+     *
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param values                           数据
+     * @param onLargeDataWriteProgressListener 进度回调（在蓝牙的Binder线程中执行），可以为null
+     * @return 操作结果，全部数据写入成功后操作才会完成，null表示无法发起操作
+     */
+    public GattOperationFuture writeStreamData(String serviceUUID, String characteristicUUID, byte[] values, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        return bleMultiConnector.writeLargeData(address, serviceUUID, characteristicUUID, values, true, onLargeDataWriteProgressListener);
+    }
+
+    /**
+     * 为特征打开通知数据流
+     * 打开后该特征的通知只进入数据流（有界的环形缓冲区），不再通过连接回调分发，使用者在自己的线程中读取。
+     * 同一个特征再次打开时会关闭原有的数据流，连接关闭时所有数据流都会被关闭
+     *
+     * @param characteristicUUID 特征UUID
+     * @param capacity           容量（会向上取整为2的幂）
+     * @param overflowPolicy     满了之后的处理方式，BleConstants中定义的NOTIFICATION_OVERFLOW_开头的常量
+     * @return 通知数据流，设备未连接时返回null
+     */
+    public NotificationStream openNotificationStream(String characteristicUUID, int capacity, int overflowPolicy) {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        NotificationStreamRegistry notificationStreamRegistry = bleMultiConnector.getNotificationStreamRegistry(address);
+        if (notificationStreamRegistry == null) {
+            return null;
+        }
+        return notificationStreamRegistry.open(UUID.fromString(characteristicUUID), capacity, overflowPolicy);
+    }
+
+    /**
+     * 关闭特征的通知数据流，之后该特征的通知恢复通过连接回调分发
+     *
+     * @param characteristicUUID 特征UUID
+     * @return true表示关闭成功
+     */
+    public boolean closeNotificationStream(String characteristicUUID) {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return false;
+        }
+        NotificationStreamRegistry notificationStreamRegistry = bleMultiConnector.getNotificationStreamRegistry(address);
+        return notificationStreamRegistry != null && notificationStreamRegistry.close(UUID.fromString(characteristicUUID));
+    }
+
+    /**
+     * 为特征登记通知监听
+     * 登记后该特征的通知只交给该监听（优先于通知数据流与连接回调），没有登记监听的特征仍然通过连接回调分发。
+     * 监听与连接回调使用相同的分发方式（默认在主线程中执行）。重新连接后继续有效，同一个特征再次登记时替换原有的监听
+     *
+     * @param serviceUUID                           服务UUID
+     * @param characteristicUUID                    特征UUID
+     * @param onCharacteristicNotificationListener 通知监听
+     * @return true表示登记成功，false表示设备未连接
+     */
+    public boolean registerNotificationListener(String serviceUUID, String characteristicUUID, BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener) {
+        if (onCharacteristicNotificationListener == null) {
+            throw new IllegalArgumentException("onCharacteristicNotificationListener can not be null");
+        }
+        return registerNotificationListener(UUID.fromString(serviceUUID), UUID.fromString(characteristicUUID), onCharacteristicNotificationListener);
+    }
+
+    /**
+     * 为特征句柄对应的特征登记通知监听
+     *
+     * @param bleCharacteristicHandle              特征句柄
+     * @param onCharacteristicNotificationListener 通知监听
+     * @return true表示登记成功，false表示设备未连接
+     */
+    public boolean registerNotificationListener(BleCharacteristicHandle bleCharacteristicHandle, BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener) {
+        if (onCharacteristicNotificationListener == null) {
+            throw new IllegalArgumentException("onCharacteristicNotificationListener can not be null");
+        }
+        return registerNotificationListener(bleCharacteristicHandle.getServiceUuid(), bleCharacteristicHandle.getCharacteristicUuid(), onCharacteristicNotificationListener);
+    }
+
+    /**
+     * 取消特征的通知监听，之后该特征的通知恢复按原来的方式分发
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return true表示取消成功
+     */
+    public boolean unregisterNotificationListener(String serviceUUID, String characteristicUUID) {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return false;
+        }
+        NotificationRouter notificationRouter = bleMultiConnector.getNotificationRouter(address);
+        return notificationRouter != null && notificationRouter.unregister(UUID.fromString(serviceUUID), UUID.fromString(characteristicUUID));
+    }
+
+    /**
+     * 手动指定连接优先级，指定后不再自动调整。
+     * 默认（{@link BleConstants#CONNECTION_PRIORITY_AUTO}）时，有大数据传输或者打开了通知数据流时自动使用
+     * {@link BleConstants#CONNECTION_PRIORITY_HIGH}，空闲一段时间后恢复为空闲时的优先级。需要API 21以上
+     *
+     * @param connectionPriority BleConstants中定义的CONNECTION_PRIORITY_开头的常量
+     * @return true表示设置成功，false表示设备未连接
+     */
+    public boolean setConnectionPriority(int connectionPriority) {
+        if (connectionPriority != BleConstants.CONNECTION_PRIORITY_AUTO
+                && connectionPriority != BleConstants.CONNECTION_PRIORITY_BALANCED
+                && connectionPriority != BleConstants.CONNECTION_PRIORITY_HIGH
+                && connectionPriority != BleConstants.CONNECTION_PRIORITY_LOW_POWER) {
+            throw new IllegalArgumentException("unknown connection priority " + connectionPriority);
+        }
+        ConnectionPriorityManager connectionPriorityManager = getConnectionPriorityManager();
+        if (connectionPriorityManager == null) {
+            return false;
+        }
+        connectionPriorityManager.setOverridePriority(connectionPriority);
+        return true;
+    }
+
+    /**
+     * 设置自动管理连接优先级时，空闲状态使用的优先级（默认为{@link BleConstants#CONNECTION_PRIORITY_BALANCED}）
+     *
+     * @param idleConnectionPriority {@link BleConstants#CONNECTION_PRIORITY_BALANCED}或{@link BleConstants#CONNECTION_PRIORITY_LOW_POWER}
+     * @return true表示设置成功，false表示设备未连接
+     */
+    public boolean setIdleConnectionPriority(int idleConnectionPriority) {
+        if (idleConnectionPriority != BleConstants.CONNECTION_PRIORITY_BALANCED
+                && idleConnectionPriority != BleConstants.CONNECTION_PRIORITY_LOW_POWER) {
+            throw new IllegalArgumentException("idle connection priority must be BALANCED or LOW_POWER");
+        }
+        ConnectionPriorityManager connectionPriorityManager = getConnectionPriorityManager();
+        if (connectionPriorityManager == null) {
+            return false;
+        }
+        connectionPriorityManager.setIdlePriority(idleConnectionPriority);
+        return true;
+    }
+
+    /**
+     * 获取当前连接的优先级
+     *
+     * @return BleConstants中定义的CONNECTION_PRIORITY_开头的常量
+     */
+    public int getConnectionPriority() {
+        ConnectionPriorityManager connectionPriorityManager = getConnectionPriorityManager();
+        if (connectionPriorityManager == null) {
+            return BleConstants.CONNECTION_PRIORITY_BALANCED;
+        }
+        return connectionPriorityManager.getCurrentPriority();
+    }
+
+    /**
+     * 获取当前连接发送使用的PHY
+     *
+     * @return BleConstants中定义的PHY_开头的常量，未连接时为{@link BleConstants#PHY_LE_1M}
+     */
+    public int getTxPhy() {
+        GattOperationQueue gattOperationQueue = getGattOperationQueue();
+        if (gattOperationQueue == null) {
+            return BleConstants.PHY_LE_1M;
+        }
+        return gattOperationQueue.getTxPhy();
+    }
+
+    /**
+     * 获取当前连接接收使用的PHY
+     *
+     * @return BleConstants中定义的PHY_开头的常量，未连接时为{@link BleConstants#PHY_LE_1M}
+     */
+    public int getRxPhy() {
+        GattOperationQueue gattOperationQueue = getGattOperationQueue();
+        if (gattOperationQueue == null) {
+            return BleConstants.PHY_LE_1M;
+        }
+        return gattOperationQueue.getRxPhy();
+    }
+
+    /**
+     * 获取当前连接的MTU
+     *
+     * @return MTU，未协商时为默认值23
+     */
+    public int getMtu() {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return GattOperationQueue.DEFAULT_MTU;
+        }
+        return bleMultiConnector.getMtu(address);
+    }
+
+    /**
+     * 获取连接状态
+     *
+     * @return BleConstants中定义的CONNECTION_STATE_开头的常量
+     */
+    public int getConnectionState() {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return BleConstants.CONNECTION_STATE_IDLE;
+        }
+        return bleMultiConnector.getConnectionState(address);
+    }
+
+    /**
+     * 获取特征句柄（服务发现完成后调用）
+     * 句柄保存了解析好的特征，通过句柄读写、开关通知时不再解析UUID、查找服务，适合频繁操作同一个特征的场景。
+     * 连接断开或者设备的服务布局发生变化后句柄失效，需要重新获取
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征句柄，未连接或者找不到对应的特征时返回null
+     */
+    public BleCharacteristicHandle getCharacteristicHandle(String serviceUUID, String characteristicUUID) {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        return bleMultiConnector.getCharacteristicHandle(address, serviceUUID, characteristicUUID);
+    }
+
+    /**
+     * 设置特征的读取缓存有效期
+     * 有效期内读取该特征时直接返回上一次读到的数据（读取回调同样会被调用），不再向远端设备发起读取。
+     * 不论是否设置，同一个特征同时有多个读取时都只向远端设备发起一次读取。
+     * 向该特征写入数据、连接断开或者服务发生变化时缓存失效
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @param ttl                有效期（毫秒），0表示不缓存
+     * @return true表示设置成功，false表示设备未连接
+     */
+    public boolean setReadCacheTtl(String serviceUUID, String characteristicUUID, long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl can not be negative");
+        }
+        CharacteristicReadCache readCache = getReadCache();
+        if (readCache == null) {
+            return false;
+        }
+        readCache.setTtl(UUID.fromString(serviceUUID), UUID.fromString(characteristicUUID), ttl);
+        return true;
+    }
+
+    /**
+     * 清除所有缓存的特征数据，之后的读取都会向远端设备发起
+     */
+    public void clearReadCache() {
+        CharacteristicReadCache readCache = getReadCache();
+        if (readCache != null) {
+            readCache.clear();
+        }
+    }
+
     /**
      * 读取数据
      *
@@ -271,4 +563,66 @@ public class BleDeviceController {
         int properties = characteristic.getProperties();
         return (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
     }
+
+    /*------------------------私有函数----------------------------*/
+
+    /**
+     * 获取该设备的GATT操作队列
+     *
+     * @return GATT操作队列，设备未连接时返回null
+     */
+    private GattOperationQueue getGattOperationQueue() {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        return bleMultiConnector.getGattOperationQueue(address);
+    }
+
+    /**
+     * 获取该设备的连接优先级管理
+     *
+     * @return 连接优先级管理，设备未连接时返回null
+     */
+    private ConnectionPriorityManager getConnectionPriorityManager() {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        return bleMultiConnector.getConnectionPriorityManager(address);
+    }
+
+    /**
+     * 获取该设备的特征读取缓存
+     *
+     * @return 特征读取缓存，设备未连接时返回null
+     */
+    private CharacteristicReadCache getReadCache() {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return null;
+        }
+        return bleMultiConnector.getReadCache(address);
+    }
+
+    /**
+     * 为特征登记通知监听
+     *
+     * @param serviceUuid                           服务UUID
+     * @param characteristicUuid                    特征UUID
+     * @param onCharacteristicNotificationListener 通知监听
+     * @return true表示登记成功，false表示设备未连接
+     */
+    private boolean registerNotificationListener(UUID serviceUuid, UUID characteristicUuid, BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener) {
+        BleMultiConnector bleMultiConnector = this.bleMultiConnector;
+        if (bleMultiConnector == null || address == null) {
+            return false;
+        }
+        NotificationRouter notificationRouter = bleMultiConnector.getNotificationRouter(address);
+        if (notificationRouter == null) {
+            return false;
+        }
+        notificationRouter.register(serviceUuid, characteristicUuid, onCharacteristicNotificationListener);
+        return true;
+    }
 }
@@ -0,0 +1,184 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 扫描结果的设备索引
+ * 以48位的设备地址（保存为long）为键的开放寻址哈希表，用于在扫描时以常数时间判断设备是否已经被扫描到过。
+ * 只能在同一个线程中使用
+ *
+ * @author alm
+ */
+
+class BleDeviceIndex {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 空位置的键（设备地址只有48位，不会出现-1）
+     */
+    private static final long EMPTY_KEY = -1L;
+
+    /**
+     * 默认容量（必须是2的幂）
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 键（设备地址）
+     */
+    private long[] keys;
+    /**
+     * 值（设备）
+     */
+    private BleDevice[] values;
+    /**
+     * 当前保存的设备数量
+     */
+    private int size;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     */
+    BleDeviceIndex() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 根据设备地址获取设备
+     *
+     * @param key 设备地址
+     * @return 设备，没有则返回null
+     */
+    BleDevice get(long key) {
+        if (key < 0) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (true) {
+            long current = keys[index];
+            if (current == key) {
+                return values[index];
+            }
+            if (current == EMPTY_KEY) {
+                return null;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * 保存设备，设备地址已存在时替换原有的设备（无效的设备地址会被忽略）
+     *
+     * @param key       设备地址
+     * @param bleDevice 设备
+     */
+    void put(long key, BleDevice bleDevice) {
+        if (key < 0) {
+            return;
+        }
+        //负载因子保持在0.5以下
+        if ((size + 1) << 1 > keys.length) {
+            resize(keys.length << 1);
+        }
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (true) {
+            long current = keys[index];
+            if (current == key) {
+                values[index] = bleDevice;
+                return;
+            }
+            if (current == EMPTY_KEY) {
+                keys[index] = key;
+                values[index] = bleDevice;
+                size++;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * 根据设备列表重建索引
+     *
+     * @param bleDevices 设备列表
+     */
+    void rebuild(List<BleDevice> bleDevices) {
+        clear();
+        for (int i = 0; i < bleDevices.size(); i++) {
+            BleDevice bleDevice = bleDevices.get(i);
+            put(Tool.macAddressToLong(bleDevice.getDeviceAddress()), bleDevice);
+        }
+    }
+
+    /**
+     * 清空索引（保留已分配的空间）
+     */
+    void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(keys, EMPTY_KEY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * 获取保存的设备数量
+     *
+     * @return 设备数量
+     */
+    int size() {
+        return size;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 分配空间
+     *
+     * @param capacity 容量
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        values = new BleDevice[capacity];
+    }
+
+    /**
+     * 扩容
+     *
+     * @param capacity 新的容量
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        BleDevice[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * 计算哈希值（设备地址的低位往往是连续的，需要打散）
+     *
+     * @param key 设备地址
+     * @return 哈希值
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -8,6 +8,8 @@ import android.bluetooth.BluetoothGattServer;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 
+import java.util.List;
+
 /**
  * 接口定义区
  *
@@ -50,6 +52,32 @@ public class BleInterface {
         void onScanFindOneNewDevice(BleDevice bleDevice);
     }
 
+    /**
+     * 批量扫描时发现一批设备的回调监听
+     */
+    public interface OnScanFindDevicesBatchListener {
+        /**
+         * 一批扫描结果上报时回调此函数（同一批中同一个设备只出现一次）
+         * 没有设置上报延时时，同一时间到达的扫描结果也会被合并为一批
+         *
+         * @param bleDevices 这一批扫描到的设备
+         */
+        void onScanFindDevicesBatch(List<BleDevice> bleDevices);
+    }
+
+    /**
+     * 扫描结果过滤器
+     */
+    public interface ScanResultFilter {
+        /**
+         * 判断是否需要某个扫描结果（在扫描结果处理线程中执行）
+         *
+         * @param bleDevice 扫描到的设备
+         * @return true表示保留该结果
+         */
+        boolean accept(BleDevice bleDevice);
+    }
+
     /**
      * 扫描完成的回调监听
      */
@@ -168,6 +196,19 @@ public class BleInterface {
         void onReceiveNotification(byte[] values);
     }
 
+    /**
+     * 收到远端设备的通知的回调接口（使用可回收的缓冲区，不会为每个数据包创建新的数组）
+     */
+    public interface OnReceiveNotificationBufferListener {
+        /**
+         * 收到远端设备的通知
+         * 回调返回后缓冲区会被回收，如果需要在之后继续使用，需要调用{@link NotificationBuffer#retain()}
+         *
+         * @param notificationBuffer 通知数据的缓冲区
+         */
+        void onReceiveNotification(NotificationBuffer notificationBuffer);
+    }
+
     /**
      * 向远端设备写入数据的回调
      */
@@ -238,6 +279,31 @@ public class BleInterface {
         void onMtuChanged(int mtu);
     }
 
+    /**
+     * GATT操作队列中的操作完成时的回调
+     */
+    public interface OnGattOperationCompleteListener {
+        /**
+         * 操作完成（成功、失败、超时或被取消）
+         *
+         * @param gattOperationFuture 操作结果
+         */
+        void onGattOperationComplete(GattOperationFuture gattOperationFuture);
+    }
+
+    /**
+     * 分包写入大数据时的进度回调
+     */
+    public interface OnLargeDataWriteProgressListener {
+        /**
+         * 一个数据包写入成功
+         *
+         * @param writtenLength 已经写入的字节数
+         * @param totalLength   数据总字节数
+         */
+        void onLargeDataWriteProgress(int writtenLength, int totalLength);
+    }
+
     /**
      * 蓝牙开关状态改变时的回调
      */
@@ -398,4 +464,66 @@ public class BleInterface {
          */
         void onPhyRead(BluetoothDevice device, int txPhy, int rxPhy, int status);
     }
+
+    /**
+     * 日志输出目标
+     */
+    public interface LogSink {
+        /**
+         * 输出一条日志（只有达到当前日志级别的日志才会调用此函数，可能在任意线程中调用）
+         *
+         * @param level     日志级别，BleConstants中定义的LOG_LEVEL_开头的常量
+         * @param tag       tag
+         * @param message   日志信息
+         * @param throwable 异常，没有则为null
+         */
+        void log(int level, String tag, String message, Throwable throwable);
+    }
+
+    /**
+     * 多连接时每一次连接尝试结束的监听
+     */
+    public interface OnConnectAttemptListener {
+        /**
+         * 一次连接尝试结束（在蓝牙的Binder线程或者库内的定时线程中执行，不能执行耗时操作）
+         *
+         * @param address   设备地址
+         * @param attempt   第几次尝试（从1开始）
+         * @param result    结果：{@link BleConstants#CONNECT_ATTEMPT_SUCCEED}、{@link BleConstants#CONNECT_ATTEMPT_FAILED}、{@link BleConstants#CONNECT_ATTEMPT_TIMEOUT}
+         * @param status    连接状态改变时的GATT状态码，超时时为-1
+         * @param duration  本次尝试的耗时（毫秒）
+         * @param willRetry 是否还会重试
+         */
+        void onConnectAttempt(String address, int attempt, int result, int status, long duration, boolean willRetry);
+    }
+
+    /**
+     * 重新连接后订阅恢复完成的监听
+     */
+    public interface OnSubscriptionsRestoredListener {
+        /**
+         * 服务发现完成后，之前打开的通知与指示全部重新打开（在蓝牙的Binder线程中执行，不能执行耗时操作）。
+         * 没有订阅时不会回调
+         *
+         * @param address  设备地址
+         * @param restored 恢复成功的订阅数量
+         * @param failed   恢复失败的订阅数量（远端设备已经没有该特征，或者写入失败）
+         */
+        void onSubscriptionsRestored(String address, int restored, int failed);
+    }
+
+    /**
+     * 按特征登记的通知监听
+     */
+    public interface OnCharacteristicNotificationListener {
+        /**
+         * 收到登记的特征的通知。
+         * 与连接回调一样按照设置的回调分发方式执行（单连接时按照回调线程池，多连接时按照回调分发方式）。
+         * 回调返回后缓冲区会被回收，如果需要在之后继续使用，需要调用{@link NotificationBuffer#retain()}
+         *
+         * @param address            设备地址
+         * @param notificationBuffer 通知数据的缓冲区
+         */
+        void onCharacteristicNotification(String address, NotificationBuffer notificationBuffer);
+    }
 }
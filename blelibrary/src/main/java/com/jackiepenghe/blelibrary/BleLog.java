@@ -0,0 +1,369 @@
+package com.jackiepenghe.blelibrary;
+
+/**
+ * 库的日志工具
+ * 先判断日志级别，再组装日志信息：日志信息中的"{}"会按顺序替换为参数，byte[]参数输出为十六进制字符串。
+ * 级别不够时只有一次比较，不会拼接字符串，也不会格式化数据。
+ * 日志默认输出到logcat，可以通过{@link #setLogSink(BleInterface.LogSink)}输出到文件或者内存中
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class BleLog {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 参数占位符
+     */
+    private static final String PLACEHOLDER = "{}";
+
+    /*-------------------------静态变量-------------------------*/
+
+    /**
+     * 当前的日志级别
+     */
+    private static volatile int level = BleConstants.LOG_LEVEL_NONE;
+    /**
+     * 日志输出目标
+     */
+    private static volatile BleInterface.LogSink logSink = new LogcatLogSink();
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 不允许创建实例
+     */
+    private BleLog() {
+    }
+
+    /*-------------------------公开静态函数-------------------------*/
+
+    /**
+     * 设置日志级别，低于此级别的日志不会输出
+     *
+     * @param level BleConstants中定义的LOG_LEVEL_开头的常量，默认为{@link BleConstants#LOG_LEVEL_NONE}
+     */
+    public static void setLevel(int level) {
+        BleLog.level = level;
+    }
+
+    /**
+     * 获取当前的日志级别
+     *
+     * @return 日志级别
+     */
+    public static int getLevel() {
+        return level;
+    }
+
+    /**
+     * 判断某个级别的日志是否会输出，组装日志信息的代价较高时，可以先用此函数判断
+     *
+     * @param level 日志级别
+     * @return true表示会输出
+     */
+    public static boolean isLoggable(int level) {
+        return level >= BleLog.level;
+    }
+
+    /**
+     * 设置日志输出目标
+     *
+     * @param logSink 日志输出目标，为null时恢复为输出到logcat
+     */
+    public static void setLogSink(BleInterface.LogSink logSink) {
+        BleLog.logSink = logSink == null ? new LogcatLogSink() : logSink;
+    }
+
+    /**
+     * 获取日志输出目标
+     *
+     * @return 日志输出目标
+     */
+    public static BleInterface.LogSink getLogSink() {
+        return logSink;
+    }
+
+    /**
+     * 输出VERBOSE日志
+     *
+     * @param tag     tag
+     * @param message 日志信息
+     */
+    public static void v(String tag, String message) {
+        if (isLoggable(BleConstants.LOG_LEVEL_VERBOSE)) {
+            logSink.log(BleConstants.LOG_LEVEL_VERBOSE, tag, message, null);
+        }
+    }
+
+    /**
+     * 输出VERBOSE日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被替换为参数
+     * @param arg    参数
+     */
+    public static void v(String tag, String format, Object arg) {
+        if (isLoggable(BleConstants.LOG_LEVEL_VERBOSE)) {
+            logSink.log(BleConstants.LOG_LEVEL_VERBOSE, tag, format(format, arg, null, null, 1), null);
+        }
+    }
+
+    /**
+     * 输出VERBOSE日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被按顺序替换为参数
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void v(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(BleConstants.LOG_LEVEL_VERBOSE)) {
+            logSink.log(BleConstants.LOG_LEVEL_VERBOSE, tag, format(format, arg1, arg2, null, 2), null);
+        }
+    }
+
+    /**
+     * 输出DEBUG日志
+     *
+     * @param tag     tag
+     * @param message 日志信息
+     */
+    public static void d(String tag, String message) {
+        if (isLoggable(BleConstants.LOG_LEVEL_DEBUG)) {
+            logSink.log(BleConstants.LOG_LEVEL_DEBUG, tag, message, null);
+        }
+    }
+
+    /**
+     * 输出DEBUG日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被替换为参数
+     * @param arg    参数
+     */
+    public static void d(String tag, String format, Object arg) {
+        if (isLoggable(BleConstants.LOG_LEVEL_DEBUG)) {
+            logSink.log(BleConstants.LOG_LEVEL_DEBUG, tag, format(format, arg, null, null, 1), null);
+        }
+    }
+
+    /**
+     * 输出DEBUG日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被按顺序替换为参数
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(BleConstants.LOG_LEVEL_DEBUG)) {
+            logSink.log(BleConstants.LOG_LEVEL_DEBUG, tag, format(format, arg1, arg2, null, 2), null);
+        }
+    }
+
+    /**
+     * 输出INFO日志
+     *
+     * @param tag     tag
+     * @param message 日志信息
+     */
+    public static void i(String tag, String message) {
+        if (isLoggable(BleConstants.LOG_LEVEL_INFO)) {
+            logSink.log(BleConstants.LOG_LEVEL_INFO, tag, message, null);
+        }
+    }
+
+    /**
+     * 输出INFO日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被替换为参数
+     * @param arg    参数
+     */
+    public static void i(String tag, String format, Object arg) {
+        if (isLoggable(BleConstants.LOG_LEVEL_INFO)) {
+            logSink.log(BleConstants.LOG_LEVEL_INFO, tag, format(format, arg, null, null, 1), null);
+        }
+    }
+
+    /**
+     * 输出INFO日志
+     * 参数较多时使用，调用时会创建参数数组，频繁调用的地方应先用{@link #isLoggable(int)}判断
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被按顺序替换为参数
+     * @param args   参数
+     */
+    public static void i(String tag, String format, Object... args) {
+        if (isLoggable(BleConstants.LOG_LEVEL_INFO)) {
+            logSink.log(BleConstants.LOG_LEVEL_INFO, tag, format(format, args), null);
+        }
+    }
+
+    /**
+     * 输出WARN日志
+     *
+     * @param tag     tag
+     * @param message 日志信息
+     */
+    public static void w(String tag, String message) {
+        if (isLoggable(BleConstants.LOG_LEVEL_WARN)) {
+            logSink.log(BleConstants.LOG_LEVEL_WARN, tag, message, null);
+        }
+    }
+
+    /**
+     * 输出WARN日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被替换为参数
+     * @param arg    参数
+     */
+    public static void w(String tag, String format, Object arg) {
+        if (isLoggable(BleConstants.LOG_LEVEL_WARN)) {
+            logSink.log(BleConstants.LOG_LEVEL_WARN, tag, format(format, arg, null, null, 1), null);
+        }
+    }
+
+    /**
+     * 输出WARN日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被按顺序替换为参数
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(BleConstants.LOG_LEVEL_WARN)) {
+            logSink.log(BleConstants.LOG_LEVEL_WARN, tag, format(format, arg1, arg2, null, 2), null);
+        }
+    }
+
+    /**
+     * 输出WARN日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被按顺序替换为参数
+     * @param arg1   参数1
+     * @param arg2   参数2
+     * @param arg3   参数3
+     */
+    public static void w(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(BleConstants.LOG_LEVEL_WARN)) {
+            logSink.log(BleConstants.LOG_LEVEL_WARN, tag, format(format, arg1, arg2, arg3, 3), null);
+        }
+    }
+
+    /**
+     * 输出ERROR日志
+     *
+     * @param tag     tag
+     * @param message 日志信息
+     */
+    public static void e(String tag, String message) {
+        if (isLoggable(BleConstants.LOG_LEVEL_ERROR)) {
+            logSink.log(BleConstants.LOG_LEVEL_ERROR, tag, message, null);
+        }
+    }
+
+    /**
+     * 输出ERROR日志
+     *
+     * @param tag       tag
+     * @param message   日志信息
+     * @param throwable 异常
+     */
+    public static void e(String tag, String message, Throwable throwable) {
+        if (isLoggable(BleConstants.LOG_LEVEL_ERROR)) {
+            logSink.log(BleConstants.LOG_LEVEL_ERROR, tag, message, throwable);
+        }
+    }
+
+    /**
+     * 输出ERROR日志
+     *
+     * @param tag    tag
+     * @param format 日志信息，"{}"会被替换为参数
+     * @param arg    参数
+     */
+    public static void e(String tag, String format, Object arg) {
+        if (isLoggable(BleConstants.LOG_LEVEL_ERROR)) {
+            logSink.log(BleConstants.LOG_LEVEL_ERROR, tag, format(format, arg, null, null, 1), null);
+        }
+    }
+
+    /*-------------------------私有静态函数-------------------------*/
+
+    /**
+     * 将日志信息中的"{}"按顺序替换为参数
+     *
+     * @param format   日志信息
+     * @param arg1     参数1
+     * @param arg2     参数2
+     * @param arg3     参数3
+     * @param argCount 参数个数
+     * @return 组装后的日志信息
+     */
+    private static String format(String format, Object arg1, Object arg2, Object arg3, int argCount) {
+        if (format == null) {
+            return null;
+        }
+        StringBuilder stringBuilder = new StringBuilder(format.length() + 32);
+        int start = 0;
+        for (int i = 0; i < argCount; i++) {
+            int index = format.indexOf(PLACEHOLDER, start);
+            if (index < 0) {
+                break;
+            }
+            stringBuilder.append(format, start, index);
+            appendArg(stringBuilder, i == 0 ? arg1 : i == 1 ? arg2 : arg3);
+            start = index + PLACEHOLDER.length();
+        }
+        stringBuilder.append(format, start, format.length());
+        return stringBuilder.toString();
+    }
+
+    /**
+     * 将日志信息中的"{}"按顺序替换为参数
+     *
+     * @param format 日志信息
+     * @param args   参数
+     * @return 组装后的日志信息
+     */
+    private static String format(String format, Object[] args) {
+        if (format == null || args == null) {
+            return format;
+        }
+        StringBuilder stringBuilder = new StringBuilder(format.length() + 32);
+        int start = 0;
+        for (Object arg : args) {
+            int index = format.indexOf(PLACEHOLDER, start);
+            if (index < 0) {
+                break;
+            }
+            stringBuilder.append(format, start, index);
+            appendArg(stringBuilder, arg);
+            start = index + PLACEHOLDER.length();
+        }
+        stringBuilder.append(format, start, format.length());
+        return stringBuilder.toString();
+    }
+
+    /**
+     * 将参数追加到日志信息中
+     *
+     * @param stringBuilder 日志信息
+     * @param arg           参数
+     */
+    private static void appendArg(StringBuilder stringBuilder, Object arg) {
+        if (arg instanceof byte[]) {
+            byte[] bytes = (byte[]) arg;
+            ByteCodec.appendHex(stringBuilder, bytes, 0, bytes.length, ' ');
+        } else {
+            stringBuilder.append(arg);
+        }
+    }
+}
@@ -34,6 +34,54 @@ public class BleMultiConnector {
      * 多连接服务
      */
     private BluetoothMultiService bluetoothMultiService;
+    /**
+     * GATT回调的分发方式
+     */
+    private int dispatchMode = BleConstants.DISPATCH_MODE_MAIN_THREAD;
+    /**
+     * 服务发现完成后是否自动协商最大的MTU
+     */
+    private boolean autoRequestMtu = true;
+    /**
+     * 服务发现完成后是否自动切换到LE 2M PHY
+     */
+    private boolean autoRequestLe2MPhy = true;
+    /**
+     * 最大连接数
+     */
+    private int maxConnections = BleConnectionPool.DEFAULT_MAX_CONNECTIONS;
+    /**
+     * 同时进行的最大连接尝试数量
+     */
+    private int maxConnecting = BleConnectScheduler.DEFAULT_MAX_CONNECTING;
+    /**
+     * 连接超时时间
+     */
+    private long connectTimeout = BleConnectionStateMachine.DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * 服务发现超时时间
+     */
+    private long discoverTimeout = BleConnectionStateMachine.DEFAULT_DISCOVER_TIMEOUT;
+    /**
+     * 断开连接超时时间
+     */
+    private long disconnectTimeout = BleConnectionStateMachine.DEFAULT_DISCONNECT_TIMEOUT;
+    /**
+     * 直连的重试次数用完后是否转为自动连接
+     */
+    private boolean autoConnectFallback = true;
+    /**
+     * 连接失败后的最大重试次数
+     */
+    private int connectMaxRetries = BleConnectScheduler.DEFAULT_MAX_RETRIES;
+    /**
+     * 连接尝试结束的监听
+     */
+    private BleInterface.OnConnectAttemptListener onConnectAttemptListener;
+    /**
+     * 订阅恢复完成的监听
+     */
+    private BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener;
 
     /*------------------------构造函数----------------------------*/
 
@@ -102,6 +150,151 @@ public class BleMultiConnector {
         return bluetoothMultiService != null && bluetoothMultiService.writeData(address, serviceUUID, characteristicUUID, values);
     }
 
+    /**
+     * 分包写入大数据
+     *
+     * @param address                          设备地址
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param values                           数据
+     * @param withoutResponse                  是否使用无回复的方式写入（流模式）
+     * @param onLargeDataWriteProgressListener 进度回调
+     * @return 操作结果，null表示无法发起操作
+     */
+    GattOperationFuture writeLargeData(String address, String serviceUUID, String characteristicUUID, byte[] values, boolean withoutResponse, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        if (bluetoothMultiService == null) {
+            return null;
+        }
+        return bluetoothMultiService.writeLargeData(address, serviceUUID, characteristicUUID, values, withoutResponse, onLargeDataWriteProgressListener);
+    }
+
+    /**
+     * 获取设备的通知数据流
+     *
+     * @param address 设备地址
+     * @return 通知数据流，设备未连接时返回null
+     */
+    NotificationStreamRegistry getNotificationStreamRegistry(String address) {
+        if (bluetoothMultiService == null) {
+            return null;
+        }
+        BleConnectionEntry bleConnectionEntry = bluetoothMultiService.getConnectionEntry(address);
+        if (bleConnectionEntry == null) {
+            return null;
+        }
+        return bleConnectionEntry.getNotificationStreamRegistry();
+    }
+
+    /**
+     * 获取设备的按特征登记的通知监听
+     *
+     * @param address 设备地址
+     * @return 通知路由表，设备未连接时返回null
+     */
+    NotificationRouter getNotificationRouter(String address) {
+        if (bluetoothMultiService == null) {
+            return null;
+        }
+        BleConnectionEntry bleConnectionEntry = bluetoothMultiService.getConnectionEntry(address);
+        if (bleConnectionEntry == null) {
+            return null;
+        }
+        return bleConnectionEntry.getNotificationRouter();
+    }
+
+    /**
+     * 获取设备的特征读取缓存
+     *
+     * @param address 设备地址
+     * @return 特征读取缓存，设备未连接时返回null
+     */
+    CharacteristicReadCache getReadCache(String address) {
+        if (bluetoothMultiService == null) {
+            return null;
+        }
+        BleConnectionEntry bleConnectionEntry = bluetoothMultiService.getConnectionEntry(address);
+        if (bleConnectionEntry == null) {
+            return null;
+        }
+        return bleConnectionEntry.getReadCache();
+    }
+
+    /**
+     * 获取设备当前连接的GATT操作队列
+     *
+     * @param address 设备地址
+     * @return GATT操作队列，设备未连接时返回null
+     */
+    GattOperationQueue getGattOperationQueue(String address) {
+        if (bluetoothMultiService == null) {
+            return null;
+        }
+        BleConnectionEntry bleConnectionEntry = bluetoothMultiService.getConnectionEntry(address);
+        if (bleConnectionEntry == null) {
+            return null;
+        }
+        return bleConnectionEntry.getGattOperationQueue();
+    }
+
+    /**
+     * 获取设备的连接优先级管理
+     *
+     * @param address 设备地址
+     * @return 连接优先级管理，设备未连接时返回null
+     */
+    ConnectionPriorityManager getConnectionPriorityManager(String address) {
+        GattOperationQueue gattOperationQueue = getGattOperationQueue(address);
+        if (gattOperationQueue == null) {
+            return null;
+        }
+        return gattOperationQueue.getConnectionPriorityManager();
+    }
+
+    /**
+     * 获取设备当前连接的MTU
+     *
+     * @param address 设备地址
+     * @return MTU
+     */
+    int getMtu(String address) {
+        if (bluetoothMultiService == null) {
+            return GattOperationQueue.DEFAULT_MTU;
+        }
+        BleConnectionEntry bleConnectionEntry = bluetoothMultiService.getConnectionEntry(address);
+        if (bleConnectionEntry == null) {
+            return GattOperationQueue.DEFAULT_MTU;
+        }
+        return bleConnectionEntry.getMtu();
+    }
+
+    /**
+     * 获取设备的连接状态
+     *
+     * @param address 设备地址
+     * @return BleConstants中定义的CONNECTION_STATE_开头的常量
+     */
+    int getConnectionState(String address) {
+        if (bluetoothMultiService == null) {
+            return BleConstants.CONNECTION_STATE_IDLE;
+        }
+        return bluetoothMultiService.getConnectionState(address);
+    }
+
+    /**
+     * 解析设备的特征句柄
+     *
+     * @param address            设备地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征句柄，找不到特征时返回null
+     */
+    BleCharacteristicHandle getCharacteristicHandle(String address, String serviceUUID, String characteristicUUID) {
+        if (bluetoothMultiService == null) {
+            return null;
+        }
+        return bluetoothMultiService.getCharacteristicHandle(address, serviceUUID, characteristicUUID);
+    }
+
     /**
      * 读取数据
      *
@@ -178,6 +371,20 @@ public class BleMultiConnector {
      */
     void setBluetoothMultiService(BluetoothMultiService bluetoothMultiService) {
         this.bluetoothMultiService = bluetoothMultiService;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setDispatchMode(dispatchMode);
+            bluetoothMultiService.setAutoRequestMtu(autoRequestMtu);
+            bluetoothMultiService.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+            bluetoothMultiService.setMaxConnections(maxConnections);
+            bluetoothMultiService.setMaxConnecting(maxConnecting);
+            bluetoothMultiService.setConnectTimeout(connectTimeout);
+            bluetoothMultiService.setDiscoverTimeout(discoverTimeout);
+            bluetoothMultiService.setDisconnectTimeout(disconnectTimeout);
+            bluetoothMultiService.setConnectMaxRetries(connectMaxRetries);
+            bluetoothMultiService.setAutoConnectFallback(autoConnectFallback);
+            bluetoothMultiService.setOnConnectAttemptListener(onConnectAttemptListener);
+            bluetoothMultiService.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+        }
     }
 
     /*------------------------公开函数----------------------------*/
@@ -270,11 +477,240 @@ public class BleMultiConnector {
      * @return true表示请求发起成功
      */
     public boolean connect(@NonNull BluetoothDevice bluetoothDevice, @NonNull BaseConnectCallback baseConnectCallback, boolean autoConnect) {
+        return connect(bluetoothDevice, baseConnectCallback, autoConnect, BleConstants.CONNECT_PRIORITY_NORMAL);
+    }
+
+    /**
+     * 发起一个连接
+     * 连接尝试由连接调度器依次发起，失败或者超时后自动退避重试，参考{@link #setMaxConnecting(int)}、{@link #setConnectMaxRetries(int)}。
+     * 同时打开的连接数达到上限时，先淘汰最久未使用的空闲连接（被淘汰的设备会收到{@link BaseConnectCallback#onGattClosed(String)}，
+     * 之后再访问该设备时自动重新连接）；没有可以淘汰的连接时，请求按优先级排队，有名额时再发起
+     *
+     * @param bluetoothDevice     设备
+     * @param baseConnectCallback 连接回调
+     * @param autoConnect         自动重连标识
+     * @param priority            排队时的优先级：{@link BleConstants#CONNECT_PRIORITY_LOW}、{@link BleConstants#CONNECT_PRIORITY_NORMAL}、{@link BleConstants#CONNECT_PRIORITY_HIGH}
+     * @return true表示请求发起成功或者已经加入等待队列
+     */
+    public boolean connect(@NonNull BluetoothDevice bluetoothDevice, @NonNull BaseConnectCallback baseConnectCallback, boolean autoConnect, int priority) {
+        if (priority != BleConstants.CONNECT_PRIORITY_LOW
+                && priority != BleConstants.CONNECT_PRIORITY_NORMAL
+                && priority != BleConstants.CONNECT_PRIORITY_HIGH) {
+            throw new IllegalArgumentException("unknown connect priority " + priority);
+        }
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            return bluetoothMultiService != null && bluetoothMultiService.isInitializeFinished() && bluetoothMultiService.connectDevice(bluetoothDevice, baseConnectCallback, autoConnect);
+            return bluetoothMultiService != null && bluetoothMultiService.isInitializeFinished() && bluetoothMultiService.connectDevice(bluetoothDevice, baseConnectCallback, autoConnect, priority);
         }else {
-            return bluetoothMultiService != null && bluetoothMultiService.isInitializeFinished() && bluetoothMultiService.connectAddress(bluetoothDevice.getAddress(), baseConnectCallback, autoConnect);
+            return bluetoothMultiService != null && bluetoothMultiService.isInitializeFinished() && bluetoothMultiService.connectAddress(bluetoothDevice.getAddress(), baseConnectCallback, autoConnect, priority);
+        }
+    }
+
+    /**
+     * 设置同时打开的最大连接数（默认为7，系统同时能打开的GATT客户端数量有限，超过后连接会失败）
+     *
+     * @param maxConnections 最大连接数
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        this.maxConnections = maxConnections;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setMaxConnections(maxConnections);
+        }
+    }
+
+    /**
+     * 获取同时打开的最大连接数
+     *
+     * @return 最大连接数
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * 设置同时进行的最大连接尝试数量（默认为1）
+     * 系统的蓝牙控制器同一时间通常只能处理一个直连请求，同时发起更多的连接只会在系统中排队，并且更容易失败
+     *
+     * @param maxConnecting 最大数量
+     */
+    public void setMaxConnecting(int maxConnecting) {
+        if (maxConnecting <= 0) {
+            throw new IllegalArgumentException("maxConnecting must be positive");
+        }
+        this.maxConnecting = maxConnecting;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setMaxConnecting(maxConnecting);
+        }
+    }
+
+    /**
+     * 设置连接超时时间（默认为10秒）：发起直连后超过这个时间没有连接上时，关闭GATT客户端并按退避时间重试
+     *
+     * @param connectTimeout 超时时间（毫秒）
+     */
+    public void setConnectTimeout(long connectTimeout) {
+        if (connectTimeout <= 0) {
+            throw new IllegalArgumentException("connectTimeout must be positive");
+        }
+        this.connectTimeout = connectTimeout;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setConnectTimeout(connectTimeout);
+        }
+    }
+
+    /**
+     * 设置服务发现超时时间（默认为10秒）：连接上之后超过这个时间没有完成服务发现时，按一次失败的连接尝试处理
+     *
+     * @param discoverTimeout 超时时间（毫秒）
+     */
+    public void setDiscoverTimeout(long discoverTimeout) {
+        if (discoverTimeout <= 0) {
+            throw new IllegalArgumentException("discoverTimeout must be positive");
+        }
+        this.discoverTimeout = discoverTimeout;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setDiscoverTimeout(discoverTimeout);
+        }
+    }
+
+    /**
+     * 设置断开连接超时时间（默认为3秒）：发起断开后超过这个时间没有收到断开的回调时，强制关闭GATT客户端并回调断开连接
+     *
+     * @param disconnectTimeout 超时时间（毫秒）
+     */
+    public void setDisconnectTimeout(long disconnectTimeout) {
+        if (disconnectTimeout <= 0) {
+            throw new IllegalArgumentException("disconnectTimeout must be positive");
+        }
+        this.disconnectTimeout = disconnectTimeout;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setDisconnectTimeout(disconnectTimeout);
+        }
+    }
+
+    /**
+     * 设置直连的重试次数用完后是否转为自动连接（默认为true），自动连接由系统在后台等待设备出现，没有超时
+     *
+     * @param autoConnectFallback true表示转为自动连接，false表示关闭设备的GATT并回调{@link BaseConnectCallback#onGattClosed(String)}
+     */
+    public void setAutoConnectFallback(boolean autoConnectFallback) {
+        this.autoConnectFallback = autoConnectFallback;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setAutoConnectFallback(autoConnectFallback);
+        }
+    }
+
+    /**
+     * 设置连接失败（例如状态码133）或者超时后的最大重试次数（默认为3），重试之间的等待时间按指数增长并带有随机抖动。
+     * 重试次数用完后按{@link #setAutoConnectFallback(boolean)}的设置转为自动连接或者关闭设备的GATT
+     *
+     * @param connectMaxRetries 最大重试次数，0表示不重试
+     */
+    public void setConnectMaxRetries(int connectMaxRetries) {
+        if (connectMaxRetries < 0) {
+            throw new IllegalArgumentException("connectMaxRetries must not be negative");
+        }
+        this.connectMaxRetries = connectMaxRetries;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setConnectMaxRetries(connectMaxRetries);
+        }
+    }
+
+    /**
+     * 设置连接尝试结束的监听，每一次连接尝试（包括重试）结束时回调结果与耗时
+     *
+     * @param onConnectAttemptListener 监听
+     */
+    public void setOnConnectAttemptListener(BleInterface.OnConnectAttemptListener onConnectAttemptListener) {
+        this.onConnectAttemptListener = onConnectAttemptListener;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setOnConnectAttemptListener(onConnectAttemptListener);
+        }
+    }
+
+    /**
+     * 设置订阅恢复完成的监听
+     * 每个设备打开过的通知与指示会被记录下来，重新连接并完成服务发现后自动重新打开，全部完成后每个设备回调一次此监听。
+     * 关闭通知或者关闭设备后不再恢复；有订阅的设备不会被连接池淘汰
+     *
+     * @param onSubscriptionsRestoredListener 监听
+     */
+    public void setOnSubscriptionsRestoredListener(BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        this.onSubscriptionsRestoredListener = onSubscriptionsRestoredListener;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+        }
+    }
+
+    /**
+     * 获取等待发起的连接请求数量（名额已满，或者正在进行的连接尝试已达上限）
+     *
+     * @return 数量
+     */
+    public int getPendingConnectCount() {
+        BluetoothMultiService bluetoothMultiService = this.bluetoothMultiService;
+        return bluetoothMultiService == null ? 0 : bluetoothMultiService.getPendingConnectCount();
+    }
+
+    /**
+     * 设置连接回调的分发方式，应当在发起连接之前设置
+     * <p>
+     * {@link BleConstants#DISPATCH_MODE_MAIN_THREAD}：在主线程中执行回调（默认）<br>
+     * {@link BleConstants#DISPATCH_MODE_PER_DEVICE}：每个设备的回调在共用线程池中按顺序执行，不同设备之间并行，回调中需要自行切换到主线程更新界面<br>
+     * {@link BleConstants#DISPATCH_MODE_DIRECT}：直接在系统的蓝牙回调线程中执行，回调中不能执行耗时操作
+     *
+     * @param dispatchMode 分发方式
+     */
+    public void setDispatchMode(int dispatchMode) {
+        if (dispatchMode != BleConstants.DISPATCH_MODE_MAIN_THREAD
+                && dispatchMode != BleConstants.DISPATCH_MODE_PER_DEVICE
+                && dispatchMode != BleConstants.DISPATCH_MODE_DIRECT) {
+            throw new IllegalArgumentException("unknown dispatch mode " + dispatchMode);
+        }
+        this.dispatchMode = dispatchMode;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setDispatchMode(dispatchMode);
+        }
+    }
+
+    /**
+     * 设置服务发现完成后是否自动协商最大的MTU（默认开启，需要API 21以上）
+     *
+     * @param autoRequestMtu true表示自动协商
+     */
+    public void setAutoRequestMtu(boolean autoRequestMtu) {
+        this.autoRequestMtu = autoRequestMtu;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setAutoRequestMtu(autoRequestMtu);
+        }
+    }
+
+    /**
+     * 设置服务发现完成后是否自动切换到LE 2M PHY（默认开启，需要API 26以上并且本机支持，远端不支持时保持LE 1M PHY）
+     *
+     * @param autoRequestLe2MPhy true表示自动切换
+     */
+    public void setAutoRequestLe2MPhy(boolean autoRequestLe2MPhy) {
+        this.autoRequestLe2MPhy = autoRequestLe2MPhy;
+        if (bluetoothMultiService != null) {
+            bluetoothMultiService.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+        }
+    }
+
+    /**
+     * 获取设备缓存的GATT布局（上一次服务发现的结果），连接之前或者服务发现完成之前就可以查询设备有哪些服务与特征
+     *
+     * @param address 设备地址
+     * @return GATT布局，该设备没有缓存时返回null
+     */
+    public GattLayout getCachedGattLayout(String address) {
+        Context context = this.context;
+        if (context == null) {
+            return null;
         }
+        return GattLayoutCache.getInstance(context).get(address);
     }
 
     /**
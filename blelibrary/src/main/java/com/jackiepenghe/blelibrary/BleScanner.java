@@ -16,10 +16,12 @@ import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * BLE扫描器
@@ -43,6 +45,84 @@ public class BleScanner {
      */
     private ArrayList<BleDevice> mScanResults = new ArrayList<>();
 
+    /**
+     * 扫描结果的索引（以设备地址为键），用于常数时间判断设备是否已经在扫描结果中。只在扫描结果处理线程中使用
+     */
+    private final BleDeviceIndex mScanResultIndex = new BleDeviceIndex();
+
+    /**
+     * 扫描结果列表的索引，与mScanResults中的设备一致，用于上报时判断新设备是否已经在列表中。只在回调线程中使用
+     */
+    private final BleDeviceIndex mDeliveredIndex = new BleDeviceIndex();
+
+    /**
+     * 上一次上报后扫描结果列表的长度，与当前长度不同时说明列表在外部被修改过。只在回调线程中使用
+     */
+    private int deliveredResultsSize;
+
+    /**
+     * 扫描结果处理线程，BleDevice的创建、过滤与去重都在这个线程中进行
+     */
+    private HandlerThread processThread;
+
+    /**
+     * 扫描结果处理线程的Handler
+     */
+    private volatile Handler processHandler;
+
+    /**
+     * 执行扫描回调的Executor，默认在创建扫描器的线程（通常是主线程）中执行
+     */
+    private volatile Executor callbackExecutor = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            Handler handler = mHandler;
+            if (handler != null) {
+                handler.post(command);
+            }
+        }
+    };
+
+    /**
+     * 扫描结果过滤器
+     */
+    private volatile BleInterface.ScanResultFilter scanResultFilter;
+
+    /**
+     * 扫描结果的版本，清空扫描结果后增加，用于丢弃清空前的结果
+     */
+    private volatile int resultsGeneration;
+
+    /**
+     * 等待上报的设备（只在扫描结果处理线程中使用）
+     */
+    private final ArrayList<BleDevice> pendingFoundDevices = new ArrayList<>();
+
+    /**
+     * 等待上报的设备中新发现的设备（只在扫描结果处理线程中使用）
+     */
+    private final ArrayList<BleDevice> pendingNewDevices = new ArrayList<>();
+
+    /**
+     * 等待上报的设备的索引，用于合并同一个设备的多次扫描结果（只在扫描结果处理线程中使用）
+     */
+    private final BleDeviceIndex pendingIndex = new BleDeviceIndex();
+
+    /**
+     * 是否已经安排了上报任务（只在扫描结果处理线程中使用）
+     */
+    private boolean flushScheduled;
+
+    /**
+     * 上报扫描结果的任务
+     */
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushFoundDevices();
+        }
+    };
+
     /**
      * 检测蓝牙状态的广播接收者
      */
@@ -78,6 +158,11 @@ public class BleScanner {
      */
     private long scanPeriod = 20000;
 
+    /**
+     * 连续扫描时，两次扫描之间的空闲时间
+     */
+    private long scanIdleTime;
+
     /**
      * 系统的扫描回调(API 20 及以下)
      */
@@ -104,7 +189,7 @@ public class BleScanner {
     private BleInterface.OnScanFindOneNewDeviceListener onScanFindOneNewDeviceListener = new BleInterface.OnScanFindOneNewDeviceListener() {
         @Override
         public void onScanFindOneNewDevice(BleDevice bleDevice) {
-            mScanResults.add(bleDevice);
+            //新设备已经被加入扫描结果中，这里不需要再做处理
         }
     };
 
@@ -123,6 +208,21 @@ public class BleScanner {
      */
     private ScanSettings scanSettings;
 
+    /**
+     * 批量扫描的上报延时（毫秒），小于等于0表示每扫描到一个设备就上报一次
+     */
+    private volatile long reportDelay;
+
+    /**
+     * 当前扫描是否由系统进行批量上报
+     */
+    private volatile boolean hardwareBatching;
+
+    /**
+     * 批量扫描时，一批设备的回调
+     */
+    private BleInterface.OnScanFindDevicesBatchListener onScanFindDevicesBatchListener;
+
     private BleInterface.OnScanCompleteListener onScanCompleteListener = new BleInterface.OnScanCompleteListener() {
         @Override
         public void onScanComplete() {
@@ -193,24 +293,15 @@ public class BleScanner {
                 if (scanRecord == null) {
                     return;
                 }
-                mHandler.post(new Runnable() {
+                String name = device.getName();
+                if (null == name || "".equals(name)) {
+                    name = context.getString(R.string.un_named);
+                }
+                final RawScanResult rawScanResult = new RawScanResult(device, rssi, scanRecord, name, null);
+                postToProcessThread(new Runnable() {
                     @Override
                     public void run() {
-                        String name = device.getName();
-                        if (null == name || "".equals(name)) {
-                            name = context.getString(R.string.un_named);
-                        }
-                        BleDevice bleDevice = new BleDevice(device, rssi, scanRecord, name);
-                        if (mOnScanFindOneDeviceListener != null) {
-                            mOnScanFindOneDeviceListener.onScanFindOneDevice(bleDevice);
-                        }
-                        if (mScanResults == null){
-                            return;
-                        }
-                        if (!mScanResults.contains(bleDevice)) {
-                            mScanResults.add(bleDevice);
-                            onScanFindOneNewDeviceListener.onScanFindOneNewDevice(bleDevice);
-                        }
+                        processScanResult(rawScanResult);
                     }
                 });
             }
@@ -233,46 +324,13 @@ public class BleScanner {
              * @param result       A Bluetooth LE scan result.
              */
             @Override
-            public void onScanResult(int callbackType, ScanResult result) {
-                Context context = BleScanner.this.context;
-                if (context == null) {
-                    return;
-                }
-                ScanRecord scanRecord = result.getScanRecord();
-
-                if (scanRecord == null) {
-                    return;
-                }
-
-                BluetoothDevice device = result.getDevice();
-                int rssi = result.getRssi();
-                byte[] scanRecordBytes;
-                String deviceName;
-                scanRecordBytes = scanRecord.getBytes();
-                deviceName = scanRecord.getDeviceName();
-                if (deviceName == null || "".equals(deviceName)) {
-                    deviceName = context.getString(R.string.un_named);
-                }
-                if (scanRecordBytes != null) {
-                    Tool.warnOut(TAG, "scanRecordByte = " + Tool.bytesToHexStr(scanRecordBytes));
-                }
-                final BleDevice bleDevice = new BleDevice(device, rssi, scanRecordBytes, deviceName);
-                bleDevice.setScanRecord(scanRecord);
-
-                mHandler.post(new Runnable() {
+            public void onScanResult(int callbackType, final ScanResult result) {
+                postToProcessThread(new Runnable() {
                     @Override
                     public void run() {
-                        if (mOnScanFindOneDeviceListener != null) {
-                            mOnScanFindOneDeviceListener.onScanFindOneDevice(bleDevice);
-                        }
-                        if (onScanFindOneNewDeviceListener != null) {
-                            if (mScanResults == null){
-                                return;
-                            }
-                            if (!mScanResults.contains(bleDevice)) {
-                                mScanResults.add(bleDevice);
-                                onScanFindOneNewDeviceListener.onScanFindOneNewDevice(bleDevice);
-                            }
+                        RawScanResult rawScanResult = toRawScanResult(result);
+                        if (rawScanResult != null) {
+                            processScanResult(rawScanResult);
                         }
                     }
                 });
@@ -284,8 +342,23 @@ public class BleScanner {
              * @param results List of scan results that are previously scanned.
              */
             @Override
-            public void onBatchScanResults(List<ScanResult> results) {
-                super.onBatchScanResults(results);
+            public void onBatchScanResults(final List<ScanResult> results) {
+                if (results == null || results.isEmpty()) {
+                    return;
+                }
+                postToProcessThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < results.size(); i++) {
+                            RawScanResult rawScanResult = toRawScanResult(results.get(i));
+                            if (rawScanResult != null) {
+                                processScanResult(rawScanResult);
+                            }
+                        }
+                        //系统批量上报的结果处理完后立即上报
+                        flushFoundDevices();
+                    }
+                });
             }
 
             /**
@@ -300,6 +373,218 @@ public class BleScanner {
         };
     }
 
+    /**
+     * 将系统的扫描结果转换为RawScanResult
+     *
+     * @param result 系统的扫描结果
+     * @return RawScanResult，扫描器已关闭或者没有广播包时返回null
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private RawScanResult toRawScanResult(ScanResult result) {
+        Context context = BleScanner.this.context;
+        if (context == null) {
+            return null;
+        }
+        ScanRecord scanRecord = result.getScanRecord();
+
+        if (scanRecord == null) {
+            return null;
+        }
+
+        byte[] scanRecordBytes = scanRecord.getBytes();
+        String deviceName = scanRecord.getDeviceName();
+        if (deviceName == null || "".equals(deviceName)) {
+            deviceName = context.getString(R.string.un_named);
+        }
+        if (scanRecordBytes != null) {
+            Tool.warnOut(TAG, "scanRecordByte = {}", scanRecordBytes);
+        }
+        return new RawScanResult(result.getDevice(), result.getRssi(), scanRecordBytes, deviceName, scanRecord);
+    }
+
+    /**
+     * 将任务交给扫描结果处理线程执行
+     *
+     * @param runnable 任务
+     */
+    private void postToProcessThread(Runnable runnable) {
+        Handler processHandler = this.processHandler;
+        if (processHandler != null) {
+            processHandler.post(runnable);
+        }
+    }
+
+    /**
+     * 处理一个扫描结果（在扫描结果处理线程中执行）
+     * 已经扫描到过的设备直接更新RSSI与广播包，新设备加入索引。结果先缓存起来，合并后再上报。
+     * 地址无法解析的设备不进入索引，每次都按新设备交给回调线程，由回调线程遍历列表去重
+     *
+     * @param rawScanResult 扫描结果
+     */
+    private void processScanResult(RawScanResult rawScanResult) {
+        long key = Tool.macAddressToLong(rawScanResult.device.getAddress());
+        BleDevice bleDevice = mScanResultIndex.get(key);
+        boolean newDevice = bleDevice == null;
+        if (newDevice) {
+            bleDevice = new BleDevice(rawScanResult.device, rawScanResult.rssi, rawScanResult.scanRecordBytes, rawScanResult.deviceName);
+        } else {
+            bleDevice.setRssi(rawScanResult.rssi);
+            bleDevice.setScanRecordBytes(rawScanResult.scanRecordBytes);
+        }
+        if (rawScanResult.scanRecord != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            bleDevice.setScanRecord(rawScanResult.scanRecord);
+        }
+
+        BleInterface.ScanResultFilter scanResultFilter = this.scanResultFilter;
+        if (scanResultFilter != null && !scanResultFilter.accept(bleDevice)) {
+            return;
+        }
+
+        if (newDevice) {
+            mScanResultIndex.put(key, bleDevice);
+            pendingNewDevices.add(bleDevice);
+        }
+        //同一次上报中同一个设备只出现一次
+        if (pendingIndex.get(key) == null) {
+            pendingIndex.put(key, bleDevice);
+            pendingFoundDevices.add(bleDevice);
+        }
+
+        Handler processHandler = this.processHandler;
+        if (!flushScheduled && processHandler != null) {
+            flushScheduled = true;
+            //系统不支持批量扫描时，由库内按上报延时合并扫描结果
+            long delay = reportDelay > 0 && !hardwareBatching ? reportDelay : 0;
+            processHandler.postDelayed(flushRunnable, delay);
+        }
+    }
+
+    /**
+     * 将缓存的扫描结果交给回调线程（在扫描结果处理线程中执行）
+     */
+    private void flushFoundDevices() {
+        Handler processHandler = this.processHandler;
+        if (processHandler != null) {
+            processHandler.removeCallbacks(flushRunnable);
+        }
+        flushScheduled = false;
+        if (pendingFoundDevices.isEmpty()) {
+            return;
+        }
+        final ArrayList<BleDevice> foundDevices = new ArrayList<>(pendingFoundDevices);
+        final ArrayList<BleDevice> newDevices = new ArrayList<>(pendingNewDevices);
+        final int generation = resultsGeneration;
+        pendingFoundDevices.clear();
+        pendingNewDevices.clear();
+        pendingIndex.clear();
+
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                deliverFoundDevices(foundDevices, newDevices, generation);
+            }
+        };
+        Executor callbackExecutor = this.callbackExecutor;
+        if (callbackExecutor == null) {
+            runnable.run();
+        } else {
+            callbackExecutor.execute(runnable);
+        }
+    }
+
+    /**
+     * 上报扫描结果（在回调线程中执行）
+     *
+     * @param foundDevices 这一次扫描到的设备
+     * @param newDevices   其中新发现的设备
+     * @param generation   处理这些结果时扫描结果的版本
+     */
+    private void deliverFoundDevices(ArrayList<BleDevice> foundDevices, ArrayList<BleDevice> newDevices, int generation) {
+        ArrayList<BleDevice> scanResults = mScanResults;
+        //扫描结果在这期间被清空过，丢弃旧的结果
+        if (scanResults == null || generation != resultsGeneration) {
+            return;
+        }
+        if (mOnScanFindOneDeviceListener != null) {
+            for (int i = 0; i < foundDevices.size(); i++) {
+                mOnScanFindOneDeviceListener.onScanFindOneDevice(foundDevices.get(i));
+            }
+        }
+        //扫描结果列表可能在外部被修改过（例如移除了设备），此时重建两个索引，被移除的设备再次扫描到时会重新加入
+        if (deliveredResultsSize != scanResults.size()) {
+            mDeliveredIndex.rebuild(scanResults);
+            final ArrayList<BleDevice> snapshot = new ArrayList<>(scanResults);
+            postToProcessThread(new Runnable() {
+                @Override
+                public void run() {
+                    mScanResultIndex.rebuild(snapshot);
+                }
+            });
+        }
+        for (int i = 0; i < newDevices.size(); i++) {
+            BleDevice bleDevice = newDevices.get(i);
+            final long key = Tool.macAddressToLong(bleDevice.getDeviceAddress());
+            if (key < 0) {
+                //地址无效时索引中没有记录，退回到遍历列表
+                if (scanResults.contains(bleDevice)) {
+                    continue;
+                }
+            } else {
+                final BleDevice existing = mDeliveredIndex.get(key);
+                if (existing != null) {
+                    //处理线程的索引重建之前已经加入了列表，让处理线程之后更新列表中的这个对象
+                    postToProcessThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            mScanResultIndex.put(key, existing);
+                        }
+                    });
+                    continue;
+                }
+                mDeliveredIndex.put(key, bleDevice);
+            }
+            scanResults.add(bleDevice);
+            if (onScanFindOneNewDeviceListener != null) {
+                onScanFindOneNewDeviceListener.onScanFindOneNewDevice(bleDevice);
+            }
+        }
+        deliveredResultsSize = scanResults.size();
+        if (onScanFindDevicesBatchListener != null) {
+            onScanFindDevicesBatchListener.onScanFindDevicesBatch(foundDevices);
+        }
+    }
+
+    /**
+     * 清空扫描结果处理线程中的索引与缓存
+     */
+    private void resetProcessState() {
+        resultsGeneration++;
+        postToProcessThread(new Runnable() {
+            @Override
+            public void run() {
+                mScanResultIndex.clear();
+                pendingIndex.clear();
+                pendingFoundDevices.clear();
+                pendingNewDevices.clear();
+            }
+        });
+    }
+
+    /**
+     * 生成默认的扫描参数
+     *
+     * @return 扫描参数
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private ScanSettings buildDefaultScanSettings() {
+        ScanSettings.Builder builder = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);
+        if (reportDelay > 0 && mBluetoothAdapter.isOffloadedScanBatchingSupported()) {
+            builder.setReportDelay(reportDelay);
+        }
+        return builder.build();
+    }
+
     /*------------------------库内函数----------------------------*/
 
 
@@ -312,6 +597,15 @@ public class BleScanner {
         return scanContinue;
     }
 
+    /**
+     * 获取连续扫描时两次扫描之间的空闲时间
+     *
+     * @return 空闲时间（毫秒）
+     */
+    long getScanIdleTime() {
+        return scanIdleTime;
+    }
+
     /**
      * 设置蓝牙适配器
      *
@@ -362,6 +656,12 @@ public class BleScanner {
         mScanResults = scanResults;
         context.registerReceiver(bluetoothStateReceiver, filter);
         mScanResults.clear();
+        if (processThread == null) {
+            processThread = new HandlerThread(TAG);
+            processThread.start();
+            processHandler = new Handler(processThread.getLooper());
+        }
+        resetProcessState();
         mOpened = true;
         this.onScanFindOneNewDeviceListener = onScanFindOneNewDeviceListener;
         this.scanPeriod = scanPeriod;
@@ -408,10 +708,9 @@ public class BleScanner {
                 scanFilters.add(scanFilter);
             }
             if (scanSettings == null) {
-                scanSettings = new ScanSettings.Builder()
-                        .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                        .build();
+                scanSettings = buildDefaultScanSettings();
             }
+            hardwareBatching = scanSettings.getReportDelayMillis() > 0;
             mBluetoothAdapter.getBluetoothLeScanner().startScan(scanFilters, scanSettings, mScanCallback);
 
         } else {
@@ -438,6 +737,8 @@ public class BleScanner {
         }
 
         if (!scanning) {
+            //处于两次扫描之间的空闲时间时，取消下一次扫描
+            scanTimer.stopTimer();
             return false;
         }
 
@@ -449,11 +750,17 @@ public class BleScanner {
         scanTimer.stopTimer();
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            if (hardwareBatching) {
+                //停止前取回系统中还未上报的扫描结果
+                mBluetoothAdapter.getBluetoothLeScanner().flushPendingScanResults(mScanCallback);
+            }
             mBluetoothAdapter.getBluetoothLeScanner().stopScan(mScanCallback);
         } else {
             //noinspection deprecation
             this.mBluetoothAdapter.stopLeScan(this.mLeScanCallback);
         }
+        //停止扫描时立即上报库内缓存的扫描结果
+        postToProcessThread(flushRunnable);
         scanning = false;
         return true;
     }
@@ -475,12 +782,20 @@ public class BleScanner {
         if (scanning) {
             stopScan();
         }
+        scanTimer.stopTimer();
 
         if (bluetoothStateReceiver != null) {
             bluetoothStateReceiver.releaseData();
             context.unregisterReceiver(bluetoothStateReceiver);
         }
 
+        resetProcessState();
+        processHandler = null;
+        if (processThread != null) {
+            processThread.quitSafely();
+            processThread = null;
+        }
+
         scanPeriod = 0;
         mOpened = false;
         scanning = false;
@@ -538,11 +853,64 @@ public class BleScanner {
         this.scanSettings = scanSettings;
     }
 
+    /**
+     * 设置批量扫描的上报延时（需要在开始扫描之前设置）
+     * 大于0时扫描结果会被缓存起来，每隔一段时间一次性上报，减少应用被唤醒以及主线程处理的次数。
+     * 系统支持批量扫描时由系统缓存（此时会重新生成默认的扫描参数，通过{@link #setScanSettings(ScanSettings)}设置的参数中需要自行设置上报延时），
+     * 否则由库内缓存
+     *
+     * @param reportDelay 上报延时（毫秒），小于等于0表示每扫描到一个设备就上报一次
+     */
+    public void setReportDelay(long reportDelay) {
+        this.reportDelay = reportDelay;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scanSettings = null;
+        }
+    }
+
+    /**
+     * 获取批量扫描的上报延时
+     *
+     * @return 上报延时（毫秒）
+     */
+    public long getReportDelay() {
+        return reportDelay;
+    }
+
+    /**
+     * 设置批量扫描时，扫描到一批设备的回调
+     *
+     * @param onScanFindDevicesBatchListener 扫描到一批设备的回调
+     */
+    public void setOnScanFindDevicesBatchListener(BleInterface.OnScanFindDevicesBatchListener onScanFindDevicesBatchListener) {
+        this.onScanFindDevicesBatchListener = onScanFindDevicesBatchListener;
+    }
+
     /**
      * 清空扫描结果
      */
     public void clearScanResults() {
         mScanResults.clear();
+        resetProcessState();
+    }
+
+    /**
+     * 设置扫描回调执行的线程，默认在创建扫描器的线程（通常是主线程）中执行。
+     * 扫描结果列表也在这个线程中被修改。传入null时直接在扫描结果处理线程中回调
+     *
+     * @param callbackExecutor 执行回调的Executor
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * 设置扫描结果过滤器，过滤器在扫描结果处理线程中执行，被过滤掉的结果不会加入扫描结果，也不会回调
+     *
+     * @param scanResultFilter 扫描结果过滤器，null表示不过滤
+     */
+    public void setScanResultFilter(BleInterface.ScanResultFilter scanResultFilter) {
+        this.scanResultFilter = scanResultFilter;
     }
 
     /**
@@ -581,6 +949,31 @@ public class BleScanner {
         this.scanContinue = scanContinue;
     }
 
+    /**
+     * 设置连续扫描时，两次扫描之间的空闲时间
+     *
+     * @param scanIdleTime 空闲时间（毫秒），小于等于0表示扫描结束后立即进行下一次扫描
+     */
+    public void setScanIdleTime(long scanIdleTime) {
+        this.scanIdleTime = scanIdleTime;
+    }
+
+    /**
+     * 设置占空比扫描：每次扫描scanTime毫秒，然后空闲idleTime毫秒，如此循环，直到停止扫描。
+     * 用于在功耗与发现设备的延迟之间取舍
+     *
+     * @param scanTime 每次扫描的时间（毫秒）
+     * @param idleTime 两次扫描之间的空闲时间（毫秒）
+     */
+    public void setDutyCycle(long scanTime, long idleTime) {
+        if (scanTime <= 0) {
+            return;
+        }
+        this.scanPeriod = scanTime;
+        this.scanIdleTime = idleTime;
+        this.scanContinue = true;
+    }
+
     /**
      * 设置发现一个新设备时的回调
      *
@@ -606,4 +999,40 @@ public class BleScanner {
     public Context getContext(){
         return context;
     }
+
+    /*------------------------内部类----------------------------*/
+
+    /**
+     * 系统回调中的原始扫描结果
+     */
+    private static class RawScanResult {
+        /**
+         * 蓝牙设备
+         */
+        private final BluetoothDevice device;
+        /**
+         * RSSI值
+         */
+        private final int rssi;
+        /**
+         * 广播包内容
+         */
+        private final byte[] scanRecordBytes;
+        /**
+         * 设备名
+         */
+        private final String deviceName;
+        /**
+         * ScanRecord（API21以下为null）
+         */
+        private final ScanRecord scanRecord;
+
+        private RawScanResult(BluetoothDevice device, int rssi, byte[] scanRecordBytes, String deviceName, ScanRecord scanRecord) {
+            this.device = device;
+            this.rssi = rssi;
+            this.scanRecordBytes = scanRecordBytes;
+            this.deviceName = deviceName;
+            this.scanRecord = scanRecord;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package com.jackiepenghe.blelibrary;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 库内共用的定时器
+ * 所有的定时、延时任务都在同一个长期存在的线程中调度，避免每次定时都创建、销毁线程。
+ * 任务应当尽快执行完成，耗时的操作需要交给其他线程
+ *
+ * @author alm
+ */
+
+final class BleScheduler {
+
+    /*-------------------------静态变量-------------------------*/
+
+    /**
+     * 定时任务线程池（只有一个线程）
+     */
+    private static ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 不允许创建实例
+     */
+    private BleScheduler() {
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 延时执行任务
+     *
+     * @param runnable  任务
+     * @param delayTime 延时（毫秒）
+     * @return 可用于取消任务的ScheduledFuture
+     */
+    static ScheduledFuture<?> schedule(Runnable runnable, long delayTime) {
+        return getExecutor().schedule(runnable, delayTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 取消任务
+     *
+     * @param scheduledFuture 任务，为null时不做处理
+     */
+    static void cancel(ScheduledFuture<?> scheduledFuture) {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+    }
+
+    /*-------------------------私有静态函数-------------------------*/
+
+    /**
+     * 获取定时任务线程池，第一次使用时创建
+     *
+     * @return 定时任务线程池
+     */
+    private static synchronized ScheduledThreadPoolExecutor getExecutor() {
+        if (scheduledThreadPoolExecutor == null) {
+            scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "BleScheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            //被取消的任务立即从队列中移除，避免频繁取消时队列堆积
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
+            }
+        }
+        return scheduledThreadPoolExecutor;
+    }
+}
@@ -44,6 +44,66 @@ class BleServiceConnection implements ServiceConnection {
      * 是否自动连接的标识
      */
     private boolean autoConnect;
+    /**
+     * GATT操作的默认超时时间
+     */
+    private long gattOperationTimeout = GattOperationQueue.DEFAULT_OPERATION_TIMEOUT;
+    /**
+     * 服务发现完成后是否自动协商最大的MTU
+     */
+    private boolean autoRequestMtu = true;
+    /**
+     * 服务发现完成后是否自动切换到LE 2M PHY
+     */
+    private boolean autoRequestLe2MPhy = true;
+    /**
+     * 连接超时时间
+     */
+    private long connectTimeout = BleConnectionStateMachine.DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * 服务发现超时时间
+     */
+    private long discoverTimeout = BleConnectionStateMachine.DEFAULT_DISCOVER_TIMEOUT;
+    /**
+     * 断开连接超时时间
+     */
+    private long disconnectTimeout = BleConnectionStateMachine.DEFAULT_DISCONNECT_TIMEOUT;
+    /**
+     * 直连失败后的最大重试次数
+     */
+    private int connectMaxRetries = BleConnectScheduler.DEFAULT_MAX_RETRIES;
+    /**
+     * 直连的重试次数用完后是否转为自动连接
+     */
+    private boolean autoConnectFallback = true;
+    /**
+     * 订阅恢复完成的监听
+     */
+    private BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener;
+    /**
+     * 手动指定的连接优先级
+     */
+    private int connectionPriority = BleConstants.CONNECTION_PRIORITY_AUTO;
+    /**
+     * 空闲时的连接优先级
+     */
+    private int idleConnectionPriority = BleConstants.CONNECTION_PRIORITY_BALANCED;
+    /**
+     * 直接分发GATT事件的接收者，为null时通过系统广播发送GATT事件
+     */
+    private ConnectBleBroadcastReceiver directEventReceiver;
+    /**
+     * 通知数据流
+     */
+    private NotificationStreamRegistry notificationStreamRegistry;
+    /**
+     * 按特征登记的通知监听
+     */
+    private NotificationRouter notificationRouter;
+    /**
+     * 特征读取缓存
+     */
+    private CharacteristicReadCache readCache;
 
     /*------------------------构造函数----------------------------*/
 
@@ -83,6 +143,22 @@ class BleServiceConnection implements ServiceConnection {
             Tool.warnOut(TAG, "bluetoothLeService initialize failed!");
             return;
         }
+        bluetoothLeService.getGattOperationQueue().setOperationTimeout(gattOperationTimeout);
+        bluetoothLeService.setAutoRequestMtu(autoRequestMtu);
+        bluetoothLeService.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+        bluetoothLeService.setConnectTimeout(connectTimeout);
+        bluetoothLeService.setDiscoverTimeout(discoverTimeout);
+        bluetoothLeService.setDisconnectTimeout(disconnectTimeout);
+        bluetoothLeService.setConnectMaxRetries(connectMaxRetries);
+        bluetoothLeService.setAutoConnectFallback(autoConnectFallback);
+        bluetoothLeService.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+        ConnectionPriorityManager connectionPriorityManager = bluetoothLeService.getGattOperationQueue().getConnectionPriorityManager();
+        connectionPriorityManager.setIdlePriority(idleConnectionPriority);
+        connectionPriorityManager.setOverridePriority(connectionPriority);
+        bluetoothLeService.setDirectEventReceiver(directEventReceiver);
+        bluetoothLeService.setNotificationStreamRegistry(notificationStreamRegistry);
+        bluetoothLeService.setNotificationRouter(notificationRouter);
+        bluetoothLeService.setReadCache(readCache);
         if (mAddress == null && mBluetoothDevice == null) {
             Tool.warnOut(TAG, "address and mBluetoothDevice is null!");
             return;
@@ -93,7 +169,7 @@ class BleServiceConnection implements ServiceConnection {
         }else {
             connect = bluetoothLeService.connect(mBluetoothDevice,autoConnect);
         }
-        Tool.warnOut(TAG, "connect " + connect);
+        Tool.warnOut(TAG, "connect {}", connect);
     }
 
     /**
@@ -138,10 +214,44 @@ class BleServiceConnection implements ServiceConnection {
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
      * @param value              数据内容
-     * @return true表示成功
+     * @return 操作结果，null表示无法发起操作
+     */
+    GattOperationFuture writeData(String serviceUUID, String characteristicUUID, byte[] value) {
+        if (bluetoothLeService == null || serviceUUID == null || characteristicUUID == null || value == null) {
+            return null;
+        }
+        return bluetoothLeService.writeData(serviceUUID, characteristicUUID, value);
+    }
+
+    /**
+     * 分包写入大数据到远端设备
+     *
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param value                            数据内容
+     * @param withoutResponse                  是否使用无回复的方式写入（流模式）
+     * @param onLargeDataWriteProgressListener 进度回调
+     * @return 操作结果，null表示无法发起操作
      */
-    boolean writeData(String serviceUUID, String characteristicUUID, byte[] value) {
-        return !(serviceUUID == null || characteristicUUID == null || value == null) && bluetoothLeService.writeData(serviceUUID, characteristicUUID, value);
+    GattOperationFuture writeLargeData(String serviceUUID, String characteristicUUID, byte[] value, boolean withoutResponse, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        if (bluetoothLeService == null || serviceUUID == null || characteristicUUID == null || value == null) {
+            return null;
+        }
+        return bluetoothLeService.writeLargeData(serviceUUID, characteristicUUID, value, withoutResponse, onLargeDataWriteProgressListener);
+    }
+
+    /**
+     * 解析特征句柄
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征句柄，找不到特征时返回null
+     */
+    BleCharacteristicHandle getCharacteristicHandle(String serviceUUID, String characteristicUUID) {
+        if (bluetoothLeService == null) {
+            return null;
+        }
+        return bluetoothLeService.getCharacteristicHandle(serviceUUID, characteristicUUID);
     }
 
     /**
@@ -151,10 +261,13 @@ class BleServiceConnection implements ServiceConnection {
      *                           *
      * @param characteristicUUID 特征UUID
      *                           *
-     * @return true表示成功
+     * @return 操作结果，null表示无法发起操作
      */
-    boolean readData(String serviceUUID, String characteristicUUID) {
-        return bluetoothLeService != null && !(serviceUUID == null || characteristicUUID == null) && bluetoothLeService.readData(serviceUUID, characteristicUUID);
+    GattOperationFuture readData(String serviceUUID, String characteristicUUID) {
+        if (bluetoothLeService == null || serviceUUID == null || characteristicUUID == null) {
+            return null;
+        }
+        return bluetoothLeService.readData(serviceUUID, characteristicUUID);
     }
 
     /**
@@ -163,9 +276,12 @@ class BleServiceConnection implements ServiceConnection {
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
      * @param enable             true表示打开通知，false表示关闭通知
-     * @return true表示执行成功
+     * @return 操作结果，null表示无法发起操作
      */
-    boolean enableNotification(String serviceUUID, String characteristicUUID, boolean enable) {
+    GattOperationFuture enableNotification(String serviceUUID, String characteristicUUID, boolean enable) {
+        if (bluetoothLeService == null) {
+            return null;
+        }
         return bluetoothLeService.enableNotification(serviceUUID, characteristicUUID, enable);
     }
 
@@ -176,6 +292,10 @@ class BleServiceConnection implements ServiceConnection {
         if (bluetoothLeService == null) {
             return;
         }
+        bluetoothLeService.setDirectEventReceiver(null);
+        bluetoothLeService.setNotificationStreamRegistry(null);
+        bluetoothLeService.setNotificationRouter(null);
+        bluetoothLeService.setReadCache(null);
         bluetoothLeService.stopSelf();
     }
 
@@ -185,7 +305,7 @@ class BleServiceConnection implements ServiceConnection {
      * @return true表示成功
      */
     boolean getRssi() {
-        return bluetoothLeService.getRssi();
+        return bluetoothLeService != null && bluetoothLeService.getRssi();
     }
 
     /**
@@ -247,4 +367,277 @@ class BleServiceConnection implements ServiceConnection {
     BluetoothGatt getBluetoothGatt() {
         return bluetoothLeService.getBluetoothGatt();
     }
+
+    /**
+     * 设置直接分发GATT事件的接收者（需要在绑定服务之前设置）
+     *
+     * @param directEventReceiver 接收者，为null时通过系统广播发送GATT事件
+     */
+    void setDirectEventReceiver(ConnectBleBroadcastReceiver directEventReceiver) {
+        this.directEventReceiver = directEventReceiver;
+        if (bluetoothLeService != null) {
+            bluetoothLeService.setDirectEventReceiver(directEventReceiver);
+        }
+    }
+
+    /**
+     * 设置通知数据流（需要在绑定服务之前设置）
+     *
+     * @param notificationStreamRegistry 通知数据流
+     */
+    void setNotificationStreamRegistry(NotificationStreamRegistry notificationStreamRegistry) {
+        this.notificationStreamRegistry = notificationStreamRegistry;
+        if (bluetoothLeService != null) {
+            bluetoothLeService.setNotificationStreamRegistry(notificationStreamRegistry);
+        }
+    }
+
+    /**
+     * 设置按特征登记的通知监听（需要在绑定服务之前设置）
+     *
+     * @param notificationRouter 通知路由表
+     */
+    void setNotificationRouter(NotificationRouter notificationRouter) {
+        this.notificationRouter = notificationRouter;
+        if (bluetoothLeService != null) {
+            bluetoothLeService.setNotificationRouter(notificationRouter);
+        }
+    }
+
+    /**
+     * 设置特征读取缓存（需要在绑定服务之前设置）
+     *
+     * @param readCache 特征读取缓存
+     */
+    void setReadCache(CharacteristicReadCache readCache) {
+        this.readCache = readCache;
+        if (bluetoothLeService != null) {
+            bluetoothLeService.setReadCache(readCache);
+        }
+    }
+
+    /**
+     * 设置GATT操作的默认超时时间
+     *
+     * @param operationTimeout 超时时间（毫秒）
+     */
+    void setGattOperationTimeout(long operationTimeout) {
+        this.gattOperationTimeout = operationTimeout;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.getGattOperationQueue().setOperationTimeout(operationTimeout);
+    }
+
+    /**
+     * 设置服务发现完成后是否自动协商最大的MTU
+     *
+     * @param autoRequestMtu true表示自动协商
+     */
+    void setAutoRequestMtu(boolean autoRequestMtu) {
+        this.autoRequestMtu = autoRequestMtu;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setAutoRequestMtu(autoRequestMtu);
+    }
+
+    /**
+     * 设置服务发现完成后是否自动切换到LE 2M PHY
+     *
+     * @param autoRequestLe2MPhy true表示自动切换
+     */
+    void setAutoRequestLe2MPhy(boolean autoRequestLe2MPhy) {
+        this.autoRequestLe2MPhy = autoRequestLe2MPhy;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+    }
+
+    /**
+     * 设置连接超时时间
+     *
+     * @param connectTimeout 超时时间（毫秒）
+     */
+    void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setConnectTimeout(connectTimeout);
+    }
+
+    /**
+     * 设置服务发现超时时间
+     *
+     * @param discoverTimeout 超时时间（毫秒）
+     */
+    void setDiscoverTimeout(long discoverTimeout) {
+        this.discoverTimeout = discoverTimeout;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setDiscoverTimeout(discoverTimeout);
+    }
+
+    /**
+     * 设置断开连接超时时间
+     *
+     * @param disconnectTimeout 超时时间（毫秒）
+     */
+    void setDisconnectTimeout(long disconnectTimeout) {
+        this.disconnectTimeout = disconnectTimeout;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setDisconnectTimeout(disconnectTimeout);
+    }
+
+    /**
+     * 设置直连失败后的最大重试次数
+     *
+     * @param connectMaxRetries 最大重试次数
+     */
+    void setConnectMaxRetries(int connectMaxRetries) {
+        this.connectMaxRetries = connectMaxRetries;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setConnectMaxRetries(connectMaxRetries);
+    }
+
+    /**
+     * 设置直连的重试次数用完后是否转为自动连接
+     *
+     * @param autoConnectFallback true表示转为自动连接
+     */
+    void setAutoConnectFallback(boolean autoConnectFallback) {
+        this.autoConnectFallback = autoConnectFallback;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setAutoConnectFallback(autoConnectFallback);
+    }
+
+    /**
+     * 设置订阅恢复完成的监听
+     *
+     * @param onSubscriptionsRestoredListener 监听
+     */
+    void setOnSubscriptionsRestoredListener(BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        this.onSubscriptionsRestoredListener = onSubscriptionsRestoredListener;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+    }
+
+    /**
+     * 获取连接状态
+     *
+     * @return BleConstants中定义的CONNECTION_STATE_开头的常量
+     */
+    int getConnectionState() {
+        if (bluetoothLeService == null) {
+            return BleConstants.CONNECTION_STATE_IDLE;
+        }
+        return bluetoothLeService.getConnectionState();
+    }
+
+    /**
+     * 获取当前连接发送使用的PHY
+     *
+     * @return PHY
+     */
+    int getTxPhy() {
+        if (bluetoothLeService == null) {
+            return BleConstants.PHY_LE_1M;
+        }
+        return bluetoothLeService.getGattOperationQueue().getTxPhy();
+    }
+
+    /**
+     * 获取当前连接接收使用的PHY
+     *
+     * @return PHY
+     */
+    int getRxPhy() {
+        if (bluetoothLeService == null) {
+            return BleConstants.PHY_LE_1M;
+        }
+        return bluetoothLeService.getGattOperationQueue().getRxPhy();
+    }
+
+    /**
+     * 手动指定连接优先级
+     *
+     * @param connectionPriority 连接优先级，{@link BleConstants#CONNECTION_PRIORITY_AUTO}表示自动管理
+     */
+    void setConnectionPriority(int connectionPriority) {
+        this.connectionPriority = connectionPriority;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.getGattOperationQueue().getConnectionPriorityManager().setOverridePriority(connectionPriority);
+    }
+
+    /**
+     * 设置空闲时的连接优先级
+     *
+     * @param idleConnectionPriority 连接优先级
+     */
+    void setIdleConnectionPriority(int idleConnectionPriority) {
+        this.idleConnectionPriority = idleConnectionPriority;
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.getGattOperationQueue().getConnectionPriorityManager().setIdlePriority(idleConnectionPriority);
+    }
+
+    /**
+     * 获取当前的连接优先级
+     *
+     * @return 连接优先级
+     */
+    int getConnectionPriority() {
+        if (bluetoothLeService == null) {
+            return BleConstants.CONNECTION_PRIORITY_BALANCED;
+        }
+        return bluetoothLeService.getGattOperationQueue().getConnectionPriorityManager().getCurrentPriority();
+    }
+
+    /**
+     * 获取当前连接的MTU
+     *
+     * @return MTU
+     */
+    int getMtu() {
+        if (bluetoothLeService == null) {
+            return GattOperationQueue.DEFAULT_MTU;
+        }
+        return bluetoothLeService.getGattOperationQueue().getMtu();
+    }
+
+    /**
+     * 获取GATT操作队列中还未完成的操作数量
+     *
+     * @return 操作数量
+     */
+    int getPendingGattOperationCount() {
+        if (bluetoothLeService == null) {
+            return 0;
+        }
+        return bluetoothLeService.getGattOperationQueue().getPendingOperationCount();
+    }
+
+    /**
+     * 取消GATT操作队列中所有未完成的操作
+     */
+    void clearGattOperations() {
+        if (bluetoothLeService == null) {
+            return;
+        }
+        bluetoothLeService.getGattOperationQueue().clear();
+    }
 }
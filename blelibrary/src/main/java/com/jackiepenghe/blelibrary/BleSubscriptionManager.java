@@ -0,0 +1,236 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个连接的订阅管理
+ * 记录该连接打开了通知或指示的特征（以加入GATT操作队列的配置描述符写入为准，关闭时移除）。
+ * 重新连接、服务发现完成后，将所有订阅一次性加入GATT操作队列，由队列连续执行，
+ * 不需要应用在回调中逐个重新打开；全部完成后回调一次订阅已恢复
+ *
+ * @author alm
+ */
+
+class BleSubscriptionManager {
+
+    /*-------------------------静态常量-------------------------*/
+
+    private static final String TAG = BleSubscriptionManager.class.getSimpleName();
+
+    /**
+     * 特征配置描述符的UUID
+     */
+    private static final UUID CLIENT_CHARACTERISTIC_CONFIG_UUID = UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG);
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 当前的订阅，key为服务UUID与特征UUID，按订阅的先后排列
+     */
+    private final LinkedHashMap<String, Subscription> subscriptions = new LinkedHashMap<>();
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * GATT操作加入队列时调用，记录或者移除订阅（只处理写入特征配置描述符的操作）
+     *
+     * @param gattOperation GATT操作
+     */
+    void onOperationEnqueued(GattOperation gattOperation) {
+        if (gattOperation.getType() != GattOperation.TYPE_WRITE_DESCRIPTOR) {
+            return;
+        }
+        BluetoothGattDescriptor descriptor = gattOperation.getDescriptor();
+        BluetoothGattCharacteristic characteristic = gattOperation.getCharacteristic();
+        byte[] value = gattOperation.getValue();
+        if (descriptor == null || characteristic == null || value == null || !CLIENT_CHARACTERISTIC_CONFIG_UUID.equals(descriptor.getUuid())) {
+            return;
+        }
+        //Service Changed指示由GATT布局缓存单独处理
+        BluetoothGattService service = characteristic.getService();
+        if (service == null || GattLayoutCache.isServiceChanged(characteristic)) {
+            return;
+        }
+        String key = service.getUuid() + "/" + characteristic.getUuid();
+        boolean indication = Arrays.equals(value, BluetoothGattDescriptor.ENABLE_INDICATION_VALUE);
+        boolean notification = Arrays.equals(value, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+        synchronized (this) {
+            if (indication || notification) {
+                subscriptions.put(key, new Subscription(service.getUuid(), characteristic.getUuid(), indication));
+            } else {
+                subscriptions.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 是否没有任何订阅
+     *
+     * @return true表示没有
+     */
+    synchronized boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    /**
+     * 获取订阅数量
+     *
+     * @return 订阅数量
+     */
+    synchronized int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * 清除所有订阅（主动关闭连接时调用）
+     */
+    synchronized void clear() {
+        subscriptions.clear();
+    }
+
+    /**
+     * 服务发现完成后恢复所有订阅：一次性加入GATT操作队列，全部完成后回调监听。
+     * 远端设备已经没有的特征会被跳过（按失败计算），但订阅仍然保留
+     *
+     * @param address                         设备地址
+     * @param bluetoothGatt                   GATT客户端
+     * @param gattOperationQueue              GATT操作队列
+     * @param onSubscriptionsRestoredListener 全部完成后的监听，可以为null
+     * @return 加入队列的操作数量（没有任何订阅时返回0并且不回调监听）
+     */
+    int restore(final String address, BluetoothGatt bluetoothGatt, GattOperationQueue gattOperationQueue, final BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        List<Subscription> snapshot;
+        synchronized (this) {
+            if (subscriptions.isEmpty()) {
+                return 0;
+            }
+            snapshot = new ArrayList<>(subscriptions.values());
+        }
+        List<GattOperation> gattOperations = new ArrayList<>(snapshot.size());
+        int missing = 0;
+        for (Subscription subscription : snapshot) {
+            GattOperation gattOperation = subscription.newEnableOperation(bluetoothGatt);
+            if (gattOperation == null) {
+                Tool.warnOut(TAG, "{} subscription {} not found", address, subscription.characteristicUuid);
+                missing++;
+            } else {
+                gattOperations.add(gattOperation);
+            }
+        }
+        final int total = snapshot.size();
+        final long startTime = SystemClock.elapsedRealtime();
+        final AtomicInteger failed = new AtomicInteger(missing);
+        final AtomicInteger remaining = new AtomicInteger(gattOperations.size());
+        if (gattOperations.isEmpty()) {
+            notifyRestored(address, total, failed.get(), startTime, onSubscriptionsRestoredListener);
+            return 0;
+        }
+        BleInterface.OnGattOperationCompleteListener onGattOperationCompleteListener = new BleInterface.OnGattOperationCompleteListener() {
+            @Override
+            public void onGattOperationComplete(GattOperationFuture gattOperationFuture) {
+                if (!gattOperationFuture.isSuccess()) {
+                    failed.incrementAndGet();
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    notifyRestored(address, total, failed.get(), startTime, onSubscriptionsRestoredListener);
+                }
+            }
+        };
+        for (GattOperation gattOperation : gattOperations) {
+            gattOperation.getFuture().setOnGattOperationCompleteListener(onGattOperationCompleteListener);
+            gattOperationQueue.enqueue(gattOperation);
+        }
+        return gattOperations.size();
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 订阅恢复完成
+     *
+     * @param address                         设备地址
+     * @param total                           订阅数量
+     * @param failed                          恢复失败的数量
+     * @param startTime                       开始恢复的时间
+     * @param onSubscriptionsRestoredListener 监听，可以为null
+     */
+    private void notifyRestored(String address, int total, int failed, long startTime, BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        long duration = SystemClock.elapsedRealtime() - startTime;
+        if (BleLog.isLoggable(BleConstants.LOG_LEVEL_INFO)) {
+            BleLog.i(TAG, "restored {}/{} subscriptions of {} in {}ms", total - failed, total, address, duration);
+        }
+        if (onSubscriptionsRestoredListener != null) {
+            onSubscriptionsRestoredListener.onSubscriptionsRestored(address, total - failed, failed);
+        }
+    }
+
+    /*-------------------------内部类-------------------------*/
+
+    /**
+     * 一个订阅
+     */
+    private static final class Subscription {
+
+        /**
+         * 服务UUID
+         */
+        final UUID serviceUuid;
+        /**
+         * 特征UUID
+         */
+        final UUID characteristicUuid;
+        /**
+         * true表示指示，false表示通知
+         */
+        final boolean indication;
+
+        /**
+         * 构造器
+         *
+         * @param serviceUuid        服务UUID
+         * @param characteristicUuid 特征UUID
+         * @param indication         true表示指示，false表示通知
+         */
+        Subscription(UUID serviceUuid, UUID characteristicUuid, boolean indication) {
+            this.serviceUuid = serviceUuid;
+            this.characteristicUuid = characteristicUuid;
+            this.indication = indication;
+        }
+
+        /**
+         * 在新的GATT客户端上创建重新打开此订阅的操作
+         *
+         * @param bluetoothGatt GATT客户端
+         * @return GattOperation，远端设备没有此特征或者配置描述符时返回null
+         */
+        GattOperation newEnableOperation(BluetoothGatt bluetoothGatt) {
+            BluetoothGattService service = bluetoothGatt.getService(serviceUuid);
+            if (service == null) {
+                return null;
+            }
+            BluetoothGattCharacteristic characteristic = service.getCharacteristic(characteristicUuid);
+            if (characteristic == null) {
+                return null;
+            }
+            BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG_UUID);
+            if (descriptor == null) {
+                return null;
+            }
+            if (indication) {
+                return GattOperation.newEnableIndicationOperation(characteristic, descriptor);
+            }
+            return GattOperation.newEnableNotificationOperation(characteristic, descriptor, true);
+        }
+    }
+}
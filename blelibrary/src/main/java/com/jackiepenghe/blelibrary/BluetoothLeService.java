@@ -8,6 +8,7 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
@@ -15,10 +16,10 @@ import android.os.IBinder;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.List;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * BLE连接的服务
@@ -62,6 +63,94 @@ public class BluetoothLeService extends Service {
      */
     private BluetoothGatt bluetoothGatt;
 
+    /**
+     * GATT操作队列
+     */
+    private final GattOperationQueue gattOperationQueue = new GattOperationQueue();
+
+    /**
+     * 直接分发GATT事件的接收者，为null时通过系统广播发送GATT事件
+     */
+    private volatile ConnectBleBroadcastReceiver directEventReceiver;
+
+    /**
+     * 服务发现完成后是否自动协商最大的MTU
+     */
+    private volatile boolean autoRequestMtu = true;
+    /**
+     * 服务发现完成后是否自动切换到LE 2M PHY
+     */
+    private volatile boolean autoRequestLe2MPhy = true;
+
+    /**
+     * 通知数据流
+     */
+    private volatile NotificationStreamRegistry notificationStreamRegistry;
+
+    /**
+     * 按特征登记的通知监听
+     */
+    private volatile NotificationRouter notificationRouter;
+
+    /**
+     * 特征读取缓存
+     */
+    private CharacteristicReadCache readCache;
+
+    /**
+     * GATT布局缓存
+     */
+    private GattLayoutCache gattLayoutCache;
+
+    /**
+     * 连接状态机
+     */
+    private final BleConnectionStateMachine stateMachine = new BleConnectionStateMachine(null);
+    /**
+     * 正在连接的设备，连接失败时用于重试，调用close之后为null
+     */
+    private BluetoothDevice connectingDevice;
+    /**
+     * 当前是第几次直连尝试
+     */
+    private int connectAttempt;
+    /**
+     * 退避结束后重新连接的任务
+     */
+    private ScheduledFuture<?> retryFuture;
+    /**
+     * 已经处理过断开事件的GATT客户端，用于丢弃同一次断开的重复事件（系统回调与超时强制断开同时发生时）
+     */
+    private BluetoothGatt disconnectedGatt;
+    /**
+     * 计算退避抖动的随机数
+     */
+    private final Random random = new Random();
+    /**
+     * 连接超时时间
+     */
+    private volatile long connectTimeout = BleConnectionStateMachine.DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * 服务发现超时时间
+     */
+    private volatile long discoverTimeout = BleConnectionStateMachine.DEFAULT_DISCOVER_TIMEOUT;
+    /**
+     * 断开连接超时时间
+     */
+    private volatile long disconnectTimeout = BleConnectionStateMachine.DEFAULT_DISCONNECT_TIMEOUT;
+    /**
+     * 直连失败后的最大重试次数
+     */
+    private volatile int connectMaxRetries = BleConnectScheduler.DEFAULT_MAX_RETRIES;
+    /**
+     * 直连的重试次数用完后是否转为自动连接
+     */
+    private volatile boolean autoConnectFallback = true;
+    /**
+     * 订阅恢复完成的监听
+     */
+    private volatile BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener;
+
     /*------------------------重写父类函数----------------------------*/
 
     /**
@@ -70,8 +159,29 @@ public class BluetoothLeService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
+        gattLayoutCache = GattLayoutCache.getInstance(BluetoothLeService.this);
         bleBluetoothGattCallback = new BleBluetoothGattCallback(BluetoothLeService.this);
         bluetoothLeServiceBinder = new BluetoothLeServiceBinder(BluetoothLeService.this);
+        stateMachine.setListener(new BleConnectionStateMachine.Listener() {
+            @Override
+            public long getStateTimeout(int state) {
+                switch (state) {
+                    case BleConstants.CONNECTION_STATE_CONNECTING:
+                        return connectTimeout;
+                    case BleConstants.CONNECTION_STATE_DISCOVERING:
+                        return discoverTimeout;
+                    case BleConstants.CONNECTION_STATE_DISCONNECTING:
+                        return disconnectTimeout;
+                    default:
+                        return 0;
+                }
+            }
+
+            @Override
+            public void onStateTimeout(BleConnectionStateMachine stateMachine, int state) {
+                onConnectionStateTimeout(state);
+            }
+        });
     }
 
     /**
@@ -83,8 +193,18 @@ public class BluetoothLeService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        synchronized (this) {
+            cancelRetry();
+            connectingDevice = null;
+        }
+        stateMachine.reset();
+        gattOperationQueue.clear();
+        gattOperationQueue.setBluetoothGatt(null);
         bluetoothLeServiceBinder = null;
         bleBluetoothGattCallback = null;
+        directEventReceiver = null;
+        notificationStreamRegistry = null;
+        notificationRouter = null;
         bluetoothManager = null;
         bluetoothAdapter = null;
         bluetoothGatt = null;
@@ -160,10 +280,7 @@ public class BluetoothLeService extends Service {
             return false;
         }
 
-        bluetoothGatt = remoteDevice.connectGatt(this, autoReconnect, bleBluetoothGattCallback);
-
-        return autoReconnect || bluetoothGatt != null && bluetoothGatt.connect();
-
+        return connect(remoteDevice, autoReconnect);
     }
 
     /**
@@ -173,14 +290,19 @@ public class BluetoothLeService extends Service {
      * @param autoReconnect   自动重连标志
      * @return true表示成功
      */
-    boolean connect(BluetoothDevice bluetoothDevice, boolean autoReconnect) {
+    synchronized boolean connect(BluetoothDevice bluetoothDevice, boolean autoReconnect) {
         if (bluetoothAdapter == null || bluetoothDevice == null) {
             return false;
         }
 
-        bluetoothGatt = bluetoothDevice.connectGatt(this, autoReconnect, bleBluetoothGattCallback);
-        return autoReconnect || bluetoothGatt != null && bluetoothGatt.connect();
-
+        cancelRetry();
+        //连接另一个设备时，之前设备的订阅不再恢复
+        if (connectingDevice != null && !connectingDevice.getAddress().equals(bluetoothDevice.getAddress())) {
+            gattOperationQueue.getSubscriptionManager().clear();
+        }
+        connectingDevice = bluetoothDevice;
+        connectAttempt = 1;
+        return openGatt(autoReconnect);
     }
 
     /**
@@ -188,10 +310,13 @@ public class BluetoothLeService extends Service {
      *
      * @return true表示成功
      */
-    boolean disconnect() {
+    synchronized boolean disconnect() {
+        //主动断开后不再重试
+        cancelRetry();
         if (bluetoothGatt == null) {
             return false;
         }
+        stateMachine.onDisconnecting();
         bluetoothGatt.disconnect();
         return true;
     }
@@ -201,110 +326,263 @@ public class BluetoothLeService extends Service {
      *
      * @return true表示成功
      */
-    boolean close() {
+    synchronized boolean close() {
+        cancelRetry();
+        connectingDevice = null;
+        gattOperationQueue.getSubscriptionManager().clear();
         if (bluetoothGatt == null) {
+            gattOperationQueue.clear();
+            gattOperationQueue.setBluetoothGatt(null);
+            stateMachine.reset();
             return false;
         }
-
-        bluetoothGatt.close();
+        closeGatt(false);
         return true;
     }
 
     /**
-     * 写入数据到蓝牙远端设备
+     * 获取连接状态
      *
-     * @param serviceUUID        服务UUID
-     * @param characteristicUUID 特征UUID
-     * @param values             数据
-     * @return true表示成功
+     * @return BleConstants中定义的CONNECTION_STATE_开头的常量
      */
-    boolean writeData(String serviceUUID, String characteristicUUID, byte[] values) {
-        if (serviceUUID == null || characteristicUUID == null || values == null || bluetoothGatt == null) {
-            return false;
-        }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (service == null) {
-            return false;
+    int getConnectionState() {
+        return stateMachine.getState();
+    }
+
+    /**
+     * 连接成功，开始发现服务（在连接回调中调用）
+     */
+    void onConnected() {
+        synchronized (this) {
+            //连接已建立，之后的断开事件需要重新处理
+            disconnectedGatt = null;
         }
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUUID));
-        if (characteristic == null) {
+        stateMachine.onConnected();
+    }
+
+    /**
+     * 判断连接状态事件是否来自已经被替换的GATT客户端（例如重试时重新打开了GATT客户端）
+     * 当前还没有GATT客户端时（connectGatt还未返回）不算过期
+     *
+     * @param gatt 事件所属的GATT客户端
+     * @return true表示已过期，事件应当丢弃
+     */
+    synchronized boolean isStaleGatt(BluetoothGatt gatt) {
+        return bluetoothGatt != null && bluetoothGatt != gatt;
+    }
+
+    /**
+     * 认领一个GATT客户端的断开事件，系统回调与超时强制断开只有一个会被处理
+     *
+     * @param gatt GATT客户端
+     * @return true表示认领成功，false表示该断开已经处理过了
+     */
+    synchronized boolean claimDisconnect(BluetoothGatt gatt) {
+        if (disconnectedGatt == gatt) {
             return false;
         }
+        disconnectedGatt = gatt;
+        return true;
+    }
 
+    /**
+     * 连接已断开（在连接回调中调用）。正在连接或者正在发现服务时断开（例如状态码133）属于一次失败的连接尝试，
+     * 关闭GATT客户端后按退避时间重试
+     *
+     * @param status GATT状态码
+     * @return true表示会重试，不需要再通知应用
+     */
+    synchronized boolean onDisconnected(int status) {
+        boolean autoConnect = stateMachine.isAutoConnect();
+        int previousState = stateMachine.onDisconnected();
+        boolean connectFailed = (previousState == BleConstants.CONNECTION_STATE_CONNECTING && !autoConnect)
+                || previousState == BleConstants.CONNECTION_STATE_DISCOVERING;
+        return connectFailed && retryConnect(status, autoConnect);
+    }
 
-        if (!characteristic.setValue(values)) {
-            return false;
+    /**
+     * 服务发现完成（在连接回调中调用），发现失败时按一次失败的连接尝试处理
+     *
+     * @param status GATT状态码
+     */
+    synchronized void onServicesDiscovered(int status) {
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            stateMachine.onReady();
+            connectAttempt = 1;
+            return;
+        }
+        if (stateMachine.getState() == BleConstants.CONNECTION_STATE_DISCOVERING) {
+            retryConnect(status, stateMachine.isAutoConnect());
         }
+    }
+
+    /**
+     * 服务发现完成后恢复之前的订阅（一次性加入GATT操作队列）
+     */
+    void restoreSubscriptions() {
+        BluetoothGatt bluetoothGatt = this.bluetoothGatt;
+        if (bluetoothGatt == null) {
+            return;
+        }
+        gattOperationQueue.getSubscriptionManager().restore(bluetoothGatt.getDevice().getAddress(), bluetoothGatt, gattOperationQueue, onSubscriptionsRestoredListener);
+    }
+
+    /**
+     * 设置订阅恢复完成的监听
+     *
+     * @param onSubscriptionsRestoredListener 监听
+     */
+    void setOnSubscriptionsRestoredListener(BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        this.onSubscriptionsRestoredListener = onSubscriptionsRestoredListener;
+    }
 
-        Tool.warnOut(TAG, "values = " + Tool.bytesToHexStr(values));
+    /**
+     * 设置连接超时时间（连接中状态）
+     *
+     * @param connectTimeout 超时时间（毫秒）
+     */
+    void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
 
-        return bluetoothGatt.writeCharacteristic(characteristic);
+    /**
+     * 设置服务发现超时时间（发现服务中状态）
+     *
+     * @param discoverTimeout 超时时间（毫秒）
+     */
+    void setDiscoverTimeout(long discoverTimeout) {
+        this.discoverTimeout = discoverTimeout;
     }
 
     /**
-     * 从蓝牙远端设备获取数据
+     * 设置断开连接超时时间（断开中状态）
+     *
+     * @param disconnectTimeout 超时时间（毫秒）
+     */
+    void setDisconnectTimeout(long disconnectTimeout) {
+        this.disconnectTimeout = disconnectTimeout;
+    }
+
+    /**
+     * 设置直连失败后的最大重试次数
+     *
+     * @param connectMaxRetries 最大重试次数
+     */
+    void setConnectMaxRetries(int connectMaxRetries) {
+        this.connectMaxRetries = connectMaxRetries;
+    }
+
+    /**
+     * 设置直连的重试次数用完后是否转为自动连接
+     *
+     * @param autoConnectFallback true表示转为自动连接
+     */
+    void setAutoConnectFallback(boolean autoConnectFallback) {
+        this.autoConnectFallback = autoConnectFallback;
+    }
+
+    /**
+     * 写入数据到蓝牙远端设备（加入GATT操作队列）
      *
      * @param serviceUUID        服务UUID
-     *                           *
      * @param characteristicUUID 特征UUID
-     *                           *
-     * @return true表示成功
+     * @param values             数据
+     * @return 操作结果，null表示无法发起操作
      */
-    boolean readData(String serviceUUID, String characteristicUUID) {
-        if (serviceUUID == null || characteristicUUID == null || bluetoothGatt == null) {
-            return false;
+    GattOperationFuture writeData(String serviceUUID, String characteristicUUID, byte[] values) {
+        if (values == null) {
+            return null;
         }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (service == null) {
-            return false;
+        BluetoothGattCharacteristic characteristic = findCharacteristic(serviceUUID, characteristicUUID);
+        if (characteristic == null) {
+            return null;
         }
 
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUUID));
+        Tool.warnOut(TAG, "values = {}", values);
 
-        //noinspection SimplifiableIfStatement
+        return gattOperationQueue.enqueue(GattOperation.newWriteCharacteristicOperation(characteristic, values));
+    }
+
+    /**
+     * 分包写入大数据到蓝牙远端设备（作为一个操作加入GATT操作队列）
+     *
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param values                           数据
+     * @param withoutResponse                  是否使用无回复的方式写入（流模式）
+     * @param onLargeDataWriteProgressListener 进度回调
+     * @return 操作结果，null表示无法发起操作
+     */
+    GattOperationFuture writeLargeData(String serviceUUID, String characteristicUUID, byte[] values, boolean withoutResponse, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        if (values == null) {
+            return null;
+        }
+        BluetoothGattCharacteristic characteristic = findCharacteristic(serviceUUID, characteristicUUID);
         if (characteristic == null) {
-            return false;
+            return null;
+        }
+        if (withoutResponse && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+            Tool.warnOut(TAG, "characteristic not support write without response");
+            return null;
         }
+        return gattOperationQueue.enqueue(new GattLargeWriteOperation(characteristic, values, withoutResponse, onLargeDataWriteProgressListener));
+    }
 
-        return bluetoothGatt.readCharacteristic(characteristic);
+    /**
+     * 解析特征句柄
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征句柄，找不到特征时返回null
+     */
+    BleCharacteristicHandle getCharacteristicHandle(String serviceUUID, String characteristicUUID) {
+        return BleCharacteristicHandle.resolve(gattOperationQueue, bluetoothGatt, serviceUUID, characteristicUUID);
     }
 
     /**
-     * 打开或者关闭通知
+     * 从蓝牙远端设备获取数据（加入GATT操作队列）
      *
      * @param serviceUUID        服务UUID
+     *                           *
      * @param characteristicUUID 特征UUID
-     * @param enable             是否打开通知
-     * @return true表示执行成功
+     *                           *
+     * @return 操作结果，null表示无法发起操作
      */
-    boolean enableNotification(String serviceUUID, String characteristicUUID, boolean enable) {
-        if (serviceUUID == null || characteristicUUID == null) {
-            return false;
-        }
-        BluetoothGattService bluetoothGattService = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (bluetoothGattService == null) {
-            return false;
+    GattOperationFuture readData(String serviceUUID, String characteristicUUID) {
+        BluetoothGattCharacteristic characteristic = findCharacteristic(serviceUUID, characteristicUUID);
+        if (characteristic == null) {
+            return null;
         }
-        BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(UUID.fromString(characteristicUUID));
-        if (!bluetoothGatt.setCharacteristicNotification(bluetoothGattCharacteristic, enable)) {
-            return false;
+        return gattOperationQueue.read(characteristic);
+    }
+
+    /**
+     * 打开或者关闭通知（加入GATT操作队列）
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @param enable             是否打开通知
+     * @return 操作结果，null表示无法发起操作
+     */
+    GattOperationFuture enableNotification(String serviceUUID, String characteristicUUID, boolean enable) {
+        BluetoothGattCharacteristic characteristic = findCharacteristic(serviceUUID, characteristicUUID);
+        if (characteristic == null) {
+            return null;
         }
-        BluetoothGattDescriptor bluetoothGattDescriptor = bluetoothGattCharacteristic.getDescriptor(UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG));
+        BluetoothGattDescriptor bluetoothGattDescriptor = characteristic.getDescriptor(UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG));
         if (bluetoothGattDescriptor == null) {
-            return false;
-        } else {
-            bluetoothGattDescriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            return null;
         }
-        return bluetoothGatt.writeDescriptor(bluetoothGattDescriptor);
+        return gattOperationQueue.enqueue(GattOperation.newEnableNotificationOperation(characteristic, bluetoothGattDescriptor, enable));
     }
 
     /**
-     * 获取设备信号强度
+     * 获取设备信号强度（加入GATT操作队列）
      *
      * @return true表示成功
      */
     boolean getRssi() {
-        return bluetoothGatt.readRemoteRssi();
+        return bluetoothGatt != null && gattOperationQueue.enqueue(GattOperation.newReadRemoteRssiOperation()) != null;
     }
 
     /**
@@ -312,27 +590,8 @@ public class BluetoothLeService extends Service {
      *
      * @return true表示成功
      */
-    @SuppressWarnings("TryWithIdenticalCatches")
     boolean refreshGattCache() {
-        if (bluetoothGatt == null) {
-            return false;
-        }
-
-        try {
-            //noinspection JavaReflectionMemberAccess
-            Method refresh = bluetoothGatt.getClass().getMethod("refresh");
-            if (refresh != null) {
-                return (boolean) refresh.invoke(bluetoothGatt);
-            }
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-
-        return false;
+        return GattLayoutCache.refreshSystemCache(bluetoothGatt);
     }
 
     /**
@@ -357,9 +616,97 @@ public class BluetoothLeService extends Service {
         return bleBluetoothGattCallback.getService(uuid);
     }
 
+    /**
+     * 请求更改MTU（加入GATT操作队列）
+     *
+     * @param mtu mtu值
+     * @return true表示请求成功加入队列
+     */
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     boolean requestMtu(int mtu) {
-        return bluetoothGatt != null && bluetoothGatt.requestMtu(mtu);
+        return bluetoothGatt != null && gattOperationQueue.enqueue(GattOperation.newRequestMtuOperation(mtu)) != null;
+    }
+
+    /**
+     * 如果开启了自动协商MTU，将请求最大MTU的操作加入GATT操作队列（服务发现完成后调用）
+     */
+    void requestMaxMtuIfNeeded() {
+        if (!autoRequestMtu || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || bluetoothGatt == null) {
+            return;
+        }
+        gattOperationQueue.enqueue(GattOperation.newRequestMtuOperation(GattOperationQueue.MAX_MTU));
+    }
+
+    /**
+     * 如果开启了自动切换PHY并且本机支持，将切换到LE 2M PHY的操作加入GATT操作队列（服务发现完成后调用）
+     * 远端不支持时连接保持在LE 1M PHY
+     */
+    void requestLe2MPhyIfNeeded() {
+        if (!autoRequestLe2MPhy || bluetoothGatt == null || !GattOperation.isLe2MPhySupported()) {
+            return;
+        }
+        gattOperationQueue.enqueue(GattOperation.newSetPreferredPhyOperation(BluetoothDevice.PHY_LE_2M_MASK));
+    }
+
+    /**
+     * 服务发现完成后更新GATT布局缓存，并在需要时打开Service Changed指示
+     *
+     * @return 布局是否发生了变化（之前解析的特征句柄需要失效）
+     */
+    boolean updateGattLayout() {
+        BluetoothGatt bluetoothGatt = this.bluetoothGatt;
+        if (bluetoothGatt == null) {
+            return true;
+        }
+        GattOperation gattOperation = GattLayoutCache.newServiceChangedIndicationOperation(bluetoothGatt);
+        if (gattOperation != null) {
+            gattOperationQueue.enqueue(gattOperation);
+        }
+        return gattLayoutCache.update(bluetoothGatt.getDevice().getAddress(), bluetoothGatt);
+    }
+
+    /**
+     * 连接成功、发现服务之前调用，之前收到Service Changed指示但没能刷新系统GATT缓存时在这里刷新
+     */
+    void refreshGattCacheIfStale() {
+        BluetoothGatt bluetoothGatt = this.bluetoothGatt;
+        if (bluetoothGatt != null) {
+            gattLayoutCache.refreshIfStale(bluetoothGatt.getDevice().getAddress(), bluetoothGatt);
+        }
+    }
+
+    /**
+     * 收到远端设备的Service Changed指示，刷新系统GATT缓存并重新发现服务
+     * 刷新与发现作为一个操作加入GATT操作队列，等待正在执行的操作完成后才会发起
+     */
+    void onServiceChanged() {
+        BluetoothGatt bluetoothGatt = this.bluetoothGatt;
+        if (bluetoothGatt == null) {
+            return;
+        }
+        String address = bluetoothGatt.getDevice().getAddress();
+        Tool.warnOut(TAG, "service changed: {}", address);
+        gattLayoutCache.onServiceChanged(address);
+        gattOperationQueue.invalidateHandles();
+        gattOperationQueue.enqueue(new GattDiscoverServicesOperation(gattLayoutCache, address));
+    }
+
+    /**
+     * 设置服务发现完成后是否自动切换到LE 2M PHY
+     *
+     * @param autoRequestLe2MPhy true表示自动切换
+     */
+    void setAutoRequestLe2MPhy(boolean autoRequestLe2MPhy) {
+        this.autoRequestLe2MPhy = autoRequestLe2MPhy;
+    }
+
+    /**
+     * 设置服务发现完成后是否自动协商最大的MTU
+     *
+     * @param autoRequestMtu true表示自动协商
+     */
+    void setAutoRequestMtu(boolean autoRequestMtu) {
+        this.autoRequestMtu = autoRequestMtu;
     }
 
     /**
@@ -370,4 +717,252 @@ public class BluetoothLeService extends Service {
     BluetoothGatt getBluetoothGatt() {
         return bluetoothGatt;
     }
+
+    /**
+     * 设置直接分发GATT事件的接收者
+     *
+     * @param directEventReceiver 接收者，为null时通过系统广播发送GATT事件
+     */
+    void setDirectEventReceiver(ConnectBleBroadcastReceiver directEventReceiver) {
+        this.directEventReceiver = directEventReceiver;
+    }
+
+    /**
+     * 设置通知数据流
+     *
+     * @param notificationStreamRegistry 通知数据流
+     */
+    void setNotificationStreamRegistry(NotificationStreamRegistry notificationStreamRegistry) {
+        NotificationStreamRegistry previous = this.notificationStreamRegistry;
+        if (previous != null && previous != notificationStreamRegistry) {
+            previous.setConnectionPriorityManager(null);
+        }
+        this.notificationStreamRegistry = notificationStreamRegistry;
+        if (notificationStreamRegistry != null) {
+            notificationStreamRegistry.setConnectionPriorityManager(gattOperationQueue.getConnectionPriorityManager());
+        }
+    }
+
+    /**
+     * 获取通知数据流
+     *
+     * @return 通知数据流，可能为null
+     */
+    NotificationStreamRegistry getNotificationStreamRegistry() {
+        return notificationStreamRegistry;
+    }
+
+    /**
+     * 设置按特征登记的通知监听
+     *
+     * @param notificationRouter 通知路由表
+     */
+    void setNotificationRouter(NotificationRouter notificationRouter) {
+        NotificationRouter previous = this.notificationRouter;
+        if (previous != null && previous != notificationRouter) {
+            previous.unbind();
+        }
+        this.notificationRouter = notificationRouter;
+        BluetoothGatt bluetoothGatt = this.bluetoothGatt;
+        if (notificationRouter != null && bluetoothGatt != null && stateMachine.getState() == BleConstants.CONNECTION_STATE_READY) {
+            notificationRouter.bind(bluetoothGatt);
+        }
+    }
+
+    /**
+     * 获取按特征登记的通知监听
+     *
+     * @return 通知路由表，可能为null
+     */
+    NotificationRouter getNotificationRouter() {
+        return notificationRouter;
+    }
+
+    /**
+     * 设置特征读取缓存，命中缓存时像真正的读取一样发送读取结果
+     *
+     * @param readCache 特征读取缓存
+     */
+    void setReadCache(CharacteristicReadCache readCache) {
+        CharacteristicReadCache previous = this.readCache;
+        if (previous != null && previous != readCache) {
+            previous.setListener(null);
+            previous.clear();
+        }
+        this.readCache = readCache;
+        if (readCache != null) {
+            readCache.setListener(new CharacteristicReadCache.Listener() {
+                @Override
+                public void onCachedRead(BluetoothGattCharacteristic characteristic, byte[] value) {
+                    BleBluetoothGattCallback bleBluetoothGattCallback = BluetoothLeService.this.bleBluetoothGattCallback;
+                    if (bleBluetoothGattCallback != null) {
+                        bleBluetoothGattCallback.onCachedRead(value);
+                    }
+                }
+            });
+        }
+        gattOperationQueue.setReadCache(readCache);
+    }
+
+    /**
+     * 连接断开后解除通知路由表的绑定
+     */
+    void unbindNotificationRouter() {
+        NotificationRouter notificationRouter = this.notificationRouter;
+        if (notificationRouter != null) {
+            notificationRouter.unbind();
+        }
+    }
+
+    /**
+     * 获取直接分发GATT事件的接收者
+     *
+     * @return 接收者，为null时表示通过系统广播发送GATT事件
+     */
+    ConnectBleBroadcastReceiver getDirectEventReceiver() {
+        return directEventReceiver;
+    }
+
+    /**
+     * 获取GATT操作队列
+     *
+     * @return GATT操作队列
+     */
+    GattOperationQueue getGattOperationQueue() {
+        return gattOperationQueue;
+    }
+
+    /*------------------------私有函数----------------------------*/
+
+    /**
+     * 打开GATT客户端并发起连接。之前的GATT客户端先关闭，否则新旧两个客户端会同时占用系统的名额并收到回调
+     *
+     * @param autoConnect 自动连接标志
+     * @return true表示成功
+     */
+    private boolean openGatt(boolean autoConnect) {
+        closeGatt(false);
+        bluetoothGatt = connectingDevice.connectGatt(this, autoConnect, bleBluetoothGattCallback);
+        gattOperationQueue.setBluetoothGatt(bluetoothGatt);
+        if (bluetoothGatt == null) {
+            return false;
+        }
+        stateMachine.onConnecting(autoConnect);
+        return autoConnect || bluetoothGatt.connect();
+    }
+
+    /**
+     * 关闭GATT客户端，取消队列中未完成的操作
+     *
+     * @param disconnect 关闭之前是否先断开连接
+     */
+    private void closeGatt(boolean disconnect) {
+        stateMachine.reset();
+        gattOperationQueue.clear();
+        gattOperationQueue.setBluetoothGatt(null);
+        BluetoothGatt gatt = bluetoothGatt;
+        bluetoothGatt = null;
+        if (gatt != null) {
+            if (disconnect) {
+                gatt.disconnect();
+            }
+            gatt.close();
+        }
+    }
+
+    /**
+     * 一次直连尝试失败：关闭GATT客户端，还有重试次数时在退避后重新直连，重试次数用完后按设置转为自动连接
+     *
+     * @param status      GATT状态码，-1表示超时
+     * @param autoConnect 失败的是否是自动连接
+     * @return true表示会重试或者已经转为自动连接
+     */
+    private boolean retryConnect(int status, boolean autoConnect) {
+        final BluetoothDevice bluetoothDevice = connectingDevice;
+        if (bluetoothDevice == null || autoConnect) {
+            return false;
+        }
+        if (connectAttempt <= connectMaxRetries) {
+            long backoff = BleConnectScheduler.computeBackoff(connectAttempt, random);
+            Tool.warnOut(TAG, "connect attempt {} failed, status {}, retry after {}ms", connectAttempt, status, backoff);
+            connectAttempt++;
+            //失败的GATT客户端必须关闭，否则会一直占用系统的名额
+            closeGatt(true);
+            cancelRetry();
+            retryFuture = BleScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (BluetoothLeService.this) {
+                        retryFuture = null;
+                        //退避期间设备已经被关闭或者重新发起了连接
+                        if (connectingDevice != bluetoothDevice || bluetoothAdapter == null) {
+                            return;
+                        }
+                        openGatt(false);
+                    }
+                }
+            }, backoff);
+            return true;
+        }
+        if (autoConnectFallback) {
+            Tool.warnOut(TAG, "connect attempt {} failed, status {}, fall back to auto connect", connectAttempt, status);
+            closeGatt(true);
+            openGatt(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 取消退避中的重新连接
+     */
+    private void cancelRetry() {
+        BleScheduler.cancel(retryFuture);
+        retryFuture = null;
+    }
+
+    /**
+     * 连接状态超时（在库内的定时线程中执行）
+     * 连接中、发现服务中超时按失败的连接尝试重试；不再重试或者断开中超时时，强制关闭GATT客户端并按断开连接通知应用
+     *
+     * @param state 超时的状态
+     */
+    private void onConnectionStateTimeout(int state) {
+        BluetoothGatt gatt;
+        synchronized (this) {
+            gatt = bluetoothGatt;
+            //系统的断开回调已经到达并处理了这次断开，超时不再处理，避免同一次断开通知两次
+            if (gatt == null || stateMachine.getState() != state || !claimDisconnect(gatt)) {
+                return;
+            }
+            if ((state == BleConstants.CONNECTION_STATE_CONNECTING || state == BleConstants.CONNECTION_STATE_DISCOVERING)
+                    && retryConnect(-1, stateMachine.isAutoConnect())) {
+                return;
+            }
+            closeGatt(true);
+        }
+        BleBluetoothGattCallback bleBluetoothGattCallback = this.bleBluetoothGattCallback;
+        if (bleBluetoothGattCallback != null) {
+            //已经认领了断开事件，之后迟到的系统回调会被丢弃
+            bleBluetoothGattCallback.handleConnectionStateChange(gatt, BluetoothGatt.GATT_SUCCESS, BluetoothProfile.STATE_DISCONNECTED);
+        }
+    }
+
+    /**
+     * 根据UUID查找特征
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征，找不到时返回null
+     */
+    private BluetoothGattCharacteristic findCharacteristic(String serviceUUID, String characteristicUUID) {
+        if (serviceUUID == null || characteristicUUID == null || bluetoothGatt == null) {
+            return null;
+        }
+        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
+        if (service == null) {
+            return null;
+        }
+        return service.getCharacteristic(UUID.fromString(characteristicUUID));
+    }
 }
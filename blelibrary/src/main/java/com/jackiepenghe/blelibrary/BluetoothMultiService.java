@@ -14,12 +14,10 @@ import android.os.IBinder;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 
 
 /**
@@ -49,9 +47,141 @@ public class BluetoothMultiService extends Service {
      */
     private BleBluetoothMultiGattCallback bleBluetoothMultiGattCallback;
     /**
-     * 存储GATT的集合
+     * 连接表（与多连接回调共用），每个设备的GATT客户端与连接回调都保存在这里
      */
-    private HashMap<String, BluetoothGatt> gattCallbackHashMap = new HashMap<>();
+    private BleConnectionRegistry connectionRegistry;
+    /**
+     * 连接池，限制同时打开的GATT客户端数量
+     */
+    private final BleConnectionPool connectionPool = new BleConnectionPool();
+    /**
+     * 被连接池淘汰、还未回调onGattClosed的连接（由连接池的锁保护）
+     */
+    private final ArrayList<BleConnectionEntry> evictedEntries = new ArrayList<>();
+    /**
+     * 连接调度器，限制同时进行的连接尝试数量，超时与失败时退避重试
+     */
+    private final BleConnectScheduler connectScheduler = new BleConnectScheduler(new BleConnectScheduler.Host() {
+        @Override
+        public void closeAttemptGatt(String address) {
+            BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+            if (bleConnectionEntry == null) {
+                return;
+            }
+            bleConnectionEntry.getGattOperationQueue().clear();
+            bleConnectionEntry.getStateMachine().reset();
+            BluetoothGatt gatt = bleConnectionEntry.getBluetoothGatt();
+            bleConnectionEntry.setBluetoothGatt(null);
+            if (gatt != null) {
+                gatt.disconnect();
+                gatt.close();
+            }
+        }
+
+        @Override
+        public void retryConnect(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, int priority, int attempt) {
+            synchronized (connectionPool) {
+                //退避期间设备已经被关闭
+                if (connectionRegistry.get(bluetoothDevice.getAddress()) == null) {
+                    return;
+                }
+                connectionPool.enqueue(bluetoothDevice, baseConnectCallback, false, priority, attempt);
+            }
+            drainPendingConnects();
+        }
+
+        @Override
+        public boolean giveUpConnect(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, int priority) {
+            String address = bluetoothDevice.getAddress();
+            if (autoConnectFallback) {
+                //直连多次失败后转为自动连接，由系统在后台等待设备出现
+                boolean fallback = false;
+                synchronized (connectionPool) {
+                    if (connectionRegistry.get(address) != null) {
+                        if (acquireSlot()) {
+                            openGatt(bluetoothDevice, baseConnectCallback, true, priority, 0);
+                        } else {
+                            connectionPool.enqueue(bluetoothDevice, baseConnectCallback, true, priority, 0);
+                        }
+                        fallback = true;
+                    }
+                }
+                dispatchEvictedEntries();
+                if (fallback) {
+                    return true;
+                }
+            }
+            BleConnectionEntry bleConnectionEntry = connectionRegistry.remove(Tool.macAddressToLong(address));
+            if (bleConnectionEntry != null) {
+                closeEntry(bleConnectionEntry, false);
+                bleBluetoothMultiGattCallback.dispatchGattClosed(bleConnectionEntry);
+            }
+            return false;
+        }
+
+        @Override
+        public void onConnectingSlotAvailable() {
+            drainPendingConnects();
+        }
+    });
+    /**
+     * 所有连接共用的状态机监听：提供各状态的超时时间，处理状态超时
+     */
+    private final BleConnectionStateMachine.Listener stateMachineListener = new BleConnectionStateMachine.Listener() {
+        @Override
+        public long getStateTimeout(int state) {
+            switch (state) {
+                case BleConstants.CONNECTION_STATE_CONNECTING:
+                    return connectTimeout;
+                case BleConstants.CONNECTION_STATE_DISCOVERING:
+                    return discoverTimeout;
+                case BleConstants.CONNECTION_STATE_DISCONNECTING:
+                    return disconnectTimeout;
+                default:
+                    return 0;
+            }
+        }
+
+        @Override
+        public void onStateTimeout(BleConnectionStateMachine stateMachine, int state) {
+            String address = stateMachine.getAddress();
+            //调度器中的连接尝试超时后关闭GATT客户端并退避重试
+            if ((state == BleConstants.CONNECTION_STATE_CONNECTING || state == BleConstants.CONNECTION_STATE_DISCOVERING)
+                    && connectScheduler.onAttemptTimeout(address)) {
+                return;
+            }
+            forceDisconnected(address);
+        }
+    };
+    /**
+     * 连接超时时间
+     */
+    private volatile long connectTimeout = BleConnectionStateMachine.DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * 服务发现超时时间
+     */
+    private volatile long discoverTimeout = BleConnectionStateMachine.DEFAULT_DISCOVER_TIMEOUT;
+    /**
+     * 断开连接超时时间
+     */
+    private volatile long disconnectTimeout = BleConnectionStateMachine.DEFAULT_DISCONNECT_TIMEOUT;
+    /**
+     * 直连的重试次数用完后是否转为自动连接
+     */
+    private volatile boolean autoConnectFallback = true;
+    /**
+     * 有等待发起的连接请求时定时检查是否有连接可以淘汰
+     */
+    private ScheduledFuture<?> drainPendingConnectsFuture;
+    /**
+     * 处理等待发起的连接请求
+     */
+    private final Runnable drainPendingConnectsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drainPendingConnects();
+        }
+    };
 
     /*------------------------重写父类函数----------------------------*/
 
@@ -62,6 +192,9 @@ public class BluetoothMultiService extends Service {
     public void onCreate() {
         super.onCreate();
         bleBluetoothMultiGattCallback = new BleBluetoothMultiGattCallback();
+        bleBluetoothMultiGattCallback.setGattLayoutCache(GattLayoutCache.getInstance(this));
+        bleBluetoothMultiGattCallback.setConnectScheduler(connectScheduler);
+        connectionRegistry = bleBluetoothMultiGattCallback.getConnectionRegistry();
         this.bluetoothMultiServiceBinder = new BluetoothMultiServiceBinder(this);
     }
 
@@ -74,6 +207,12 @@ public class BluetoothMultiService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        synchronized (connectionPool) {
+            BleScheduler.cancel(drainPendingConnectsFuture);
+            drainPendingConnectsFuture = null;
+        }
+        connectionPool.clear();
+        connectScheduler.clear();
         bleBluetoothMultiGattCallback.close();
         bluetoothMultiServiceBinder = null;
         bluetoothAdapter = null;
@@ -108,6 +247,260 @@ public class BluetoothMultiService extends Service {
         return bluetoothMultiServiceBinder;
     }
 
+    /*------------------------私有函数----------------------------*/
+
+    /**
+     * 根据设备地址获取GATT客户端
+     *
+     * @param address 设备地址
+     * @return GATT客户端，地址无效或者没有该设备时返回null
+     */
+    private BluetoothGatt getBluetoothGatt(String address) {
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+        if (bleConnectionEntry == null) {
+            return null;
+        }
+        return bleConnectionEntry.getBluetoothGatt();
+    }
+
+    /**
+     * 根据设备地址、服务UUID与特征UUID查找特征
+     *
+     * @param bleConnectionEntry 设备的连接信息
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征，找不到时返回null
+     */
+    private BluetoothGattCharacteristic findCharacteristic(BleConnectionEntry bleConnectionEntry, String serviceUUID, String characteristicUUID) {
+        if (bleConnectionEntry == null || serviceUUID == null || characteristicUUID == null) {
+            return null;
+        }
+        BluetoothGatt bluetoothGatt = bleConnectionEntry.getBluetoothGatt();
+        if (bluetoothGatt == null) {
+            return null;
+        }
+        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
+        if (service == null) {
+            return null;
+        }
+        return service.getCharacteristic(UUID.fromString(characteristicUUID));
+    }
+
+    /**
+     * 关闭设备的GATT客户端，取消其GATT操作队列中未完成的操作，并关闭通知数据流
+     *
+     * @param bleConnectionEntry 设备的连接信息
+     * @param disconnect         关闭之前是否先断开连接
+     */
+    private void closeEntry(BleConnectionEntry bleConnectionEntry, boolean disconnect) {
+        bleConnectionEntry.getStateMachine().reset();
+        bleConnectionEntry.getGattOperationQueue().clear();
+        bleConnectionEntry.getNotificationStreamRegistry().closeAll();
+        BluetoothGatt gatt = bleConnectionEntry.getBluetoothGatt();
+        bleConnectionEntry.setBluetoothGatt(null);
+        if (gatt != null) {
+            if (disconnect) {
+                gatt.disconnect();
+            }
+            gatt.close();
+        }
+    }
+
+    /**
+     * 状态超时并且不属于调度器中的连接尝试时（例如断开连接迟迟没有回调），强制关闭GATT客户端并按断开连接通知应用。
+     * 连接信息保留，之后可以重新连接
+     *
+     * @param address 设备地址
+     */
+    private void forceDisconnected(String address) {
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+        if (bleConnectionEntry == null) {
+            return;
+        }
+        BluetoothGatt gatt = bleConnectionEntry.getBluetoothGatt();
+        if (gatt == null) {
+            return;
+        }
+        Tool.warnOut("BluetoothMultiService", "force close {}", address);
+        bleConnectionEntry.setBluetoothGatt(null);
+        gatt.disconnect();
+        gatt.close();
+        //状态机由断开处理重置为空闲；系统的断开回调先到达时这里不会重复处理
+        bleBluetoothMultiGattCallback.onForcedDisconnected(bleConnectionEntry, gatt);
+        //释放了一个名额
+        drainPendingConnects();
+    }
+
+    /**
+     * 对已有的GATT客户端重新发起连接
+     * 对已有的GATT客户端调用connect()时系统按自动连接的方式在后台等待设备出现，可能需要很长时间，
+     * 因此状态机按自动连接处理（没有连接超时），与其他自动连接一样不占用调度器的连接尝试名额
+     *
+     * @param bleConnectionEntry 设备的连接信息
+     * @param bluetoothGatt      GATT客户端
+     * @return true表示成功发起连接
+     */
+    private boolean connectExistingGatt(BleConnectionEntry bleConnectionEntry, BluetoothGatt bluetoothGatt) {
+        bleConnectionEntry.resetDisconnectClaim();
+        boolean result = bluetoothGatt.connect();
+        BleConnectionStateMachine stateMachine = bleConnectionEntry.getStateMachine();
+        if (result && stateMachine.getState() == BleConstants.CONNECTION_STATE_IDLE) {
+            stateMachine.onConnecting(true);
+        }
+        return result;
+    }
+
+    /**
+     * 为新的连接占用一个名额，名额已满时淘汰一个空闲的连接
+     *
+     * 调用时需要持有连接池的锁，被淘汰的设备在释放锁之后由{@link #dispatchEvictedEntries()}回调
+     *
+     * @return true表示占用成功，false表示没有可以淘汰的连接
+     */
+    private boolean acquireSlot() {
+        BleConnectionEntry[] entries = connectionRegistry.entries();
+        if (connectionPool.hasFreeSlot(entries)) {
+            return true;
+        }
+        BleConnectionEntry candidate = connectionPool.selectEvictionCandidate(entries);
+        if (candidate == null || connectionRegistry.remove(candidate.getKey()) == null) {
+            return false;
+        }
+        Tool.warnOut("BluetoothMultiService", "evict idle connection {}", candidate.getAddress());
+        connectionPool.onEvicted(candidate.getAddress(), candidate.getBaseConnectCallback());
+        closeEntry(candidate, true);
+        //持有连接池的锁，释放之后再回调
+        evictedEntries.add(candidate);
+        return true;
+    }
+
+    /**
+     * 按回调的分发方式通知被连接池淘汰的设备GATT已关闭。
+     * 仍然持有连接池的锁时（嵌套调用）不处理，由最外层的调用者在释放锁之后处理
+     */
+    private void dispatchEvictedEntries() {
+        if (Thread.holdsLock(connectionPool)) {
+            return;
+        }
+        BleConnectionEntry[] entries;
+        synchronized (connectionPool) {
+            if (evictedEntries.isEmpty()) {
+                return;
+            }
+            entries = evictedEntries.toArray(new BleConnectionEntry[evictedEntries.size()]);
+            evictedEntries.clear();
+        }
+        for (BleConnectionEntry bleConnectionEntry : entries) {
+            bleBluetoothMultiGattCallback.dispatchGattClosed(bleConnectionEntry);
+        }
+    }
+
+    /**
+     * 登记连接信息并打开GATT客户端
+     *
+     * @param bluetoothDevice     设备
+     * @param baseConnectCallback 连接回调
+     * @param autoConnect         自动连接标志
+     * @param priority            优先级
+     * @param attempt             第几次尝试
+     * @return true表示成功发起连接
+     */
+    private boolean openGatt(BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, boolean autoConnect, int priority, int attempt) {
+        String address = bluetoothDevice.getAddress();
+        //先登记连接信息，保证连接过程中的回调可以找到对应的设备（同一个设备保留最早登记的回调）
+        final BleConnectionEntry bleConnectionEntry = connectionRegistry.putIfAbsent(new BleConnectionEntry(address, Tool.macAddressToLong(address), baseConnectCallback));
+        bleConnectionEntry.getStateMachine().setListener(stateMachineListener);
+        //命中读取缓存时像真正的读取一样回调读取结果
+        bleConnectionEntry.getReadCache().setListener(new CharacteristicReadCache.Listener() {
+            @Override
+            public void onCachedRead(BluetoothGattCharacteristic characteristic, byte[] value) {
+                bleBluetoothMultiGattCallback.onCachedRead(bleConnectionEntry, value);
+            }
+        });
+        BluetoothGatt existingGatt = bleConnectionEntry.getBluetoothGatt();
+        if (existingGatt != null) {
+            return connectExistingGatt(bleConnectionEntry, existingGatt);
+        }
+
+        BluetoothGatt bluetoothGatt = bluetoothDevice.connectGatt(this, autoConnect, bleBluetoothMultiGattCallback);
+        if (bluetoothGatt == null) {
+            if (!autoConnect) {
+                connectionRegistry.remove(bleConnectionEntry.getKey());
+                return false;
+            }
+            return true;
+        }
+        bleConnectionEntry.setBluetoothGatt(bluetoothGatt);
+        bleConnectionEntry.getStateMachine().onConnecting(autoConnect);
+        if (autoConnect) {
+            return true;
+        }
+        connectScheduler.onAttemptStarted(bluetoothDevice, baseConnectCallback, priority, attempt);
+        return bluetoothGatt.connect();
+    }
+
+    /**
+     * 在有空余名额（或者可以淘汰的连接）时，按优先级发起等待中的连接请求。
+     * 仍有请求在等待时，定时再次检查
+     */
+    private void drainPendingConnects() {
+        synchronized (connectionPool) {
+            while (bluetoothAdapter != null) {
+                BleConnectionPool.PendingConnect pendingConnect = connectionPool.peek();
+                if (pendingConnect == null) {
+                    break;
+                }
+                if ((!pendingConnect.autoConnect && !connectScheduler.canStart()) || !acquireSlot()) {
+                    break;
+                }
+                connectionPool.poll();
+                if (!openGatt(pendingConnect.bluetoothDevice, pendingConnect.baseConnectCallback, pendingConnect.autoConnect, pendingConnect.priority, pendingConnect.attempt)) {
+                    Tool.warnOut("BluetoothMultiService", "connect {} failed", pendingConnect.bluetoothDevice.getAddress());
+                }
+            }
+            BleScheduler.cancel(drainPendingConnectsFuture);
+            drainPendingConnectsFuture = null;
+            if (connectionPool.hasPendingConnects()) {
+                drainPendingConnectsFuture = BleScheduler.schedule(drainPendingConnectsRunnable, BleConnectionPool.MIN_IDLE_TIME);
+            }
+        }
+        dispatchEvictedEntries();
+    }
+
+    /**
+     * 根据设备地址获取连接信息并记录一次访问。该设备之前被连接池淘汰时，自动重新连接（本次仍然返回null）
+     *
+     * @param address 设备地址
+     * @return 连接信息，没有则返回null
+     */
+    private BleConnectionEntry getEntry(String address) {
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+        if (bleConnectionEntry != null) {
+            bleConnectionEntry.touch();
+            return bleConnectionEntry;
+        }
+        reconnectEvicted(address);
+        return null;
+    }
+
+    /**
+     * 重新连接被连接池淘汰的设备
+     *
+     * @param address 设备地址
+     * @return true表示该设备被淘汰过并且成功发起了重新连接
+     */
+    private boolean reconnectEvicted(String address) {
+        if (address == null || bluetoothAdapter == null || !BluetoothAdapter.checkBluetoothAddress(address)) {
+            return false;
+        }
+        BaseConnectCallback baseConnectCallback = connectionPool.takeEvicted(address);
+        if (baseConnectCallback == null) {
+            return false;
+        }
+        Tool.warnOut("BluetoothMultiService", "reconnect evicted device {}", address);
+        return connectAddress(address, baseConnectCallback, false, BleConstants.CONNECT_PRIORITY_NORMAL);
+    }
+
     /*------------------------库内函数----------------------------*/
 
     /**
@@ -137,9 +530,10 @@ public class BluetoothMultiService extends Service {
      * @param address             设备地址
      * @param baseConnectCallback 连接回调
      * @param autoConnect         自动连接标志
-     * @return true表示成功发起连接
+     * @param priority            连接池名额已满时，等待连接的优先级
+     * @return true表示成功发起连接或者已经加入等待队列
      */
-    boolean connectAddress(String address, BaseConnectCallback baseConnectCallback, boolean autoConnect) {
+    boolean connectAddress(String address, BaseConnectCallback baseConnectCallback, boolean autoConnect, int priority) {
         if (bluetoothAdapter == null) {
             return false;
         }
@@ -147,36 +541,11 @@ public class BluetoothMultiService extends Service {
         if (!BluetoothAdapter.checkBluetoothAddress(address)) {
             return false;
         }
-        if (bluetoothAdapter == null) {
-            return false;
-        }
         BluetoothDevice remoteDevice = bluetoothAdapter.getRemoteDevice(address);
         if (remoteDevice == null) {
             return false;
         }
-
-        BluetoothGatt bluetoothGatt = remoteDevice.connectGatt(this, autoConnect, bleBluetoothMultiGattCallback);
-        if (autoConnect) {
-            if (!bleBluetoothMultiGattCallback.callbackHashMap.containsKey(address)) {
-                bleBluetoothMultiGattCallback.callbackHashMap.put(address, baseConnectCallback);
-            }
-            if (!gattCallbackHashMap.containsKey(address)) {
-                gattCallbackHashMap.put(address, bluetoothGatt);
-            }
-            return true;
-        }
-
-        if (bluetoothGatt == null) {
-            return false;
-        }
-
-        if (!bleBluetoothMultiGattCallback.callbackHashMap.containsKey(address)) {
-            bleBluetoothMultiGattCallback.callbackHashMap.put(address, baseConnectCallback);
-        }
-        if (!gattCallbackHashMap.containsKey(address)) {
-            gattCallbackHashMap.put(address, bluetoothGatt);
-        }
-        return bluetoothGatt.connect();
+        return connectDevice(remoteDevice, baseConnectCallback, autoConnect, priority);
     }
 
     /**
@@ -185,35 +554,36 @@ public class BluetoothMultiService extends Service {
      * @param bluetoothDevice             设备地址
      * @param baseConnectCallback 连接回调
      * @param autoConnect         自动连接标志
-     * @return true表示成功发起连接
+     * @param priority            连接池名额已满时，等待连接的优先级
+     * @return true表示成功发起连接或者已经加入等待队列
      */
-    boolean connectDevice(@NonNull BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, boolean autoConnect) {
+    boolean connectDevice(@NonNull BluetoothDevice bluetoothDevice, BaseConnectCallback baseConnectCallback, boolean autoConnect, int priority) {
         if (bluetoothAdapter == null) {
             return false;
         }
 
-        BluetoothGatt bluetoothGatt = bluetoothDevice.connectGatt(this, autoConnect, bleBluetoothMultiGattCallback);
-        if (autoConnect) {
-            if (!bleBluetoothMultiGattCallback.callbackHashMap.containsKey(bluetoothDevice.getAddress())) {
-                bleBluetoothMultiGattCallback.callbackHashMap.put(bluetoothDevice.getAddress(), baseConnectCallback);
+        String address = bluetoothDevice.getAddress();
+        boolean result;
+        //占用名额与发起连接需要作为一个整体，避免并发时超过最大连接数
+        synchronized (connectionPool) {
+            connectionPool.takeEvicted(address);
+            BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+            BluetoothGatt existingGatt = bleConnectionEntry == null ? null : bleConnectionEntry.getBluetoothGatt();
+            if (existingGatt != null) {
+                bleConnectionEntry.touch();
+                return connectExistingGatt(bleConnectionEntry, existingGatt);
             }
-            if (!gattCallbackHashMap.containsKey(bluetoothDevice.getAddress())) {
-                gattCallbackHashMap.put(bluetoothDevice.getAddress(), bluetoothGatt);
+            //同时进行的连接尝试已达上限，或者名额已满并且没有可以淘汰的连接时，加入等待队列
+            if ((!autoConnect && !connectScheduler.canStart()) || !acquireSlot()) {
+                connectionPool.enqueue(bluetoothDevice, baseConnectCallback, autoConnect, priority, 1);
+                drainPendingConnects();
+                result = true;
+            } else {
+                result = openGatt(bluetoothDevice, baseConnectCallback, autoConnect, priority, 1);
             }
-            return true;
-        }
-
-        if (bluetoothGatt == null) {
-            return false;
-        }
-
-        if (!bleBluetoothMultiGattCallback.callbackHashMap.containsKey(bluetoothDevice.getAddress())) {
-            bleBluetoothMultiGattCallback.callbackHashMap.put(bluetoothDevice.getAddress(), baseConnectCallback);
-        }
-        if (!gattCallbackHashMap.containsKey(bluetoothDevice.getAddress())) {
-            gattCallbackHashMap.put(bluetoothDevice.getAddress(), bluetoothGatt);
         }
-        return bluetoothGatt.connect();
+        dispatchEvictedEntries();
+        return result;
     }
 
     /**
@@ -226,13 +596,15 @@ public class BluetoothMultiService extends Service {
         if (!BluetoothAdapter.checkBluetoothAddress(address)) {
             return false;
         }
-        if (!gattCallbackHashMap.containsKey(address)) {
+        connectionPool.remove(address);
+        connectScheduler.cancel(address);
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.remove(Tool.macAddressToLong(address));
+        if (bleConnectionEntry == null) {
             return false;
         }
-        BluetoothGatt gatt = gattCallbackHashMap.get(address);
-        gatt.close();
-        gattCallbackHashMap.remove(address);
-        bleBluetoothMultiGattCallback.callbackHashMap.remove(address);
+        closeEntry(bleConnectionEntry, false);
+        //释放了一个名额
+        drainPendingConnects();
         return true;
     }
 
@@ -240,17 +612,15 @@ public class BluetoothMultiService extends Service {
      * 关闭所有的GATT
      */
     void closeAll() {
-        for (Map.Entry<String, BluetoothGatt> entry : gattCallbackHashMap.entrySet()) {
-            BluetoothGatt gatt = entry.getValue();
-            gatt.disconnect();
-            gatt.close();
+        connectionPool.clear();
+        connectScheduler.clear();
+        BleConnectionEntry[] bleConnectionEntries = connectionRegistry.clear();
+        for (BleConnectionEntry bleConnectionEntry : bleConnectionEntries) {
+            closeEntry(bleConnectionEntry, true);
         }
-        for (Map.Entry<String, BaseConnectCallback> entry : bleBluetoothMultiGattCallback.callbackHashMap.entrySet()) {
-            BaseConnectCallback baseConnectCallback = entry.getValue();
-            baseConnectCallback.onGattClosed(entry.getKey());
+        for (BleConnectionEntry bleConnectionEntry : bleConnectionEntries) {
+            bleBluetoothMultiGattCallback.dispatchGattClosed(bleConnectionEntry);
         }
-        bleBluetoothMultiGattCallback.callbackHashMap.clear();
-        gattCallbackHashMap.clear();
     }
 
     /**
@@ -260,13 +630,17 @@ public class BluetoothMultiService extends Service {
      * @return true表示发起请求成功
      */
     boolean disconnect(String address) {
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+        if (bleConnectionEntry == null) {
             return false;
         }
-        if (!gattCallbackHashMap.containsKey(address)) {
-            return false;
+        //退避中或者重试后等待名额的设备没有GATT客户端，取消重试即可，连接信息保留，之后可以重新连接
+        boolean retryCancelled = connectScheduler.cancel(address);
+        BluetoothGatt gatt = bleConnectionEntry.getBluetoothGatt();
+        if (gatt == null) {
+            return connectionPool.removePending(address) || retryCancelled;
         }
-        BluetoothGatt gatt = gattCallbackHashMap.get(address);
+        bleConnectionEntry.getStateMachine().onDisconnecting();
         gatt.disconnect();
         return true;
     }
@@ -275,9 +649,13 @@ public class BluetoothMultiService extends Service {
      * 断开所有设备
      */
     void disconnectAll() {
-        for (Map.Entry<String, BluetoothGatt> entry : gattCallbackHashMap.entrySet()) {
-            BluetoothGatt gatt = entry.getValue();
-            gatt.disconnect();
+        for (BleConnectionEntry bleConnectionEntry : connectionRegistry.entries()) {
+            connectScheduler.cancel(bleConnectionEntry.getAddress());
+            BluetoothGatt gatt = bleConnectionEntry.getBluetoothGatt();
+            if (gatt != null) {
+                bleConnectionEntry.getStateMachine().onDisconnecting();
+                gatt.disconnect();
+            }
         }
     }
 
@@ -302,12 +680,13 @@ public class BluetoothMultiService extends Service {
         if (!BluetoothAdapter.checkBluetoothAddress(address)) {
             return false;
         }
-        if (!bleBluetoothMultiGattCallback.callbackHashMap.containsKey(address)) {
-            return false;
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+        if (bleConnectionEntry == null) {
+            return reconnectEvicted(address);
         }
-        if (gattCallbackHashMap.containsKey(address)) {
-            BluetoothGatt gatt = gattCallbackHashMap.get(address);
-            return gatt.connect();
+        BluetoothGatt gatt = bleConnectionEntry.getBluetoothGatt();
+        if (gatt != null) {
+            return connectExistingGatt(bleConnectionEntry, gatt);
         }
         if (bluetoothAdapter == null) {
             return false;
@@ -316,20 +695,19 @@ public class BluetoothMultiService extends Service {
         if (remoteDevice == null) {
             return false;
         }
-        BluetoothGatt bluetoothGatt = remoteDevice.connectGatt(this, autoConnect, bleBluetoothMultiGattCallback);
-        if (autoConnect) {
-            if (!gattCallbackHashMap.containsKey(address)) {
-                gattCallbackHashMap.put(address, bluetoothGatt);
+        //与connectDevice一样经过连接池与连接调度器，不能绕过最大连接数与同时连接数的限制
+        boolean result;
+        synchronized (connectionPool) {
+            if ((!autoConnect && !connectScheduler.canStart()) || !acquireSlot()) {
+                connectionPool.enqueue(remoteDevice, bleConnectionEntry.getBaseConnectCallback(), autoConnect, BleConstants.CONNECT_PRIORITY_NORMAL, 1);
+                drainPendingConnects();
+                result = true;
+            } else {
+                result = openGatt(remoteDevice, bleConnectionEntry.getBaseConnectCallback(), autoConnect, BleConstants.CONNECT_PRIORITY_NORMAL, 1);
             }
-            return true;
-        }
-        if (bluetoothGatt == null) {
-            return false;
         }
-        if (!gattCallbackHashMap.containsKey(address)) {
-            gattCallbackHashMap.put(address, bluetoothGatt);
-        }
-        return bluetoothGatt.connect();
+        dispatchEvictedEntries();
+        return result;
     }
 
     /**
@@ -339,14 +717,11 @@ public class BluetoothMultiService extends Service {
      * @return List<BluetoothGattService>
      */
     List<BluetoothGattService> getServices(String address) {
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+        BluetoothGatt gatt = getBluetoothGatt(address);
+        if (gatt == null) {
             return null;
         }
-        if (gattCallbackHashMap.containsKey(address)) {
-            BluetoothGatt gatt = gattCallbackHashMap.get(address);
-            return gatt.getServices();
-        }
-        return null;
+        return gatt.getServices();
     }
 
     /**
@@ -357,17 +732,14 @@ public class BluetoothMultiService extends Service {
      * @return BluetoothGattService
      */
     BluetoothGattService getService(String address, UUID uuid) {
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
-            return null;
-        }
         if (uuid == null) {
             return null;
         }
-        if (gattCallbackHashMap.containsKey(address)) {
-            BluetoothGatt gatt = gattCallbackHashMap.get(address);
-            return gatt.getService(uuid);
+        BluetoothGatt gatt = getBluetoothGatt(address);
+        if (gatt == null) {
+            return null;
         }
-        return null;
+        return gatt.getService(uuid);
     }
 
     /**
@@ -377,45 +749,15 @@ public class BluetoothMultiService extends Service {
      * @return true表示执行成功
      */
     boolean refreshGattCache(String address) {
-
-        if (BluetoothAdapter.checkBluetoothAddress(address)) {
-            return false;
-        }
-
-        if (!gattCallbackHashMap.containsKey(address)) {
-            return false;
-        }
-
-        BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
-
-        if (bluetoothGatt == null) {
-            return false;
-        }
-
-        try {
-            //noinspection JavaReflectionMemberAccess
-            Method refresh = bluetoothGatt.getClass().getMethod("refresh");
-            if (refresh != null) {
-                return (boolean) refresh.invoke(bluetoothGatt);
-            }
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-
-        return false;
+        return GattLayoutCache.refreshSystemCache(getBluetoothGatt(address));
     }
 
     /**
      * 清除所有GATT的缓存
      */
     void refreshAllGattCache() {
-        for (Map.Entry<String, BluetoothGatt> entries : gattCallbackHashMap.entrySet()) {
-            String key = entries.getKey();
-            refreshGattCache(key);
+        for (BleConnectionEntry bleConnectionEntry : connectionRegistry.entries()) {
+            refreshGattCache(bleConnectionEntry.getAddress());
         }
     }
 
@@ -426,31 +768,55 @@ public class BluetoothMultiService extends Service {
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
      * @param values             数据内容
-     * @return true表示成功发起请求
+     * @return true表示成功加入GATT操作队列
      */
     boolean writeData(String address, String serviceUUID, String characteristicUUID, byte[] values) {
-
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
-            return false;
-        }
-
-        if (!gattCallbackHashMap.containsKey(address)) {
+        BleConnectionEntry bleConnectionEntry = getEntry(address);
+        BluetoothGattCharacteristic characteristic = findCharacteristic(bleConnectionEntry, serviceUUID, characteristicUUID);
+        if (characteristic == null || values == null) {
             return false;
         }
+        return bleConnectionEntry.getGattOperationQueue().enqueue(GattOperation.newWriteCharacteristicOperation(characteristic, values)) != null;
+    }
 
-        BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
-
-        if (serviceUUID == null || characteristicUUID == null || values == null || bluetoothGatt == null) {
-            return false;
+    /**
+     * 根据设备地址分包写入大数据（作为一个操作加入该设备的GATT操作队列）
+     *
+     * @param address                          设备地址
+     * @param serviceUUID                      服务UUID
+     * @param characteristicUUID               特征UUID
+     * @param values                           数据内容
+     * @param withoutResponse                  是否使用无回复的方式写入（流模式）
+     * @param onLargeDataWriteProgressListener 进度回调
+     * @return 操作结果，null表示无法发起操作
+     */
+    GattOperationFuture writeLargeData(String address, String serviceUUID, String characteristicUUID, byte[] values, boolean withoutResponse, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        BleConnectionEntry bleConnectionEntry = getEntry(address);
+        BluetoothGattCharacteristic characteristic = findCharacteristic(bleConnectionEntry, serviceUUID, characteristicUUID);
+        if (characteristic == null || values == null) {
+            return null;
         }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (service == null) {
-            return false;
+        if (withoutResponse && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+            Tool.warnOut("BluetoothMultiService", "characteristic not support write without response");
+            return null;
         }
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUUID));
-        return characteristic != null && characteristic.setValue(values) && bluetoothGatt.writeCharacteristic(characteristic);
-
+        return bleConnectionEntry.getGattOperationQueue().enqueue(new GattLargeWriteOperation(characteristic, values, withoutResponse, onLargeDataWriteProgressListener));
+    }
 
+    /**
+     * 解析设备的特征句柄
+     *
+     * @param address            设备地址
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return 特征句柄，找不到特征时返回null
+     */
+    BleCharacteristicHandle getCharacteristicHandle(String address, String serviceUUID, String characteristicUUID) {
+        BleConnectionEntry bleConnectionEntry = getEntry(address);
+        if (bleConnectionEntry == null) {
+            return null;
+        }
+        return BleCharacteristicHandle.resolve(bleConnectionEntry.getGattOperationQueue(), bleConnectionEntry.getBluetoothGatt(), serviceUUID, characteristicUUID);
     }
 
     /**
@@ -459,31 +825,15 @@ public class BluetoothMultiService extends Service {
      * @param address            设备地址
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
-     * @return true表示成功发起请求
+     * @return true表示成功加入GATT操作队列
      */
     boolean readData(String address, String serviceUUID, String characteristicUUID) {
-
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
-            return false;
-        }
-
-        if (!gattCallbackHashMap.containsKey(address)) {
-            return false;
-        }
-
-        BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
-
-        if (serviceUUID == null || characteristicUUID == null || bluetoothGatt == null) {
-            return false;
-        }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (service == null) {
+        BleConnectionEntry bleConnectionEntry = getEntry(address);
+        BluetoothGattCharacteristic characteristic = findCharacteristic(bleConnectionEntry, serviceUUID, characteristicUUID);
+        if (characteristic == null) {
             return false;
         }
-
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUUID));
-
-        return characteristic != null && bluetoothGatt.readCharacteristic(characteristic);
+        return bleConnectionEntry.getGattOperationQueue().read(characteristic) != null;
     }
 
     /**
@@ -493,36 +843,19 @@ public class BluetoothMultiService extends Service {
      * @param serviceUUID        服务UUID
      * @param characteristicUUID 特征UUID
      * @param enable             true表示开启通知，false表示关闭通知
-     * @return true表示成功发起请求
+     * @return true表示成功加入GATT操作队列
      */
     boolean enableNotification(String address, String serviceUUID, String characteristicUUID, boolean enable) {
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+        BleConnectionEntry bleConnectionEntry = getEntry(address);
+        BluetoothGattCharacteristic characteristic = findCharacteristic(bleConnectionEntry, serviceUUID, characteristicUUID);
+        if (characteristic == null) {
             return false;
         }
-
-        if (!gattCallbackHashMap.containsKey(address)) {
-            return false;
-        }
-
-        BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
-        if (serviceUUID == null || characteristicUUID == null) {
-            return false;
-        }
-        BluetoothGattService bluetoothGattService = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (bluetoothGattService == null) {
-            return false;
-        }
-        BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(UUID.fromString(characteristicUUID));
-        if (!bluetoothGatt.setCharacteristicNotification(bluetoothGattCharacteristic, enable)) {
-            return false;
-        }
-        BluetoothGattDescriptor bluetoothGattDescriptor = bluetoothGattCharacteristic.getDescriptor(UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG));
+        BluetoothGattDescriptor bluetoothGattDescriptor = characteristic.getDescriptor(UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG));
         if (bluetoothGattDescriptor == null) {
             return false;
-        } else {
-            bluetoothGattDescriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
         }
-        return bluetoothGatt.writeDescriptor(bluetoothGattDescriptor);
+        return bleConnectionEntry.getGattOperationQueue().enqueue(GattOperation.newEnableNotificationOperation(characteristic, bluetoothGattDescriptor, enable)) != null;
     }
 
     /**
@@ -532,14 +865,154 @@ public class BluetoothMultiService extends Service {
      * @return true表示已经连接
      */
     boolean isConnected(String address) {
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+        if (bleConnectionEntry == null || bleConnectionEntry.getBluetoothGatt() == null) {
             return false;
         }
-        if (!gattCallbackHashMap.containsKey(address)) {
-            return false;
+        return bleConnectionEntry.getBaseConnectCallback().isConnected();
+    }
+
+    /**
+     * 获取设备的连接信息
+     *
+     * @param address 设备地址
+     * @return 连接信息，没有则返回null
+     */
+    BleConnectionEntry getConnectionEntry(String address) {
+        return connectionRegistry.get(address);
+    }
+
+    /**
+     * 设置GATT回调的分发方式
+     *
+     * @param dispatchMode 分发方式
+     */
+    void setDispatchMode(int dispatchMode) {
+        bleBluetoothMultiGattCallback.setDispatchMode(dispatchMode);
+    }
+
+    /**
+     * 设置服务发现完成后是否自动协商最大的MTU
+     *
+     * @param autoRequestMtu true表示自动协商
+     */
+    void setAutoRequestMtu(boolean autoRequestMtu) {
+        bleBluetoothMultiGattCallback.setAutoRequestMtu(autoRequestMtu);
+    }
+
+    /**
+     * 设置服务发现完成后是否自动切换到LE 2M PHY
+     *
+     * @param autoRequestLe2MPhy true表示自动切换
+     */
+    void setAutoRequestLe2MPhy(boolean autoRequestLe2MPhy) {
+        bleBluetoothMultiGattCallback.setAutoRequestLe2MPhy(autoRequestLe2MPhy);
+    }
+
+    /**
+     * 设置最大连接数
+     *
+     * @param maxConnections 最大连接数
+     */
+    void setMaxConnections(int maxConnections) {
+        connectionPool.setMaxConnections(maxConnections);
+        drainPendingConnects();
+    }
+
+    /**
+     * 设置同时进行的最大连接尝试数量
+     *
+     * @param maxConnecting 最大数量
+     */
+    void setMaxConnecting(int maxConnecting) {
+        connectScheduler.setMaxConnecting(maxConnecting);
+        drainPendingConnects();
+    }
+
+    /**
+     * 设置连接超时时间（连接中状态）
+     *
+     * @param connectTimeout 超时时间（毫秒）
+     */
+    void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * 设置服务发现超时时间（发现服务中状态）
+     *
+     * @param discoverTimeout 超时时间（毫秒）
+     */
+    void setDiscoverTimeout(long discoverTimeout) {
+        this.discoverTimeout = discoverTimeout;
+    }
+
+    /**
+     * 设置断开连接超时时间（断开中状态）
+     *
+     * @param disconnectTimeout 超时时间（毫秒）
+     */
+    void setDisconnectTimeout(long disconnectTimeout) {
+        this.disconnectTimeout = disconnectTimeout;
+    }
+
+    /**
+     * 设置直连的重试次数用完后是否转为自动连接
+     *
+     * @param autoConnectFallback true表示转为自动连接
+     */
+    void setAutoConnectFallback(boolean autoConnectFallback) {
+        this.autoConnectFallback = autoConnectFallback;
+    }
+
+    /**
+     * 设置订阅恢复完成的监听
+     *
+     * @param onSubscriptionsRestoredListener 监听
+     */
+    void setOnSubscriptionsRestoredListener(BleInterface.OnSubscriptionsRestoredListener onSubscriptionsRestoredListener) {
+        bleBluetoothMultiGattCallback.setOnSubscriptionsRestoredListener(onSubscriptionsRestoredListener);
+    }
+
+    /**
+     * 获取设备的连接状态
+     *
+     * @param address 设备地址
+     * @return BleConstants中定义的CONNECTION_STATE_开头的常量
+     */
+    int getConnectionState(String address) {
+        BleConnectionEntry bleConnectionEntry = connectionRegistry.get(address);
+        if (bleConnectionEntry == null) {
+            return BleConstants.CONNECTION_STATE_IDLE;
         }
-        BaseConnectCallback baseConnectCallback = bleBluetoothMultiGattCallback.callbackHashMap.get(address);
-        return baseConnectCallback.isConnected();
+        return bleConnectionEntry.getStateMachine().getState();
+    }
+
+    /**
+     * 设置连接失败后的最大重试次数
+     *
+     * @param maxRetries 最大重试次数
+     */
+    void setConnectMaxRetries(int maxRetries) {
+        connectScheduler.setMaxRetries(maxRetries);
+    }
+
+    /**
+     * 设置连接尝试结束的监听
+     *
+     * @param onConnectAttemptListener 监听
+     */
+    void setOnConnectAttemptListener(BleInterface.OnConnectAttemptListener onConnectAttemptListener) {
+        connectScheduler.setOnConnectAttemptListener(onConnectAttemptListener);
+    }
+
+    /**
+     * 获取等待发起的连接请求数量
+     *
+     * @return 数量
+     */
+    int getPendingConnectCount() {
+        return connectionPool.getPendingConnectCount();
     }
 
     /**
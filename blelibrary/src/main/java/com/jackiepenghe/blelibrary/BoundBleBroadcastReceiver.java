@@ -79,7 +79,7 @@ public class BoundBleBroadcastReceiver extends BroadcastReceiver {
             case BluetoothDevice.ACTION_PAIRING_REQUEST:
                 Tool.warnOut(TAG, "ACTION_PAIRING_REQUEST");
                 int mType = intent.getIntExtra(BluetoothDevice.EXTRA_PAIRING_VARIANT, BluetoothDevice.ERROR);
-                Tool.warnOut(TAG, "mType = " + mType);
+                Tool.warnOut(TAG, "mType = {}", mType);
                 switch (mType) {
                     case BluetoothDevice.PAIRING_VARIANT_PASSKEY_CONFIRMATION:
                         Tool.warnOut(TAG, "让用户确认PIN是否正确");
@@ -94,7 +94,7 @@ public class BoundBleBroadcastReceiver extends BroadcastReceiver {
             case BluetoothDevice.ACTION_BOND_STATE_CHANGED:
                 Tool.warnOut("BoundBleBroadcastReceiver", "ACTION_BOND_STATE_CHANGED");
                 int bondState = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.ERROR);
-                Tool.warnOut("BoundBleBroadcastReceiver", "bondState = " + bondState);
+                Tool.warnOut("BoundBleBroadcastReceiver", "bondState = {}", bondState);
                 switch (bondState) {
                     case BluetoothDevice.BOND_BONDING:
                         Tool.warnOut("BoundBleBroadcastReceiver", "BOND_BONDING");
@@ -0,0 +1,575 @@
+package com.jackiepenghe.blelibrary;
+
+/**
+ * 字节数据编解码工具
+ * 十六进制编解码使用查表实现，结果写入调用者提供的char[]、byte[]或StringBuilder中，不产生临时对象；
+ * 整数、浮点数按照小端（LE）或大端（BE）直接在字节数组的指定位置读写。
+ * 写入函数返回写入后的下一个位置，便于连续写入
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ByteCodec {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 十六进制字符（大写）
+     */
+    private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    /**
+     * 字符到十六进制数值的对照表，-1表示不是十六进制字符
+     */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < HEX_VALUES.length; i++) {
+            HEX_VALUES[i] = -1;
+        }
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 不允许创建实例
+     */
+    private ByteCodec() {
+    }
+
+    /*-------------------------十六进制编码-------------------------*/
+
+    /**
+     * 将字节数组编码为十六进制字符（大写，没有分隔符），写入到char数组中
+     *
+     * @param src       字节数组
+     * @param srcOffset 起始位置
+     * @param length    字节数
+     * @param dst       目标char数组，需要至少length * 2的空间
+     * @param dstOffset 目标起始位置
+     * @return 写入的字符数
+     */
+    public static int encodeHex(byte[] src, int srcOffset, int length, char[] dst, int dstOffset) {
+        checkRange(src.length, srcOffset, length);
+        checkRange(dst.length, dstOffset, length << 1);
+        int index = dstOffset;
+        for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+            int value = src[i] & 0xFF;
+            dst[index++] = HEX_DIGITS[value >>> 4];
+            dst[index++] = HEX_DIGITS[value & 0x0F];
+        }
+        return length << 1;
+    }
+
+    /**
+     * 将字节数组编码为十六进制字符（大写，没有分隔符），追加到StringBuilder中
+     *
+     * @param stringBuilder StringBuilder
+     * @param src           字节数组
+     * @param srcOffset     起始位置
+     * @param length        字节数
+     * @return 传入的StringBuilder
+     */
+    public static StringBuilder appendHex(StringBuilder stringBuilder, byte[] src, int srcOffset, int length) {
+        checkRange(src.length, srcOffset, length);
+        stringBuilder.ensureCapacity(stringBuilder.length() + (length << 1));
+        for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+            int value = src[i] & 0xFF;
+            stringBuilder.append(HEX_DIGITS[value >>> 4]).append(HEX_DIGITS[value & 0x0F]);
+        }
+        return stringBuilder;
+    }
+
+    /**
+     * 将字节数组编码为十六进制字符（大写），每个字节之间插入分隔符，追加到StringBuilder中
+     *
+     * @param stringBuilder StringBuilder
+     * @param src           字节数组
+     * @param srcOffset     起始位置
+     * @param length        字节数
+     * @param separator     分隔符
+     * @return 传入的StringBuilder
+     */
+    public static StringBuilder appendHex(StringBuilder stringBuilder, byte[] src, int srcOffset, int length, char separator) {
+        checkRange(src.length, srcOffset, length);
+        if (length == 0) {
+            return stringBuilder;
+        }
+        stringBuilder.ensureCapacity(stringBuilder.length() + length * 3 - 1);
+        for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+            if (i != srcOffset) {
+                stringBuilder.append(separator);
+            }
+            int value = src[i] & 0xFF;
+            stringBuilder.append(HEX_DIGITS[value >>> 4]).append(HEX_DIGITS[value & 0x0F]);
+        }
+        return stringBuilder;
+    }
+
+    /**
+     * 将字节数组编码为十六进制字符串（大写），每个字节之间插入分隔符
+     *
+     * @param src       字节数组，为null时返回空字符串
+     * @param separator 分隔符
+     * @return 十六进制字符串
+     */
+    public static String toHexString(byte[] src, char separator) {
+        if (src == null || src.length == 0) {
+            return "";
+        }
+        char[] chars = new char[src.length * 3 - 1];
+        int index = 0;
+        for (int i = 0; i < src.length; i++) {
+            if (i != 0) {
+                chars[index++] = separator;
+            }
+            int value = src[i] & 0xFF;
+            chars[index++] = HEX_DIGITS[value >>> 4];
+            chars[index++] = HEX_DIGITS[value & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 将字节数组编码为十六进制字符串（大写，没有分隔符）
+     *
+     * @param src 字节数组，为null时返回空字符串
+     * @return 十六进制字符串
+     */
+    public static String toHexString(byte[] src) {
+        if (src == null || src.length == 0) {
+            return "";
+        }
+        char[] chars = new char[src.length << 1];
+        encodeHex(src, 0, src.length, chars, 0);
+        return new String(chars);
+    }
+
+    /*-------------------------十六进制解码-------------------------*/
+
+    /**
+     * 将十六进制字符（不区分大小写，没有分隔符）解码为字节，写入到byte数组中
+     *
+     * @param src       十六进制字符
+     * @param srcOffset 起始位置
+     * @param length    字符数，必须是偶数
+     * @param dst       目标byte数组，需要至少length / 2的空间
+     * @param dstOffset 目标起始位置
+     * @return 写入的字节数
+     * @throws IllegalArgumentException 字符数是奇数或者包含非十六进制字符
+     */
+    public static int decodeHex(CharSequence src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        checkRange(src.length(), srcOffset, length);
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("odd hex length " + length);
+        }
+        int byteCount = length >>> 1;
+        checkRange(dst.length, dstOffset, byteCount);
+        int index = srcOffset;
+        for (int i = dstOffset, end = dstOffset + byteCount; i < end; i++) {
+            int high = hexValue(src.charAt(index++));
+            int low = hexValue(src.charAt(index++));
+            dst[i] = (byte) ((high << 4) | low);
+        }
+        return byteCount;
+    }
+
+    /**
+     * 将十六进制字符（不区分大小写，没有分隔符）解码为字节，写入到byte数组中
+     *
+     * @param src       十六进制字符
+     * @param srcOffset 起始位置
+     * @param length    字符数，必须是偶数
+     * @param dst       目标byte数组，需要至少length / 2的空间
+     * @param dstOffset 目标起始位置
+     * @return 写入的字节数
+     * @throws IllegalArgumentException 字符数是奇数或者包含非十六进制字符
+     */
+    public static int decodeHex(char[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        checkRange(src.length, srcOffset, length);
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("odd hex length " + length);
+        }
+        int byteCount = length >>> 1;
+        checkRange(dst.length, dstOffset, byteCount);
+        int index = srcOffset;
+        for (int i = dstOffset, end = dstOffset + byteCount; i < end; i++) {
+            int high = hexValue(src[index++]);
+            int low = hexValue(src[index++]);
+            dst[i] = (byte) ((high << 4) | low);
+        }
+        return byteCount;
+    }
+
+    /**
+     * 将十六进制字符串（不区分大小写，没有分隔符）解码为字节数组
+     *
+     * @param src 十六进制字符串
+     * @return 字节数组
+     * @throws IllegalArgumentException 字符数是奇数或者包含非十六进制字符
+     */
+    public static byte[] hexToBytes(CharSequence src) {
+        byte[] bytes = new byte[src.length() >>> 1];
+        decodeHex(src, 0, src.length(), bytes, 0);
+        return bytes;
+    }
+
+    /*-------------------------整数读取-------------------------*/
+
+    /**
+     * 读取无符号8位整数
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static int readUInt8(byte[] src, int offset) {
+        return src[offset] & 0xFF;
+    }
+
+    /**
+     * 读取有符号16位整数（小端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static short readInt16LE(byte[] src, int offset) {
+        return (short) ((src[offset] & 0xFF) | (src[offset + 1] << 8));
+    }
+
+    /**
+     * 读取有符号16位整数（大端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static short readInt16BE(byte[] src, int offset) {
+        return (short) ((src[offset] << 8) | (src[offset + 1] & 0xFF));
+    }
+
+    /**
+     * 读取无符号16位整数（小端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static int readUInt16LE(byte[] src, int offset) {
+        return readInt16LE(src, offset) & 0xFFFF;
+    }
+
+    /**
+     * 读取无符号16位整数（大端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static int readUInt16BE(byte[] src, int offset) {
+        return readInt16BE(src, offset) & 0xFFFF;
+    }
+
+    /**
+     * 读取有符号32位整数（小端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static int readInt32LE(byte[] src, int offset) {
+        return (src[offset] & 0xFF)
+                | (src[offset + 1] & 0xFF) << 8
+                | (src[offset + 2] & 0xFF) << 16
+                | src[offset + 3] << 24;
+    }
+
+    /**
+     * 读取有符号32位整数（大端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static int readInt32BE(byte[] src, int offset) {
+        return src[offset] << 24
+                | (src[offset + 1] & 0xFF) << 16
+                | (src[offset + 2] & 0xFF) << 8
+                | (src[offset + 3] & 0xFF);
+    }
+
+    /**
+     * 读取无符号32位整数（小端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static long readUInt32LE(byte[] src, int offset) {
+        return readInt32LE(src, offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 读取无符号32位整数（大端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static long readUInt32BE(byte[] src, int offset) {
+        return readInt32BE(src, offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 读取有符号64位整数（小端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static long readInt64LE(byte[] src, int offset) {
+        return (readInt32LE(src, offset) & 0xFFFFFFFFL) | ((long) readInt32LE(src, offset + 4) << 32);
+    }
+
+    /**
+     * 读取有符号64位整数（大端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static long readInt64BE(byte[] src, int offset) {
+        return ((long) readInt32BE(src, offset) << 32) | (readInt32BE(src, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 读取32位浮点数（小端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static float readFloatLE(byte[] src, int offset) {
+        return Float.intBitsToFloat(readInt32LE(src, offset));
+    }
+
+    /**
+     * 读取32位浮点数（大端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static float readFloatBE(byte[] src, int offset) {
+        return Float.intBitsToFloat(readInt32BE(src, offset));
+    }
+
+    /**
+     * 读取64位浮点数（小端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static double readDoubleLE(byte[] src, int offset) {
+        return Double.longBitsToDouble(readInt64LE(src, offset));
+    }
+
+    /**
+     * 读取64位浮点数（大端）
+     *
+     * @param src    字节数组
+     * @param offset 位置
+     * @return 数值
+     */
+    public static double readDoubleBE(byte[] src, int offset) {
+        return Double.longBitsToDouble(readInt64BE(src, offset));
+    }
+
+    /*-------------------------整数写入-------------------------*/
+
+    /**
+     * 写入8位整数
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值（只使用低8位）
+     * @return 下一个位置
+     */
+    public static int writeInt8(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) value;
+        return offset + 1;
+    }
+
+    /**
+     * 写入16位整数（小端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值（只使用低16位）
+     * @return 下一个位置
+     */
+    public static int writeInt16LE(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) value;
+        dst[offset + 1] = (byte) (value >>> 8);
+        return offset + 2;
+    }
+
+    /**
+     * 写入16位整数（大端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值（只使用低16位）
+     * @return 下一个位置
+     */
+    public static int writeInt16BE(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 8);
+        dst[offset + 1] = (byte) value;
+        return offset + 2;
+    }
+
+    /**
+     * 写入32位整数（小端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeInt32LE(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) value;
+        dst[offset + 1] = (byte) (value >>> 8);
+        dst[offset + 2] = (byte) (value >>> 16);
+        dst[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+
+    /**
+     * 写入32位整数（大端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeInt32BE(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    /**
+     * 写入64位整数（小端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeInt64LE(byte[] dst, int offset, long value) {
+        writeInt32LE(dst, offset, (int) value);
+        return writeInt32LE(dst, offset + 4, (int) (value >>> 32));
+    }
+
+    /**
+     * 写入64位整数（大端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeInt64BE(byte[] dst, int offset, long value) {
+        writeInt32BE(dst, offset, (int) (value >>> 32));
+        return writeInt32BE(dst, offset + 4, (int) value);
+    }
+
+    /**
+     * 写入32位浮点数（小端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeFloatLE(byte[] dst, int offset, float value) {
+        return writeInt32LE(dst, offset, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * 写入32位浮点数（大端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeFloatBE(byte[] dst, int offset, float value) {
+        return writeInt32BE(dst, offset, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * 写入64位浮点数（小端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeDoubleLE(byte[] dst, int offset, double value) {
+        return writeInt64LE(dst, offset, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * 写入64位浮点数（大端）
+     *
+     * @param dst    字节数组
+     * @param offset 位置
+     * @param value  数值
+     * @return 下一个位置
+     */
+    public static int writeDoubleBE(byte[] dst, int offset, double value) {
+        return writeInt64BE(dst, offset, Double.doubleToRawLongBits(value));
+    }
+
+    /*-------------------------私有静态函数-------------------------*/
+
+    /**
+     * 获取十六进制字符的数值
+     *
+     * @param c 字符
+     * @return 数值
+     */
+    private static int hexValue(char c) {
+        int value = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("invalid hex character '" + c + "'");
+        }
+        return value;
+    }
+
+    /**
+     * 检查数组范围
+     *
+     * @param arrayLength 数组长度
+     * @param offset      起始位置
+     * @param length      长度
+     */
+    private static void checkRange(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException("offset = " + offset + ", length = " + length + ", array length = " + arrayLength);
+        }
+    }
+}
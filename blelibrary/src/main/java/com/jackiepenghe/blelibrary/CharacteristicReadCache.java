@@ -0,0 +1,263 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 单个连接的特征读取缓存
+ * 同一个特征同时有多个读取时只向远端设备发起一次读取，读取完成后所有等待者得到同一个结果。
+ * 为特征设置了缓存有效期时，有效期内的读取直接返回缓存的数据，不再向远端设备发起读取。
+ * 向该特征写入数据、连接断开或者服务布局发生变化时缓存失效
+ *
+ * @author alm
+ */
+
+class CharacteristicReadCache {
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 特征的缓存有效期（毫秒），key为服务UUID与特征UUID
+     */
+    private final HashMap<String, Long> ttls = new HashMap<>();
+    /**
+     * 缓存的数据，key为当前GATT客户端中的特征对象
+     */
+    private final IdentityHashMap<BluetoothGattCharacteristic, CachedValue> cachedValues = new IdentityHashMap<>();
+    /**
+     * 正在进行的读取，key为当前GATT客户端中的特征对象
+     */
+    private final IdentityHashMap<BluetoothGattCharacteristic, InFlightRead> inFlightReads = new IdentityHashMap<>();
+    /**
+     * 命中缓存时的监听
+     */
+    private volatile Listener listener;
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 设置命中缓存时的监听
+     *
+     * @param listener 监听
+     */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 设置特征的缓存有效期
+     *
+     * @param serviceUuid        服务UUID
+     * @param characteristicUuid 特征UUID
+     * @param ttl                有效期（毫秒），0表示不缓存（同时读取时仍然会合并为一次读取）
+     */
+    synchronized void setTtl(UUID serviceUuid, UUID characteristicUuid, long ttl) {
+        String key = serviceUuid + "/" + characteristicUuid;
+        if (ttl > 0) {
+            ttls.put(key, ttl);
+        } else {
+            ttls.remove(key);
+            Iterator<BluetoothGattCharacteristic> iterator = cachedValues.keySet().iterator();
+            while (iterator.hasNext()) {
+                BluetoothGattCharacteristic characteristic = iterator.next();
+                if (characteristicUuid.equals(characteristic.getUuid())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取特征：有效期内直接返回缓存的数据，已经有相同特征的读取在进行时等待该读取的结果，否则加入GATT操作队列
+     *
+     * @param gattOperationQueue GATT操作队列
+     * @param characteristic     特征
+     * @return 操作结果（每次调用都是一个新的对象）
+     */
+    GattOperationFuture read(GattOperationQueue gattOperationQueue, BluetoothGattCharacteristic characteristic) {
+        GattOperationFuture gattOperationFuture = new GattOperationFuture();
+        GattOperation gattOperation;
+        byte[] cachedValue = null;
+        synchronized (this) {
+            long ttl = getTtl(characteristic);
+            CachedValue value = ttl > 0 ? cachedValues.get(characteristic) : null;
+            if (value != null && SystemClock.elapsedRealtime() - value.time <= ttl) {
+                cachedValue = value.value;
+                gattOperation = null;
+            } else {
+                InFlightRead inFlightRead = inFlightReads.get(characteristic);
+                if (inFlightRead != null) {
+                    inFlightRead.waiters.add(gattOperationFuture);
+                    return gattOperationFuture;
+                }
+                inFlightRead = new InFlightRead(characteristic);
+                inFlightRead.waiters.add(gattOperationFuture);
+                inFlightReads.put(characteristic, inFlightRead);
+                gattOperation = GattOperation.newReadCharacteristicOperation(characteristic);
+                gattOperation.getFuture().setOnGattOperationCompleteListener(inFlightRead);
+            }
+        }
+        if (gattOperation != null) {
+            gattOperationQueue.enqueue(gattOperation);
+            return gattOperationFuture;
+        }
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onCachedRead(characteristic, cachedValue.clone());
+        }
+        gattOperationFuture.complete(BluetoothGatt.GATT_SUCCESS, cachedValue.clone());
+        return gattOperationFuture;
+    }
+
+    /**
+     * GATT操作加入队列时调用，向特征写入数据时该特征的缓存失效，之后的读取不再合并到写入之前发起的读取
+     *
+     * @param gattOperation GATT操作
+     */
+    void onOperationEnqueued(GattOperation gattOperation) {
+        if (gattOperation.getType() != GattOperation.TYPE_WRITE_CHARACTERISTIC) {
+            return;
+        }
+        BluetoothGattCharacteristic characteristic = gattOperation.getCharacteristic();
+        synchronized (this) {
+            cachedValues.remove(characteristic);
+            inFlightReads.remove(characteristic);
+        }
+    }
+
+    /**
+     * 清除缓存的数据（连接断开、GATT客户端更换或者服务布局发生变化时调用），缓存有效期的设置保留
+     */
+    synchronized void clear() {
+        cachedValues.clear();
+        inFlightReads.clear();
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 获取特征的缓存有效期
+     *
+     * @param characteristic 特征
+     * @return 有效期（毫秒），0表示不缓存
+     */
+    private long getTtl(BluetoothGattCharacteristic characteristic) {
+        if (ttls.isEmpty()) {
+            return 0;
+        }
+        BluetoothGattService service = characteristic.getService();
+        if (service == null) {
+            return 0;
+        }
+        Long ttl = ttls.get(service.getUuid() + "/" + characteristic.getUuid());
+        return ttl == null ? 0 : ttl;
+    }
+
+    /**
+     * 一次读取完成
+     *
+     * @param inFlightRead        读取
+     * @param gattOperationFuture 实际发起的读取操作的结果
+     */
+    private void onReadComplete(InFlightRead inFlightRead, GattOperationFuture gattOperationFuture) {
+        byte[] value = gattOperationFuture.getValue();
+        List<GattOperationFuture> waiters;
+        synchronized (this) {
+            //读取期间写入了数据或者连接已断开时，结果仍然返回给等待者，但不放入缓存
+            if (inFlightReads.get(inFlightRead.characteristic) == inFlightRead) {
+                inFlightReads.remove(inFlightRead.characteristic);
+                if (gattOperationFuture.isSuccess() && value != null && getTtl(inFlightRead.characteristic) > 0) {
+                    cachedValues.put(inFlightRead.characteristic, new CachedValue(value.clone(), SystemClock.elapsedRealtime()));
+                }
+            }
+            waiters = new ArrayList<>(inFlightRead.waiters);
+            inFlightRead.waiters.clear();
+        }
+        int status = gattOperationFuture.getStatus();
+        for (int i = 0; i < waiters.size(); i++) {
+            //每个等待者得到各自的数据，互不影响
+            waiters.get(i).complete(status, value == null || i == 0 ? value : value.clone());
+        }
+    }
+
+    /*-------------------------内部类-------------------------*/
+
+    /**
+     * 缓存的数据
+     */
+    private static final class CachedValue {
+
+        /**
+         * 数据
+         */
+        final byte[] value;
+        /**
+         * 读取完成的时间（SystemClock.elapsedRealtime）
+         */
+        final long time;
+
+        /**
+         * 构造器
+         *
+         * @param value 数据
+         * @param time  读取完成的时间
+         */
+        CachedValue(byte[] value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 正在进行的读取
+     */
+    private final class InFlightRead implements BleInterface.OnGattOperationCompleteListener {
+
+        /**
+         * 特征
+         */
+        final BluetoothGattCharacteristic characteristic;
+        /**
+         * 等待结果的调用者
+         */
+        final List<GattOperationFuture> waiters = new ArrayList<>();
+
+        /**
+         * 构造器
+         *
+         * @param characteristic 特征
+         */
+        InFlightRead(BluetoothGattCharacteristic characteristic) {
+            this.characteristic = characteristic;
+        }
+
+        @Override
+        public void onGattOperationComplete(GattOperationFuture gattOperationFuture) {
+            onReadComplete(this, gattOperationFuture);
+        }
+    }
+
+    /*-------------------------内部接口-------------------------*/
+
+    /**
+     * 命中缓存时的监听
+     */
+    interface Listener {
+        /**
+         * 读取命中了缓存（在发起读取的线程中执行），用于像真正的读取一样回调读取结果
+         *
+         * @param characteristic 特征
+         * @param value          缓存的数据
+         */
+        void onCachedRead(BluetoothGattCharacteristic characteristic, byte[] value);
+    }
+}
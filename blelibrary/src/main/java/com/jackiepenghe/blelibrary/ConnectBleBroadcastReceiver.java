@@ -7,6 +7,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
 
 
 /**
@@ -51,6 +55,10 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
      * 收到远端设备的通知的回调
      */
     private BleInterface.OnReceiveNotificationListener onReceiveNotificationListener;
+    /**
+     * 收到远端设备的通知的回调（使用可回收的缓冲区）
+     */
+    private BleInterface.OnReceiveNotificationBufferListener onReceiveNotificationBufferListener;
     /**
      * 向远端设备写入数据的回调
      */
@@ -83,7 +91,16 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
     /**
      * Handler
      */
-    private Handler handler = new Handler();
+    private Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * 执行回调的线程池，默认在主线程中执行，为null时直接在GATT回调所在的线程中执行
+     */
+    private Executor callbackExecutor = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            handler.post(command);
+        }
+    };
 
     /*------------------------实现父类函数----------------------------*/
 
@@ -157,10 +174,31 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
                     }
                 }
                 break;
+            default:
+                String methodName = intent.getStringExtra(LibraryConstants.METHOD);
+                int errorStatus = intent.getIntExtra(LibraryConstants.STATUS, LibraryConstants.DEFAULT_STATUS);
+                dispatchEvent(action, values, methodName, errorStatus);
+                break;
+        }
+    }
+
+    /*------------------------库内函数----------------------------*/
+
+    /**
+     * 分发GATT事件到对应的回调
+     * 广播模式下由onReceive调用，直接分发模式下由BleBluetoothGattCallback在GATT回调线程中直接调用
+     *
+     * @param action      事件
+     * @param values      事件包含的数据
+     * @param methodName  配置失败时失败的函数名
+     * @param errorStatus 配置失败时的状态码
+     */
+    void dispatchEvent(String action, final byte[] values, final String methodName, final int errorStatus) {
+        switch (action) {
             case BleConstants.ACTION_GATT_CONNECTED:
                 Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_GATT_CONNECTED");
                 if (onConnectedListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onConnectedListener.onConnected();
@@ -171,7 +209,7 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
             case BleConstants.ACTION_GATT_DISCONNECTED:
                 Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_GATT_SERVICES_DISCOVERED");
                 if (onDisconnectedListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onDisconnectedListener.onDisconnected();
@@ -182,7 +220,7 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
             case BleConstants.ACTION_GATT_SERVICES_DISCOVERED:
                 Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_GATT_SERVICES_DISCOVERED");
                 if (onServicesDiscoveredListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onServicesDiscoveredListener.onServicesDiscovered();
@@ -191,10 +229,8 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
                 }
                 break;
             case BleConstants.ACTION_GATT_NOT_SUCCESS:
-                final String methodName = intent.getStringExtra(LibraryConstants.METHOD);
-                final int errorStatus = intent.getIntExtra(LibraryConstants.STATUS, LibraryConstants.DEFAULT_STATUS);
                 if (onBluetoothGattOptionsNotSuccessListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onBluetoothGattOptionsNotSuccessListener.onBluetoothGattOptionsNotSuccess(methodName, errorStatus);
@@ -205,7 +241,7 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
             case BleConstants.ACTION_GATT_CONNECTING:
                 Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_GATT_CONNECTING");
                 if (onConnectingListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onConnectingListener.onConnecting();
@@ -216,7 +252,7 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
             case BleConstants.ACTION_GATT_DISCONNECTING:
                 Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_GATT_DISCONNECTING");
                 if (onDisconnectingListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onDisconnectingListener.onDisconnecting();
@@ -225,9 +261,9 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
                 }
                 break;
             case BleConstants.ACTION_CHARACTERISTIC_READ:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_CHARACTERISTIC_READ,value = " + Tool.bytesToHexStr(values));
+                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_CHARACTERISTIC_READ,value = {}", values);
                 if (onCharacteristicReadListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onCharacteristicReadListener.onCharacteristicRead(values);
@@ -236,20 +272,12 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
                 }
                 break;
             case BleConstants.ACTION_CHARACTERISTIC_CHANGED:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_CHARACTERISTIC_CHANGED,value = " + Tool.bytesToHexStr(values));
-                if (onReceiveNotificationListener != null) {
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            onReceiveNotificationListener.onReceiveNotification(values);
-                        }
-                    });
-                }
+                dispatchNotification(NotificationBufferPool.obtain(null, values));
                 break;
             case BleConstants.ACTION_CHARACTERISTIC_WRITE:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_CHARACTERISTIC_WRITE,value = " + Tool.bytesToHexStr(values));
+                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_CHARACTERISTIC_WRITE,value = {}", values);
                 if (onCharacteristicWriteListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onCharacteristicWriteListener.onCharacteristicWrite(values);
@@ -258,9 +286,9 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
                 }
                 break;
             case BleConstants.ACTION_DESCRIPTOR_READ:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_DESCRIPTOR_READ,value = " + Tool.bytesToHexStr(values));
+                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_DESCRIPTOR_READ,value = {}", values);
                 if (onDescriptorReadListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onDescriptorReadListener.onDescriptorRead(values);
@@ -269,9 +297,9 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
                 }
                 break;
             case BleConstants.ACTION_DESCRIPTOR_WRITE:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_DESCRIPTOR_WRITE,value = " + Tool.bytesToHexStr(values));
+                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_DESCRIPTOR_WRITE,value = {}", values);
                 if (onDescriptorWriteListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onDescriptorWriteListener.onDescriptorWrite(values);
@@ -282,13 +310,18 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
             case BleConstants.ACTION_RELIABLE_WRITE_COMPLETED:
                 Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_RELIABLE_WRITE_COMPLETED");
                 if (onReliableWriteCompletedListener != null) {
-                    onReliableWriteCompletedListener.onReliableWriteCompleted();
+                    execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            onReliableWriteCompletedListener.onReliableWriteCompleted();
+                        }
+                    });
                 }
                 break;
             case BleConstants.ACTION_READ_REMOTE_RSSI:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_READ_REMOTE_RSSI,rssi = " + values[0]);
+                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_READ_REMOTE_RSSI,rssi = {}", values[0]);
                 if (onReadRemoteRssiListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
                             onReadRemoteRssiListener.onReadRemoteRssi(values[0]);
@@ -297,23 +330,32 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
                 }
                 break;
             case BleConstants.ACTION_MTU_CHANGED:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_MTU_CHANGED,mtu = " + values[0]);
+                //MTU最大为517，以两个字节（小端）传递
+                final int mtu = (values[0] & 0xFF) | ((values[1] & 0xFF) << 8);
+                Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_MTU_CHANGED,mtu = {}", mtu);
                 if (onMtuChangedListener != null) {
-                    handler.post(new Runnable() {
+                    execute(new Runnable() {
                         @Override
                         public void run() {
-                            onMtuChangedListener.onMtuChanged(values[0]);
+                            onMtuChangedListener.onMtuChanged(mtu);
                         }
                     });
                 }
                 break;
             default:
-                Tool.warnOut("ConnectBleBroadcastReceiver", "get other action" + action);
+                Tool.warnOut("ConnectBleBroadcastReceiver", "get other action{}", action);
                 break;
         }
     }
 
-    /*------------------------库内函数----------------------------*/
+    /**
+     * 设置执行回调的线程池
+     *
+     * @param callbackExecutor 执行回调的线程池，为null时直接在GATT回调所在的线程中执行
+     */
+    void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
 
     /**
      * 设置设备已连接连接的回调
@@ -444,4 +486,81 @@ public class ConnectBleBroadcastReceiver extends BroadcastReceiver {
     void setOnBluetoothGattOptionsNotSuccessListener(BleInterface.OnBluetoothGattOptionsNotSuccessListener onBluetoothGattOptionsNotSuccessListener) {
         this.onBluetoothGattOptionsNotSuccessListener = onBluetoothGattOptionsNotSuccessListener;
     }
+
+    /**
+     * 分发通知数据到对应的回调，所有回调执行完成后释放缓冲区
+     * 直接分发模式下由BleBluetoothGattCallback在GATT回调线程中直接调用
+     *
+     * @param notificationBuffer 通知数据的缓冲区（引用计数为1，由此函数负责释放）
+     */
+    void dispatchNotification(final NotificationBuffer notificationBuffer) {
+        Tool.warnOut("ConnectBleBroadcastReceiver", "ACTION_CHARACTERISTIC_CHANGED,length = {}", notificationBuffer.getLength());
+        final BleInterface.OnReceiveNotificationBufferListener onReceiveNotificationBufferListener = this.onReceiveNotificationBufferListener;
+        final BleInterface.OnReceiveNotificationListener onReceiveNotificationListener = this.onReceiveNotificationListener;
+        if (onReceiveNotificationBufferListener == null && onReceiveNotificationListener == null) {
+            notificationBuffer.release();
+            return;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (onReceiveNotificationBufferListener != null) {
+                        onReceiveNotificationBufferListener.onReceiveNotification(notificationBuffer);
+                    }
+                    if (onReceiveNotificationListener != null) {
+                        onReceiveNotificationListener.onReceiveNotification(notificationBuffer.toByteArray());
+                    }
+                } finally {
+                    notificationBuffer.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * 在回调线程池中执行按特征登记的通知监听，监听返回后释放缓冲区
+     * 直接分发模式下由BleBluetoothGattCallback在GATT回调线程中直接调用
+     *
+     * @param onCharacteristicNotificationListener 通知监听
+     * @param address                              设备地址
+     * @param notificationBuffer                   通知数据的缓冲区（引用计数为1，由此函数负责释放）
+     */
+    void dispatchCharacteristicNotification(final BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener, final String address, final NotificationBuffer notificationBuffer) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    onCharacteristicNotificationListener.onCharacteristicNotification(address, notificationBuffer);
+                } finally {
+                    notificationBuffer.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置收到远端设备通知数据的回调（使用可回收的缓冲区）
+     *
+     * @param onReceiveNotificationBufferListener 收到远端设备通知数据的回调
+     */
+    void setOnReceiveNotificationBufferListener(BleInterface.OnReceiveNotificationBufferListener onReceiveNotificationBufferListener) {
+        this.onReceiveNotificationBufferListener = onReceiveNotificationBufferListener;
+    }
+
+    /*------------------------私有函数----------------------------*/
+
+    /**
+     * 在回调线程池中执行回调
+     *
+     * @param runnable 回调
+     */
+    private void execute(Runnable runnable) {
+        Executor callbackExecutor = this.callbackExecutor;
+        if (callbackExecutor == null) {
+            runnable.run();
+        } else {
+            callbackExecutor.execute(runnable);
+        }
+    }
 }
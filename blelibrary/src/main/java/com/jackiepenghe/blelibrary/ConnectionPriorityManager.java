@@ -0,0 +1,231 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 单个连接的连接优先级管理
+ * 队列中有大数据传输或者打开了通知数据流时，自动将连接优先级提高为HIGH（更短的连接间隔，吞吐量更高），
+ * 空闲一段时间后再降回空闲时的优先级（BALANCED或LOW_POWER），以节省功耗。
+ * 手动指定了优先级时，以手动指定的为准。需要API 21以上，低版本不做处理
+ *
+ * @author alm
+ */
+
+class ConnectionPriorityManager {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * TAG
+     */
+    private static final String TAG = ConnectionPriorityManager.class.getSimpleName();
+
+    /**
+     * 传输结束后，等待多久再降低连接优先级（毫秒），避免连续的传输之间频繁切换
+     */
+    private static final long IDLE_DELAY = 2000;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * GATT客户端
+     */
+    private BluetoothGatt bluetoothGatt;
+    /**
+     * 是否已连接
+     */
+    private boolean connected;
+    /**
+     * 手动指定的优先级，{@link BleConstants#CONNECTION_PRIORITY_AUTO}表示自动管理
+     */
+    private int overridePriority = BleConstants.CONNECTION_PRIORITY_AUTO;
+    /**
+     * 空闲时的优先级
+     */
+    private int idlePriority = BleConstants.CONNECTION_PRIORITY_BALANCED;
+    /**
+     * 当前连接的优先级（新连接默认为BALANCED）
+     */
+    private int currentPriority = BleConstants.CONNECTION_PRIORITY_BALANCED;
+    /**
+     * 正在进行的大数据传输数量
+     */
+    private int bulkTransferCount;
+    /**
+     * 是否有打开的通知数据流
+     */
+    private boolean streamActive;
+    /**
+     * 降低优先级的定时任务
+     */
+    private ScheduledFuture<?> idleFuture;
+    /**
+     * 空闲时间到达后降低优先级
+     */
+    private final Runnable idleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ConnectionPriorityManager.this) {
+                idleFuture = null;
+                int targetPriority = getTargetPriority();
+                if (targetPriority != BleConstants.CONNECTION_PRIORITY_HIGH) {
+                    applyPriority(targetPriority);
+                }
+            }
+        }
+    };
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 设置GATT客户端
+     *
+     * @param bluetoothGatt GATT客户端
+     */
+    synchronized void setBluetoothGatt(BluetoothGatt bluetoothGatt) {
+        if (this.bluetoothGatt == bluetoothGatt) {
+            return;
+        }
+        this.bluetoothGatt = bluetoothGatt;
+        connected = false;
+        cancelIdle();
+    }
+
+    /**
+     * 连接状态改变时调用
+     *
+     * @param connected true表示已连接
+     */
+    synchronized void setConnected(boolean connected) {
+        this.connected = connected;
+        //新建立的连接优先级总是BALANCED
+        currentPriority = BleConstants.CONNECTION_PRIORITY_BALANCED;
+        cancelIdle();
+        if (connected) {
+            update();
+        }
+    }
+
+    /**
+     * 开始一次大数据传输
+     */
+    synchronized void onBulkTransferStarted() {
+        bulkTransferCount++;
+        update();
+    }
+
+    /**
+     * 一次大数据传输结束
+     */
+    synchronized void onBulkTransferFinished() {
+        if (bulkTransferCount > 0) {
+            bulkTransferCount--;
+        }
+        update();
+    }
+
+    /**
+     * 设置是否有打开的通知数据流
+     *
+     * @param streamActive true表示有
+     */
+    synchronized void setStreamActive(boolean streamActive) {
+        this.streamActive = streamActive;
+        update();
+    }
+
+    /**
+     * 手动指定连接优先级
+     *
+     * @param overridePriority 优先级，{@link BleConstants#CONNECTION_PRIORITY_AUTO}表示恢复自动管理
+     */
+    synchronized void setOverridePriority(int overridePriority) {
+        this.overridePriority = overridePriority;
+        update();
+    }
+
+    /**
+     * 设置空闲时的优先级
+     *
+     * @param idlePriority 优先级（BALANCED或LOW_POWER）
+     */
+    synchronized void setIdlePriority(int idlePriority) {
+        this.idlePriority = idlePriority;
+        update();
+    }
+
+    /**
+     * 获取当前连接的优先级
+     *
+     * @return 优先级
+     */
+    synchronized int getCurrentPriority() {
+        return currentPriority;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 获取当前应当使用的优先级
+     *
+     * @return 优先级
+     */
+    private int getTargetPriority() {
+        if (overridePriority != BleConstants.CONNECTION_PRIORITY_AUTO) {
+            return overridePriority;
+        }
+        if (bulkTransferCount > 0 || streamActive) {
+            return BleConstants.CONNECTION_PRIORITY_HIGH;
+        }
+        return idlePriority;
+    }
+
+    /**
+     * 根据当前状态更新连接优先级。提高优先级或者手动指定时立即生效，自动降低优先级时延迟一段时间
+     */
+    private void update() {
+        if (!connected) {
+            return;
+        }
+        int targetPriority = getTargetPriority();
+        if (targetPriority == currentPriority) {
+            cancelIdle();
+            return;
+        }
+        if (targetPriority == BleConstants.CONNECTION_PRIORITY_HIGH || overridePriority != BleConstants.CONNECTION_PRIORITY_AUTO) {
+            cancelIdle();
+            applyPriority(targetPriority);
+            return;
+        }
+        if (idleFuture == null) {
+            idleFuture = BleScheduler.schedule(idleRunnable, IDLE_DELAY);
+        }
+    }
+
+    /**
+     * 向远端设备请求更新连接优先级
+     *
+     * @param priority 优先级
+     */
+    private void applyPriority(int priority) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || bluetoothGatt == null || !connected || priority == currentPriority) {
+            return;
+        }
+        if (bluetoothGatt.requestConnectionPriority(priority)) {
+            currentPriority = priority;
+        } else {
+            Tool.warnOut(TAG, "requestConnectionPriority failed,priority = {}", priority);
+        }
+    }
+
+    /**
+     * 取消降低优先级的定时任务
+     */
+    private void cancelIdle() {
+        BleScheduler.cancel(idleFuture);
+        idleFuture = null;
+    }
+}
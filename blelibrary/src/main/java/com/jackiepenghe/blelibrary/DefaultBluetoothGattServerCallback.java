@@ -58,7 +58,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onConnectionStateChange:device name = " +
                     device.getName() + ",device address = " + device.getAddress() + ",status = " +
                     status + ",newState = " + newState);
@@ -82,7 +82,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onServiceAdded:status = " + status + ",serviceUUID = " +
                     service.getUuid().toString());
         }
@@ -109,7 +109,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicReadRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() +
                     ",requestId = " + requestId + ",offset = " + offset + ",characteristicUUID = " +
@@ -142,7 +142,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() +
                     ",requestId = " + requestId + ",characteristicUUID = " +
@@ -173,7 +173,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() +
                     ",requestId = " + requestId + ",offset = " + offset + ",descriptor = " + descriptor.getUuid().toString());
@@ -205,7 +205,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() +
                     ",requestId = " + requestId + ",descriptorUUID = " +
@@ -235,7 +235,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() +
                     ",requestId = " + requestId + ",execute = " + execute);
@@ -263,7 +263,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() + ",status = " + status);
         }
@@ -288,7 +288,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() + ",mtu = " + mtu);
         }
@@ -316,7 +316,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() + ",txPhy = " +
                     txPhy + ",rxPhy = " + rxPhy + ",status = " + status);
@@ -344,7 +344,7 @@ class DefaultBluetoothGattServerCallback extends BluetoothGattServerCallback {
                 }
             };
             handler.post(runnable);
-        } else {
+        } else if (BleLog.isLoggable(BleConstants.LOG_LEVEL_WARN)) {
             Tool.warnOut(TAG, "onCharacteristicWriteRequest:device name = " +
                     device.getName() + ",device address = " + device.getAddress() + ",txPhy = " +
                     txPhy + ",rxPhy = " + rxPhy + ",status = " + status);
@@ -28,7 +28,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onDisConnected(BluetoothGatt gatt) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onDisConnected");
+        Tool.warnOut(TAG, "device address:{} onDisConnected", device.getAddress());
     }
 
     /**
@@ -39,7 +39,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onConnecting(BluetoothGatt gatt) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onConnecting");
+        Tool.warnOut(TAG, "device address:{} onConnecting", device.getAddress());
     }
 
     /**
@@ -50,7 +50,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onConnected(BluetoothGatt gatt) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onConnected");
+        Tool.warnOut(TAG, "device address:{} onConnected", device.getAddress());
     }
 
     /**
@@ -61,7 +61,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onDisconnecting(BluetoothGatt gatt) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onDisconnecting");
+        Tool.warnOut(TAG, "device address:{} onDisconnecting", device.getAddress());
     }
 
     /**
@@ -72,7 +72,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onServicesDiscovered(BluetoothGatt gatt) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onServicesDiscovered");
+        Tool.warnOut(TAG, "device address:{} onServicesDiscovered", device.getAddress());
     }
 
     /**
@@ -84,8 +84,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onCharacteristicRead(BluetoothGatt gatt, byte[] values) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onCharacteristicRead");
-        Tool.warnOut(TAG, "values = " + Tool.bytesToHexStr(values));
+        Tool.warnOut(TAG, "device address:{} onCharacteristicRead", device.getAddress());
+        Tool.warnOut(TAG, "values = {}", values);
     }
 
     /**
@@ -98,8 +98,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onPhyUpdate");
-        Tool.warnOut(TAG, "txPhy = " + txPhy + ", rxPhy = " + rxPhy);
+        Tool.warnOut(TAG, "device address:{} onPhyUpdate", device.getAddress());
+        Tool.warnOut(TAG, "txPhy = {}, rxPhy = {}", txPhy, rxPhy);
     }
 
     /**
@@ -112,8 +112,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onPhyRead");
-        Tool.warnOut(TAG, "txPhy = " + txPhy + ", rxPhy = " + rxPhy);
+        Tool.warnOut(TAG, "device address:{} onPhyRead", device.getAddress());
+        Tool.warnOut(TAG, "txPhy = {}, rxPhy = {}", txPhy, rxPhy);
     }
 
     /**
@@ -125,8 +125,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onCharacteristicWrite(BluetoothGatt gatt, byte[] values) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onCharacteristicWrite");
-        Tool.warnOut(TAG, "values = " + Tool.bytesToHexStr(values));
+        Tool.warnOut(TAG, "device address:{} onCharacteristicWrite", device.getAddress());
+        Tool.warnOut(TAG, "values = {}", values);
     }
 
     /**
@@ -138,8 +138,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onReceivedNotification(BluetoothGatt gatt, byte[] values) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onReceivedNotification");
-        Tool.warnOut(TAG, "values = " + Tool.bytesToHexStr(values));
+        Tool.warnOut(TAG, "device address:{} onReceivedNotification", device.getAddress());
+        Tool.warnOut(TAG, "values = {}", values);
     }
 
     /**
@@ -151,8 +151,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onDescriptorRead(BluetoothGatt gatt, byte[] values) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onDescriptorRead");
-        Tool.warnOut(TAG, "values = " + Tool.bytesToHexStr(values));
+        Tool.warnOut(TAG, "device address:{} onDescriptorRead", device.getAddress());
+        Tool.warnOut(TAG, "values = {}", values);
     }
 
     /**
@@ -164,8 +164,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onDescriptorWrite(BluetoothGatt gatt, byte[] values) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onDescriptorWrite");
-        Tool.warnOut(TAG, "values = " + Tool.bytesToHexStr(values));
+        Tool.warnOut(TAG, "device address:{} onDescriptorWrite", device.getAddress());
+        Tool.warnOut(TAG, "values = {}", values);
     }
 
     /**
@@ -176,7 +176,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onReliableWriteCompleted(BluetoothGatt gatt) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onReliableWriteCompleted");
+        Tool.warnOut(TAG, "device address:{} onReliableWriteCompleted", device.getAddress());
     }
 
     /**
@@ -188,8 +188,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onReadRemoteRssi(BluetoothGatt gatt, int rssi) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onReadRemoteRssi");
-        Tool.warnOut(TAG, "rssi = " + rssi);
+        Tool.warnOut(TAG, "device address:{} onReadRemoteRssi", device.getAddress());
+        Tool.warnOut(TAG, "rssi = {}", rssi);
     }
 
     /**
@@ -201,8 +201,8 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onMtuChanged(BluetoothGatt gatt, int mtu) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onMtuChanged");
-        Tool.warnOut(TAG, "rssi = " + mtu);
+        Tool.warnOut(TAG, "device address:{} onMtuChanged", device.getAddress());
+        Tool.warnOut(TAG, "rssi = {}", mtu);
     }
 
     /*------------------------实现父类函数----------------------------*/
@@ -215,7 +215,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onDiscoverServicesFailed(BluetoothGatt gatt) {
         BluetoothDevice device = gatt.getDevice();
-        Tool.warnOut(TAG, "device address:" + device.getAddress() + " onDiscoverServicesFailed");
+        Tool.warnOut(TAG, "device address:{} onDiscoverServicesFailed", device.getAddress());
     }
 
     /**
@@ -225,7 +225,7 @@ class DefaultConnectCallBack extends BaseConnectCallback {
      */
     @Override
     public void onGattClosed(String address) {
-        Tool.warnOut(TAG, "device address:" + address + " onGattClosed");
+        Tool.warnOut(TAG, "device address:{} onGattClosed", address);
     }
 
     /**
@@ -238,6 +238,6 @@ class DefaultConnectCallBack extends BaseConnectCallback {
     @Override
     public void onBluetoothGattOptionsNotSuccess(BluetoothGatt gatt, String methodName, int errorStatus) {
         String address = gatt.getDevice().getAddress();
-        Tool.warnOut(TAG, "onBluetoothGattOptionsNotSuccess. device address:" + address + ",methodName:" + methodName + ",errorStatus:" + errorStatus);
+        Tool.warnOut(TAG, "onBluetoothGattOptionsNotSuccess. device address:{},methodName:{},errorStatus:{}", address, methodName, errorStatus);
     }
 }
@@ -0,0 +1,148 @@
+package com.jackiepenghe.blelibrary;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 输出到文件的日志输出目标
+ * 日志追加到文件末尾，带有缓冲，ERROR日志会立即写入文件，其他日志在缓冲区满或者调用{@link #flush()}时写入
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class FileLogSink implements BleInterface.LogSink {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 日志级别的标识
+     */
+    private static final char[] LEVEL_CHARS = {'?', '?', 'V', 'D', 'I', 'W', 'E', 'A'};
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 日志文件
+     */
+    private final File file;
+    /**
+     * 写入器
+     */
+    private Writer writer;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param file 日志文件，不存在时会自动创建
+     */
+    public FileLogSink(File file) {
+        this.file = file;
+    }
+
+    /*-------------------------实现接口函数-------------------------*/
+
+    /**
+     * 输出一条日志
+     *
+     * @param level     日志级别
+     * @param tag       tag
+     * @param message   日志信息
+     * @param throwable 异常，没有则为null
+     */
+    @Override
+    public synchronized void log(int level, String tag, String message, Throwable throwable) {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+            }
+            writer.write(formatEntry(System.currentTimeMillis(), level, tag, message, throwable));
+            writer.write('\n');
+            if (level >= BleConstants.LOG_LEVEL_ERROR) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            //写入失败时不能再通过日志工具输出，避免递归
+            Log.e("FileLogSink", "write log failed", e);
+            close();
+        }
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 将缓冲区中的日志写入文件
+     */
+    public synchronized void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            Log.e("FileLogSink", "flush log failed", e);
+        }
+    }
+
+    /**
+     * 关闭文件，之后再有日志时会重新打开
+     */
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.e("FileLogSink", "close log failed", e);
+        }
+        writer = null;
+    }
+
+    /**
+     * 获取日志文件
+     *
+     * @return 日志文件
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 将一条日志格式化为一行文本
+     *
+     * @param time      时间
+     * @param level     日志级别
+     * @param tag       tag
+     * @param message   日志信息
+     * @param throwable 异常，没有则为null
+     * @return 日志文本
+     */
+    static String formatEntry(long time, int level, String tag, String message, Throwable throwable) {
+        StringBuilder stringBuilder = new StringBuilder(64 + (message == null ? 4 : message.length()));
+        stringBuilder.append(new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US).format(new Date(time)))
+                .append(' ')
+                .append(level >= 0 && level < LEVEL_CHARS.length ? LEVEL_CHARS[level] : '?')
+                .append('/')
+                .append(tag)
+                .append(": ")
+                .append(message);
+        if (throwable != null) {
+            stringBuilder.append('\n').append(Log.getStackTraceString(throwable));
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+
+/**
+ * 重新发现服务的操作（收到Service Changed指示后使用）
+ * 发现服务与其他GATT操作一样同一时间只能有一个，必须经过操作队列，否则正在执行的操作会让discoverServices返回false。
+ * 需要刷新系统GATT缓存时在发起发现之前刷新，保证刷新与发现之间不会插入其他操作
+ *
+ * @author alm
+ */
+
+class GattDiscoverServicesOperation extends GattOperation {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * TAG
+     */
+    private static final String TAG = GattDiscoverServicesOperation.class.getSimpleName();
+
+    /**
+     * 发现服务的超时时间（毫秒），服务较多的设备完整发现一次需要数秒
+     */
+    private static final long DISCOVER_SERVICES_TIMEOUT = 30000;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * GATT布局缓存，为null时不刷新系统GATT缓存
+     */
+    private final GattLayoutCache gattLayoutCache;
+    /**
+     * 设备地址
+     */
+    private final String address;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param gattLayoutCache GATT布局缓存，为null时不刷新系统GATT缓存
+     * @param address         设备地址
+     */
+    GattDiscoverServicesOperation(GattLayoutCache gattLayoutCache, String address) {
+        super(TYPE_DISCOVER_SERVICES, null, null, null, 0);
+        this.gattLayoutCache = gattLayoutCache;
+        this.address = address;
+        setTimeout(DISCOVER_SERVICES_TIMEOUT);
+    }
+
+    /*-------------------------重写父类函数-------------------------*/
+
+    /**
+     * 刷新系统GATT缓存（需要时）并发起服务发现
+     *
+     * @param gatt BluetoothGatt
+     * @param mtu  当前连接的MTU
+     * @return true表示发起成功
+     */
+    @Override
+    boolean execute(BluetoothGatt gatt, int mtu) {
+        if (gattLayoutCache != null) {
+            gattLayoutCache.refreshIfStale(address, gatt);
+        }
+        if (!gatt.discoverServices()) {
+            Tool.warnOut(TAG, "无法进行服务发现");
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,176 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.util.Arrays;
+
+/**
+ * 分包写入大数据的操作
+ * 开始执行时按照当前的MTU将数据切分为多个数据包（每包MTU-3字节），全部写入完成后操作才结束，期间队列中的其他操作不会插入。
+ * <p>
+ * 安卓的BluetoothGatt同一时间只允许一个未完成的请求（包括无回复写入），在上一次onCharacteristicWrite回调之前
+ * 再次调用writeCharacteristic一定会返回false，因此每次只发出一个数据包，收到回调后再发出下一个。
+ * 流模式下使用无回复的方式写入，系统蓝牙栈在数据包进入发送缓冲区后就会回调，不需要等待远端设备的回复
+ *
+ * @author alm
+ */
+
+class GattLargeWriteOperation extends GattOperation {
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 要写入的完整数据
+     */
+    private final byte[] data;
+    /**
+     * 是否使用无回复的方式写入
+     */
+    private final boolean withoutResponse;
+    /**
+     * 进度回调
+     */
+    private final BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener;
+    /**
+     * 每个数据包的最大长度
+     */
+    private int packetSize;
+    /**
+     * 数据包总数
+     */
+    private int packetCount;
+    /**
+     * 已经确认写入的数据包数量，也是下一个要发出的数据包序号
+     */
+    private int completedPackets;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器（普通模式）
+     *
+     * @param characteristic                   要写入的特征
+     * @param data                             要写入的完整数据
+     * @param onLargeDataWriteProgressListener 进度回调
+     */
+    GattLargeWriteOperation(BluetoothGattCharacteristic characteristic, byte[] data, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        this(characteristic, data, false, onLargeDataWriteProgressListener);
+    }
+
+    /**
+     * 构造器
+     *
+     * @param characteristic                   要写入的特征
+     * @param data                             要写入的完整数据
+     * @param withoutResponse                  是否使用无回复的方式写入
+     * @param onLargeDataWriteProgressListener 进度回调
+     */
+    GattLargeWriteOperation(BluetoothGattCharacteristic characteristic, byte[] data, boolean withoutResponse, BleInterface.OnLargeDataWriteProgressListener onLargeDataWriteProgressListener) {
+        super(TYPE_WRITE_CHARACTERISTIC, characteristic, null, null, 0);
+        this.data = data;
+        this.withoutResponse = withoutResponse;
+        this.onLargeDataWriteProgressListener = onLargeDataWriteProgressListener;
+    }
+
+    /*-------------------------重写父类函数-------------------------*/
+
+    /**
+     * 写入第一个数据包
+     *
+     * @param gatt BluetoothGatt
+     * @param mtu  当前连接的MTU
+     * @return true表示发起成功
+     */
+    @Override
+    synchronized boolean execute(BluetoothGatt gatt, int mtu) {
+        //ATT写请求的头部占3个字节
+        packetSize = Math.max(mtu - 3, 1);
+        //没有数据时也写入一个空的数据包
+        packetCount = Math.max((data.length + packetSize - 1) / packetSize, 1);
+        completedPackets = 0;
+        return writePacket(gatt, 0);
+    }
+
+    /**
+     * 分包写入总是大数据传输
+     *
+     * @return true
+     */
+    @Override
+    boolean isBulkTransfer() {
+        return true;
+    }
+
+    /**
+     * 一个数据包写入成功
+     *
+     * @return true表示还有数据包没有完成
+     */
+    @Override
+    boolean onStepCompleted() {
+        int writtenLength;
+        boolean hasNext;
+        synchronized (this) {
+            completedPackets++;
+            writtenLength = Math.min(completedPackets * packetSize, data.length);
+            hasNext = completedPackets < packetCount;
+        }
+        if (onLargeDataWriteProgressListener != null) {
+            onLargeDataWriteProgressListener.onLargeDataWriteProgress(writtenLength, data.length);
+        }
+        return hasNext && !getFuture().isDone();
+    }
+
+    /**
+     * 写入下一个数据包
+     *
+     * @param gatt BluetoothGatt
+     * @return true表示发起成功
+     */
+    @Override
+    synchronized boolean executeNextStep(BluetoothGatt gatt) {
+        return writePacket(gatt, completedPackets);
+    }
+
+    /**
+     * 操作结果中返回完整的数据，而不是最后一个数据包
+     *
+     * @param value 最后一次回调中的数据
+     * @return 完整的数据
+     */
+    @Override
+    byte[] getResultValue(byte[] value) {
+        return data;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 写入一个数据包
+     *
+     * @param gatt  BluetoothGatt
+     * @param index 数据包序号
+     * @return true表示发起成功
+     */
+    private boolean writePacket(BluetoothGatt gatt, int index) {
+        BluetoothGattCharacteristic characteristic = getCharacteristic();
+        int start = index * packetSize;
+        int end = Math.min(start + packetSize, data.length);
+        byte[] packet = Arrays.copyOfRange(data, start, end);
+        if (!characteristic.setValue(packet)) {
+            return false;
+        }
+        if (!withoutResponse) {
+            return gatt.writeCharacteristic(characteristic);
+        }
+        //写入类型在writeCharacteristic中同步读取，写入后立即恢复，不影响该特征的其他写入操作
+        int writeType = characteristic.getWriteType();
+        characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        try {
+            return gatt.writeCharacteristic(characteristic);
+        } finally {
+            characteristic.setWriteType(writeType);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 远端设备的GATT布局（服务、特征与特征属性）
+ * 由服务发现的结果生成，保存在本地缓存中，下次连接时可以在服务发现之前查询设备有哪些服务与特征。
+ * 布局的哈希值由所有服务UUID、特征UUID与特征属性按顺序计算，哈希值相同即认为布局没有变化
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class GattLayout {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * FNV-1a 64位哈希的初始值
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    /**
+     * FNV-1a 64位哈希的乘数
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 布局的哈希值
+     */
+    private final long hash;
+    /**
+     * 服务UUID
+     */
+    private final UUID[] serviceUuids;
+    /**
+     * 每个特征所属服务在serviceUuids中的下标
+     */
+    private final int[] characteristicServiceIndexes;
+    /**
+     * 特征UUID
+     */
+    private final UUID[] characteristicUuids;
+    /**
+     * 特征属性
+     */
+    private final int[] characteristicProperties;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param serviceUuids                 服务UUID
+     * @param characteristicServiceIndexes 每个特征所属服务的下标
+     * @param characteristicUuids          特征UUID
+     * @param characteristicProperties     特征属性
+     */
+    private GattLayout(UUID[] serviceUuids, int[] characteristicServiceIndexes, UUID[] characteristicUuids, int[] characteristicProperties) {
+        this.serviceUuids = serviceUuids;
+        this.characteristicServiceIndexes = characteristicServiceIndexes;
+        this.characteristicUuids = characteristicUuids;
+        this.characteristicProperties = characteristicProperties;
+        this.hash = computeHash();
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 获取布局的哈希值
+     *
+     * @return 哈希值
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * 获取所有服务的UUID
+     *
+     * @return 服务UUID列表（不可修改）
+     */
+    public List<UUID> getServiceUuids() {
+        List<UUID> list = new ArrayList<>(serviceUuids.length);
+        Collections.addAll(list, serviceUuids);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 获取特征总数
+     *
+     * @return 特征总数
+     */
+    public int getCharacteristicCount() {
+        return characteristicUuids.length;
+    }
+
+    /**
+     * 是否有某个服务
+     *
+     * @param serviceUUID 服务UUID
+     * @return true表示有
+     */
+    public boolean hasService(String serviceUUID) {
+        return serviceUUID != null && indexOfService(UUID.fromString(serviceUUID)) >= 0;
+    }
+
+    /**
+     * 是否有某个特征
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return true表示有
+     */
+    public boolean hasCharacteristic(String serviceUUID, String characteristicUUID) {
+        return getCharacteristicProperties(serviceUUID, characteristicUUID) >= 0;
+    }
+
+    /**
+     * 获取特征的属性
+     *
+     * @param serviceUUID        服务UUID
+     * @param characteristicUUID 特征UUID
+     * @return BluetoothGattCharacteristic中定义的PROPERTY_开头的常量组合，没有该特征时返回-1
+     */
+    public int getCharacteristicProperties(String serviceUUID, String characteristicUUID) {
+        if (serviceUUID == null || characteristicUUID == null) {
+            return -1;
+        }
+        int serviceIndex = indexOfService(UUID.fromString(serviceUUID));
+        if (serviceIndex < 0) {
+            return -1;
+        }
+        UUID uuid = UUID.fromString(characteristicUUID);
+        for (int i = 0; i < characteristicUuids.length; i++) {
+            if (characteristicServiceIndexes[i] == serviceIndex && characteristicUuids[i].equals(uuid)) {
+                return characteristicProperties[i];
+            }
+        }
+        return -1;
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 写入缓存文件
+     *
+     * @param dataOutput 输出
+     * @throws IOException 写入失败
+     */
+    void writeTo(DataOutput dataOutput) throws IOException {
+        dataOutput.writeLong(hash);
+        dataOutput.writeShort(serviceUuids.length);
+        for (UUID uuid : serviceUuids) {
+            dataOutput.writeLong(uuid.getMostSignificantBits());
+            dataOutput.writeLong(uuid.getLeastSignificantBits());
+        }
+        dataOutput.writeShort(characteristicUuids.length);
+        for (int i = 0; i < characteristicUuids.length; i++) {
+            dataOutput.writeShort(characteristicServiceIndexes[i]);
+            dataOutput.writeLong(characteristicUuids[i].getMostSignificantBits());
+            dataOutput.writeLong(characteristicUuids[i].getLeastSignificantBits());
+            dataOutput.writeByte(characteristicProperties[i]);
+        }
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 根据服务发现的结果生成布局
+     *
+     * @param services 服务列表
+     * @return 布局
+     */
+    static GattLayout fromServices(List<BluetoothGattService> services) {
+        int serviceCount = services.size();
+        int characteristicCount = 0;
+        for (int i = 0; i < serviceCount; i++) {
+            characteristicCount += services.get(i).getCharacteristics().size();
+        }
+        UUID[] serviceUuids = new UUID[serviceCount];
+        int[] characteristicServiceIndexes = new int[characteristicCount];
+        UUID[] characteristicUuids = new UUID[characteristicCount];
+        int[] characteristicProperties = new int[characteristicCount];
+        int index = 0;
+        for (int i = 0; i < serviceCount; i++) {
+            BluetoothGattService service = services.get(i);
+            serviceUuids[i] = service.getUuid();
+            List<BluetoothGattCharacteristic> characteristics = service.getCharacteristics();
+            for (int j = 0; j < characteristics.size(); j++) {
+                BluetoothGattCharacteristic characteristic = characteristics.get(j);
+                characteristicServiceIndexes[index] = i;
+                characteristicUuids[index] = characteristic.getUuid();
+                characteristicProperties[index] = characteristic.getProperties() & 0xFF;
+                index++;
+            }
+        }
+        return new GattLayout(serviceUuids, characteristicServiceIndexes, characteristicUuids, characteristicProperties);
+    }
+
+    /**
+     * 从缓存文件中读取布局
+     *
+     * @param dataInput 输入
+     * @return 布局，文件内容与哈希值不一致（文件损坏）时返回null
+     * @throws IOException 读取失败
+     */
+    static GattLayout readFrom(DataInput dataInput) throws IOException {
+        long hash = dataInput.readLong();
+        int serviceCount = dataInput.readUnsignedShort();
+        UUID[] serviceUuids = new UUID[serviceCount];
+        for (int i = 0; i < serviceCount; i++) {
+            serviceUuids[i] = new UUID(dataInput.readLong(), dataInput.readLong());
+        }
+        int characteristicCount = dataInput.readUnsignedShort();
+        int[] characteristicServiceIndexes = new int[characteristicCount];
+        UUID[] characteristicUuids = new UUID[characteristicCount];
+        int[] characteristicProperties = new int[characteristicCount];
+        for (int i = 0; i < characteristicCount; i++) {
+            characteristicServiceIndexes[i] = dataInput.readUnsignedShort();
+            if (characteristicServiceIndexes[i] >= serviceCount) {
+                return null;
+            }
+            characteristicUuids[i] = new UUID(dataInput.readLong(), dataInput.readLong());
+            characteristicProperties[i] = dataInput.readUnsignedByte();
+        }
+        GattLayout gattLayout = new GattLayout(serviceUuids, characteristicServiceIndexes, characteristicUuids, characteristicProperties);
+        return gattLayout.hash == hash ? gattLayout : null;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 查找服务的下标
+     *
+     * @param uuid 服务UUID
+     * @return 下标，没有该服务时返回-1
+     */
+    private int indexOfService(UUID uuid) {
+        for (int i = 0; i < serviceUuids.length; i++) {
+            if (serviceUuids[i].equals(uuid)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 计算布局的哈希值（FNV-1a 64位）
+     *
+     * @return 哈希值
+     */
+    private long computeHash() {
+        long h = FNV_OFFSET_BASIS;
+        int characteristicIndex = 0;
+        for (int i = 0; i < serviceUuids.length; i++) {
+            h = hashLong(h, serviceUuids[i].getMostSignificantBits());
+            h = hashLong(h, serviceUuids[i].getLeastSignificantBits());
+            while (characteristicIndex < characteristicUuids.length && characteristicServiceIndexes[characteristicIndex] == i) {
+                h = hashLong(h, characteristicUuids[characteristicIndex].getMostSignificantBits());
+                h = hashLong(h, characteristicUuids[characteristicIndex].getLeastSignificantBits());
+                h = (h ^ characteristicProperties[characteristicIndex]) * FNV_PRIME;
+                characteristicIndex++;
+            }
+        }
+        return h;
+    }
+
+    /*-------------------------私有静态函数-------------------------*/
+
+    /**
+     * 将一个long按字节加入哈希
+     *
+     * @param h     当前的哈希值
+     * @param value 数据
+     * @return 新的哈希值
+     */
+    private static long hashLong(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ (value & 0xFF)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return h;
+    }
+}
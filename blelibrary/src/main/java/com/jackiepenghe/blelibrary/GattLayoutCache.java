@@ -0,0 +1,404 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * GATT布局缓存
+ * 每个设备的布局保存为一个小文件（只有哈希值、UUID与特征属性），内存中同时保留一份。
+ * 服务发现完成后与缓存的布局比较哈希值，布局没有变化时之前解析的特征句柄继续有效；
+ * 只有收到远端设备的Service Changed指示时才刷新系统的GATT缓存并重新发现服务，
+ * 不再需要每次断开时都刷新系统缓存、下次连接重新完整地发现服务
+ *
+ * @author alm
+ */
+
+final class GattLayoutCache {
+
+    /*-------------------------静态常量-------------------------*/
+
+    private static final String TAG = GattLayoutCache.class.getSimpleName();
+
+    /**
+     * 缓存文件所在的目录名
+     */
+    private static final String DIRECTORY_NAME = "ble_gatt_layout";
+    /**
+     * 缓存文件的标识
+     */
+    private static final int MAGIC = 0x474C4331;
+    /**
+     * Generic Attribute服务的UUID
+     */
+    private static final UUID GENERIC_ATTRIBUTE_UUID = UUID.fromString("00001801-0000-1000-8000-00805f9b34fb");
+    /**
+     * Service Changed特征的UUID
+     */
+    private static final UUID SERVICE_CHANGED_UUID = UUID.fromString("00002a05-0000-1000-8000-00805f9b34fb");
+
+    /*-------------------------静态变量-------------------------*/
+
+    /**
+     * 单例
+     */
+    private static GattLayoutCache instance;
+    /**
+     * 系统GATT客户端的刷新缓存函数（隐藏接口），第一次使用时通过反射获取
+     */
+    private static Method refreshMethod;
+    /**
+     * 是否已经尝试过获取刷新缓存函数
+     */
+    private static boolean refreshMethodResolved;
+    /**
+     * 读写缓存文件的线程（只有一个线程，保证同一个文件的写入与删除按顺序执行）
+     * 不使用BleScheduler的线程，避免磁盘读写延迟连接超时等定时任务
+     */
+    private static Executor diskExecutor;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 缓存文件所在的目录
+     */
+    private final File directory;
+    /**
+     * 内存中的布局，key为设备地址
+     */
+    private final ConcurrentHashMap<String, GattLayout> layouts = new ConcurrentHashMap<>();
+    /**
+     * 需要刷新系统GATT缓存的设备地址
+     */
+    private final Set<String> staleAddresses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param directory 缓存文件所在的目录
+     */
+    private GattLayoutCache(File directory) {
+        this.directory = directory;
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 获取单例
+     *
+     * @param context 上下文
+     * @return GattLayoutCache
+     */
+    static synchronized GattLayoutCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new GattLayoutCache(new File(context.getApplicationContext().getFilesDir(), DIRECTORY_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * 刷新系统GATT客户端的缓存，下次发现服务时会重新从远端设备获取
+     *
+     * @param bluetoothGatt GATT客户端
+     * @return true表示成功
+     */
+    static boolean refreshSystemCache(BluetoothGatt bluetoothGatt) {
+        if (bluetoothGatt == null) {
+            return false;
+        }
+        Method method = getRefreshMethod();
+        if (method == null) {
+            return false;
+        }
+        try {
+            return (boolean) method.invoke(bluetoothGatt);
+        } catch (Exception e) {
+            Tool.warnOut(TAG, "refresh gatt cache failed: {}", e);
+            return false;
+        }
+    }
+
+    /**
+     * 是否是Service Changed特征
+     *
+     * @param characteristic 特征
+     * @return true表示是
+     */
+    static boolean isServiceChanged(BluetoothGattCharacteristic characteristic) {
+        return SERVICE_CHANGED_UUID.equals(characteristic.getUuid());
+    }
+
+    /**
+     * 创建打开Service Changed指示的操作
+     * 已绑定的设备由系统处理Service Changed，不需要再打开
+     *
+     * @param bluetoothGatt GATT客户端
+     * @return GattOperation，不需要打开或者远端设备没有Service Changed特征时返回null
+     */
+    static GattOperation newServiceChangedIndicationOperation(BluetoothGatt bluetoothGatt) {
+        if (bluetoothGatt.getDevice().getBondState() == BluetoothDevice.BOND_BONDED) {
+            return null;
+        }
+        BluetoothGattService service = bluetoothGatt.getService(GENERIC_ATTRIBUTE_UUID);
+        if (service == null) {
+            return null;
+        }
+        BluetoothGattCharacteristic characteristic = service.getCharacteristic(SERVICE_CHANGED_UUID);
+        if (characteristic == null || (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_INDICATE) == 0) {
+            return null;
+        }
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG));
+        if (descriptor == null) {
+            return null;
+        }
+        return GattOperation.newEnableIndicationOperation(characteristic, descriptor);
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 获取设备缓存的布局，内存中没有时从文件读取
+     *
+     * @param address 设备地址
+     * @return 布局，没有缓存时返回null
+     */
+    GattLayout get(String address) {
+        if (address == null) {
+            return null;
+        }
+        GattLayout gattLayout = layouts.get(address);
+        if (gattLayout != null) {
+            return gattLayout;
+        }
+        gattLayout = read(getFile(address));
+        if (gattLayout != null) {
+            GattLayout previous = layouts.putIfAbsent(address, gattLayout);
+            if (previous != null) {
+                return previous;
+            }
+        }
+        return gattLayout;
+    }
+
+    /**
+     * 服务发现完成后更新设备的布局
+     *
+     * @param address       设备地址
+     * @param bluetoothGatt GATT客户端
+     * @return 本次发现的布局与缓存的布局是否不同（没有缓存时也返回true）
+     */
+    boolean update(String address, BluetoothGatt bluetoothGatt) {
+        final GattLayout gattLayout = GattLayout.fromServices(bluetoothGatt.getServices());
+        GattLayout cached = get(address);
+        if (cached != null && cached.getHash() == gattLayout.getHash()) {
+            return false;
+        }
+        if (cached != null) {
+            Tool.warnOut(TAG, "gatt layout of {} changed", address);
+        }
+        layouts.put(address, gattLayout);
+        final File file = getFile(address);
+        //写文件不占用蓝牙的Binder线程
+        getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                write(file, gattLayout);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 收到远端设备的Service Changed指示后调用，清除缓存的布局并标记需要刷新系统缓存
+     *
+     * @param address 设备地址
+     */
+    void onServiceChanged(String address) {
+        layouts.remove(address);
+        staleAddresses.add(address);
+        final File file = getFile(address);
+        //同步删除，避免之后的读取又得到过期的布局
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        //还没有执行的写入会重新生成过期的文件，在写文件的线程中再删除一次
+        getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        });
+    }
+
+    /**
+     * 设备是否需要刷新系统GATT缓存
+     *
+     * @param address 设备地址
+     * @return true表示需要
+     */
+    boolean isStale(String address) {
+        return address != null && staleAddresses.contains(address);
+    }
+
+    /**
+     * 在需要时（之前收到了Service Changed指示但没能刷新）刷新系统GATT缓存，连接成功、发现服务之前调用
+     *
+     * @param address       设备地址
+     * @param bluetoothGatt GATT客户端
+     * @return true表示执行了刷新并且成功
+     */
+    boolean refreshIfStale(String address, BluetoothGatt bluetoothGatt) {
+        if (!isStale(address)) {
+            return false;
+        }
+        if (!refreshSystemCache(bluetoothGatt)) {
+            return false;
+        }
+        staleAddresses.remove(address);
+        return true;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 获取设备的缓存文件
+     *
+     * @param address 设备地址
+     * @return 缓存文件
+     */
+    private File getFile(String address) {
+        return new File(directory, address.replace(':', '_'));
+    }
+
+    /**
+     * 读取缓存文件
+     *
+     * @param file 缓存文件
+     * @return 布局，文件不存在或者损坏时返回null
+     */
+    private GattLayout read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream dataInputStream = null;
+        try {
+            dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (dataInputStream.readInt() != MAGIC) {
+                return null;
+            }
+            return GattLayout.readFrom(dataInputStream);
+        } catch (IOException e) {
+            Tool.warnOut(TAG, "read gatt layout failed: {}", e);
+            return null;
+        } finally {
+            closeQuietly(dataInputStream);
+        }
+    }
+
+    /**
+     * 写入缓存文件（先写临时文件再重命名，避免写入一半时文件损坏）
+     *
+     * @param file       缓存文件
+     * @param gattLayout 布局
+     */
+    private void write(File file, GattLayout gattLayout) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        DataOutputStream dataOutputStream = null;
+        try {
+            dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            dataOutputStream.writeInt(MAGIC);
+            gattLayout.writeTo(dataOutputStream);
+            dataOutputStream.close();
+            dataOutputStream = null;
+            if (!tempFile.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Tool.warnOut(TAG, "write gatt layout failed: {}", e);
+        } finally {
+            closeQuietly(dataOutputStream);
+        }
+    }
+
+    /*-------------------------私有静态函数-------------------------*/
+
+    /**
+     * 获取读写缓存文件的线程，第一次使用时创建
+     *
+     * @return 读写缓存文件的线程
+     */
+    private static synchronized Executor getDiskExecutor() {
+        if (diskExecutor == null) {
+            diskExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "BleGattLayoutCache");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return diskExecutor;
+    }
+
+    /**
+     * 获取系统GATT客户端的刷新缓存函数，只通过反射查找一次
+     *
+     * @return 刷新缓存函数，系统不支持时返回null
+     */
+    private static synchronized Method getRefreshMethod() {
+        if (!refreshMethodResolved) {
+            refreshMethodResolved = true;
+            try {
+                //noinspection JavaReflectionMemberAccess
+                refreshMethod = BluetoothGatt.class.getMethod("refresh");
+            } catch (NoSuchMethodException e) {
+                Tool.warnOut(TAG, "BluetoothGatt.refresh not found");
+            }
+        }
+        return refreshMethod;
+    }
+
+    /**
+     * 关闭流，忽略异常
+     *
+     * @param closeable 流，可以为null
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.os.Build;
+
+/**
+ * GATT操作队列中的一个操作
+ *
+ * @author alm
+ */
+
+class GattOperation {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 写入特征数据
+     */
+    static final int TYPE_WRITE_CHARACTERISTIC = 1;
+    /**
+     * 读取特征数据
+     */
+    static final int TYPE_READ_CHARACTERISTIC = 2;
+    /**
+     * 写入描述符（打开或关闭通知也是写入描述符）
+     */
+    static final int TYPE_WRITE_DESCRIPTOR = 3;
+    /**
+     * 读取描述符
+     */
+    static final int TYPE_READ_DESCRIPTOR = 4;
+    /**
+     * 读取远端设备的RSSI
+     */
+    static final int TYPE_READ_REMOTE_RSSI = 5;
+    /**
+     * 请求更改MTU
+     */
+    static final int TYPE_REQUEST_MTU = 6;
+    /**
+     * 设置首选的PHY
+     */
+    static final int TYPE_SET_PREFERRED_PHY = 7;
+    /**
+     * 发现服务
+     */
+    static final int TYPE_DISCOVER_SERVICES = 8;
+
+    /**
+     * 设置PHY的超时时间（毫秒）。远端不支持或者PHY没有变化时，部分系统不会回调onPhyUpdate，超时后队列继续执行
+     */
+    private static final long SET_PREFERRED_PHY_TIMEOUT = 2000;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 操作类型
+     */
+    private final int type;
+    /**
+     * 要操作的特征
+     */
+    private final BluetoothGattCharacteristic characteristic;
+    /**
+     * 要操作的描述符
+     */
+    private final BluetoothGattDescriptor descriptor;
+    /**
+     * 要写入的数据
+     */
+    private final byte[] value;
+    /**
+     * 整型参数（MTU值，或者打开通知时的开关标志）
+     */
+    private final int intValue;
+    /**
+     * 操作超时时间（毫秒），小于等于0表示使用队列的默认超时时间
+     */
+    private long timeout;
+    /**
+     * 操作完成时的结果
+     */
+    private final GattOperationFuture future = new GattOperationFuture();
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param type           操作类型
+     * @param characteristic 要操作的特征
+     * @param descriptor     要操作的描述符
+     * @param value          要写入的数据
+     * @param intValue       整型参数
+     */
+    GattOperation(int type, BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor descriptor, byte[] value, int intValue) {
+        this.type = type;
+        this.characteristic = characteristic;
+        this.descriptor = descriptor;
+        this.value = value;
+        this.intValue = intValue;
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 创建一个写入特征数据的操作
+     *
+     * @param characteristic 特征
+     * @param value          数据
+     * @return GattOperation
+     */
+    static GattOperation newWriteCharacteristicOperation(BluetoothGattCharacteristic characteristic, byte[] value) {
+        return new GattOperation(TYPE_WRITE_CHARACTERISTIC, characteristic, null, value, 0);
+    }
+
+    /**
+     * 创建一个读取特征数据的操作
+     *
+     * @param characteristic 特征
+     * @return GattOperation
+     */
+    static GattOperation newReadCharacteristicOperation(BluetoothGattCharacteristic characteristic) {
+        return new GattOperation(TYPE_READ_CHARACTERISTIC, characteristic, null, null, 0);
+    }
+
+    /**
+     * 创建一个打开或关闭通知的操作
+     *
+     * @param characteristic 特征
+     * @param descriptor     特征的通知配置描述符
+     * @param enable         true表示打开通知
+     * @return GattOperation
+     */
+    static GattOperation newEnableNotificationOperation(BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor descriptor, boolean enable) {
+        byte[] value = enable ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
+        return new GattOperation(TYPE_WRITE_DESCRIPTOR, characteristic, descriptor, value, enable ? 1 : 0);
+    }
+
+    /**
+     * 创建一个打开指示的操作
+     *
+     * @param characteristic 特征
+     * @param descriptor     特征的通知配置描述符
+     * @return GattOperation
+     */
+    static GattOperation newEnableIndicationOperation(BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor descriptor) {
+        return new GattOperation(TYPE_WRITE_DESCRIPTOR, characteristic, descriptor, BluetoothGattDescriptor.ENABLE_INDICATION_VALUE, 1);
+    }
+
+    /**
+     * 创建一个读取RSSI的操作
+     *
+     * @return GattOperation
+     */
+    static GattOperation newReadRemoteRssiOperation() {
+        return new GattOperation(TYPE_READ_REMOTE_RSSI, null, null, null, 0);
+    }
+
+    /**
+     * 创建一个请求更改MTU的操作
+     *
+     * @param mtu mtu值
+     * @return GattOperation
+     */
+    static GattOperation newRequestMtuOperation(int mtu) {
+        return new GattOperation(TYPE_REQUEST_MTU, null, null, null, mtu);
+    }
+
+    /**
+     * 创建一个设置首选PHY的操作（收发都只使用此PHY）
+     *
+     * @param phyMask BluetoothDevice中定义的PHY_LE_*_MASK
+     * @return GattOperation
+     */
+    static GattOperation newSetPreferredPhyOperation(int phyMask) {
+        GattOperation gattOperation = new GattOperation(TYPE_SET_PREFERRED_PHY, null, null, null, phyMask);
+        gattOperation.setTimeout(SET_PREFERRED_PHY_TIMEOUT);
+        return gattOperation;
+    }
+
+    /**
+     * 判断本机是否支持LE 2M PHY
+     *
+     * @return true表示支持
+     */
+    static boolean isLe2MPhySupported() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return false;
+        }
+        BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        return bluetoothAdapter != null && bluetoothAdapter.isLe2MPhySupported();
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 在GATT上执行此操作
+     *
+     * @param gatt BluetoothGatt
+     * @param mtu  当前连接的MTU
+     * @return true表示操作发起成功，结果会在BluetoothGattCallback中返回
+     */
+    boolean execute(BluetoothGatt gatt, int mtu) {
+        switch (type) {
+            case TYPE_WRITE_CHARACTERISTIC:
+                return characteristic.setValue(value) && gatt.writeCharacteristic(characteristic);
+            case TYPE_READ_CHARACTERISTIC:
+                return gatt.readCharacteristic(characteristic);
+            case TYPE_WRITE_DESCRIPTOR:
+                if (characteristic != null && !gatt.setCharacteristicNotification(characteristic, intValue != 0)) {
+                    return false;
+                }
+                return descriptor.setValue(value) && gatt.writeDescriptor(descriptor);
+            case TYPE_READ_DESCRIPTOR:
+                return gatt.readDescriptor(descriptor);
+            case TYPE_READ_REMOTE_RSSI:
+                return gatt.readRemoteRssi();
+            case TYPE_REQUEST_MTU:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && gatt.requestMtu(intValue);
+            case TYPE_SET_PREFERRED_PHY:
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+                    return false;
+                }
+                //该函数没有返回值，结果在onPhyUpdate中返回
+                gatt.setPreferredPhy(intValue, intValue, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 当前这一步执行成功（分多步执行的操作，每一步完成时都会调用）
+     *
+     * @return true表示还有下一步需要执行，false表示操作已经全部完成
+     */
+    boolean onStepCompleted() {
+        return false;
+    }
+
+    /**
+     * 执行下一步（只有{@link #onStepCompleted()}返回true时才会调用）
+     *
+     * @param gatt BluetoothGatt
+     * @return true表示发起成功
+     */
+    boolean executeNextStep(BluetoothGatt gatt) {
+        return false;
+    }
+
+    /**
+     * 是否是大数据传输（执行期间会自动提高连接优先级）
+     *
+     * @return true表示是
+     */
+    boolean isBulkTransfer() {
+        return false;
+    }
+
+    /**
+     * 获取操作完成时的结果数据
+     *
+     * @param value 最后一次回调中的数据
+     * @return 结果数据
+     */
+    byte[] getResultValue(byte[] value) {
+        return value;
+    }
+
+    /**
+     * 判断某个GATT回调是否是此操作的结果
+     *
+     * @param type   回调对应的操作类型
+     * @param target 回调中的特征或描述符（没有则为null）
+     * @return true表示匹配
+     */
+    boolean matches(int type, Object target) {
+        if (this.type != type) {
+            return false;
+        }
+        switch (type) {
+            case TYPE_WRITE_CHARACTERISTIC:
+            case TYPE_READ_CHARACTERISTIC:
+                return target == null || target == characteristic;
+            case TYPE_WRITE_DESCRIPTOR:
+            case TYPE_READ_DESCRIPTOR:
+                return target == null || target == descriptor;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * 获取操作类型
+     *
+     * @return 操作类型
+     */
+    int getType() {
+        return type;
+    }
+
+    /**
+     * 获取要操作的特征
+     *
+     * @return 特征，没有则为null
+     */
+    BluetoothGattCharacteristic getCharacteristic() {
+        return characteristic;
+    }
+
+    /**
+     * 获取要操作的描述符
+     *
+     * @return 描述符，没有则为null
+     */
+    BluetoothGattDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * 获取要写入的数据
+     *
+     * @return 数据，没有则为null
+     */
+    byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * 获取操作超时时间
+     *
+     * @return 超时时间（毫秒）
+     */
+    long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 设置操作超时时间
+     *
+     * @param timeout 超时时间（毫秒）
+     */
+    void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * 获取操作结果
+     *
+     * @return GattOperationFuture
+     */
+    GattOperationFuture getFuture() {
+        return future;
+    }
+}
@@ -0,0 +1,199 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * GATT操作的执行结果
+ * 操作加入队列后立即返回此对象，操作完成（成功、失败、超时或被取消）时结果才会被填充
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GattOperationFuture implements Future<byte[]> {
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 等待操作完成的锁
+     */
+    private final CountDownLatch completeLatch = new CountDownLatch(1);
+    /**
+     * 操作是否已完成
+     */
+    private boolean done;
+    /**
+     * 操作的状态码
+     */
+    private int status = BleConstants.GATT_OPERATION_PENDING;
+    /**
+     * 操作返回的数据
+     */
+    private byte[] value;
+    /**
+     * 操作完成时的回调
+     */
+    private BleInterface.OnGattOperationCompleteListener onGattOperationCompleteListener;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     */
+    GattOperationFuture() {
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 设置操作结果
+     *
+     * @param status 状态码
+     * @param value  数据
+     * @return true表示设置成功，false表示该操作已经完成过了
+     */
+    boolean complete(int status, byte[] value) {
+        BleInterface.OnGattOperationCompleteListener listener;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.done = true;
+            this.status = status;
+            this.value = value;
+            listener = onGattOperationCompleteListener;
+        }
+        completeLatch.countDown();
+        if (listener != null) {
+            listener.onGattOperationComplete(this);
+        }
+        return true;
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 设置操作完成时的回调，如果设置时操作已经完成，会立即回调。
+     * 回调在完成操作的线程中执行（通常是蓝牙的Binder线程）
+     *
+     * @param onGattOperationCompleteListener 操作完成时的回调
+     */
+    public void setOnGattOperationCompleteListener(BleInterface.OnGattOperationCompleteListener onGattOperationCompleteListener) {
+        boolean alreadyDone;
+        synchronized (this) {
+            this.onGattOperationCompleteListener = onGattOperationCompleteListener;
+            alreadyDone = done;
+        }
+        if (alreadyDone && onGattOperationCompleteListener != null) {
+            onGattOperationCompleteListener.onGattOperationComplete(this);
+        }
+    }
+
+    /**
+     * 获取操作的状态码
+     *
+     * @return {@link BluetoothGatt#GATT_SUCCESS}表示成功，其他GATT状态码或者BleConstants中定义的GATT_OPERATION_开头的常量表示失败
+     */
+    public synchronized int getStatus() {
+        return status;
+    }
+
+    /**
+     * 操作是否成功
+     *
+     * @return true表示成功
+     */
+    public synchronized boolean isSuccess() {
+        return done && status == BluetoothGatt.GATT_SUCCESS;
+    }
+
+    /**
+     * 获取操作返回的数据（读操作为读到的数据，写操作为写入的数据）
+     *
+     * @return 数据
+     */
+    public synchronized byte[] getValue() {
+        return value;
+    }
+
+    /*-------------------------实现接口函数-------------------------*/
+
+    /**
+     * 取消操作，只有还未完成的操作可以被取消。
+     * 已经发送到远端设备的操作无法撤回，取消后只是不再等待其结果
+     *
+     * @param mayInterruptIfRunning 无作用
+     * @return true表示取消成功
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(BleConstants.GATT_OPERATION_CANCELLED, null);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return done && status == BleConstants.GATT_OPERATION_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * 阻塞等待操作完成，不要在主线程调用
+     *
+     * @return 操作返回的数据
+     * @throws InterruptedException 等待被中断
+     * @throws ExecutionException   操作执行失败
+     */
+    @Override
+    public byte[] get() throws InterruptedException, ExecutionException {
+        completeLatch.await();
+        return getResult();
+    }
+
+    /**
+     * 阻塞等待操作完成，不要在主线程调用
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 操作返回的数据
+     * @throws InterruptedException 等待被中断
+     * @throws ExecutionException   操作执行失败
+     * @throws TimeoutException     等待超时
+     */
+    @Override
+    public byte[] get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!completeLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 获取结果，如果操作失败则抛出异常
+     *
+     * @return 操作返回的数据
+     * @throws ExecutionException 操作执行失败
+     */
+    private synchronized byte[] getResult() throws ExecutionException {
+        if (status == BleConstants.GATT_OPERATION_CANCELLED) {
+            throw new CancellationException();
+        }
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            throw new ExecutionException(new IllegalStateException("GATT operation failed, status = " + status));
+        }
+        return value;
+    }
+}
@@ -0,0 +1,455 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.LinkedList;
+
+/**
+ * 单个连接的GATT操作队列
+ * 安卓系统同一时间只能执行一个GATT操作，在上一个操作未完成时发起的操作会直接失败。
+ * 此队列保证同一时间只有一个操作在执行，并在BluetoothGattCallback回报上一个操作完成时立即发起下一个操作
+ *
+ * @author alm
+ */
+
+class GattOperationQueue {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * TAG
+     */
+    private static final String TAG = GattOperationQueue.class.getSimpleName();
+
+    /**
+     * 默认的操作超时时间
+     */
+    static final long DEFAULT_OPERATION_TIMEOUT = 5000;
+
+    /**
+     * 默认的MTU
+     */
+    static final int DEFAULT_MTU = 23;
+
+    /**
+     * 协议允许的最大MTU
+     */
+    static final int MAX_MTU = 517;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 等待执行的操作
+     */
+    private final LinkedList<GattOperation> pendingOperations = new LinkedList<>();
+    /**
+     * 当前正在执行的操作
+     */
+    private GattOperation currentOperation;
+    /**
+     * 当前的GATT客户端
+     */
+    private BluetoothGatt bluetoothGatt;
+    /**
+     * 默认的操作超时时间
+     */
+    private long operationTimeout = DEFAULT_OPERATION_TIMEOUT;
+    /**
+     * 当前连接的MTU
+     */
+    private volatile int mtu = DEFAULT_MTU;
+    /**
+     * 当前连接发送使用的PHY
+     */
+    private volatile int txPhy = BleConstants.PHY_LE_1M;
+    /**
+     * 当前连接接收使用的PHY
+     */
+    private volatile int rxPhy = BleConstants.PHY_LE_1M;
+    /**
+     * 特征句柄的版本号，连接断开、GATT客户端更换或者服务布局发生变化时加一，之前解析的句柄全部失效
+     */
+    private volatile int handleGeneration;
+    /**
+     * 用于操作超时的Handler
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * 当前操作的超时任务
+     */
+    private Runnable timeoutRunnable;
+    /**
+     * 连接优先级管理
+     */
+    private final ConnectionPriorityManager connectionPriorityManager = new ConnectionPriorityManager();
+    /**
+     * 订阅管理
+     */
+    private final BleSubscriptionManager subscriptionManager = new BleSubscriptionManager();
+    /**
+     * 特征读取缓存，为null时每次读取都直接加入队列
+     */
+    private volatile CharacteristicReadCache readCache;
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 设置当前的GATT客户端，设置后队列中等待的操作会开始执行
+     *
+     * @param bluetoothGatt GATT客户端
+     */
+    void setBluetoothGatt(BluetoothGatt bluetoothGatt) {
+        boolean changed;
+        synchronized (this) {
+            changed = this.bluetoothGatt != bluetoothGatt;
+            if (changed) {
+                mtu = DEFAULT_MTU;
+                txPhy = BleConstants.PHY_LE_1M;
+                rxPhy = BleConstants.PHY_LE_1M;
+                handleGeneration++;
+            }
+            this.bluetoothGatt = bluetoothGatt;
+        }
+        CharacteristicReadCache readCache = this.readCache;
+        if (changed && readCache != null) {
+            readCache.clear();
+        }
+        connectionPriorityManager.setBluetoothGatt(bluetoothGatt);
+        executeNext();
+    }
+
+    /**
+     * 设置默认的操作超时时间
+     *
+     * @param operationTimeout 超时时间（毫秒）
+     */
+    synchronized void setOperationTimeout(long operationTimeout) {
+        this.operationTimeout = operationTimeout;
+    }
+
+    /**
+     * 获取当前连接的MTU
+     *
+     * @return MTU
+     */
+    int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * 设置当前连接的MTU（MTU更改成功或者连接断开时调用）
+     *
+     * @param mtu MTU
+     */
+    void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    /**
+     * 获取当前连接发送使用的PHY
+     *
+     * @return PHY
+     */
+    int getTxPhy() {
+        return txPhy;
+    }
+
+    /**
+     * 获取当前连接接收使用的PHY
+     *
+     * @return PHY
+     */
+    int getRxPhy() {
+        return rxPhy;
+    }
+
+    /**
+     * 设置当前连接的PHY（PHY更新、读取成功或者连接断开时调用）
+     *
+     * @param txPhy 发送使用的PHY
+     * @param rxPhy 接收使用的PHY
+     */
+    void setPhy(int txPhy, int rxPhy) {
+        this.txPhy = txPhy;
+        this.rxPhy = rxPhy;
+    }
+
+    /**
+     * 获取特征句柄的版本号
+     *
+     * @return 版本号
+     */
+    int getHandleGeneration() {
+        return handleGeneration;
+    }
+
+    /**
+     * 使之前解析的特征句柄与缓存的特征数据全部失效（连接断开或者服务发生变化时调用）
+     */
+    void invalidateHandles() {
+        synchronized (this) {
+            handleGeneration++;
+        }
+        CharacteristicReadCache readCache = this.readCache;
+        if (readCache != null) {
+            readCache.clear();
+        }
+    }
+
+    /**
+     * 获取连接优先级管理
+     *
+     * @return 连接优先级管理
+     */
+    ConnectionPriorityManager getConnectionPriorityManager() {
+        return connectionPriorityManager;
+    }
+
+    /**
+     * 获取订阅管理
+     *
+     * @return BleSubscriptionManager
+     */
+    BleSubscriptionManager getSubscriptionManager() {
+        return subscriptionManager;
+    }
+
+    /**
+     * 设置特征读取缓存
+     *
+     * @param readCache 特征读取缓存，为null时每次读取都直接加入队列
+     */
+    void setReadCache(CharacteristicReadCache readCache) {
+        this.readCache = readCache;
+    }
+
+    /**
+     * 读取特征数据：经过特征读取缓存，同一个特征同时有多个读取时只加入队列一次，缓存有效期内不加入队列
+     *
+     * @param characteristic 特征
+     * @return 操作的执行结果
+     */
+    GattOperationFuture read(BluetoothGattCharacteristic characteristic) {
+        CharacteristicReadCache readCache = this.readCache;
+        if (readCache == null) {
+            return enqueue(GattOperation.newReadCharacteristicOperation(characteristic));
+        }
+        return readCache.read(this, characteristic);
+    }
+
+    /**
+     * 将一个操作加入队列
+     *
+     * @param operation 操作
+     * @return 操作的执行结果
+     */
+    GattOperationFuture enqueue(GattOperation operation) {
+        //打开或关闭通知时记录订阅，重新连接后自动恢复
+        subscriptionManager.onOperationEnqueued(operation);
+        //写入特征数据时该特征缓存的数据失效
+        CharacteristicReadCache readCache = this.readCache;
+        if (readCache != null) {
+            readCache.onOperationEnqueued(operation);
+        }
+        //大数据传输在加入队列时就提高连接优先级，离开队列时结束
+        if (operation.isBulkTransfer()) {
+            connectionPriorityManager.onBulkTransferStarted();
+        }
+        synchronized (this) {
+            pendingOperations.add(operation);
+        }
+        executeNext();
+        return operation.getFuture();
+    }
+
+    /**
+     * 获取还未完成的操作数量（包含正在执行的操作）
+     *
+     * @return 操作数量
+     */
+    synchronized int getPendingOperationCount() {
+        return pendingOperations.size() + (currentOperation == null ? 0 : 1);
+    }
+
+    /**
+     * 在BluetoothGattCallback中收到操作结果时调用此函数
+     *
+     * @param type   操作类型
+     * @param target 回调中的特征或描述符（没有则为null）
+     * @param status GATT状态码
+     * @param value  操作返回的数据
+     */
+    void onOperationCompleted(int type, Object target, int status, byte[] value) {
+        GattOperation operation;
+        BluetoothGatt bluetoothGatt;
+        synchronized (this) {
+            operation = currentOperation;
+            if (operation == null || !operation.matches(type, target)) {
+                return;
+            }
+            removeTimeout();
+            bluetoothGatt = this.bluetoothGatt;
+        }
+
+        //分多步执行的操作（如分包写入），一步成功后直接执行下一步，期间一直占用队列，其他操作不会插入
+        if (status == BluetoothGatt.GATT_SUCCESS && bluetoothGatt != null && operation.onStepCompleted()) {
+            boolean started = operation.executeNextStep(bluetoothGatt);
+            synchronized (this) {
+                if (currentOperation != operation) {
+                    return;
+                }
+                if (started) {
+                    postTimeout(operation);
+                    return;
+                }
+                currentOperation = null;
+            }
+            Tool.warnOut(TAG, "operation step start failed,type = {}", operation.getType());
+            complete(operation, BleConstants.GATT_OPERATION_START_FAILED, null);
+            executeNext();
+            return;
+        }
+
+        synchronized (this) {
+            if (currentOperation != operation) {
+                return;
+            }
+            currentOperation = null;
+        }
+        complete(operation, status, operation.getResultValue(value));
+        executeNext();
+    }
+
+    /**
+     * 取消所有未完成的操作（连接断开或关闭时调用）
+     */
+    void clear() {
+        LinkedList<GattOperation> cancelledOperations;
+        synchronized (this) {
+            cancelledOperations = new LinkedList<>(pendingOperations);
+            pendingOperations.clear();
+            if (currentOperation != null) {
+                cancelledOperations.addFirst(currentOperation);
+                currentOperation = null;
+            }
+            removeTimeout();
+        }
+        for (GattOperation operation : cancelledOperations) {
+            complete(operation, BleConstants.GATT_OPERATION_CANCELLED, null);
+        }
+        CharacteristicReadCache readCache = this.readCache;
+        if (readCache != null) {
+            readCache.clear();
+        }
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 如果当前没有正在执行的操作，发起队列中的下一个操作
+     */
+    private void executeNext() {
+        while (true) {
+            GattOperation operation;
+            BluetoothGatt bluetoothGatt;
+            synchronized (this) {
+                if (currentOperation != null || this.bluetoothGatt == null) {
+                    return;
+                }
+                operation = pendingOperations.poll();
+                if (operation == null) {
+                    return;
+                }
+                //已经被取消的操作直接跳过
+                if (operation.getFuture().isDone()) {
+                    if (operation.isBulkTransfer()) {
+                        connectionPriorityManager.onBulkTransferFinished();
+                    }
+                    continue;
+                }
+                currentOperation = operation;
+                bluetoothGatt = this.bluetoothGatt;
+            }
+
+            //在锁外发起操作，避免与Binder线程中的回调互相等待
+            boolean started = operation.execute(bluetoothGatt, mtu);
+
+            synchronized (this) {
+                if (currentOperation != operation) {
+                    //操作在发起期间就已经完成了（回调来得比这里快）
+                    return;
+                }
+                if (started) {
+                    postTimeout(operation);
+                    return;
+                }
+                currentOperation = null;
+            }
+            Tool.warnOut(TAG, "operation start failed,type = {}", operation.getType());
+            complete(operation, BleConstants.GATT_OPERATION_START_FAILED, null);
+        }
+    }
+
+    /**
+     * 操作离开队列，设置操作的结果
+     *
+     * @param operation 操作
+     * @param status    状态码
+     * @param value     结果数据
+     */
+    private void complete(GattOperation operation, int status, byte[] value) {
+        if (operation.isBulkTransfer()) {
+            connectionPriorityManager.onBulkTransferFinished();
+        }
+        operation.getFuture().complete(status, value);
+    }
+
+    /**
+     * 为当前操作设置超时任务
+     *
+     * @param operation 当前操作
+     */
+    private void postTimeout(final GattOperation operation) {
+        //分多步执行的操作可能在发起的同时就收到了回调，先移除之前的超时任务，避免重复计时
+        removeTimeout();
+        long timeout = operation.getTimeout() > 0 ? operation.getTimeout() : operationTimeout;
+        timeoutRunnable = new Runnable() {
+            @Override
+            public void run() {
+                onOperationTimeout(operation);
+            }
+        };
+        handler.postDelayed(timeoutRunnable, timeout);
+    }
+
+    /**
+     * 移除当前操作的超时任务
+     */
+    private void removeTimeout() {
+        if (timeoutRunnable != null) {
+            handler.removeCallbacks(timeoutRunnable);
+            timeoutRunnable = null;
+        }
+    }
+
+    /**
+     * 操作超时
+     *
+     * @param operation 超时的操作
+     */
+    private void onOperationTimeout(GattOperation operation) {
+        synchronized (this) {
+            if (currentOperation != operation) {
+                return;
+            }
+            currentOperation = null;
+            timeoutRunnable = null;
+        }
+        Tool.warnOut(TAG, "operation timeout,type = {}", operation.getType());
+        complete(operation, BleConstants.GATT_OPERATION_TIMEOUT, null);
+        executeNext();
+    }
+}
@@ -0,0 +1,30 @@
+package com.jackiepenghe.blelibrary;
+
+import android.util.Log;
+
+/**
+ * 输出到logcat的日志输出目标（默认）
+ *
+ * @author alm
+ */
+
+public class LogcatLogSink implements BleInterface.LogSink {
+
+    /*-------------------------实现接口函数-------------------------*/
+
+    /**
+     * 输出一条日志
+     *
+     * @param level     日志级别
+     * @param tag       tag
+     * @param message   日志信息
+     * @param throwable 异常，没有则为null
+     */
+    @Override
+    public void log(int level, String tag, String message, Throwable throwable) {
+        if (throwable != null) {
+            message = message + '\n' + Log.getStackTraceString(throwable);
+        }
+        Log.println(level, tag, message == null ? "null" : message);
+    }
+}
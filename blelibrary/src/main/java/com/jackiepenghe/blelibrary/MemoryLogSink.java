@@ -0,0 +1,93 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 保存在内存中的日志输出目标
+ * 只保留最近的若干条日志（环形缓冲区），适合在出问题时再取出最近的日志上报或者显示
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class MemoryLogSink implements BleInterface.LogSink {
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 日志
+     */
+    private final String[] entries;
+    /**
+     * 下一条日志的保存位置
+     */
+    private int nextIndex;
+    /**
+     * 保存的日志数量
+     */
+    private int size;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param capacity 最多保存的日志数量
+     */
+    public MemoryLogSink(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        entries = new String[capacity];
+    }
+
+    /*-------------------------实现接口函数-------------------------*/
+
+    /**
+     * 输出一条日志
+     *
+     * @param level     日志级别
+     * @param tag       tag
+     * @param message   日志信息
+     * @param throwable 异常，没有则为null
+     */
+    @Override
+    public void log(int level, String tag, String message, Throwable throwable) {
+        String entry = FileLogSink.formatEntry(System.currentTimeMillis(), level, tag, message, throwable);
+        synchronized (this) {
+            entries[nextIndex] = entry;
+            nextIndex = (nextIndex + 1) % entries.length;
+            if (size < entries.length) {
+                size++;
+            }
+        }
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 获取保存的日志（从旧到新）
+     *
+     * @return 日志列表
+     */
+    public synchronized List<String> getEntries() {
+        List<String> list = new ArrayList<>(size);
+        int start = (nextIndex - size + entries.length) % entries.length;
+        for (int i = 0; i < size; i++) {
+            list.add(entries[(start + i) % entries.length]);
+        }
+        return list;
+    }
+
+    /**
+     * 清空保存的日志
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        nextIndex = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,174 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 通知数据的缓冲区（带引用计数，可回收复用）
+ * 收到通知时，库在蓝牙的Binder线程中将数据复制一次到从缓冲池取出的缓冲区中，再交给回调。
+ * 回调返回后库会调用{@link #release()}将缓冲区放回缓冲池，因此回调返回之后不能再使用该缓冲区，
+ * 如果需要在回调之外继续使用（例如交给其他线程处理），需要先调用{@link #retain()}，使用完后再调用{@link #release()}
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class NotificationBuffer {
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 数据
+     */
+    private final byte[] data;
+    /**
+     * 是否属于缓冲池（超出缓冲池容量的数据使用单独的缓冲区，不回收）
+     */
+    private final boolean pooled;
+    /**
+     * 引用计数
+     */
+    private final AtomicInteger referenceCount = new AtomicInteger();
+    /**
+     * 数据的有效长度
+     */
+    private int length;
+    /**
+     * 通知来源的特征UUID
+     */
+    private UUID characteristicUuid;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param capacity 容量
+     * @param pooled   是否属于缓冲池
+     */
+    NotificationBuffer(int capacity, boolean pooled) {
+        this.data = new byte[capacity];
+        this.pooled = pooled;
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 复制数据到缓冲区，并将引用计数置为1
+     *
+     * @param characteristicUuid 通知来源的特征UUID
+     * @param value              通知数据
+     */
+    void set(UUID characteristicUuid, byte[] value) {
+        this.characteristicUuid = characteristicUuid;
+        if (value == null) {
+            length = 0;
+        } else {
+            length = value.length;
+            System.arraycopy(value, 0, data, 0, length);
+        }
+        referenceCount.set(1);
+    }
+
+    /**
+     * 是否属于缓冲池
+     *
+     * @return true表示属于缓冲池
+     */
+    boolean isPooled() {
+        return pooled;
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 获取数据的有效长度
+     *
+     * @return 数据长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 获取通知来源的特征UUID
+     *
+     * @return 特征UUID，未知时为null
+     */
+    public UUID getCharacteristicUuid() {
+        return characteristicUuid;
+    }
+
+    /**
+     * 读取一个字节
+     *
+     * @param index 位置
+     * @return 字节值
+     */
+    public byte getByte(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index = " + index + ", length = " + length);
+        }
+        return data[index];
+    }
+
+    /**
+     * 获取底层的数组（不复制），只有前{@link #getLength()}个字节有效，释放后不能再使用
+     *
+     * @return 底层的数组
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * 将数据复制到指定的数组中
+     *
+     * @param destination       目标数组
+     * @param destinationOffset 目标数组中的起始位置
+     */
+    public void copyTo(byte[] destination, int destinationOffset) {
+        System.arraycopy(data, 0, destination, destinationOffset, length);
+    }
+
+    /**
+     * 复制出一份数据
+     *
+     * @return 数据
+     */
+    public byte[] toByteArray() {
+        byte[] value = new byte[length];
+        System.arraycopy(data, 0, value, 0, length);
+        return value;
+    }
+
+    /**
+     * 增加一次引用
+     *
+     * @return 当前缓冲区
+     */
+    public NotificationBuffer retain() {
+        while (true) {
+            int count = referenceCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("buffer already released");
+            }
+            if (referenceCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 释放一次引用，引用全部释放后缓冲区会被放回缓冲池
+     */
+    public void release() {
+        int count = referenceCount.decrementAndGet();
+        if (count == 0) {
+            NotificationBufferPool.recycle(this);
+        } else if (count < 0) {
+            referenceCount.set(0);
+            throw new IllegalStateException("buffer already released");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.UUID;
+
+/**
+ * 通知数据缓冲区的缓冲池
+ * 高频率的通知中，每个数据包都从缓冲池中取出一个缓冲区，释放后放回，避免每个数据包都创建新的数组
+ *
+ * @author alm
+ */
+
+final class NotificationBufferPool {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 缓冲区的容量（ATT协议中属性值的最大长度）
+     */
+    static final int BUFFER_CAPACITY = 512;
+
+    /**
+     * 缓冲池中最多保存的缓冲区数量
+     */
+    private static final int MAX_POOL_SIZE = 64;
+
+    /*-------------------------静态变量-------------------------*/
+
+    /**
+     * 空闲的缓冲区
+     */
+    private static final NotificationBuffer[] POOL = new NotificationBuffer[MAX_POOL_SIZE];
+
+    /**
+     * 空闲的缓冲区数量
+     */
+    private static int poolSize;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 不允许创建实例
+     */
+    private NotificationBufferPool() {
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 取出一个缓冲区并复制数据，引用计数为1
+     *
+     * @param characteristicUuid 通知来源的特征UUID
+     * @param value              通知数据
+     * @return 缓冲区
+     */
+    static NotificationBuffer obtain(UUID characteristicUuid, byte[] value) {
+        int length = value == null ? 0 : value.length;
+        NotificationBuffer notificationBuffer = null;
+        if (length <= BUFFER_CAPACITY) {
+            synchronized (POOL) {
+                if (poolSize > 0) {
+                    notificationBuffer = POOL[--poolSize];
+                    POOL[poolSize] = null;
+                }
+            }
+            if (notificationBuffer == null) {
+                notificationBuffer = new NotificationBuffer(BUFFER_CAPACITY, true);
+            }
+        } else {
+            notificationBuffer = new NotificationBuffer(length, false);
+        }
+        notificationBuffer.set(characteristicUuid, value);
+        return notificationBuffer;
+    }
+
+    /**
+     * 将缓冲区放回缓冲池
+     *
+     * @param notificationBuffer 缓冲区
+     */
+    static void recycle(NotificationBuffer notificationBuffer) {
+        if (!notificationBuffer.isPooled()) {
+            return;
+        }
+        synchronized (POOL) {
+            if (poolSize < MAX_POOL_SIZE) {
+                POOL[poolSize++] = notificationBuffer;
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.jackiepenghe.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一个连接的通知路由表
+ * 按（服务UUID，特征UUID）登记通知监听，服务发现完成后将路由绑定到GATT客户端中的特征对象上，
+ * 收到通知时按特征对象查找（IdentityHashMap，不比较UUID），找到监听时直接交给该监听，找不到时走原有的默认分发
+ * （通知数据流、连接回调或者广播）。登记与绑定时整体替换路由表（写时复制），蓝牙回调线程中查找时不加锁
+ *
+ * @author alm
+ */
+
+class NotificationRouter {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 空的路由表
+     */
+    private static final Map<BluetoothGattCharacteristic, BleInterface.OnCharacteristicNotificationListener> EMPTY = Collections.emptyMap();
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 登记的路由，key为服务UUID与特征UUID
+     */
+    private final Map<String, Route> routes = new LinkedHashMap<>();
+    /**
+     * 绑定到当前GATT客户端的路由表，只会被整体替换，不会被修改
+     */
+    private volatile Map<BluetoothGattCharacteristic, BleInterface.OnCharacteristicNotificationListener> boundRoutes = EMPTY;
+    /**
+     * 当前绑定的GATT客户端
+     */
+    private BluetoothGatt boundGatt;
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 查找特征的监听（不加锁）
+     *
+     * @param characteristic 收到通知的特征
+     * @return 监听，没有登记时返回null
+     */
+    BleInterface.OnCharacteristicNotificationListener route(BluetoothGattCharacteristic characteristic) {
+        Map<BluetoothGattCharacteristic, BleInterface.OnCharacteristicNotificationListener> boundRoutes = this.boundRoutes;
+        if (boundRoutes.isEmpty()) {
+            return null;
+        }
+        return boundRoutes.get(characteristic);
+    }
+
+    /**
+     * 登记特征的监听，同一个特征再次登记时替换原有的监听
+     *
+     * @param serviceUuid                           服务UUID
+     * @param characteristicUuid                    特征UUID
+     * @param onCharacteristicNotificationListener 监听
+     */
+    synchronized void register(UUID serviceUuid, UUID characteristicUuid, BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener) {
+        routes.put(getKey(serviceUuid, characteristicUuid), new Route(serviceUuid, characteristicUuid, onCharacteristicNotificationListener));
+        rebind();
+    }
+
+    /**
+     * 取消特征的监听，之后该特征的通知走默认分发
+     *
+     * @param serviceUuid        服务UUID
+     * @param characteristicUuid 特征UUID
+     * @return true表示取消成功，false表示该特征没有登记监听
+     */
+    synchronized boolean unregister(UUID serviceUuid, UUID characteristicUuid) {
+        if (routes.remove(getKey(serviceUuid, characteristicUuid)) == null) {
+            return false;
+        }
+        rebind();
+        return true;
+    }
+
+    /**
+     * 是否没有登记任何监听
+     *
+     * @return true表示没有
+     */
+    synchronized boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    /**
+     * 取消所有监听
+     */
+    synchronized void clear() {
+        routes.clear();
+        rebind();
+    }
+
+    /**
+     * 服务发现完成后将路由绑定到GATT客户端中的特征对象上
+     *
+     * @param bluetoothGatt GATT客户端
+     */
+    synchronized void bind(BluetoothGatt bluetoothGatt) {
+        boundGatt = bluetoothGatt;
+        rebind();
+    }
+
+    /**
+     * 解除绑定（连接断开时调用），释放对旧特征对象的引用
+     */
+    synchronized void unbind() {
+        boundGatt = null;
+        boundRoutes = EMPTY;
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 根据当前登记的路由与绑定的GATT客户端重建路由表。
+     * 同一个服务中有多个相同UUID的特征时，全部路由到同一个监听
+     */
+    private void rebind() {
+        BluetoothGatt bluetoothGatt = boundGatt;
+        if (bluetoothGatt == null || routes.isEmpty()) {
+            boundRoutes = EMPTY;
+            return;
+        }
+        IdentityHashMap<BluetoothGattCharacteristic, BleInterface.OnCharacteristicNotificationListener> newRoutes = new IdentityHashMap<>();
+        for (Route route : routes.values()) {
+            BluetoothGattService service = bluetoothGatt.getService(route.serviceUuid);
+            if (service == null) {
+                continue;
+            }
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                if (route.characteristicUuid.equals(characteristic.getUuid())) {
+                    newRoutes.put(characteristic, route.onCharacteristicNotificationListener);
+                }
+            }
+        }
+        boundRoutes = newRoutes.isEmpty() ? EMPTY : newRoutes;
+    }
+
+    /*-------------------------私有静态函数-------------------------*/
+
+    /**
+     * 生成路由的key
+     *
+     * @param serviceUuid        服务UUID
+     * @param characteristicUuid 特征UUID
+     * @return key
+     */
+    private static String getKey(UUID serviceUuid, UUID characteristicUuid) {
+        return serviceUuid + "/" + characteristicUuid;
+    }
+
+    /*-------------------------内部类-------------------------*/
+
+    /**
+     * 一条登记的路由
+     */
+    private static final class Route {
+
+        /**
+         * 服务UUID
+         */
+        final UUID serviceUuid;
+        /**
+         * 特征UUID
+         */
+        final UUID characteristicUuid;
+        /**
+         * 监听
+         */
+        final BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener;
+
+        /**
+         * 构造器
+         *
+         * @param serviceUuid                           服务UUID
+         * @param characteristicUuid                    特征UUID
+         * @param onCharacteristicNotificationListener 监听
+         */
+        Route(UUID serviceUuid, UUID characteristicUuid, BleInterface.OnCharacteristicNotificationListener onCharacteristicNotificationListener) {
+            this.serviceUuid = serviceUuid;
+            this.characteristicUuid = characteristicUuid;
+            this.onCharacteristicNotificationListener = onCharacteristicNotificationListener;
+        }
+    }
+}
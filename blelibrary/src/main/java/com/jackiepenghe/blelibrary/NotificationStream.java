@@ -0,0 +1,344 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单个特征的通知数据流
+ * 有界的环形缓冲区，库在蓝牙回调线程中写入（单生产者），使用者在自己的线程中读取（单消费者），读写都不加锁。
+ * 为特征打开数据流后，该特征的通知只进入数据流，不再通过回调分发，消费者处理得慢也不会使内存无限增长或者延迟其他回调。
+ * <p>
+ * 从数据流中取出的{@link NotificationBuffer}归消费者所有，使用完后必须调用{@link NotificationBuffer#release()}
+ *
+ * @author alm
+ */
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class NotificationStream {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 阻塞模式下生产者最长的等待时间（毫秒），避免蓝牙回调线程被永久阻塞
+     */
+    private static final long MAX_BLOCK_TIME = 1000;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 特征UUID
+     */
+    private final UUID characteristicUuid;
+    /**
+     * 环形缓冲区
+     */
+    private final AtomicReferenceArray<NotificationBuffer> slots;
+    /**
+     * 下标掩码（容量为2的幂）
+     */
+    private final int mask;
+    /**
+     * 满了之后的处理方式
+     */
+    private final int overflowPolicy;
+    /**
+     * 下一个要读取的位置（消费者推进，丢弃最早的数据时生产者也会推进）
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * 下一个要写入的位置（只有生产者推进）
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * 缓冲区满的次数
+     */
+    private final AtomicLong overflowCount = new AtomicLong();
+    /**
+     * 被丢弃的数据数量
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+    /**
+     * 正在等待数据的消费者线程
+     */
+    private volatile Thread waitingConsumer;
+    /**
+     * 正在等待空位的生产者线程
+     */
+    private volatile Thread waitingProducer;
+    /**
+     * 是否已经关闭
+     */
+    private volatile boolean closed;
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param characteristicUuid 特征UUID
+     * @param capacity           容量（会向上取整为2的幂）
+     * @param overflowPolicy     满了之后的处理方式
+     */
+    NotificationStream(UUID characteristicUuid, int capacity, int overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (overflowPolicy != BleConstants.NOTIFICATION_OVERFLOW_DROP_OLDEST
+                && overflowPolicy != BleConstants.NOTIFICATION_OVERFLOW_DROP_NEWEST
+                && overflowPolicy != BleConstants.NOTIFICATION_OVERFLOW_BLOCK) {
+            throw new IllegalArgumentException("unknown overflow policy " + overflowPolicy);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.characteristicUuid = characteristicUuid;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 写入一个通知数据（只在蓝牙回调线程中调用）
+     *
+     * @param notificationBuffer 通知数据，写入成功后由数据流持有，被丢弃时由数据流释放
+     */
+    void offer(NotificationBuffer notificationBuffer) {
+        if (closed) {
+            notificationBuffer.release();
+            return;
+        }
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            overflowCount.incrementAndGet();
+            if (!makeRoom(t)) {
+                droppedCount.incrementAndGet();
+                notificationBuffer.release();
+                return;
+            }
+        }
+        slots.lazySet((int) t & mask, notificationBuffer);
+        //volatile写，保证之后读取waitingConsumer与closed时不会与写入重排序，避免漏掉唤醒
+        tail.set(t + 1);
+        //close()可能在检查closed之后、写入之前已经取完了数据，这时由生产者取出并释放剩余的数据
+        if (closed) {
+            NotificationBuffer remaining;
+            while ((remaining = poll()) != null) {
+                remaining.release();
+            }
+            return;
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /*-------------------------公开函数-------------------------*/
+
+    /**
+     * 获取特征UUID
+     *
+     * @return 特征UUID
+     */
+    public UUID getCharacteristicUuid() {
+        return characteristicUuid;
+    }
+
+    /**
+     * 取出一个通知数据
+     *
+     * @return 通知数据，没有数据时返回null
+     */
+    public NotificationBuffer poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+            NotificationBuffer notificationBuffer = slots.get((int) h & mask);
+            //生产者可能同时丢弃了最早的数据，只有成功推进head的一方拥有该数据
+            if (head.compareAndSet(h, h + 1)) {
+                wakeProducer();
+                return notificationBuffer;
+            }
+        }
+    }
+
+    /**
+     * 批量取出通知数据
+     *
+     * @param destination 保存通知数据的数组
+     * @param offset      数组中的起始位置
+     * @param maxCount    最多取出的数量
+     * @return 实际取出的数量
+     */
+    public int drainTo(NotificationBuffer[] destination, int offset, int maxCount) {
+        int count = 0;
+        while (count < maxCount) {
+            NotificationBuffer notificationBuffer = poll();
+            if (notificationBuffer == null) {
+                break;
+            }
+            destination[offset + count] = notificationBuffer;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 等待数据到来（只能由消费者线程调用）
+     *
+     * @param timeout 最长等待时间（毫秒）
+     * @return true表示有数据可以读取
+     * @throws InterruptedException 等待被中断
+     */
+    public boolean awaitData(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (size() == 0 && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return size() > 0;
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * 获取当前保存的数据数量
+     *
+     * @return 数据数量
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return size < 0 ? 0 : (int) size;
+    }
+
+    /**
+     * 获取容量
+     *
+     * @return 容量
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 获取满了之后的处理方式
+     *
+     * @return BleConstants中定义的NOTIFICATION_OVERFLOW_开头的常量
+     */
+    public int getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * 获取缓冲区满的次数
+     *
+     * @return 次数
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * 获取被丢弃的数据数量
+     *
+     * @return 数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 数据流是否已经关闭
+     *
+     * @return true表示已经关闭
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭数据流，释放还未取出的数据（应当由消费者线程调用，或者在消费者停止读取之后调用）
+     */
+    public void close() {
+        closed = true;
+        NotificationBuffer notificationBuffer;
+        while ((notificationBuffer = poll()) != null) {
+            notificationBuffer.release();
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 缓冲区已满时按照处理方式腾出一个空位
+     *
+     * @param t 当前的写入位置
+     * @return true表示已经腾出空位，false表示需要丢弃新的数据
+     */
+    private boolean makeRoom(long t) {
+        switch (overflowPolicy) {
+            case BleConstants.NOTIFICATION_OVERFLOW_DROP_OLDEST:
+                while (true) {
+                    long h = head.get();
+                    if (t - h <= mask) {
+                        //消费者刚好取走了数据
+                        return true;
+                    }
+                    NotificationBuffer oldest = slots.get((int) h & mask);
+                    if (head.compareAndSet(h, h + 1)) {
+                        droppedCount.incrementAndGet();
+                        oldest.release();
+                        return true;
+                    }
+                }
+            case BleConstants.NOTIFICATION_OVERFLOW_BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BLOCK_TIME);
+                waitingProducer = Thread.currentThread();
+                try {
+                    while (t - head.get() > mask) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || closed) {
+                            return false;
+                        }
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                    return true;
+                } finally {
+                    waitingProducer = null;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 唤醒等待空位的生产者
+     */
+    private void wakeProducer() {
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+}
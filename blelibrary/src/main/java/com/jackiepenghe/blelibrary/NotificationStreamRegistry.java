@@ -0,0 +1,155 @@
+package com.jackiepenghe.blelibrary;
+
+import java.util.UUID;
+
+/**
+ * 一个连接中所有特征的通知数据流
+ * 打开、关闭数据流时复制整个数组（写时复制），蓝牙回调线程中查找时不加锁
+ *
+ * @author alm
+ */
+
+class NotificationStreamRegistry {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 空数组
+     */
+    private static final NotificationStream[] EMPTY = new NotificationStream[0];
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 当前打开的数据流，只会被整体替换，不会被修改
+     */
+    private volatile NotificationStream[] streams = EMPTY;
+    /**
+     * 连接优先级管理，有打开的数据流时提高连接优先级
+     */
+    private ConnectionPriorityManager connectionPriorityManager;
+
+    /*-------------------------库内函数-------------------------*/
+
+    /**
+     * 根据特征UUID查找数据流（不加锁）
+     *
+     * @param characteristicUuid 特征UUID
+     * @return 数据流，没有则返回null
+     */
+    NotificationStream get(UUID characteristicUuid) {
+        NotificationStream[] streams = this.streams;
+        if (streams.length == 0 || characteristicUuid == null) {
+            return null;
+        }
+        for (NotificationStream stream : streams) {
+            if (characteristicUuid.equals(stream.getCharacteristicUuid())) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 设置连接优先级管理
+     *
+     * @param connectionPriorityManager 连接优先级管理，为null表示不再关联
+     */
+    synchronized void setConnectionPriorityManager(ConnectionPriorityManager connectionPriorityManager) {
+        if (this.connectionPriorityManager != null && this.connectionPriorityManager != connectionPriorityManager) {
+            this.connectionPriorityManager.setStreamActive(false);
+        }
+        this.connectionPriorityManager = connectionPriorityManager;
+        notifyStreamActive();
+    }
+
+    /**
+     * 为特征打开一个数据流，如果已经打开过，会先关闭原有的数据流
+     *
+     * @param characteristicUuid 特征UUID
+     * @param capacity           容量
+     * @param overflowPolicy     满了之后的处理方式
+     * @return 新的数据流
+     */
+    synchronized NotificationStream open(UUID characteristicUuid, int capacity, int overflowPolicy) {
+        NotificationStream stream = new NotificationStream(characteristicUuid, capacity, overflowPolicy);
+        NotificationStream existing = get(characteristicUuid);
+        NotificationStream[] current = streams;
+        NotificationStream[] newStreams;
+        if (existing == null) {
+            newStreams = new NotificationStream[current.length + 1];
+            System.arraycopy(current, 0, newStreams, 0, current.length);
+            newStreams[current.length] = stream;
+        } else {
+            newStreams = current.clone();
+            for (int i = 0; i < newStreams.length; i++) {
+                if (newStreams[i] == existing) {
+                    newStreams[i] = stream;
+                }
+            }
+        }
+        streams = newStreams;
+        if (existing != null) {
+            existing.close();
+        }
+        notifyStreamActive();
+        return stream;
+    }
+
+    /**
+     * 关闭特征的数据流
+     *
+     * @param characteristicUuid 特征UUID
+     * @return true表示关闭成功，false表示该特征没有打开数据流
+     */
+    synchronized boolean close(UUID characteristicUuid) {
+        NotificationStream existing = get(characteristicUuid);
+        if (existing == null) {
+            return false;
+        }
+        NotificationStream[] current = streams;
+        NotificationStream[] newStreams = new NotificationStream[current.length - 1];
+        int index = 0;
+        for (NotificationStream stream : current) {
+            if (stream != existing) {
+                newStreams[index++] = stream;
+            }
+        }
+        streams = newStreams;
+        existing.close();
+        notifyStreamActive();
+        return true;
+    }
+
+    /**
+     * 是否没有打开的数据流
+     *
+     * @return true表示没有
+     */
+    boolean isEmpty() {
+        return streams.length == 0;
+    }
+
+    /**
+     * 关闭所有的数据流
+     */
+    synchronized void closeAll() {
+        NotificationStream[] current = streams;
+        streams = EMPTY;
+        for (NotificationStream stream : current) {
+            stream.close();
+        }
+        notifyStreamActive();
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 将是否有打开的数据流告知连接优先级管理
+     */
+    private void notifyStreamActive() {
+        if (connectionPriorityManager != null) {
+            connectionPriorityManager.setStreamActive(streams.length > 0);
+        }
+    }
+}
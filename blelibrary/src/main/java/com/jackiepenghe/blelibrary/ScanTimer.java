@@ -4,10 +4,7 @@ import android.os.Handler;
 import android.support.annotation.NonNull;
 
 import java.lang.ref.WeakReference;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * 扫描的定时器
@@ -19,28 +16,11 @@ class ScanTimer {
     /*------------------------成员变量----------------------------*/
 
     /**
-     * 线程池工厂类
+     * 当前的定时任务（扫描结束或者下一次扫描开始）
      */
-    private ThreadFactory threadFactory = new ThreadFactory() {
-        /**
-         * Constructs a new {@code Thread}.  Implementations may also initialize
-         * priority, name, daemon status, {@code ThreadGroup}, etc.
-         *
-         * @param r a runnable to be executed by new thread instance
-         * @return constructed thread, or {@code null} if the request to
-         * create a thread is rejected
-         */
-        @Override
-        public Thread newThread(@NonNull Runnable r) {
-            return new Thread(r);
-        }
-    };
+    private ScheduledFuture<?> scheduledFuture;
     /**
-     * 定时或延迟执行任务
-     */
-    private ScheduledExecutorService scheduledExecutorService;
-    /**
-     * 要执行的任务
+     * 扫描时间到达时要执行的任务
      */
     private Runnable runnable = new Runnable() {
         @Override
@@ -52,19 +32,34 @@ class ScanTimer {
             bleScanner.stopScan();
 
             if (bleScanner.isScanContinue()) {
-                bleScanner.startScan();
+                long idleTime = bleScanner.getScanIdleTime();
+                if (idleTime > 0) {
+                    //占空比扫描，空闲一段时间后再开始下一次扫描
+                    scheduledFuture = BleScheduler.schedule(postToHandler(restartRunnable), idleTime);
+                } else {
+                    bleScanner.startScan();
+                }
             } else {
                 if (mOnScanCompleteListener != null) {
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            mOnScanCompleteListener.onScanComplete();
-                        }
-                    });
+                    mOnScanCompleteListener.onScanComplete();
                 }
             }
         }
     };
+    /**
+     * 扫描间隔结束后要执行的任务
+     */
+    private Runnable restartRunnable = new Runnable() {
+        @Override
+        public void run() {
+            scheduledFuture = null;
+            BleScanner bleScanner = bleScannerWeakReference.get();
+            if (bleScanner == null) {
+                return;
+            }
+            bleScanner.startScan();
+        }
+    };
     /**
      * BleScanner弱引用
      */
@@ -74,7 +69,7 @@ class ScanTimer {
      */
     private BleInterface.OnScanCompleteListener mOnScanCompleteListener;
     /**
-     * Handler
+     * Handler，定时任务在共用的定时器线程中到期后，交给这个Handler执行
      */
     private Handler handler = new Handler();
 
@@ -97,18 +92,21 @@ class ScanTimer {
      * @param delayTime 延迟的时间
      */
     void startTimer(long delayTime) {
-        scheduledExecutorService = new ScheduledThreadPoolExecutor(1, threadFactory);
-        scheduledExecutorService.schedule(runnable, delayTime, TimeUnit.MILLISECONDS);
+        BleScheduler.cancel(scheduledFuture);
+        scheduledFuture = BleScheduler.schedule(postToHandler(runnable), delayTime);
     }
 
     /**
-     * 停止定时器
+     * 停止定时器（同时取消占空比扫描中等待的下一次扫描）
      */
     void stopTimer() {
-        scheduledExecutorService.shutdownNow();
-        scheduledExecutorService = null;
+        BleScheduler.cancel(scheduledFuture);
+        scheduledFuture = null;
+        handler.removeCallbacksAndMessages(null);
         BleScanner bleScanner = bleScannerWeakReference.get();
-        bleScanner.setScanningFalse();
+        if (bleScanner != null) {
+            bleScanner.setScanningFalse();
+        }
     }
 
     /**
@@ -119,4 +117,21 @@ class ScanTimer {
     void setOnScanCompleteListener(@NonNull BleInterface.OnScanCompleteListener onScanCompleteListener) {
         mOnScanCompleteListener = onScanCompleteListener;
     }
-}
\ No newline at end of file
+
+    /*------------------------私有函数----------------------------*/
+
+    /**
+     * 将任务包装为在Handler中执行的任务，保证扫描器只在创建它的线程中被操作
+     *
+     * @param task 任务
+     * @return 包装后的任务
+     */
+    private Runnable postToHandler(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                handler.post(task);
+            }
+        };
+    }
+}
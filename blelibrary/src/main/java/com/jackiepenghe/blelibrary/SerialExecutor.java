@@ -0,0 +1,118 @@
+package com.jackiepenghe.blelibrary;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * 串行执行器
+ * 任务按提交的顺序逐个执行，但不独占线程：有任务时才向共用的线程池提交一次执行，
+ * 多个串行执行器可以共用同一个线程池并行执行，而每个串行执行器内部的顺序保持不变
+ *
+ * @author alm
+ */
+
+class SerialExecutor implements Executor {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 每次占用线程时最多连续执行的任务数，超过后重新提交，避免一个繁忙的设备长期占用线程
+     */
+    private static final int MAX_TASKS_PER_RUN = 32;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 实际执行任务的线程池
+     */
+    private final Executor executor;
+    /**
+     * 等待执行的任务
+     */
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    /**
+     * 是否已经向线程池提交了执行（或正在执行）
+     */
+    private boolean scheduled;
+    /**
+     * 在线程池中执行的任务，依次取出等待执行的任务并执行
+     */
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 构造器
+     *
+     * @param executor 实际执行任务的线程池
+     */
+    SerialExecutor(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    /*-------------------------实现接口函数-------------------------*/
+
+    /**
+     * 提交一个任务
+     *
+     * @param command 任务
+     */
+    @Override
+    public void execute(@NonNull Runnable command) {
+        synchronized (this) {
+            tasks.offer(command);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        submit();
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 向线程池提交一次执行
+     */
+    private void submit() {
+        try {
+            executor.execute(drainRunnable);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                scheduled = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 依次执行等待中的任务
+     */
+    private void drain() {
+        for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                //一个任务的异常不能影响后续任务的执行
+                e.printStackTrace();
+            }
+        }
+        //还有剩余的任务，让出线程后继续执行
+        submit();
+    }
+}
@@ -3,7 +3,6 @@ package com.jackiepenghe.blelibrary;
 import android.content.Context;
 import android.os.Build;
 import android.support.annotation.StringRes;
-import android.util.Log;
 import android.widget.Toast;
 
 /**
@@ -15,27 +14,22 @@ import android.widget.Toast;
 class Tool {
     //log部分
 
-    /**
-     * 是否打印日志信息的标志
-     */
-    private static boolean mDebug = false;
-
     /**
      * 获取当前日志打印标志
      *
      * @return 日志打印标志
      */
     public static boolean isDebug() {
-        return mDebug;
+        return BleLog.getLevel() != BleConstants.LOG_LEVEL_NONE;
     }
 
     /**
      * 设置日志打印标志
      *
-     * @param debug 日志打印标志
+     * @param debug 日志打印标志，true表示输出所有级别的日志，false表示不输出日志
      */
     public static void setDebugFlag(@SuppressWarnings("SameParameterValue") boolean debug) {
-        mDebug = debug;
+        BleLog.setLevel(debug ? BleConstants.LOG_LEVEL_VERBOSE : BleConstants.LOG_LEVEL_NONE);
     }
 
     /**
@@ -46,10 +40,7 @@ class Tool {
      */
     @SuppressWarnings("WeakerAccess")
     public static void errorOut(String tag, String message) {
-        if (!mDebug) {
-            return;
-        }
-        Log.e(tag, message);
+        BleLog.e(tag, message);
     }
 
     /**
@@ -60,10 +51,43 @@ class Tool {
      */
     @SuppressWarnings("WeakerAccess")
     public static void warnOut(String tag, String message) {
-        if (!mDebug) {
-            return;
-        }
-        Log.w(tag, message);
+        BleLog.w(tag, message);
+    }
+
+    /**
+     * 等同于Log.w，日志级别足够时才将format中的"{}"替换为参数（byte[]参数输出为十六进制）
+     *
+     * @param tag    tag
+     * @param format 日志信息
+     * @param arg    参数
+     */
+    static void warnOut(String tag, String format, Object arg) {
+        BleLog.w(tag, format, arg);
+    }
+
+    /**
+     * 等同于Log.w，日志级别足够时才将format中的"{}"按顺序替换为参数（byte[]参数输出为十六进制）
+     *
+     * @param tag    tag
+     * @param format 日志信息
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    static void warnOut(String tag, String format, Object arg1, Object arg2) {
+        BleLog.w(tag, format, arg1, arg2);
+    }
+
+    /**
+     * 等同于Log.w，日志级别足够时才将format中的"{}"按顺序替换为参数（byte[]参数输出为十六进制）
+     *
+     * @param tag    tag
+     * @param format 日志信息
+     * @param arg1   参数1
+     * @param arg2   参数2
+     * @param arg3   参数3
+     */
+    static void warnOut(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        BleLog.w(tag, format, arg1, arg2, arg3);
     }
 
     //Toast部分
@@ -113,38 +137,46 @@ class Tool {
      */
     @SuppressWarnings("WeakerAccess")
     public static String bytesToHexStr(byte[] bytes) {
+        return ByteCodec.toHexString(bytes, ' ');
+    }
 
-        if (bytes == null) {
-            return "";
+    /**
+     * 将设备地址（如"AA:BB:CC:DD:EE:FF"）转换为long，不产生临时对象
+     *
+     * @param address 设备地址
+     * @return 48位的地址值，地址格式错误时返回-1
+     */
+    public static long macAddressToLong(String address) {
+        if (address == null || address.length() != 17) {
+            return -1L;
         }
-
-        String stmp;
-        StringBuilder sb = new StringBuilder("");
-        for (byte aByte : bytes) {
-            stmp = Integer.toHexString(aByte & 0xFF);
-            sb.append((stmp.length() == 1) ? "0" + stmp : stmp);
-            sb.append(" ");
+        long result = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = address.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return -1L;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return -1L;
+            }
+            result = (result << 4) | digit;
         }
-        return sb.toString().toUpperCase().trim();
+        return result;
     }
 
     /**
      * bytes字符串转换为Byte值
      *
-     * @param src Byte字符串，每个Byte之间没有分隔符
+     * @param src Byte字符串，每个Byte之间没有分隔符（长度为奇数时忽略最后一个字符）
      * @return byte[]
      */
     public static byte[] hexStrToBytes(String src) {
-        int m, n;
-        int l = src.length() / 2;
-        System.out.println(l);
-        byte[] ret = new byte[l];
-        for (int i = 0; i < l; i++) {
-            m = i * 2 + 1;
-            n = m + 1;
-            int integer = Integer.decode("0x" + src.substring(i * 2, m) + src.substring(m, n));
-            ret[i] = (byte) integer;
-        }
+        byte[] ret = new byte[src.length() / 2];
+        ByteCodec.decodeHex(src, 0, ret.length * 2, ret, 0);
         return ret;
     }
 }
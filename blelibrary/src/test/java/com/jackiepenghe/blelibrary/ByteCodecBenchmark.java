@@ -0,0 +1,124 @@
+package com.jackiepenghe.blelibrary;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ByteCodec与原来的Tool十六进制实现的简单性能对比
+ * 默认的单元测试不运行此类，需要时在本机JVM中运行
+ * （./gradlew :blelibrary:testDebugUnitTest -Pbenchmark --tests *ByteCodecBenchmark），先预热再计时，
+ * 结果输出到标准输出。只比较相对耗时，不对耗时做断言，避免在繁忙的构建机上误报；
+ * 需要准确的数据时应在真机上使用专门的基准测试工具
+ *
+ * @author alm
+ */
+
+public class ByteCodecBenchmark {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 每次编解码的数据长度（一个最大MTU的数据包）
+     */
+    private static final int PAYLOAD_LENGTH = 512;
+    /**
+     * 预热次数
+     */
+    private static final int WARMUP_ITERATIONS = 2000;
+    /**
+     * 计时次数
+     */
+    private static final int MEASURE_ITERATIONS = 5000;
+
+    /*-------------------------成员变量-------------------------*/
+
+    /**
+     * 防止结果被JIT优化掉
+     */
+    private long sink;
+
+    /*-------------------------测试-------------------------*/
+
+    @Test
+    public void encode() {
+        final byte[] payload = newPayload();
+        Runnable legacy = new Runnable() {
+            @Override
+            public void run() {
+                sink += LegacyHex.bytesToHexStr(payload).length();
+            }
+        };
+        Runnable codec = new Runnable() {
+            @Override
+            public void run() {
+                sink += Tool.bytesToHexStr(payload).length();
+            }
+        };
+        report("bytesToHexStr", measure(legacy), measure(codec));
+    }
+
+    @Test
+    public void decode() {
+        final String hex = ByteCodec.toHexString(newPayload());
+        Runnable legacy = new Runnable() {
+            @Override
+            public void run() {
+                sink += LegacyHex.hexStrToBytes(hex).length;
+            }
+        };
+        Runnable codec = new Runnable() {
+            @Override
+            public void run() {
+                sink += Tool.hexStrToBytes(hex).length;
+            }
+        };
+        report("hexStrToBytes", measure(legacy), measure(codec));
+    }
+
+    /*-------------------------私有函数-------------------------*/
+
+    /**
+     * 生成固定内容的测试数据
+     *
+     * @return 测试数据
+     */
+    private static byte[] newPayload() {
+        byte[] payload = new byte[PAYLOAD_LENGTH];
+        new Random(PAYLOAD_LENGTH).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * 预热后计时
+     *
+     * @param runnable 要计时的任务
+     * @return 平均每次的耗时（纳秒）
+     */
+    private static double measure(Runnable runnable) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (double) (System.nanoTime() - start) / MEASURE_ITERATIONS;
+    }
+
+    /**
+     * 输出对比结果
+     *
+     * @param name     测试名称
+     * @param legacyNs 原来的实现平均每次的耗时（纳秒）
+     * @param codecNs  ByteCodec平均每次的耗时（纳秒）
+     */
+    private void report(String name, double legacyNs, double codecNs) {
+        assertTrue(sink != 0);
+        System.out.println(String.format(Locale.US, "%s(%d bytes): legacy %.0f ns/op, ByteCodec %.0f ns/op, %.1fx",
+                name, PAYLOAD_LENGTH, legacyNs, codecNs, legacyNs / codecNs));
+    }
+}
@@ -0,0 +1,205 @@
+package com.jackiepenghe.blelibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * ByteCodec的往返测试
+ * 十六进制编解码与各种整数、浮点数的读写都需要能够还原出原来的数据，
+ * Tool中的十六进制函数改为使用ByteCodec后，输出需要与原来的实现一致
+ *
+ * @author alm
+ */
+
+public class ByteCodecTest {
+
+    /*-------------------------静态常量-------------------------*/
+
+    /**
+     * 随机数种子，固定种子保证失败时可以复现
+     */
+    private static final long SEED = 0x424C45L;
+
+    /*-------------------------十六进制-------------------------*/
+
+    @Test
+    public void hexRoundTrip() {
+        Random random = new Random(SEED);
+        for (int length = 0; length < 64; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String hex = ByteCodec.toHexString(bytes);
+            assertEquals(length * 2, hex.length());
+            assertArrayEquals(bytes, ByteCodec.hexToBytes(hex));
+        }
+    }
+
+    @Test
+    public void hexAllByteValues() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        String hex = ByteCodec.toHexString(bytes);
+        for (int i = 0; i < bytes.length; i++) {
+            String expected = Integer.toHexString(0x100 | i).substring(1).toUpperCase();
+            assertEquals(expected, hex.substring(i * 2, i * 2 + 2));
+        }
+        assertArrayEquals(bytes, ByteCodec.hexToBytes(hex));
+        assertArrayEquals(bytes, ByteCodec.hexToBytes(hex.toLowerCase()));
+    }
+
+    @Test
+    public void hexWithSeparator() {
+        byte[] bytes = {(byte) 0xAB, 0x01, (byte) 0xFF};
+        assertEquals("AB 01 FF", ByteCodec.toHexString(bytes, ' '));
+        assertEquals("AB:01:FF", ByteCodec.appendHex(new StringBuilder(), bytes, 0, bytes.length, ':').toString());
+        assertEquals("", ByteCodec.toHexString(new byte[0], ' '));
+        assertEquals("", ByteCodec.toHexString(null, ' '));
+    }
+
+    @Test
+    public void hexWithOffset() {
+        byte[] bytes = {0x00, 0x12, 0x34, 0x56, 0x00};
+        char[] chars = {'x', 'x', 'x', 'x', 'x', 'x', 'x', 'x'};
+        assertEquals(6, ByteCodec.encodeHex(bytes, 1, 3, chars, 1));
+        assertEquals("x123456x", new String(chars));
+        assertEquals("pre3456", ByteCodec.appendHex(new StringBuilder("pre"), bytes, 2, 2).toString());
+
+        byte[] decoded = new byte[5];
+        assertEquals(3, ByteCodec.decodeHex("--123456", 2, 6, decoded, 1));
+        assertArrayEquals(bytes, decoded);
+        decoded = new byte[5];
+        assertEquals(3, ByteCodec.decodeHex(chars, 1, 6, decoded, 1));
+        assertArrayEquals(bytes, decoded);
+    }
+
+    @Test
+    public void hexRejectsInvalidInput() {
+        try {
+            ByteCodec.hexToBytes("ABC");
+            fail("odd length accepted");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            ByteCodec.hexToBytes("0G");
+            fail("invalid character accepted");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            ByteCodec.hexToBytes("0\u0100");
+            fail("non ascii character accepted");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            ByteCodec.encodeHex(new byte[4], 0, 4, new char[7], 0);
+            fail("short destination accepted");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+        try {
+            ByteCodec.decodeHex("0011", 0, 4, new byte[2], 1);
+            fail("short destination accepted");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void toolHexMatchesLegacyImplementation() {
+        Random random = new Random(SEED);
+        for (int length = 0; length < 64; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String legacyHex = LegacyHex.bytesToHexStr(bytes);
+            assertEquals(legacyHex, Tool.bytesToHexStr(bytes));
+            String compactHex = legacyHex.replace(" ", "");
+            assertArrayEquals(LegacyHex.hexStrToBytes(compactHex), Tool.hexStrToBytes(compactHex));
+        }
+        assertEquals(LegacyHex.bytesToHexStr(null), Tool.bytesToHexStr(null));
+    }
+
+    /*-------------------------整数与浮点数-------------------------*/
+
+    @Test
+    public void int16RoundTrip() {
+        byte[] bytes = new byte[3];
+        int[] values = {0, 1, 0x7F, 0x80, 0x1234, 0x7FFF, 0x8000, 0xFFFF};
+        for (int value : values) {
+            assertEquals(3, ByteCodec.writeInt16LE(bytes, 1, value));
+            assertEquals(value, ByteCodec.readUInt16LE(bytes, 1));
+            assertEquals((short) value, ByteCodec.readInt16LE(bytes, 1));
+            assertEquals(3, ByteCodec.writeInt16BE(bytes, 1, value));
+            assertEquals(value, ByteCodec.readUInt16BE(bytes, 1));
+            assertEquals((short) value, ByteCodec.readInt16BE(bytes, 1));
+        }
+    }
+
+    @Test
+    public void int32RoundTrip() {
+        byte[] bytes = new byte[5];
+        int[] values = {0, 1, -1, 0x12345678, Integer.MAX_VALUE, Integer.MIN_VALUE, 0x80, 0xFF00FF00};
+        for (int value : values) {
+            assertEquals(5, ByteCodec.writeInt32LE(bytes, 1, value));
+            assertEquals(value, ByteCodec.readInt32LE(bytes, 1));
+            assertEquals(value & 0xFFFFFFFFL, ByteCodec.readUInt32LE(bytes, 1));
+            assertEquals(5, ByteCodec.writeInt32BE(bytes, 1, value));
+            assertEquals(value, ByteCodec.readInt32BE(bytes, 1));
+            assertEquals(value & 0xFFFFFFFFL, ByteCodec.readUInt32BE(bytes, 1));
+        }
+    }
+
+    @Test
+    public void int64RoundTrip() {
+        byte[] bytes = new byte[9];
+        long[] values = {0L, 1L, -1L, 0x0123456789ABCDEFL, Long.MAX_VALUE, Long.MIN_VALUE, 0x80000000L, 0xFFFFFFFFL};
+        for (long value : values) {
+            assertEquals(9, ByteCodec.writeInt64LE(bytes, 1, value));
+            assertEquals(value, ByteCodec.readInt64LE(bytes, 1));
+            assertEquals(9, ByteCodec.writeInt64BE(bytes, 1, value));
+            assertEquals(value, ByteCodec.readInt64BE(bytes, 1));
+        }
+    }
+
+    @Test
+    public void floatingPointRoundTrip() {
+        byte[] bytes = new byte[8];
+        float[] floats = {0f, -0f, 1.5f, -273.15f, Float.MIN_VALUE, Float.MAX_VALUE, Float.NaN, Float.NEGATIVE_INFINITY};
+        for (float value : floats) {
+            ByteCodec.writeFloatLE(bytes, 0, value);
+            assertEquals(Float.floatToRawIntBits(value), Float.floatToRawIntBits(ByteCodec.readFloatLE(bytes, 0)));
+            ByteCodec.writeFloatBE(bytes, 0, value);
+            assertEquals(Float.floatToRawIntBits(value), Float.floatToRawIntBits(ByteCodec.readFloatBE(bytes, 0)));
+        }
+        double[] doubles = {0d, -0d, 1.5d, -273.15d, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY};
+        for (double value : doubles) {
+            ByteCodec.writeDoubleLE(bytes, 0, value);
+            assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(ByteCodec.readDoubleLE(bytes, 0)));
+            ByteCodec.writeDoubleBE(bytes, 0, value);
+            assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(ByteCodec.readDoubleBE(bytes, 0)));
+        }
+    }
+
+    @Test
+    public void byteOrder() {
+        byte[] bytes = new byte[4];
+        ByteCodec.writeInt32LE(bytes, 0, 0x11223344);
+        assertArrayEquals(new byte[]{0x44, 0x33, 0x22, 0x11}, bytes);
+        ByteCodec.writeInt32BE(bytes, 0, 0x11223344);
+        assertArrayEquals(new byte[]{0x11, 0x22, 0x33, 0x44}, bytes);
+        assertEquals(0xFF, ByteCodec.readUInt8(new byte[]{(byte) 0xFF}, 0));
+    }
+
+    @Test
+    public void chainedWrites() {
+        byte[] bytes = new byte[7];
+        int offset = ByteCodec.writeInt8(bytes, 0, 0x01);
+        offset = ByteCodec.writeInt16LE(bytes, offset, 0x0302);
+        offset = ByteCodec.writeInt32BE(bytes, offset, 0x04050607);
+        assertEquals(bytes.length, offset);
+        assertArrayEquals(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07}, bytes);
+    }
+}
@@ -0,0 +1,59 @@
+package com.jackiepenghe.blelibrary;
+
+/**
+ * 改为使用ByteCodec之前Tool中的十六进制实现，只用于测试中比较输出与性能
+ *
+ * @author alm
+ */
+
+final class LegacyHex {
+
+    /*-------------------------构造函数-------------------------*/
+
+    /**
+     * 不允许创建实例
+     */
+    private LegacyHex() {
+    }
+
+    /*-------------------------库内静态函数-------------------------*/
+
+    /**
+     * 原来的Tool.bytesToHexStr：每个字节生成一个字符串，最后再转换大写、去掉末尾的空格
+     *
+     * @param bytes 字节数组
+     * @return 十六进制字符串，每个字节之间用空格分隔
+     */
+    static String bytesToHexStr(byte[] bytes) {
+        if (bytes == null) {
+            return "";
+        }
+        String stmp;
+        StringBuilder sb = new StringBuilder("");
+        for (byte aByte : bytes) {
+            stmp = Integer.toHexString(aByte & 0xFF);
+            sb.append((stmp.length() == 1) ? "0" + stmp : stmp);
+            sb.append(" ");
+        }
+        return sb.toString().toUpperCase().trim();
+    }
+
+    /**
+     * 原来的Tool.hexStrToBytes：每个字节截取两次子串并通过Integer.decode解析（去掉了原来的System.out输出）
+     *
+     * @param src 十六进制字符串，每个字节之间没有分隔符
+     * @return 字节数组
+     */
+    static byte[] hexStrToBytes(String src) {
+        int m, n;
+        int l = src.length() / 2;
+        byte[] ret = new byte[l];
+        for (int i = 0; i < l; i++) {
+            m = i * 2 + 1;
+            n = m + 1;
+            int integer = Integer.decode("0x" + src.substring(i * 2, m) + src.substring(m, n));
+            ret[i] = (byte) integer;
+        }
+        return ret;
+    }
+}